@@ -0,0 +1,92 @@
+package com.ctrip.framework.apollo.adminservice.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageBroadcaster;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pushes release messages to every config service instance registered in eureka over http.
+ *
+ * <p>It lives in the admin service, which is the only one sending release messages, so the config services scanning
+ * apollo-biz don't get the push pool.</p>
+ */
+@Component
+public class HttpReleaseMessageBroadcaster implements ReleaseMessageBroadcaster {
+  private static final Logger logger = LoggerFactory.getLogger(HttpReleaseMessageBroadcaster.class);
+  private static final String PUSH_PATH = "release-messages";
+  private static final int CONNECT_TIMEOUT_IN_MILLI = 1000;
+  private static final int READ_TIMEOUT_IN_MILLI = 3000;
+
+  private final EurekaClient eurekaClient;
+  private final BizConfig bizConfig;
+  private final RestTemplate restTemplate;
+  private final ExecutorService pushExecutorService;
+
+  public HttpReleaseMessageBroadcaster(final EurekaClient eurekaClient, final BizConfig bizConfig) {
+    this.eurekaClient = eurekaClient;
+    this.bizConfig = bizConfig;
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLI);
+    requestFactory.setReadTimeout(READ_TIMEOUT_IN_MILLI);
+    this.restTemplate = new RestTemplate(requestFactory);
+    this.pushExecutorService = Executors.newFixedThreadPool(2, ApolloThreadFactory
+        .create("HttpReleaseMessageBroadcaster", true));
+  }
+
+  @Override
+  public void broadcast(ReleaseMessage message) {
+    if (!bizConfig.isReleaseMessagePushEnabled()) {
+      return;
+    }
+
+    for (InstanceInfo instance : getConfigServiceInstances()) {
+      pushExecutorService.submit(() -> push(instance.getHomePageUrl(), message));
+    }
+  }
+
+  private void push(String homePageUrl, ReleaseMessage message) {
+    //only the id is pushed, the config services load the message from database
+    MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+    body.add("id", message.getId());
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.AUTHORIZATION, bizConfig.releaseMessagePushAccessToken());
+
+    String url = homePageUrl.endsWith("/") ? homePageUrl + PUSH_PATH : homePageUrl + "/" + PUSH_PATH;
+    try {
+      restTemplate.postForLocation(url, new HttpEntity<>(body, headers));
+    } catch (Throwable ex) {
+      //the config service would pick it up in the next fallback scan
+      logger.warn("Push release message {} to {} failed, reason: {}", message.getId(), url, ex.getMessage());
+      Tracer.logEvent("Apollo.ReleaseMessage.PushFailed", url);
+    }
+  }
+
+  private List<InstanceInfo> getConfigServiceInstances() {
+    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    if (application == null) {
+      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_CONFIGSERVICE);
+      return Collections.emptyList();
+    }
+    return application.getInstances();
+  }
+}
@@ -25,8 +25,16 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
+  private static final int DEFAULT_RELEASE_MESSAGE_PUSH_FALLBACK_SCAN_INTERVAL_IN_MS = 10000; //10s
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS = 4;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS = 2;
+  private static final int DEFAULT_INSTANCE_CONFIG_HEARTBEAT_FLUSH_INTERVAL = 300; //300s
+  private static final int DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT_IN_MB = 256;
+  private static final int DEFAULT_CONFIG_SERVICE_OFF_HEAP_CACHE_MAX_SIZE_IN_MB = 512;
+  private static final String DEFAULT_CONFIG_SERVICE_CACHE_EVICTION_POLICY = "lru";
+  private static final int DEFAULT_CONFIG_SERVICE_DELTA_HISTORY_MAX_WEIGHT_IN_MB = 64;
 
   private Gson gson = new Gson();
   private static final Type namespaceValueLengthOverrideTypeReference =
@@ -121,11 +129,40 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.SECONDS;
   }
 
+  /**
+   * @return the file to keep a snapshot of the release message cache in, so that the config service could load only
+   * the release messages after the snapshot when restarting, empty means no snapshot
+   */
+  public String releaseMessageCacheSnapshotFile() {
+    return getValue("apollo.release-message-cache.snapshot-file", "").trim();
+  }
+
   public int releaseMessageScanIntervalInMilli() {
     int interval = getIntProperty("apollo.message-scan.interval", DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
   }
 
+  public boolean isReleaseMessagePushEnabled() {
+    return getBooleanProperty("apollo.release-message.push.enabled", false);
+  }
+
+  /**
+   * the token shared by the admin services and config services to authorize the release message pushes, the pushes
+   * are rejected if it is empty
+   */
+  public String releaseMessagePushAccessToken() {
+    return getValue("apollo.release-message.push.access-token", "").trim();
+  }
+
+  /**
+   * the database scan interval when release messages are pushed, the scan is only used to repair lost pushes then
+   */
+  public int releaseMessagePushFallbackScanIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message.push.fallback-scan.interval",
+        DEFAULT_RELEASE_MESSAGE_PUSH_FALLBACK_SCAN_INTERVAL_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_PUSH_FALLBACK_SCAN_INTERVAL_IN_MS);
+  }
+
   public int releaseMessageNotificationBatch() {
     int batch = getIntProperty("apollo.release-message.notification.batch", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
     return checkInt(batch, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
@@ -136,10 +173,77 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  public int releaseMessageNotificationWorkers() {
+    int workers = getIntProperty("apollo.release-message.notification.workers", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS);
+    return checkInt(workers, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS);
+  }
+
+  /**
+   * @return the threads writing the instance config audits, the audits of one instance are always written by the same
+   * thread
+   */
+  public int instanceConfigAuditWorkers() {
+    int workers = getIntProperty("apollo.instance-config-audit.workers", DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS);
+    return checkInt(workers, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS);
+  }
+
+  /**
+   * @return whether to keep the last seen time of the instance configs in memory and write them in batch periodically,
+   * instead of updating each instance config when it is seen again
+   */
+  public boolean isInstanceConfigHeartbeatWriteBehindEnabled() {
+    return getBooleanProperty("apollo.instance-config-heartbeat.write-behind.enabled", false);
+  }
+
+  public int instanceConfigHeartbeatFlushInterval() {
+    int interval = getIntProperty("apollo.instance-config-heartbeat.flush.interval",
+        DEFAULT_INSTANCE_CONFIG_HEARTBEAT_FLUSH_INTERVAL);
+    return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_HEARTBEAT_FLUSH_INTERVAL);
+  }
+
+  public TimeUnit instanceConfigHeartbeatFlushIntervalTimeUnit() {
+    return TimeUnit.SECONDS;
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
 
+  /**
+   * @return the max estimated heap size of the release caches in the config service, shared by all of them
+   */
+  public long configServiceCacheMaxWeightInBytes() {
+    int maxWeight = getIntProperty("config-service.cache.max-weight-in-mb", DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT_IN_MB);
+    return checkInt(maxWeight, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_CACHE_MAX_WEIGHT_IN_MB) * 1024L * 1024L;
+  }
+
+  /**
+   * @return lru or w-tinylfu
+   */
+  public String configServiceCacheEvictionPolicy() {
+    return getValue("config-service.cache.eviction-policy", DEFAULT_CONFIG_SERVICE_CACHE_EVICTION_POLICY).trim();
+  }
+
+  public boolean isConfigServiceOffHeapCacheEnabled() {
+    return getBooleanProperty("config-service.cache.off-heap.enabled", false);
+  }
+
+  public long configServiceOffHeapCacheMaxSizeInBytes() {
+    int maxSize = getIntProperty("config-service.cache.off-heap.max-size-in-mb",
+        DEFAULT_CONFIG_SERVICE_OFF_HEAP_CACHE_MAX_SIZE_IN_MB);
+    return checkInt(maxSize, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_OFF_HEAP_CACHE_MAX_SIZE_IN_MB) * 1024L * 1024L;
+  }
+
+  /**
+   * @return the max estimated heap size of the recently served releases kept to answer delta config queries, 0 means
+   * delta config queries are always answered with the full configurations
+   */
+  public long configServiceDeltaHistoryMaxWeightInBytes() {
+    int maxWeight = getIntProperty("config-service.delta.history.max-weight-in-mb",
+        DEFAULT_CONFIG_SERVICE_DELTA_HISTORY_MAX_WEIGHT_IN_MB);
+    return checkInt(maxWeight, 0, Integer.MAX_VALUE, DEFAULT_CONFIG_SERVICE_DELTA_HISTORY_MAX_WEIGHT_IN_MB) * 1024L * 1024L;
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
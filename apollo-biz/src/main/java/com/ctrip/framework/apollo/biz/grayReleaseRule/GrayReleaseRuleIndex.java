@@ -0,0 +1,196 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.net.InetAddresses;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of the active gray release rules of one namespace: clientAppId -> clientIp -> releaseId.
+ *
+ * <p>It is built when the rules change, so a config query only needs a few hash lookups. Besides the plain ips and
+ * {@link GrayReleaseRuleItemDTO#ALL_IP}, a client ip in the rules could also be a CIDR block like 10.1.0.0/16, which is
+ * kept in a prefix trie of the address bits. The plain ip wins over the longest matching block, which wins over
+ * {@link GrayReleaseRuleItemDTO#ALL_IP}.</p>
+ */
+final class GrayReleaseRuleIndex {
+  private static final char CIDR_SEPARATOR = '/';
+  private static final GrayReleaseRuleIndex EMPTY = new GrayReleaseRuleIndex(ImmutableMap.of());
+
+  private final Map<String, ClientAppRules> clientAppRules;
+
+  private GrayReleaseRuleIndex(Map<String, ClientAppRules> clientAppRules) {
+    this.clientAppRules = clientAppRules;
+  }
+
+  static GrayReleaseRuleIndex build(Collection<GrayReleaseRuleCache> rules) {
+    List<GrayReleaseRuleCache> activeRules = Lists.newArrayList();
+    for (GrayReleaseRuleCache rule : rules) {
+      if (rule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
+        activeRules.add(rule);
+      }
+    }
+    if (activeRules.isEmpty()) {
+      return EMPTY;
+    }
+    //the newer rule wins if the rules conflict
+    activeRules.sort(Comparator.comparingLong(GrayReleaseRuleCache::getRuleId));
+
+    Map<String, ClientAppRules.Builder> builders = Maps.newHashMap();
+    for (GrayReleaseRuleCache rule : activeRules) {
+      for (GrayReleaseRuleItemDTO ruleItem : rule.getRuleItems()) {
+        ClientAppRules.Builder builder =
+            builders.computeIfAbsent(ruleItem.getClientAppId(), clientAppId -> new ClientAppRules.Builder());
+        for (String clientIp : ruleItem.getClientIpList()) {
+          builder.add(clientIp, rule.getReleaseId());
+        }
+      }
+    }
+
+    ImmutableMap.Builder<String, ClientAppRules> clientAppRules = ImmutableMap.builder();
+    for (Map.Entry<String, ClientAppRules.Builder> entry : builders.entrySet()) {
+      clientAppRules.put(entry.getKey(), entry.getValue().build());
+    }
+    return new GrayReleaseRuleIndex(clientAppRules.build());
+  }
+
+  boolean isEmpty() {
+    return clientAppRules.isEmpty();
+  }
+
+  Long findReleaseId(String clientAppId, String clientIp) {
+    ClientAppRules rules = clientAppRules.get(clientAppId);
+    return rules == null ? null : rules.findReleaseId(clientIp);
+  }
+
+  static boolean isCidr(String clientIp) {
+    return clientIp.indexOf(CIDR_SEPARATOR) > 0;
+  }
+
+  private static final class ClientAppRules {
+    private final Map<String, Long> ipReleaseIds;
+    private final IpPrefixTrie cidrReleaseIds;
+    private final Long allIpReleaseId;
+
+    private ClientAppRules(Map<String, Long> ipReleaseIds, IpPrefixTrie cidrReleaseIds, Long allIpReleaseId) {
+      this.ipReleaseIds = ipReleaseIds;
+      this.cidrReleaseIds = cidrReleaseIds;
+      this.allIpReleaseId = allIpReleaseId;
+    }
+
+    Long findReleaseId(String clientIp) {
+      Long releaseId = clientIp == null ? null : ipReleaseIds.get(clientIp);
+      if (releaseId == null && cidrReleaseIds != null && clientIp != null
+          && InetAddresses.isInetAddress(clientIp)) {
+        releaseId = cidrReleaseIds.findLongestMatch(InetAddresses.forString(clientIp).getAddress());
+      }
+      return releaseId != null ? releaseId : allIpReleaseId;
+    }
+
+    private static final class Builder {
+      private final Map<String, Long> ipReleaseIds = Maps.newHashMap();
+      private IpPrefixTrie cidrReleaseIds;
+      private Long allIpReleaseId;
+
+      void add(String clientIp, long releaseId) {
+        if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+          allIpReleaseId = releaseId;
+        } else if (isCidr(clientIp)) {
+          addCidr(clientIp, releaseId);
+        } else {
+          ipReleaseIds.put(clientIp, releaseId);
+        }
+      }
+
+      private void addCidr(String cidr, long releaseId) {
+        int separatorIndex = cidr.indexOf(CIDR_SEPARATOR);
+        String address = cidr.substring(0, separatorIndex);
+        if (!InetAddresses.isInetAddress(address)) {
+          return;
+        }
+        byte[] addressBytes = InetAddresses.forString(address).getAddress();
+        int prefixLength;
+        try {
+          prefixLength = Integer.parseInt(cidr.substring(separatorIndex + 1));
+        } catch (NumberFormatException ex) {
+          return;
+        }
+        if (prefixLength < 0 || prefixLength > addressBytes.length * 8) {
+          return;
+        }
+        if (cidrReleaseIds == null) {
+          cidrReleaseIds = new IpPrefixTrie();
+        }
+        cidrReleaseIds.put(addressBytes, prefixLength, releaseId);
+      }
+
+      ClientAppRules build() {
+        return new ClientAppRules(ImmutableMap.copyOf(ipReleaseIds), cidrReleaseIds, allIpReleaseId);
+      }
+    }
+  }
+
+  /**
+   * A binary trie of the address bits, ipv4 and ipv6 addresses are kept in separate roots. It is only modified before
+   * the index is published.
+   */
+  private static final class IpPrefixTrie {
+    private final Node ipv4Root = new Node();
+    private final Node ipv6Root = new Node();
+
+    void put(byte[] address, int prefixLength, long releaseId) {
+      Node node = root(address);
+      for (int i = 0; i < prefixLength; i++) {
+        if (bit(address, i) == 0) {
+          if (node.zero == null) {
+            node.zero = new Node();
+          }
+          node = node.zero;
+        } else {
+          if (node.one == null) {
+            node.one = new Node();
+          }
+          node = node.one;
+        }
+      }
+      node.releaseId = releaseId;
+    }
+
+    Long findLongestMatch(byte[] address) {
+      Node node = root(address);
+      Long releaseId = node.releaseId;
+      for (int i = 0; i < address.length * 8; i++) {
+        node = bit(address, i) == 0 ? node.zero : node.one;
+        if (node == null) {
+          break;
+        }
+        if (node.releaseId != null) {
+          releaseId = node.releaseId;
+        }
+      }
+      return releaseId;
+    }
+
+    private Node root(byte[] address) {
+      return address.length == 4 ? ipv4Root : ipv6Root;
+    }
+
+    private static int bit(byte[] address, int index) {
+      return (address[index >> 3] >> (7 - (index & 7))) & 1;
+    }
+
+    private static final class Node {
+      private Node zero;
+      private Node one;
+      private Long releaseId;
+    }
+  }
+}
@@ -5,6 +5,7 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
@@ -29,8 +30,11 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -44,6 +48,9 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final String ANY_CIDR = "/";
+  //tolerate the clock differences among the admin services which set the last modified time
+  private static final long CLOCK_SKEW_TOLERANCE_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
 
   @Autowired
   private GrayReleaseRuleRepository grayReleaseRuleRepository;
@@ -54,14 +61,19 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private ScheduledExecutorService executorService;
   //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
   private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
+  //store configAppId+configCluster+configNamespace -> index of the active rules, rebuilt and replaced on change
+  private ConcurrentMap<String, GrayReleaseRuleIndex> grayReleaseRuleIndexes;
   //store clientAppId+clientNamespace+ip -> ruleId map
   private Multimap<String, Long> reversedGrayReleaseRuleCache;
   //an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
+  //only accessed by the scanning thread
+  private long maxIdScanned;
 
   public GrayReleaseRulesHolder() {
     loadVersion = new AtomicLong();
     grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    grayReleaseRuleIndexes = Maps.newConcurrentMap();
     reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
@@ -94,6 +106,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     String cluster = keys.get(1);
     String namespace = keys.get(2);
 
+    //reload before the notification controllers notify the clients of the same message
     List<GrayReleaseRule> rules = grayReleaseRuleRepository
         .findByAppIdAndClusterNameAndNamespaceName(appId, cluster, namespace);
 
@@ -118,21 +131,11 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String
       configAppId, String configCluster, String configNamespaceName) {
     String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    GrayReleaseRuleIndex index = grayReleaseRuleIndexes.get(key);
+    if (index == null) {
       return null;
     }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return index.findReleaseId(clientAppId, clientIp);
   }
 
   /**
@@ -144,11 +147,28 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
         namespaceName, clientIp)) || reversedGrayReleaseRuleCache.containsKey
         (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, GrayReleaseRuleItemDTO
-            .ALL_IP));
+            .ALL_IP)) || reversedGrayReleaseRuleCache.containsKey
+        (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, ANY_CIDR));
   }
 
+  /**
+   * Load all the rules for the first time, and only the changed ones afterwards. As every change of the rules inserts
+   * a new row, the rules after the max id scanned are the changed ones, except those committed later than the rules
+   * with larger ids, which are found by the last modified time.
+   */
   private void scanGrayReleaseRules() {
-    long maxIdScanned = 0;
+    long idScannedBefore = maxIdScanned;
+    scanNewGrayReleaseRules();
+    if (idScannedBefore > 0) {
+      long lookback = getDatabaseScanTimeUnit().toMillis(getDatabaseScanIntervalSecond()) * 2
+          + CLOCK_SKEW_TOLERANCE_IN_MILLI;
+      mergeGrayReleaseRules(grayReleaseRuleRepository.findByIdLessThanEqualAndDataChangeLastModifiedTimeAfter(
+          idScannedBefore, new Date(System.currentTimeMillis() - lookback)));
+    }
+    removeOutdatedInactiveRules();
+  }
+
+  private void scanNewGrayReleaseRules() {
     boolean hasMore = true;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
@@ -165,10 +185,12 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+  //synchronized as the indexes of the changed keys are rebuilt from the rule caches after merged
+  private synchronized void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
       return;
     }
+    Set<String> changedKeys = Sets.newHashSet();
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         //filter rules with no release id, i.e. never released
@@ -197,6 +219,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         if (oldRule != null) {
           removeCache(key, oldRule);
         }
+        changedKeys.add(key);
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           //update load version
@@ -204,9 +227,43 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           //remove outdated inactive branch rule after 2 update cycles
           removeCache(key, oldRule);
+          changedKeys.add(key);
         }
       }
     }
+
+    for (String key : changedKeys) {
+      rebuildIndex(key);
+    }
+  }
+
+  private void rebuildIndex(String key) {
+    //create a new list to avoid ConcurrentModificationException
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(grayReleaseRuleCache.get(key)));
+    if (index.isEmpty()) {
+      grayReleaseRuleIndexes.remove(key);
+    } else {
+      grayReleaseRuleIndexes.put(key, index);
+    }
+  }
+
+  /**
+   * Inactive rules are kept for 2 update cycles, so that the older active rules of the same branch merged meanwhile
+   * would not take effect again
+   */
+  private synchronized void removeOutdatedInactiveRules() {
+    List<Map.Entry<String, GrayReleaseRuleCache>> entries;
+    synchronized (grayReleaseRuleCache) {
+      entries = Lists.newArrayList(grayReleaseRuleCache.entries());
+    }
+    for (Map.Entry<String, GrayReleaseRuleCache> entry : entries) {
+      GrayReleaseRuleCache ruleCache = entry.getValue();
+      if (ruleCache.getBranchStatus() != NamespaceBranchStatus.ACTIVE
+          && (loadVersion.get() - ruleCache.getLoadVersion()) > 1) {
+        //inactive rules are not indexed, so the index stays the same
+        removeCache(entry.getKey(), ruleCache);
+      }
+    }
   }
 
   private void addCache(String key, GrayReleaseRuleCache ruleCache) {
@@ -214,7 +271,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
         for (String clientIp : ruleItemDTO.getClientIpList()) {
           reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-              .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
+              .getClientAppId(), ruleCache.getNamespaceName(), reversedClientIp(clientIp)), ruleCache.getRuleId());
         }
       }
     }
@@ -226,7 +283,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
       for (String clientIp : ruleItemDTO.getClientIpList()) {
         reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-            .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
+            .getClientAppId(), ruleCache.getNamespaceName(), reversedClientIp(clientIp)), ruleCache.getRuleId());
       }
     }
   }
@@ -265,6 +322,13 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
   }
 
+  /**
+   * CIDR blocks could not be looked up by the client ip, so they are all kept as one marker
+   */
+  private String reversedClientIp(String clientIp) {
+    return GrayReleaseRuleIndex.isCidr(clientIp) ? ANY_CIDR : clientIp;
+  }
+
   private String assembleReversedGrayReleaseRuleKey(String clientAppId, String
       clientNamespaceName, String clientIp) {
     return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
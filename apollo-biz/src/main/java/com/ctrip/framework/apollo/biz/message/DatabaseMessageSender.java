@@ -8,8 +8,11 @@ import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.collect.Queues;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
@@ -32,11 +35,15 @@ public class DatabaseMessageSender implements MessageSender {
   private final AtomicBoolean cleanStopped;
 
   private final ReleaseMessageRepository releaseMessageRepository;
+  //only the admin service provides one, the other apps scanning apollo-biz never send release messages
+  private final ReleaseMessageBroadcaster releaseMessageBroadcaster;
 
-  public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository) {
+  public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository,
+      @Nullable final ReleaseMessageBroadcaster releaseMessageBroadcaster) {
     cleanExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create("DatabaseMessageSender", true));
     cleanStopped = new AtomicBoolean(false);
     this.releaseMessageRepository = releaseMessageRepository;
+    this.releaseMessageBroadcaster = releaseMessageBroadcaster;
   }
 
   @Override
@@ -53,6 +60,7 @@ public class DatabaseMessageSender implements MessageSender {
     try {
       ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
       toClean.offer(newMessage.getId());
+      broadcastAfterCommit(newMessage);
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
@@ -63,6 +71,26 @@ public class DatabaseMessageSender implements MessageSender {
     }
   }
 
+  /**
+   * The config services would load the release once they receive the message, so it must not be pushed before the
+   * release is committed
+   */
+  private void broadcastAfterCommit(ReleaseMessage message) {
+    if (releaseMessageBroadcaster == null) {
+      return;
+    }
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      releaseMessageBroadcaster.broadcast(message);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        releaseMessageBroadcaster.broadcast(message);
+      }
+    });
+  }
+
   @PostConstruct
   private void initialize() {
     cleanExecutorService.submit(() -> {
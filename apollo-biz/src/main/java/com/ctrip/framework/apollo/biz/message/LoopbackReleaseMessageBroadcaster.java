@@ -0,0 +1,25 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * In-process broadcaster which hands the release messages to the scanners living in the same JVM, mainly for tests and
+ * all-in-one deployments.
+ */
+public class LoopbackReleaseMessageBroadcaster implements ReleaseMessageBroadcaster {
+  private final List<ReleaseMessageScanner> scanners;
+
+  public LoopbackReleaseMessageBroadcaster(ReleaseMessageScanner... scanners) {
+    this.scanners = Lists.newArrayList(scanners);
+  }
+
+  @Override
+  public void broadcast(ReleaseMessage message) {
+    for (ReleaseMessageScanner scanner : scanners) {
+      scanner.onMessagePushed(message.getId());
+    }
+  }
+}
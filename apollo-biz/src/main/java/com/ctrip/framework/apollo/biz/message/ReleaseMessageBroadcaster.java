@@ -0,0 +1,13 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * Pushes persisted release messages to the config services, so they don't need to wait for the next database scan.
+ *
+ * <p>The database is still the source of truth, so a broadcast is best effort and a lost one is repaired by the
+ * fallback scan of {@link ReleaseMessageScanner}.</p>
+ */
+public interface ReleaseMessageBroadcaster {
+  void broadcast(ReleaseMessage message);
+}
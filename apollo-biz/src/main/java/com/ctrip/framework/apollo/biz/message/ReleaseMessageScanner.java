@@ -1,9 +1,15 @@
 package com.ctrip.framework.apollo.biz.message;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,13 +23,23 @@ import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class ReleaseMessageScanner implements InitializingBean {
+public class ReleaseMessageScanner implements InitializingBean, MeterBinder {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
+  //an id skipped by the scan might belong to a transaction not committed yet, so look for it again for a while
+  private static final long MISSING_MESSAGE_TRACKING_WINDOW_IN_MILLI = 60 * 1000;
+  //a bigger gap is more likely to be an auto increment jump than uncommitted transactions
+  private static final int MAX_MISSING_MESSAGES = 1000;
+  private static final int MISSING_MESSAGE_QUERY_BATCH = 100;
   @Autowired
   private BizConfig bizConfig;
   @Autowired
@@ -31,17 +47,29 @@ public class ReleaseMessageScanner implements InitializingBean {
   private int databaseScanInterval;
   private List<ReleaseMessageListener> listeners;
   private ScheduledExecutorService executorService;
-  private long maxIdScanned;
+  //written by the scan thread only, read by the push handling threads
+  private volatile long maxIdScanned;
+  private final AtomicBoolean scanRequested;
+  //missing release message id -> the time it was found missing
+  private final ConcurrentNavigableMap<Long, Long> missingMessages;
+  private final AtomicLong lateMessages;
+  private final AtomicLong expiredMissingMessages;
 
   public ReleaseMessageScanner() {
     listeners = Lists.newCopyOnWriteArrayList();
+    missingMessages = new ConcurrentSkipListMap<>();
+    scanRequested = new AtomicBoolean();
+    lateMessages = new AtomicLong();
+    expiredMissingMessages = new AtomicLong();
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
+    //when release messages are pushed, the scan is only a fallback to repair the lost ones
+    databaseScanInterval = bizConfig.isReleaseMessagePushEnabled() ?
+        bizConfig.releaseMessagePushFallbackScanIntervalInMilli() : bizConfig.releaseMessageScanIntervalInMilli();
     maxIdScanned = loadLargestMessageId();
     executorService.scheduleWithFixedDelay((Runnable) () -> {
       Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
@@ -68,6 +96,36 @@ public class ReleaseMessageScanner implements InitializingBean {
     }
   }
 
+  /**
+   * Handle the release message id pushed by a {@link ReleaseMessageBroadcaster}.
+   * The push is only a hint to scan the database at once, the messages fired to the listeners are always loaded from
+   * the database in the scan thread, so the listeners still receive messages one by one and in order.
+   * @param id the id of the pushed release message
+   */
+  public void onMessagePushed(long id) {
+    if (id <= maxIdScanned && !missingMessages.containsKey(id)) {
+      //already scanned
+      return;
+    }
+    //at most one scan is waiting for the pushes
+    if (!scanRequested.compareAndSet(false, true)) {
+      return;
+    }
+    executorService.submit(() -> {
+      scanRequested.set(false);
+      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanPushedMessage");
+      try {
+        scanMessages();
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        logger.error("Scan pushed message failed", ex);
+      } finally {
+        transaction.complete();
+      }
+    });
+  }
+
   /**
    * Scan messages, continue scanning until there is no more messages
    */
@@ -76,6 +134,61 @@ public class ReleaseMessageScanner implements InitializingBean {
     while (hasMoreMessages && !Thread.currentThread().isInterrupted()) {
       hasMoreMessages = scanAndSendMessages();
     }
+    scanMissingMessages();
+  }
+
+  /**
+   * Look for the messages skipped by the previous scans, which are committed later than the messages after them
+   */
+  private void scanMissingMessages() {
+    if (missingMessages.isEmpty()) {
+      return;
+    }
+
+    long expireBefore = System.currentTimeMillis() - MISSING_MESSAGE_TRACKING_WINDOW_IN_MILLI;
+    Iterator<Map.Entry<Long, Long>> iterator = missingMessages.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Long> entry = iterator.next();
+      if (entry.getValue() < expireBefore) {
+        //rolled back, or deleted by the cleaning of the outdated messages
+        iterator.remove();
+        expiredMissingMessages.incrementAndGet();
+      }
+    }
+
+    for (List<Long> ids : Iterables.partition(Lists.newArrayList(missingMessages.keySet()),
+        MISSING_MESSAGE_QUERY_BATCH)) {
+      List<ReleaseMessage> releaseMessages = releaseMessageRepository.findByIdInOrderByIdAsc(ids);
+      if (CollectionUtils.isEmpty(releaseMessages)) {
+        continue;
+      }
+      for (ReleaseMessage releaseMessage : releaseMessages) {
+        missingMessages.remove(releaseMessage.getId());
+      }
+      fireLateMessages(releaseMessages);
+    }
+  }
+
+  private void fireLateMessages(List<ReleaseMessage> releaseMessages) {
+    lateMessages.addAndGet(releaseMessages.size());
+    Tracer.logEvent("Apollo.ReleaseMessageScanner.LateMessage", String.valueOf(releaseMessages.size()));
+    fireMessageScanned(releaseMessages);
+  }
+
+  private void recordMissingMessages(List<ReleaseMessage> releaseMessages) {
+    long expectedId = maxIdScanned + 1;
+    long now = System.currentTimeMillis();
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      long gap = releaseMessage.getId() - expectedId;
+      if (gap > 0 && gap <= MAX_MISSING_MESSAGES - missingMessages.size()) {
+        for (long id = expectedId; id < releaseMessage.getId(); id++) {
+          missingMessages.put(id, now);
+        }
+      } else if (gap > 0) {
+        Tracer.logEvent("Apollo.ReleaseMessageScanner.GapNotTracked", String.valueOf(gap));
+      }
+      expectedId = releaseMessage.getId() + 1;
+    }
   }
 
   /**
@@ -90,12 +203,36 @@ public class ReleaseMessageScanner implements InitializingBean {
     if (CollectionUtils.isEmpty(releaseMessages)) {
       return false;
     }
+    recordMissingMessages(releaseMessages);
     fireMessageScanned(releaseMessages);
     int messageScanned = releaseMessages.size();
     maxIdScanned = releaseMessages.get(messageScanned - 1).getId();
     return messageScanned == 500;
   }
 
+  int getMissingMessageCount() {
+    return missingMessages.size();
+  }
+
+  long getLateMessages() {
+    return lateMessages.get();
+  }
+
+  long getExpiredMissingMessages() {
+    return expiredMissingMessages.get();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.release-message.scanner.missing", this, ReleaseMessageScanner::getMissingMessageCount)
+        .description("Release message ids skipped by the scan and still looked for").register(registry);
+    FunctionCounter.builder("apollo.release-message.scanner.late", this, ReleaseMessageScanner::getLateMessages)
+        .description("Release messages found after the messages with bigger ids were scanned").register(registry);
+    FunctionCounter.builder("apollo.release-message.scanner.missing-expired", this,
+        ReleaseMessageScanner::getExpiredMissingMessages)
+        .description("Release message ids given up after the tracking window").register(registry);
+  }
+
   /**
    * find largest message id as the current start point
    * @return current largest message id
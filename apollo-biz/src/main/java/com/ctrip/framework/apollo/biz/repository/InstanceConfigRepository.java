@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -18,6 +19,8 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   InstanceConfig findByInstanceIdAndConfigAppIdAndConfigNamespaceName(long instanceId, String
       configAppId, String configNamespaceName);
 
+  List<InstanceConfig> findByInstanceIdIn(Collection<Long> instanceIds);
+
   Page<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfter(String releaseKey, Date
       validDate, Pageable pageable);
 
@@ -31,6 +34,11 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   @Query("delete from InstanceConfig  where ConfigAppId=?1 and ConfigClusterName=?2 and ConfigNamespaceName = ?3")
   int batchDelete(String appId, String clusterName, String namespaceName);
 
+  @Modifying
+  @Query("update InstanceConfig set dataChangeLastModifiedTime = :lastSeenTime where id in :ids "
+      + "and dataChangeLastModifiedTime < :lastSeenTime")
+  int updateLastSeenTime(@Param("ids") Collection<Long> ids, @Param("lastSeenTime") Date lastSeenTime);
+
   @Query(
       value = "select b.Id from `InstanceConfig` a inner join `Instance` b on b.Id =" +
           " a.`InstanceId` where a.`ConfigAppId` = :configAppId and a.`ConfigClusterName` = " +
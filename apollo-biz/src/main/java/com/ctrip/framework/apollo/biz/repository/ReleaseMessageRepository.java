@@ -17,6 +17,8 @@ public interface ReleaseMessageRepository extends PagingAndSortingRepository<Rel
 
   ReleaseMessage findTopByOrderByIdDesc();
 
+  List<ReleaseMessage> findByIdInOrderByIdAsc(Collection<Long> ids);
+
   ReleaseMessage findTopByMessageInOrderByIdDesc(Collection<String> messages);
 
   List<ReleaseMessage> findFirst100ByMessageAndIdLessThanOrderByIdAsc(String message, Long id);
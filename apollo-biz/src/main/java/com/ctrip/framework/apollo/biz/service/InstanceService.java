@@ -16,10 +16,13 @@ import org.springframework.util.CollectionUtils;
 
 import java.math.BigInteger;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -42,6 +45,13 @@ public class InstanceService {
         dataCenter, ip);
   }
 
+  public List<Instance> findInstances(String appId, String clusterName, String dataCenter, Set<String> ips) {
+    if (CollectionUtils.isEmpty(ips)) {
+      return Collections.emptyList();
+    }
+    return instanceRepository.findByAppIdAndClusterNameAndDataCenterAndIpIn(appId, clusterName, dataCenter, ips);
+  }
+
   public List<Instance> findInstancesByIds(Set<Long> instanceIds) {
     Iterable<Instance> instances = instanceRepository.findAllById(instanceIds);
     if (instances == null) {
@@ -64,6 +74,13 @@ public class InstanceService {
             instanceId, configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigsByInstanceIds(Set<Long> instanceIds) {
+    if (CollectionUtils.isEmpty(instanceIds)) {
+      return Collections.emptyList();
+    }
+    return instanceConfigRepository.findByInstanceIdIn(instanceIds);
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, Pageable
       pageable) {
     Page<InstanceConfig> instanceConfigs = instanceConfigRepository
@@ -174,6 +191,63 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  /**
+   * Create the instance configs in one transaction, so either all or none of them are created
+   */
+  @Transactional
+  public List<InstanceConfig> createInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    if (CollectionUtils.isEmpty(instanceConfigs)) {
+      return Collections.emptyList();
+    }
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfig.setId(0); //protection
+    }
+
+    return Lists.newArrayList(instanceConfigRepository.saveAll(instanceConfigs));
+  }
+
+  /**
+   * Update the instance configs in one transaction, the existing ones are loaded with one query and the updates are
+   * flushed together
+   */
+  @Transactional
+  public List<InstanceConfig> updateInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    if (CollectionUtils.isEmpty(instanceConfigs)) {
+      return Collections.emptyList();
+    }
+    Set<Long> ids = instanceConfigs.stream().map(InstanceConfig::getId).collect(Collectors.toSet());
+    Map<Long, InstanceConfig> existedInstanceConfigs = Lists.newArrayList(instanceConfigRepository.findAllById(ids))
+        .stream().collect(Collectors.toMap(InstanceConfig::getId, Function.identity()));
+
+    List<InstanceConfig> updated = Lists.newArrayListWithCapacity(instanceConfigs.size());
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      InstanceConfig existedInstanceConfig = existedInstanceConfigs.get(instanceConfig.getId());
+      Preconditions.checkArgument(existedInstanceConfig != null, String.format(
+          "Instance config %d doesn't exist", instanceConfig.getId()));
+
+      existedInstanceConfig.setConfigClusterName(instanceConfig.getConfigClusterName());
+      existedInstanceConfig.setReleaseKey(instanceConfig.getReleaseKey());
+      existedInstanceConfig.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+      existedInstanceConfig.setDataChangeLastModifiedTime(instanceConfig
+          .getDataChangeLastModifiedTime());
+      updated.add(existedInstanceConfig);
+    }
+
+    return Lists.newArrayList(instanceConfigRepository.saveAll(updated));
+  }
+
+  /**
+   * Move the last modified time of the instance configs forward to the last seen time, which keeps them active
+   * without touching the other columns
+   */
+  @Transactional
+  public int updateInstanceConfigsLastSeenTime(Collection<Long> instanceConfigIds, Date lastSeenTime) {
+    if (CollectionUtils.isEmpty(instanceConfigIds)) {
+      return 0;
+    }
+    return instanceConfigRepository.updateLastSeenTime(instanceConfigIds, lastSeenTime);
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName, String configNamespaceName){
     return instanceConfigRepository.batchDelete(configAppId, configClusterName, configNamespaceName);
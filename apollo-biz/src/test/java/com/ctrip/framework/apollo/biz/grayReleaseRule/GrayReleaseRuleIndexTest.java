@@ -0,0 +1,75 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GrayReleaseRuleIndexTest {
+  private static final String SOME_CLIENT_APP_ID = "someClientAppId";
+
+  @Test
+  public void testFindReleaseId() throws Exception {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRule(1, 100, NamespaceBranchStatus.ACTIVE, "1.1.1.1", "2.2.2.2")));
+
+    assertEquals(Long.valueOf(100), index.findReleaseId(SOME_CLIENT_APP_ID, "1.1.1.1"));
+    assertEquals(Long.valueOf(100), index.findReleaseId(SOME_CLIENT_APP_ID, "2.2.2.2"));
+    assertNull(index.findReleaseId(SOME_CLIENT_APP_ID, "3.3.3.3"));
+    assertNull(index.findReleaseId("anotherClientAppId", "1.1.1.1"));
+  }
+
+  @Test
+  public void testFindReleaseIdWithCidr() throws Exception {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRule(1, 100, NamespaceBranchStatus.ACTIVE, "10.0.0.0/8", "fd00::/8"),
+        assembleRule(2, 200, NamespaceBranchStatus.ACTIVE, "10.1.0.0/16", "10.1.1.1")));
+
+    assertEquals(Long.valueOf(100), index.findReleaseId(SOME_CLIENT_APP_ID, "10.2.3.4"));
+    //the longest prefix wins
+    assertEquals(Long.valueOf(200), index.findReleaseId(SOME_CLIENT_APP_ID, "10.1.3.4"));
+    assertEquals(Long.valueOf(200), index.findReleaseId(SOME_CLIENT_APP_ID, "10.1.1.1"));
+    assertEquals(Long.valueOf(100), index.findReleaseId(SOME_CLIENT_APP_ID, "fd00::1"));
+    assertNull(index.findReleaseId(SOME_CLIENT_APP_ID, "11.1.1.1"));
+    assertNull(index.findReleaseId(SOME_CLIENT_APP_ID, "not-an-ip"));
+  }
+
+  @Test
+  public void testFindReleaseIdWithAllIp() throws Exception {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRule(1, 100, NamespaceBranchStatus.ACTIVE, GrayReleaseRuleItemDTO.ALL_IP),
+        assembleRule(2, 200, NamespaceBranchStatus.ACTIVE, "1.1.1.1")));
+
+    assertEquals(Long.valueOf(200), index.findReleaseId(SOME_CLIENT_APP_ID, "1.1.1.1"));
+    assertEquals(Long.valueOf(100), index.findReleaseId(SOME_CLIENT_APP_ID, "2.2.2.2"));
+  }
+
+  @Test
+  public void testInactiveRulesIgnored() throws Exception {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRule(1, 100, NamespaceBranchStatus.DELETED, "1.1.1.1")));
+
+    assertTrue(index.isEmpty());
+    assertNull(index.findReleaseId(SOME_CLIENT_APP_ID, "1.1.1.1"));
+  }
+
+  @Test
+  public void testInvalidCidrIgnored() throws Exception {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRule(1, 100, NamespaceBranchStatus.ACTIVE, "10.0.0.0/33", "abc/8", "10.0.0.0/x")));
+
+    assertNull(index.findReleaseId(SOME_CLIENT_APP_ID, "10.0.0.1"));
+  }
+
+  private GrayReleaseRuleCache assembleRule(long ruleId, long releaseId, int branchStatus, String... clientIps) {
+    return new GrayReleaseRuleCache(ruleId, "someBranch", "someNamespace", releaseId, branchStatus, 0,
+        Sets.newHashSet(new GrayReleaseRuleItemDTO(SOME_CLIENT_APP_ID, Sets.newHashSet(clientIps))));
+  }
+}
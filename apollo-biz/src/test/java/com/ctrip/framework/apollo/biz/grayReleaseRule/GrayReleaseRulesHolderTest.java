@@ -21,6 +21,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -29,7 +30,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -133,6 +138,68 @@ public class GrayReleaseRulesHolderTest {
         anotherNamespaceName));
   }
 
+  @Test
+  public void testScanGrayReleaseRulesWithCidr() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    Long someReleaseId = 1L;
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            ("10.1.0.0/16"))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "10.1.2.3", someAppId, someClusterName, someNamespaceName));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "10.2.2.3", someAppId, someClusterName, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "10.1.2.3",
+        someNamespaceName));
+  }
+
+  @Test
+  public void testScanChangedGrayReleaseRulesOnly() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+    String anotherClientIp = "2.2.2.2";
+    Long someReleaseId = 1L;
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (anotherClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule));
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someRule.getId())).thenReturn(Lists
+        .newArrayList(anotherRule));
+
+    grayReleaseRulesHolder.afterPropertiesSet();
+    ReflectionTestUtils.invokeMethod(grayReleaseRulesHolder, "periodicScanRules");
+
+    verify(grayReleaseRuleRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+    verify(grayReleaseRuleRepository, times(1)).findByIdLessThanEqualAndDataChangeLastModifiedTimeAfter(
+        eq(someRule.getId()), any(Date.class));
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someAppId, someClusterName, someNamespaceName));
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, anotherClientIp, someAppId, someClusterName, someNamespaceName));
+  }
+
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
       namespaceName, List<GrayReleaseRuleItemDTO> ruleItems, long releaseId, int branchStatus) {
     GrayReleaseRule rule = new GrayReleaseRule();
@@ -18,10 +18,12 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
   private DatabaseMessageSender messageSender;
   @Mock
   private ReleaseMessageRepository releaseMessageRepository;
+  @Mock
+  private ReleaseMessageBroadcaster releaseMessageBroadcaster;
 
   @Before
   public void setUp() throws Exception {
-    messageSender = new DatabaseMessageSender(releaseMessageRepository);
+    messageSender = new DatabaseMessageSender(releaseMessageRepository, releaseMessageBroadcaster);
   }
 
   @Test
@@ -38,6 +40,19 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
 
     verify(releaseMessageRepository, times(1)).save(captor.capture());
     assertEquals(someMessage, captor.getValue().getMessage());
+    verify(releaseMessageBroadcaster, times(1)).broadcast(someReleaseMessage);
+  }
+
+  @Test
+  public void testSendMessageWithoutBroadcaster() throws Exception {
+    String someMessage = "some-message";
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(1L);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+
+    new DatabaseMessageSender(releaseMessageRepository, null).sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(releaseMessageRepository, times(1)).save(any(ReleaseMessage.class));
   }
 
   @Test
@@ -48,6 +63,7 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
     messageSender.sendMessage(someMessage, someUnsupportedTopic);
 
     verify(releaseMessageRepository, never()).save(any(ReleaseMessage.class));
+    verify(releaseMessageBroadcaster, never()).broadcast(any(ReleaseMessage.class));
   }
 
   @Test(expected = RuntimeException.class)
@@ -14,9 +14,15 @@ import org.mockito.Mock;
 import org.springframework.core.env.Environment;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -79,6 +85,94 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testPushedMessageIdTriggersScan() throws Exception {
+    ReleaseMessageRepository pushedRepository = mock(ReleaseMessageRepository.class);
+    ReleaseMessageScanner pushedScanner = createPushedScanner(pushedRepository);
+    List<ReleaseMessage> received = Lists.newCopyOnWriteArrayList();
+    pushedScanner.addMessageListener((message, channel) -> received.add(message));
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(2, "anotherMessage");
+
+    when(pushedRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+
+    new LoopbackReleaseMessageBroadcaster(pushedScanner).broadcast(anotherReleaseMessage);
+
+    waitForCondition(() -> received.size() >= 2);
+    //already scanned, no more database access
+    pushedScanner.onMessagePushed(someReleaseMessage.getId());
+    TimeUnit.MILLISECONDS.sleep(databaseScanInterval);
+
+    assertEquals(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage), received);
+    verify(pushedRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+  }
+
+  @Test
+  public void testPushedMessageContentIsNotTrusted() throws Exception {
+    ReleaseMessageRepository pushedRepository = mock(ReleaseMessageRepository.class);
+    ReleaseMessageScanner pushedScanner = createPushedScanner(pushedRepository);
+    List<ReleaseMessage> received = Lists.newCopyOnWriteArrayList();
+    pushedScanner.addMessageListener((message, channel) -> received.add(message));
+
+    long someId = 1;
+    ReleaseMessage forgedReleaseMessage = assembleReleaseMessage(someId, "forgedMessage");
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+
+    new LoopbackReleaseMessageBroadcaster(pushedScanner).broadcast(forgedReleaseMessage);
+    TimeUnit.MILLISECONDS.sleep(databaseScanInterval);
+
+    assertTrue(received.isEmpty());
+
+    when(pushedRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    pushedScanner.onMessagePushed(someId);
+    waitForCondition(() -> received.size() >= 1);
+
+    assertEquals(Lists.newArrayList(someReleaseMessage), received);
+  }
+
+  @Test
+  public void testMessageCommittedLaterShouldBeScannedAgain() throws Exception {
+    List<ReleaseMessage> received = Lists.newCopyOnWriteArrayList();
+    releaseMessageScanner.addMessageListener((message, channel) -> received.add(message));
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, "someMessage");
+    ReleaseMessage lateReleaseMessage = assembleReleaseMessage(2, "lateMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(3, "anotherMessage");
+
+    when(releaseMessageRepository.findByIdInOrderByIdAsc(Lists.newArrayList(2L))).thenReturn(
+        Lists.newArrayList(lateReleaseMessage));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+
+    waitForCondition(() -> received.size() >= 3);
+
+    assertEquals(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage, lateReleaseMessage), received);
+    assertEquals(0, releaseMessageScanner.getMissingMessageCount());
+    assertEquals(1, releaseMessageScanner.getLateMessages());
+  }
+
+  private ReleaseMessageScanner createPushedScanner(ReleaseMessageRepository repository) throws Exception {
+    BizConfig pushedBizConfig = mock(BizConfig.class);
+    when(pushedBizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    //only scan when pushed during the test
+    when(pushedBizConfig.releaseMessagePushFallbackScanIntervalInMilli()).thenReturn(Integer.MAX_VALUE);
+    ReleaseMessageScanner pushedScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(pushedScanner, "releaseMessageRepository", repository);
+    ReflectionTestUtils.setField(pushedScanner, "bizConfig", pushedBizConfig);
+    pushedScanner.afterPropertiesSet();
+    return pushedScanner;
+  }
+
+  private void waitForCondition(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 50 && !condition.getAsBoolean(); i++) {
+      TimeUnit.MILLISECONDS.sleep(100);
+    }
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
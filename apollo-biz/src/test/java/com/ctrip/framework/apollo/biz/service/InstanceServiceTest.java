@@ -15,9 +15,11 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.test.annotation.Rollback;
 
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
@@ -110,6 +112,71 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(anotherReleaseKey, updated.getReleaseKey());
   }
 
+  @Test
+  @Rollback
+  public void testBatchCreateAndUpdateInstanceConfigs() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someDataCenter = "someDataCenter";
+    String someIp = "someIp";
+    String anotherIp = "anotherIp";
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    Instance someInstance = instanceService.createInstance(assembleInstance(someAppId,
+        someClusterName, someDataCenter, someIp));
+    Instance anotherInstance = instanceService.createInstance(assembleInstance(someAppId,
+        someClusterName, someDataCenter, anotherIp));
+
+    List<Instance> instances = instanceService.findInstances(someAppId, someClusterName, someDataCenter,
+        Sets.newHashSet(someIp, anotherIp, "yetAnotherIp"));
+
+    assertEquals(Sets.newHashSet(someInstance.getId(), anotherInstance.getId()),
+        instances.stream().map(Instance::getId).collect(Collectors.toSet()));
+
+    instanceService.createInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstance.getId(), someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey),
+        assembleInstanceConfig(anotherInstance.getId(), someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey)));
+
+    List<InstanceConfig> instanceConfigs = instanceService.findInstanceConfigsByInstanceIds(
+        Sets.newHashSet(someInstance.getId(), anotherInstance.getId()));
+
+    assertEquals(2, instanceConfigs.size());
+
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      instanceConfig.setReleaseKey(anotherReleaseKey);
+    }
+    instanceService.updateInstanceConfigs(instanceConfigs);
+
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(someInstance.getId(), someConfigAppId,
+        someConfigNamespaceName).getReleaseKey());
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(anotherInstance.getId(), someConfigAppId,
+        someConfigNamespaceName).getReleaseKey());
+  }
+
+  @Test
+  @Rollback
+  public void testUpdateInstanceConfigsLastSeenTime() throws Exception {
+    Instance someInstance = instanceService.createInstance(assembleInstance("someAppId",
+        "someClusterName", "someDataCenter", "someIp"));
+    InstanceConfig someInstanceConfig = instanceService.createInstanceConfig(assembleInstanceConfig(
+        someInstance.getId(), "someConfigAppId", "someConfigClusterName", "someConfigNamespaceName",
+        "someReleaseKey"));
+    long now = System.currentTimeMillis();
+
+    assertEquals(1, instanceService.updateInstanceConfigsLastSeenTime(
+        Sets.newHashSet(someInstanceConfig.getId()), new Date(now + TimeUnit.HOURS.toMillis(1))));
+    //never moves the last modified time backward
+    assertEquals(0, instanceService.updateInstanceConfigsLastSeenTime(
+        Sets.newHashSet(someInstanceConfig.getId()), new Date(now - TimeUnit.HOURS.toMillis(1))));
+    assertEquals(0, instanceService.updateInstanceConfigsLastSeenTime(Collections.emptySet(), new Date(now)));
+  }
+
   @Test
   @Rollback
   public void testFindActiveInstanceConfigs() throws Exception {
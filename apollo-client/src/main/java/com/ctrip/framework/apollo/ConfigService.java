@@ -4,9 +4,12 @@ import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.internals.ConfigManager;
+import com.ctrip.framework.apollo.internals.ConfigPreloader;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigRegistry;
 
+import java.util.Collection;
+
 /**
  * Entry point for client config use
  *
@@ -65,6 +68,23 @@ public class ConfigService {
     return s_instance.getManager().getConfigFile(namespace, configFileFormat);
   }
 
+  /**
+   * Load the configs of the namespaces in one request ahead of getting them, which is cheaper than loading them one by
+   * one when there are many namespaces. The configs are got one by one if the config manager could not preload them.
+   *
+   * @param namespaces the namespaces of the configs
+   */
+  public static void preloadConfigs(Collection<String> namespaces) {
+    ConfigManager manager = s_instance.getManager();
+    if (manager instanceof ConfigPreloader) {
+      ((ConfigPreloader) manager).preloadConfigs(namespaces);
+      return;
+    }
+    for (String namespace : namespaces) {
+      manager.getConfig(namespace);
+    }
+  }
+
   static void setConfig(Config config) {
     setConfig(ConfigConsts.NAMESPACE_APPLICATION, config);
   }
@@ -3,7 +3,6 @@ package com.ctrip.framework.apollo.internals;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.build.ApolloInjector;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.model.ConfigChange;
@@ -29,8 +28,6 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -39,11 +36,11 @@ import java.util.concurrent.atomic.AtomicLong;
 public abstract class AbstractConfig implements Config {
   private static final Logger logger = LoggerFactory.getLogger(AbstractConfig.class);
 
-  private static final ExecutorService m_executorService;
-
   private final List<ConfigChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
   private final Map<ConfigChangeListener, Set<String>> m_interestedKeys = Maps.newConcurrentMap();
   private final Map<ConfigChangeListener, Set<String>> m_interestedKeyPrefixes = Maps.newConcurrentMap();
+  //rebuilt when the listeners change
+  private volatile ConfigChangeListenerIndex m_listenerIndex = ConfigChangeListenerIndex.EMPTY;
   private final ConfigUtil m_configUtil;
   private volatile Cache<String, Integer> m_integerCache;
   private volatile Cache<String, Long> m_longCache;
@@ -57,17 +54,16 @@ public abstract class AbstractConfig implements Config {
   private final Map<String, Cache<String, String[]>> m_arrayCache;
   private final List<Cache> allCaches;
   private final AtomicLong m_configVersion; //indicate config version
-
-  static {
-    m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory
-        .create("Config", true));
-  }
+  private final boolean m_typedPropertySnapshotEnabled;
+  //null until a typed property is parsed in the current config version
+  private volatile TypedPropertySnapshot m_typedPropertySnapshot;
 
   public AbstractConfig() {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_configVersion = new AtomicLong();
     m_arrayCache = Maps.newConcurrentMap();
     allCaches = Lists.newArrayList();
+    m_typedPropertySnapshotEnabled = m_configUtil.isTypedPropertySnapshotEnabled();
   }
 
   @Override
@@ -81,7 +77,8 @@ public abstract class AbstractConfig implements Config {
   }
 
   @Override
-  public void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys, Set<String> interestedKeyPrefixes) {
+  public synchronized void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys,
+      Set<String> interestedKeyPrefixes) {
     if (!m_listeners.contains(listener)) {
       m_listeners.add(listener);
       if (interestedKeys != null && !interestedKeys.isEmpty()) {
@@ -90,19 +87,32 @@ public abstract class AbstractConfig implements Config {
       if (interestedKeyPrefixes != null && !interestedKeyPrefixes.isEmpty()) {
         m_interestedKeyPrefixes.put(listener, Sets.newHashSet(interestedKeyPrefixes));
       }
+      rebuildListenerIndex();
     }
   }
 
   @Override
-  public boolean removeChangeListener(ConfigChangeListener listener) {
+  public synchronized boolean removeChangeListener(ConfigChangeListener listener) {
     m_interestedKeys.remove(listener);
     m_interestedKeyPrefixes.remove(listener);
-    return m_listeners.remove(listener);
+    boolean removed = m_listeners.remove(listener);
+    if (removed) {
+      rebuildListenerIndex();
+    }
+    return removed;
+  }
+
+  private void rebuildListenerIndex() {
+    m_listenerIndex = ConfigChangeListenerIndex.build(m_listeners, m_interestedKeys, m_interestedKeyPrefixes);
   }
 
   @Override
   public Integer getIntProperty(String key, Integer defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.INT, null, Functions.TO_INT_FUNCTION, defaultValue);
+      }
+
       if (m_integerCache == null) {
         synchronized (this) {
           if (m_integerCache == null) {
@@ -123,6 +133,10 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Long getLongProperty(String key, Long defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.LONG, null, Functions.TO_LONG_FUNCTION, defaultValue);
+      }
+
       if (m_longCache == null) {
         synchronized (this) {
           if (m_longCache == null) {
@@ -143,6 +157,10 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Short getShortProperty(String key, Short defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.SHORT, null, Functions.TO_SHORT_FUNCTION, defaultValue);
+      }
+
       if (m_shortCache == null) {
         synchronized (this) {
           if (m_shortCache == null) {
@@ -163,6 +181,10 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Float getFloatProperty(String key, Float defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.FLOAT, null, Functions.TO_FLOAT_FUNCTION, defaultValue);
+      }
+
       if (m_floatCache == null) {
         synchronized (this) {
           if (m_floatCache == null) {
@@ -183,6 +205,11 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Double getDoubleProperty(String key, Double defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.DOUBLE, null,
+            Functions.TO_DOUBLE_FUNCTION, defaultValue);
+      }
+
       if (m_doubleCache == null) {
         synchronized (this) {
           if (m_doubleCache == null) {
@@ -203,6 +230,10 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Byte getByteProperty(String key, Byte defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.BYTE, null, Functions.TO_BYTE_FUNCTION, defaultValue);
+      }
+
       if (m_byteCache == null) {
         synchronized (this) {
           if (m_byteCache == null) {
@@ -223,6 +254,11 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Boolean getBooleanProperty(String key, Boolean defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.BOOLEAN, null,
+            Functions.TO_BOOLEAN_FUNCTION, defaultValue);
+      }
+
       if (m_booleanCache == null) {
         synchronized (this) {
           if (m_booleanCache == null) {
@@ -243,6 +279,15 @@ public abstract class AbstractConfig implements Config {
   @Override
   public String[] getArrayProperty(String key, final String delimiter, String[] defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.ARRAY, delimiter, new Function<String, String[]>() {
+          @Override
+          public String[] apply(String input) {
+            return input.split(delimiter);
+          }
+        }, defaultValue);
+      }
+
       if (!m_arrayCache.containsKey(delimiter)) {
         synchronized (this) {
           if (!m_arrayCache.containsKey(delimiter)) {
@@ -291,6 +336,10 @@ public abstract class AbstractConfig implements Config {
   @Override
   public Date getDateProperty(String key, Date defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.DATE, null, Functions.TO_DATE_FUNCTION, defaultValue);
+      }
+
       if (m_dateCache == null) {
         synchronized (this) {
           if (m_dateCache == null) {
@@ -346,6 +395,11 @@ public abstract class AbstractConfig implements Config {
   @Override
   public long getDurationProperty(String key, long defaultValue) {
     try {
+      if (m_typedPropertySnapshotEnabled) {
+        return getValueFromSnapshot(key, TypedPropertySnapshot.DURATION, null,
+            Functions.TO_DURATION_FUNCTION, defaultValue);
+      }
+
       if (m_durationCache == null) {
         synchronized (this) {
           if (m_durationCache == null) {
@@ -411,6 +465,39 @@ public abstract class AbstractConfig implements Config {
     return defaultValue;
   }
 
+  @SuppressWarnings("unchecked")
+  private <T> T getValueFromSnapshot(String key, int type, String qualifier, Function<String, T> parser,
+      T defaultValue) {
+    TypedPropertySnapshot snapshot = m_typedPropertySnapshot;
+    if (snapshot != null) {
+      Object result = snapshot.get(key, type, qualifier);
+      if (result != null) {
+        return (T) result;
+      }
+    }
+
+    long currentConfigVersion = m_configVersion.get();
+    String value = getProperty(key, null);
+
+    if (value != null) {
+      T result = parser.apply(value);
+
+      if (result != null) {
+        synchronized (this) {
+          if (m_configVersion.get() == currentConfigVersion) {
+            if (m_typedPropertySnapshot == null) {
+              m_typedPropertySnapshot = new TypedPropertySnapshot(m_configUtil.getMaxConfigCacheSize());
+            }
+            m_typedPropertySnapshot.put(key, type, qualifier, result);
+          }
+        }
+        return result;
+      }
+    }
+
+    return defaultValue;
+  }
+
   private <T> Cache<String, T> newCache() {
     Cache<String, T> cache = CacheBuilder.newBuilder()
         .maximumSize(m_configUtil.getMaxConfigCacheSize())
@@ -430,66 +517,30 @@ public abstract class AbstractConfig implements Config {
           c.invalidateAll();
         }
       }
+      m_typedPropertySnapshot = null;
       m_configVersion.incrementAndGet();
     }
   }
 
   protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
-    for (final ConfigChangeListener listener : m_listeners) {
-      // check whether the listener is interested in this change event
-      if (!isConfigChangeListenerInterested(listener, changeEvent)) {
-        continue;
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeDispatch", changeEvent.getNamespace());
+    try {
+      // only the listeners interested in this change event
+      List<ConfigChangeListener> listeners = m_listenerIndex.findInterestedListeners(changeEvent.changedKeys());
+      for (ConfigChangeListener listener : listeners) {
+        ListenerDispatcherHolder.INSTANCE.dispatch(listener, new ConfigChangeTask(listener, changeEvent));
       }
-      m_executorService.submit(new Runnable() {
-        @Override
-        public void run() {
-          String listenerName = listener.getClass().getName();
-          Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
-          try {
-            listener.onChange(changeEvent);
-            transaction.setStatus(Transaction.SUCCESS);
-          } catch (Throwable ex) {
-            transaction.setStatus(ex);
-            Tracer.logError(ex);
-            logger.error("Failed to invoke config change listener {}", listenerName, ex);
-          } finally {
-            transaction.complete();
-          }
-        }
-      });
+      transaction.addData("ChangedKeys", changeEvent.changedKeys().size());
+      transaction.addData("Listeners", listeners.size());
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
     }
   }
 
-  private boolean isConfigChangeListenerInterested(ConfigChangeListener configChangeListener, ConfigChangeEvent configChangeEvent) {
-    Set<String> interestedKeys = m_interestedKeys.get(configChangeListener);
-    Set<String> interestedKeyPrefixes = m_interestedKeyPrefixes.get(configChangeListener);
-
-    if ((interestedKeys == null || interestedKeys.isEmpty())
-        && (interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty())) {
-      return true; // no interested keys means interested in all keys
-    }
-
-    if (interestedKeys != null) {
-      for (String interestedKey : interestedKeys) {
-        if (configChangeEvent.isChanged(interestedKey)) {
-          return true;
-        }
-      }
-    }
-
-    if (interestedKeyPrefixes != null) {
-      for (String prefix : interestedKeyPrefixes) {
-        for (final String changedKey : configChangeEvent.changedKeys()) {
-          if (changedKey.startsWith(prefix)) {
-            return true;
-          }
-        }
-      }
-    }
-
-    return false;
-  }
-
   List<ConfigChange> calcPropertyChanges(String namespace, Properties previous,
                                          Properties current) {
     if (previous == null) {
@@ -531,4 +582,78 @@ public abstract class AbstractConfig implements Config {
 
     return changes;
   }
+
+  /**
+   * Created on the first change event instead of when the class is loaded
+   */
+  private static class ListenerDispatcherHolder {
+    private static final ListenerDispatcher INSTANCE =
+        new ListenerDispatcher("Config", ApolloInjector.getInstance(ConfigUtil.class));
+  }
+
+  static class ConfigChangeTask extends ListenerDispatcher.Task {
+    private final ConfigChangeListener listener;
+    private final ConfigChangeEvent changeEvent;
+
+    ConfigChangeTask(ConfigChangeListener listener, ConfigChangeEvent changeEvent) {
+      this.listener = listener;
+      this.changeEvent = changeEvent;
+    }
+
+    ConfigChangeEvent getChangeEvent() {
+      return changeEvent;
+    }
+
+    @Override
+    void run() {
+      String listenerName = listener.getClass().getName();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
+      transaction.addData("QueueTimeInMillis", getQueueTimeInMillis());
+      transaction.addData("Backlog", ListenerDispatcherHolder.INSTANCE.getBacklog());
+      try {
+        listener.onChange(changeEvent);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to invoke config change listener {}", listenerName, ex);
+      } finally {
+        transaction.complete();
+      }
+    }
+
+    /**
+     * The old value of a key comes from this event and the new value from the next one, the key is dropped if the
+     * values turn out to be the same
+     */
+    @Override
+    ListenerDispatcher.Task coalesce(ListenerDispatcher.Task next) {
+      if (!(next instanceof ConfigChangeTask)) {
+        return null;
+      }
+      ConfigChangeEvent nextEvent = ((ConfigChangeTask) next).changeEvent;
+      if (!Objects.equal(changeEvent.getNamespace(), nextEvent.getNamespace())) {
+        return null;
+      }
+
+      Map<String, ConfigChange> changes = Maps.newHashMap();
+      for (String key : Sets.union(changeEvent.changedKeys(), nextEvent.changedKeys())) {
+        ConfigChange change = changeEvent.getChange(key);
+        ConfigChange nextChange = nextEvent.getChange(key);
+        String oldValue = change != null ? change.getOldValue() : nextChange.getOldValue();
+        String newValue = nextChange != null ? nextChange.getNewValue() : change.getNewValue();
+        if (Objects.equal(oldValue, newValue)) {
+          continue;
+        }
+        PropertyChangeType changeType = oldValue == null ? PropertyChangeType.ADDED
+            : newValue == null ? PropertyChangeType.DELETED : PropertyChangeType.MODIFIED;
+        //the changes are shared by the listeners, so they are not modified in place
+        changes.put(key, new ConfigChange(changeEvent.getNamespace(), key, oldValue, newValue, changeType));
+      }
+      if (changes.isEmpty()) {
+        return NO_CHANGE;
+      }
+      return new ConfigChangeTask(listener, new ConfigChangeEvent(changeEvent.getNamespace(), changes));
+    }
+  }
 }
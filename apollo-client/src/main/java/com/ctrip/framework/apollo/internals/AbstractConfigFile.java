@@ -4,8 +4,6 @@ import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -13,12 +11,14 @@ import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.ConfigFileChangeListener;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.model.ConfigFileChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.base.Objects;
 import com.google.common.collect.Lists;
 
 /**
@@ -26,7 +26,6 @@ import com.google.common.collect.Lists;
  */
 public abstract class AbstractConfigFile implements ConfigFile, RepositoryChangeListener {
   private static final Logger logger = LoggerFactory.getLogger(AbstractConfigFile.class);
-  private static ExecutorService m_executorService;
   protected final ConfigRepository m_configRepository;
   protected final String m_namespace;
   protected final AtomicReference<Properties> m_configProperties;
@@ -34,11 +33,6 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
 
-  static {
-    m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory
-        .create("ConfigFile", true));
-  }
-
   public AbstractConfigFile(String namespace, ConfigRepository configRepository) {
     m_configRepository = configRepository;
     m_namespace = namespace;
@@ -73,9 +67,6 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
     if (newProperties.equals(m_configProperties.get())) {
       return;
     }
-    Properties newConfigProperties = new Properties();
-    newConfigProperties.putAll(newProperties);
-
     String oldValue = getContent();
 
     update(newProperties);
@@ -115,23 +106,70 @@ public abstract class AbstractConfigFile implements ConfigFile, RepositoryChange
 
   private void fireConfigChange(final ConfigFileChangeEvent changeEvent) {
     for (final ConfigFileChangeListener listener : m_listeners) {
-      m_executorService.submit(new Runnable() {
-        @Override
-        public void run() {
-          String listenerName = listener.getClass().getName();
-          Transaction transaction = Tracer.newTransaction("Apollo.ConfigFileChangeListener", listenerName);
-          try {
-            listener.onChange(changeEvent);
-            transaction.setStatus(Transaction.SUCCESS);
-          } catch (Throwable ex) {
-            transaction.setStatus(ex);
-            Tracer.logError(ex);
-            logger.error("Failed to invoke config file change listener {}", listenerName, ex);
-          } finally {
-            transaction.complete();
-          }
-        }
-      });
+      ListenerDispatcherHolder.INSTANCE.dispatch(listener, new ConfigFileChangeTask(listener, changeEvent));
+    }
+  }
+
+  /**
+   * Created on the first change event instead of when the class is loaded
+   */
+  private static class ListenerDispatcherHolder {
+    private static final ListenerDispatcher INSTANCE =
+        new ListenerDispatcher("ConfigFile", ApolloInjector.getInstance(ConfigUtil.class));
+  }
+
+  static class ConfigFileChangeTask extends ListenerDispatcher.Task {
+    private final ConfigFileChangeListener listener;
+    private final ConfigFileChangeEvent changeEvent;
+
+    ConfigFileChangeTask(ConfigFileChangeListener listener, ConfigFileChangeEvent changeEvent) {
+      this.listener = listener;
+      this.changeEvent = changeEvent;
+    }
+
+    ConfigFileChangeEvent getChangeEvent() {
+      return changeEvent;
+    }
+
+    @Override
+    void run() {
+      String listenerName = listener.getClass().getName();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigFileChangeListener", listenerName);
+      transaction.addData("QueueTimeInMillis", getQueueTimeInMillis());
+      transaction.addData("Backlog", ListenerDispatcherHolder.INSTANCE.getBacklog());
+      try {
+        listener.onChange(changeEvent);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to invoke config file change listener {}", listenerName, ex);
+      } finally {
+        transaction.complete();
+      }
+    }
+
+    /**
+     * The old content comes from this event and the new content from the next one
+     */
+    @Override
+    ListenerDispatcher.Task coalesce(ListenerDispatcher.Task next) {
+      if (!(next instanceof ConfigFileChangeTask)) {
+        return null;
+      }
+      ConfigFileChangeEvent nextEvent = ((ConfigFileChangeTask) next).changeEvent;
+      if (!Objects.equal(changeEvent.getNamespace(), nextEvent.getNamespace())) {
+        return null;
+      }
+      String oldValue = changeEvent.getOldValue();
+      String newValue = nextEvent.getNewValue();
+      if (Objects.equal(oldValue, newValue)) {
+        return NO_CHANGE;
+      }
+      PropertyChangeType changeType = oldValue == null ? PropertyChangeType.ADDED
+          : newValue == null ? PropertyChangeType.DELETED : PropertyChangeType.MODIFIED;
+      return new ConfigFileChangeTask(listener,
+          new ConfigFileChangeEvent(changeEvent.getNamespace(), oldValue, newValue, changeType));
     }
   }
 }
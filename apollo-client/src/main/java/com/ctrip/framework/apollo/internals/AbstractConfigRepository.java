@@ -32,6 +32,14 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
 
   protected abstract void sync();
 
+  /**
+   * @return the configs for the repositories inside the chain, which could be handed over as they are instead of being
+   * copied like {@link #getConfig()}
+   */
+  ConfigSnapshot getConfigSnapshot() {
+    return ConfigSnapshot.of(getConfig());
+  }
+
   @Override
   public void addChangeListener(RepositoryChangeListener listener) {
     if (!m_listeners.contains(listener)) {
@@ -0,0 +1,28 @@
+package com.ctrip.framework.apollo.internals;
+
+/**
+ * The deadline of loading the remote configs for the configs created by the current thread during the parallel
+ * bootstrap. The configs not loaded by the deadline are served from the local cache files until the remote configs are
+ * loaded.
+ */
+public class ConfigBootstrapDeadline {
+  private static final ThreadLocal<Long> s_deadline = new ThreadLocal<>();
+
+  private ConfigBootstrapDeadline() {
+  }
+
+  /**
+   * @return the deadline in milliseconds, or null if the current thread is not bootstrapping configs
+   */
+  public static Long get() {
+    return s_deadline.get();
+  }
+
+  static void set(long deadlineInMillis) {
+    s_deadline.set(deadlineInMillis);
+  }
+
+  static void clear() {
+    s_deadline.remove();
+  }
+}
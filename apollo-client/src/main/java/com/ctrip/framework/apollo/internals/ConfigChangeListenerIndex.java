@@ -0,0 +1,133 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable index of the change listeners of one config by their interested keys and key prefixes.
+ *
+ * <p>The interested keys are kept in a hash map and the prefixes in a trie of their characters, so finding the
+ * listeners interested in a change event takes a hash lookup and a walk down the trie for each changed key, no matter
+ * how many listeners are registered. It is rebuilt when the listeners change.</p>
+ */
+final class ConfigChangeListenerIndex {
+  static final ConfigChangeListenerIndex EMPTY = build(Collections.<ConfigChangeListener>emptyList(),
+      Collections.<ConfigChangeListener, Set<String>>emptyMap(),
+      Collections.<ConfigChangeListener, Set<String>>emptyMap());
+
+  //in the order they are registered
+  private final List<ConfigChangeListener> m_listeners;
+  //the listeners with no interested keys or prefixes are interested in all keys
+  private final BitSet m_allKeysListeners;
+  private final Map<String, BitSet> m_keyListeners;
+  private final PrefixNode m_prefixRoot;
+
+  private ConfigChangeListenerIndex(List<ConfigChangeListener> listeners, BitSet allKeysListeners,
+      Map<String, BitSet> keyListeners, PrefixNode prefixRoot) {
+    m_listeners = listeners;
+    m_allKeysListeners = allKeysListeners;
+    m_keyListeners = keyListeners;
+    m_prefixRoot = prefixRoot;
+  }
+
+  static ConfigChangeListenerIndex build(List<ConfigChangeListener> listeners,
+      Map<ConfigChangeListener, Set<String>> interestedKeys,
+      Map<ConfigChangeListener, Set<String>> interestedKeyPrefixes) {
+    List<ConfigChangeListener> indexedListeners = ImmutableList.copyOf(listeners);
+    BitSet allKeysListeners = new BitSet();
+    Map<String, BitSet> keyListeners = Maps.newHashMap();
+    PrefixNode prefixRoot = new PrefixNode();
+
+    for (int i = 0; i < indexedListeners.size(); i++) {
+      ConfigChangeListener listener = indexedListeners.get(i);
+      Set<String> keys = interestedKeys.get(listener);
+      Set<String> prefixes = interestedKeyPrefixes.get(listener);
+
+      if ((keys == null || keys.isEmpty()) && (prefixes == null || prefixes.isEmpty())) {
+        allKeysListeners.set(i);
+        continue;
+      }
+      if (keys != null) {
+        for (String key : keys) {
+          BitSet listenersOfKey = keyListeners.get(key);
+          if (listenersOfKey == null) {
+            listenersOfKey = new BitSet();
+            keyListeners.put(key, listenersOfKey);
+          }
+          listenersOfKey.set(i);
+        }
+      }
+      if (prefixes != null) {
+        for (String prefix : prefixes) {
+          prefixRoot.add(prefix).listeners.set(i);
+        }
+      }
+    }
+
+    return new ConfigChangeListenerIndex(indexedListeners, allKeysListeners, keyListeners, prefixRoot);
+  }
+
+  /**
+   * @return the listeners interested in any of the changed keys, in the order they are registered
+   */
+  List<ConfigChangeListener> findInterestedListeners(Collection<String> changedKeys) {
+    BitSet matched = (BitSet) m_allKeysListeners.clone();
+    for (String changedKey : changedKeys) {
+      BitSet listenersOfKey = m_keyListeners.get(changedKey);
+      if (listenersOfKey != null) {
+        matched.or(listenersOfKey);
+      }
+      m_prefixRoot.collectListeners(changedKey, matched);
+    }
+
+    List<ConfigChangeListener> result = Lists.newArrayListWithCapacity(matched.cardinality());
+    for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+      result.add(m_listeners.get(i));
+    }
+    return result;
+  }
+
+  private static final class PrefixNode {
+    private final Map<Character, PrefixNode> children = Maps.newHashMap();
+    //the listeners interested in the prefix ending at this node
+    private final BitSet listeners = new BitSet();
+
+    PrefixNode add(String prefix) {
+      PrefixNode node = this;
+      for (int i = 0; i < prefix.length(); i++) {
+        Character c = prefix.charAt(i);
+        PrefixNode child = node.children.get(c);
+        if (child == null) {
+          child = new PrefixNode();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      return node;
+    }
+
+    /**
+     * Collect the listeners of all the prefixes of the key
+     */
+    void collectListeners(String key, BitSet matched) {
+      PrefixNode node = this;
+      matched.or(node.listeners);
+      for (int i = 0; i < key.length() && !node.children.isEmpty(); i++) {
+        node = node.children.get(key.charAt(i));
+        if (node == null) {
+          return;
+        }
+        matched.or(node.listeners);
+      }
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Collection;
+
+/**
+ * Implemented by the {@link ConfigManager}s which could load the configs of many namespaces cheaper than one by one.
+ */
+public interface ConfigPreloader {
+  /**
+   * Load the configs of the namespaces not created yet in one go, so that getting them later is cheaper.
+   * @param namespaces the namespaces
+   */
+  public void preloadConfigs(Collection<String> namespaces);
+}
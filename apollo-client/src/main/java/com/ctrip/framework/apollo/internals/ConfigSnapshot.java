@@ -0,0 +1,187 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * An immutable version of the configs of one namespace.
+ *
+ * <p>It is still a {@link Properties}, so it could be handed from the remote repository to the local file repository
+ * and the config instances as it is, instead of copying the whole namespace at each step. The content hash is computed
+ * once, so comparing two different versions usually takes no iteration at all.</p>
+ *
+ * <p>It stays inside the repository chain, {@link ConfigRepository#getConfig()} returns a mutable copy of it. The
+ * mutators throw {@link UnsupportedOperationException}, including the functional ones added in java 8, which are only
+ * referenced in their signatures, so it still runs on java 7.</p>
+ */
+final class ConfigSnapshot extends Properties {
+  private static final long serialVersionUID = 3917398245786374412L;
+  private static final ConfigSnapshot EMPTY = new ConfigSnapshot(Collections.emptyMap());
+
+  private final int m_contentHash;
+  private final boolean m_sealed;
+
+  private ConfigSnapshot(Map<?, ?> source) {
+    for (Map.Entry<?, ?> entry : source.entrySet()) {
+      super.put(entry.getKey(), entry.getValue());
+    }
+    m_contentHash = super.hashCode();
+    m_sealed = true;
+  }
+
+  /**
+   * @return the properties themselves if they are a snapshot already, otherwise a snapshot of their current content
+   */
+  static ConfigSnapshot of(Properties properties) {
+    if (properties instanceof ConfigSnapshot) {
+      return (ConfigSnapshot) properties;
+    }
+    return properties == null || properties.isEmpty() ? EMPTY : new ConfigSnapshot(properties);
+  }
+
+  static ConfigSnapshot of(Map<String, String> configurations) {
+    return configurations == null || configurations.isEmpty() ? EMPTY : new ConfigSnapshot(configurations);
+  }
+
+  /**
+   * @return a mutable copy for the callers outside the repository chain
+   */
+  static Properties copyOf(ConfigSnapshot snapshot) {
+    if (snapshot == null) {
+      return null;
+    }
+    Properties properties = new Properties();
+    properties.putAll(snapshot);
+    return properties;
+  }
+
+  @Override
+  public int hashCode() {
+    return m_contentHash;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (o instanceof ConfigSnapshot && ((ConfigSnapshot) o).m_contentHash != m_contentHash) {
+      return false;
+    }
+    return super.equals(o);
+  }
+
+  @Override
+  public synchronized Object put(Object key, Object value) {
+    checkNotSealed();
+    return super.put(key, value);
+  }
+
+  @Override
+  public synchronized void putAll(Map<?, ?> t) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized Object setProperty(String key, String value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized Object remove(Object key) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized boolean remove(Object key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized Object putIfAbsent(Object key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized Object replace(Object key, Object value) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized boolean replace(Object key, Object oldValue, Object newValue) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized Object computeIfAbsent(Object key, Function<? super Object, ?> mappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized Object computeIfPresent(Object key,
+      BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized Object compute(Object key, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized Object merge(Object key, Object value,
+      BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+    throw new UnsupportedOperationException();
+  }
+
+  public synchronized void replaceAll(BiFunction<? super Object, ? super Object, ?> function) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized void load(Reader reader) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized void load(InputStream inStream) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized void loadFromXML(InputStream in) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Set<Object> keySet() {
+    return Collections.unmodifiableSet(super.keySet());
+  }
+
+  @Override
+  public Set<Map.Entry<Object, Object>> entrySet() {
+    //the entries of an unmodifiable map are unmodifiable as well
+    return Collections.unmodifiableMap(new AbstractMap<Object, Object>() {
+      @Override
+      public Set<Map.Entry<Object, Object>> entrySet() {
+        return ConfigSnapshot.super.entrySet();
+      }
+    }).entrySet();
+  }
+
+  @Override
+  public Collection<Object> values() {
+    return Collections.unmodifiableCollection(super.values());
+  }
+
+  private void checkNotSealed() {
+    if (m_sealed) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
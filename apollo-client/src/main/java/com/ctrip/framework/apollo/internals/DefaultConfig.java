@@ -15,11 +15,13 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
 import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.RateLimiter;
@@ -36,6 +38,12 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   private final ConfigRepository m_configRepository;
   private final RateLimiter m_warnLogRateLimiter;
 
+  //null if the property lookup table is not enabled
+  private final SystemPropertyLookupTable m_systemPropertyLookupTable;
+  private final Map<String, String> m_resourcePropertyLookupTable;
+  //rebuilt when the configs change
+  private volatile Map<String, String> m_configPropertyLookupTable;
+
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.NONE;
 
   /**
@@ -50,6 +58,15 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     m_configRepository = configRepository;
     m_configProperties = new AtomicReference<>();
     m_warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
+    if (ApolloInjector.getInstance(ConfigUtil.class).isPropertyLookupTableEnabled()) {
+      m_systemPropertyLookupTable = SystemPropertyLookupTable.getInstance();
+      m_systemPropertyLookupTable.register(this);
+      m_resourcePropertyLookupTable = SystemPropertyLookupTable.copyStringProperties(m_resourceProperties);
+      m_configPropertyLookupTable = Collections.emptyMap();
+    } else {
+      m_systemPropertyLookupTable = null;
+      m_resourcePropertyLookupTable = null;
+    }
     initialize();
   }
 
@@ -69,6 +86,16 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public String getProperty(String key, String defaultValue) {
+    String value = m_systemPropertyLookupTable != null ? lookupPropertyInTables(key) : lookupProperty(key);
+
+    if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
+      logger.warn("Could not load config for namespace {} from Apollo, please check whether the configs are released in Apollo! Return default value now!", m_namespace);
+    }
+
+    return value == null ? defaultValue : value;
+  }
+
+  private String lookupProperty(String key) {
     // step 1: check system properties, i.e. -Dkey=value
     String value = System.getProperty(key);
 
@@ -91,11 +118,25 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
       value = (String) m_resourceProperties.get(key);
     }
 
-    if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
-      logger.warn("Could not load config for namespace {} from Apollo, please check whether the configs are released in Apollo! Return default value now!", m_namespace);
-    }
+    return value;
+  }
 
-    return value == null ? defaultValue : value;
+  /**
+   * The same lookup order as {@link #lookupProperty(String)} in plain hash tables, except that the env variables are
+   * matched case sensitively, and the changes of the system properties are picked up by the periodic refresh
+   */
+  private String lookupPropertyInTables(String key) {
+    String value = m_systemPropertyLookupTable.getSystemProperty(key);
+    if (value == null) {
+      value = m_configPropertyLookupTable.get(key);
+    }
+    if (value == null) {
+      value = m_systemPropertyLookupTable.getEnvVariable(key);
+    }
+    if (value == null) {
+      value = m_resourcePropertyLookupTable.get(key);
+    }
+    return value;
   }
 
   @Override
@@ -128,13 +169,13 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public synchronized void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_configProperties.get())) {
+    //zero copy if the repository hands over a snapshot already
+    ConfigSnapshot newConfigProperties = ConfigSnapshot.of(newProperties);
+    if (newConfigProperties.equals(m_configProperties.get())) {
       return;
     }
 
     ConfigSourceType sourceType = m_configRepository.getSourceType();
-    Properties newConfigProperties = new Properties();
-    newConfigProperties.putAll(newProperties);
 
     Map<String, ConfigChange> actualChanges = updateAndCalcConfigChanges(newConfigProperties, sourceType);
 
@@ -150,6 +191,9 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   private void updateConfig(Properties newConfigProperties, ConfigSourceType sourceType) {
     m_configProperties.set(newConfigProperties);
+    if (m_systemPropertyLookupTable != null) {
+      m_configPropertyLookupTable = SystemPropertyLookupTable.copyStringProperties(newConfigProperties);
+    }
     m_sourceType = sourceType;
   }
 
@@ -1,26 +1,50 @@
 package com.ctrip.framework.apollo.internals;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class DefaultConfigManager implements ConfigManager {
+public class DefaultConfigManager implements ConfigManager, ConfigPreloader {
+  private static final Logger logger = LoggerFactory.getLogger(DefaultConfigManager.class);
+  private static final int MAX_PARALLEL_BOOTSTRAP_THREADS = 8;
   private ConfigFactoryManager m_factoryManager;
+  private ConfigUtil m_configUtil;
 
   private Map<String, Config> m_configs = Maps.newConcurrentMap();
   private Map<String, ConfigFile> m_configFiles = Maps.newConcurrentMap();
+  //configs of different namespaces could be created in parallel
+  private ConcurrentMap<String, Object> m_configLocks = Maps.newConcurrentMap();
+  private ConcurrentMap<String, Object> m_configFileLocks = Maps.newConcurrentMap();
 
   public DefaultConfigManager() {
     m_factoryManager = ApolloInjector.getInstance(ConfigFactoryManager.class);
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
   }
 
   @Override
@@ -28,7 +52,7 @@ public class DefaultConfigManager implements ConfigManager {
     Config config = m_configs.get(namespace);
 
     if (config == null) {
-      synchronized (this) {
+      synchronized (findLock(m_configLocks, namespace)) {
         config = m_configs.get(namespace);
 
         if (config == null) {
@@ -49,7 +73,7 @@ public class DefaultConfigManager implements ConfigManager {
     ConfigFile configFile = m_configFiles.get(namespaceFileName);
 
     if (configFile == null) {
-      synchronized (this) {
+      synchronized (findLock(m_configFileLocks, namespaceFileName)) {
         configFile = m_configFiles.get(namespaceFileName);
 
         if (configFile == null) {
@@ -63,4 +87,76 @@ public class DefaultConfigManager implements ConfigManager {
 
     return configFile;
   }
+
+  @Override
+  public void preloadConfigs(Collection<String> namespaces) {
+    List<String> namespacesToLoad = Lists.newArrayList();
+    for (String namespace : namespaces) {
+      if (!m_configs.containsKey(namespace)) {
+        namespacesToLoad.add(namespace);
+      }
+    }
+    ApolloInjector.getInstance(RemoteConfigBatchLoader.class).preload(namespacesToLoad);
+
+    if (m_configUtil.isParallelBootstrapEnabled() && namespacesToLoad.size() > 1) {
+      createConfigsInParallel(namespacesToLoad);
+    }
+  }
+
+  /**
+   * Create the configs in parallel, the remote configs not loaded by the bootstrap deadline are left to be loaded in
+   * background, and the configs are served from the local cache files meanwhile. The configs not even created by the
+   * deadline are not waited for any longer, they are created lazily when got.
+   */
+  private void createConfigsInParallel(List<String> namespaces) {
+    final long deadline = System.currentTimeMillis() + m_configUtil.getParallelBootstrapTimeoutInMillis();
+    ExecutorService executorService = Executors.newFixedThreadPool(
+        Math.min(namespaces.size(), MAX_PARALLEL_BOOTSTRAP_THREADS),
+        ApolloThreadFactory.create("ParallelBootstrap", true));
+
+    try {
+      Map<String, Future<Config>> futures = Maps.newLinkedHashMap();
+      for (final String namespace : namespaces) {
+        futures.put(namespace, executorService.submit(new Callable<Config>() {
+          @Override
+          public Config call() throws Exception {
+            ConfigBootstrapDeadline.set(deadline);
+            try {
+              return getConfig(namespace);
+            } finally {
+              ConfigBootstrapDeadline.clear();
+            }
+          }
+        }));
+      }
+
+      for (Map.Entry<String, Future<Config>> entry : futures.entrySet()) {
+        try {
+          entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+          //stop waiting, the config is created in background and getting it waits for the creation then
+          logger.warn("Bootstrap config for namespace {} timed out after {} ms, leave it to be loaded lazily",
+              entry.getKey(), m_configUtil.getParallelBootstrapTimeoutInMillis());
+          Tracer.logEvent("Apollo.ParallelBootstrapTimeout", entry.getKey());
+        } catch (ExecutionException ex) {
+          //the config would be created again when it is got
+          logger.warn("Bootstrap config for namespace {} failed", entry.getKey(), ex.getCause());
+          Tracer.logError(ex.getCause());
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executorService.shutdown();
+    }
+  }
+
+  private Object findLock(ConcurrentMap<String, Object> locks, String key) {
+    Object lock = locks.get(key);
+    if (lock == null) {
+      locks.putIfAbsent(key, new Object());
+      lock = locks.get(key);
+    }
+    return lock;
+  }
 }
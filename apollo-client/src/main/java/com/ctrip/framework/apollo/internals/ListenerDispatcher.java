@@ -0,0 +1,179 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Dispatches the change events to the listeners.
+ *
+ * <p>The events of one listener are delivered one after another in the order they are fired, so at most one thread
+ * works for a listener at a time. The events waiting for a listener could be coalesced into one if enabled, see
+ * {@link ConfigUtil#isListenerEventCoalescingEnabled()}.</p>
+ */
+final class ListenerDispatcher {
+  private static final Logger logger = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+  private final ExecutorService m_executorService;
+  private final boolean m_coalescingEnabled;
+  //listener -> the events waiting for it, the listeners are compared by identity and not kept from gc
+  private final ConcurrentMap<Object, ListenerQueue> m_listenerQueues;
+  private final AtomicInteger m_backlog;
+
+  ListenerDispatcher(String threadNamePrefix, ConfigUtil configUtil) {
+    this(createExecutorService(threadNamePrefix, configUtil), configUtil.isListenerEventCoalescingEnabled());
+  }
+
+  ListenerDispatcher(ExecutorService executorService, boolean coalescingEnabled) {
+    m_executorService = executorService;
+    m_coalescingEnabled = coalescingEnabled;
+    m_listenerQueues = new MapMaker().weakKeys().makeMap();
+    m_backlog = new AtomicInteger();
+  }
+
+  void dispatch(Object listener, Task task) {
+    ListenerQueue queue = m_listenerQueues.get(listener);
+    if (queue == null) {
+      ListenerQueue newQueue = new ListenerQueue();
+      queue = m_listenerQueues.putIfAbsent(listener, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    queue.offer(task);
+  }
+
+  /**
+   * @return the number of the events waiting to be delivered
+   */
+  int getBacklog() {
+    return m_backlog.get();
+  }
+
+  private static ExecutorService createExecutorService(String threadNamePrefix, ConfigUtil configUtil) {
+    if (configUtil.isListenerDispatchVirtualThreadsEnabled()) {
+      try {
+        //only available since jdk 21
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } catch (Throwable ex) {
+        logger.warn("Virtual threads are not supported, dispatch the {} change events with platform threads instead",
+            threadNamePrefix);
+      }
+    }
+
+    int threads = configUtil.getListenerDispatchThreads();
+    if (threads <= 0) {
+      //the listeners might block on io, so a few more threads than the processors
+      threads = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    }
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), ApolloThreadFactory.create(threadNamePrefix, true));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * The delivery of a change event to a listener
+   */
+  abstract static class Task {
+    /**
+     * Returned by {@link #coalesce(Task)} if the changes of both tasks cancel each other out
+     */
+    static final Task NO_CHANGE = new Task() {
+      @Override
+      void run() {
+      }
+    };
+
+    private long m_enqueueTime;
+
+    abstract void run();
+
+    /**
+     * @param next the task fired after this one for the same listener
+     * @return the task delivering the changes of both tasks, {@link #NO_CHANGE} if there are no changes left, or null
+     * if they could not be coalesced
+     */
+    Task coalesce(Task next) {
+      return null;
+    }
+
+    long getQueueTimeInMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - m_enqueueTime);
+    }
+  }
+
+  private final class ListenerQueue implements Runnable {
+    private final Deque<Task> m_tasks = new ArrayDeque<>();
+    private boolean m_scheduled;
+
+    synchronized void offer(Task task) {
+      Task last = m_coalescingEnabled ? m_tasks.peekLast() : null;
+      Task coalesced = last != null ? last.coalesce(task) : null;
+      if (coalesced == Task.NO_CHANGE) {
+        m_tasks.pollLast();
+        m_backlog.decrementAndGet();
+      } else if (coalesced != null) {
+        m_tasks.pollLast();
+        //the waiting time counts from the earlier event
+        coalesced.m_enqueueTime = last.m_enqueueTime;
+        m_tasks.offerLast(coalesced);
+      } else {
+        task.m_enqueueTime = System.nanoTime();
+        m_tasks.offerLast(task);
+        m_backlog.incrementAndGet();
+      }
+      if (!m_scheduled && !m_tasks.isEmpty()) {
+        m_scheduled = true;
+        m_executorService.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      Task task;
+      synchronized (this) {
+        task = m_tasks.pollFirst();
+        if (task == null) {
+          m_scheduled = false;
+          return;
+        }
+        m_backlog.decrementAndGet();
+      }
+
+      try {
+        task.run();
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to dispatch the change event", ex);
+      } finally {
+        reschedule();
+      }
+    }
+
+    /**
+     * Deliver the next event in a new round, so that the other listeners get their turn on a bounded pool
+     */
+    private synchronized void reschedule() {
+      if (m_tasks.isEmpty()) {
+        m_scheduled = false;
+        return;
+      }
+      m_executorService.execute(this);
+    }
+  }
+}
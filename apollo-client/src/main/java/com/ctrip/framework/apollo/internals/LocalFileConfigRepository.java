@@ -36,7 +36,7 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   private final String m_namespace;
   private File m_baseDir;
   private final ConfigUtil m_configUtil;
-  private volatile Properties m_fileProperties;
+  private volatile ConfigSnapshot m_fileProperties;
   private volatile ConfigRepository m_upstream;
 
   private volatile ConfigSourceType m_sourceType = ConfigSourceType.LOCAL;
@@ -88,9 +88,15 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     if (m_fileProperties == null) {
       sync();
     }
-    Properties result = new Properties();
-    result.putAll(m_fileProperties);
-    return result;
+    return ConfigSnapshot.copyOf(m_fileProperties);
+  }
+
+  @Override
+  ConfigSnapshot getConfigSnapshot() {
+    if (m_fileProperties == null) {
+      sync();
+    }
+    return ConfigSnapshot.of(m_fileProperties);
   }
 
   @Override
@@ -114,13 +120,12 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
 
   @Override
   public void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_fileProperties)) {
+    ConfigSnapshot newFileProperties = ConfigSnapshot.of(newProperties);
+    if (newFileProperties.equals(m_fileProperties)) {
       return;
     }
-    Properties newFileProperties = new Properties();
-    newFileProperties.putAll(newProperties);
     updateFileProperties(newFileProperties, m_upstream.getSourceType());
-    this.fireRepositoryChange(namespace, newProperties);
+    this.fireRepositoryChange(namespace, newFileProperties);
   }
 
   @Override
@@ -136,7 +141,7 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     Throwable exception = null;
     try {
       transaction.addData("Basedir", m_baseDir.getAbsolutePath());
-      m_fileProperties = this.loadFromLocalCacheFile(m_baseDir, m_namespace);
+      m_fileProperties = ConfigSnapshot.of(this.loadFromLocalCacheFile(m_baseDir, m_namespace));
       m_sourceType = ConfigSourceType.LOCAL;
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
@@ -160,7 +165,7 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
       return false;
     }
     try {
-      updateFileProperties(m_upstream.getConfig(), m_upstream.getSourceType());
+      updateFileProperties(getUpstreamConfigSnapshot(), m_upstream.getSourceType());
       return true;
     } catch (Throwable ex) {
       Tracer.logError(ex);
@@ -171,7 +176,15 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     return false;
   }
 
-  private synchronized void updateFileProperties(Properties newProperties, ConfigSourceType sourceType) {
+  private ConfigSnapshot getUpstreamConfigSnapshot() {
+    //no copy at all if the upstream is inside the repository chain
+    if (m_upstream instanceof AbstractConfigRepository) {
+      return ((AbstractConfigRepository) m_upstream).getConfigSnapshot();
+    }
+    return ConfigSnapshot.of(m_upstream.getConfig());
+  }
+
+  private synchronized void updateFileProperties(ConfigSnapshot newProperties, ConfigSourceType sourceType) {
     this.m_sourceType = sourceType;
     if (newProperties.equals(m_fileProperties)) {
       return;
@@ -0,0 +1,145 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Loads the configs of many namespaces from the config service in one request, so that the remote config repositories
+ * created right afterwards could skip their own first request.
+ */
+public class RemoteConfigBatchLoader {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigBatchLoader.class);
+  private static final Joiner NAMESPACES_JOINER = Joiner.on(",");
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+
+  private final ConfigServiceLocator m_serviceLocator;
+  private final HttpUtil m_httpUtil;
+  private final ConfigUtil m_configUtil;
+  private final Type m_responseType;
+  private final Map<String, ApolloConfig> m_preloadedConfigs;
+
+  public RemoteConfigBatchLoader() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_responseType = new TypeToken<List<ApolloConfig>>() {
+    }.getType();
+    m_preloadedConfigs = Maps.newConcurrentMap();
+  }
+
+  /**
+   * Load the configs of the namespaces in one request, any failure is ignored as each namespace would be loaded on its
+   * own later
+   *
+   * @param namespaces the namespaces to load
+   */
+  public void preload(Collection<String> namespaces) {
+    Set<String> namespacesToLoad = Sets.newLinkedHashSet(namespaces);
+    namespacesToLoad.removeAll(m_preloadedConfigs.keySet());
+    //no need to batch a single namespace
+    if (!m_configUtil.isBatchConfigLoadEnabled() || namespacesToLoad.size() < 2) {
+      return;
+    }
+
+    String appId = m_configUtil.getAppId();
+    String cluster = m_configUtil.getCluster();
+    String dataCenter = m_configUtil.getDataCenter();
+
+    List<ServiceDTO> configServices = Lists.newArrayList(m_serviceLocator.getConfigServices());
+    Collections.shuffle(configServices);
+
+    for (ServiceDTO configService : configServices) {
+      String url = assembleBatchQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, namespacesToLoad,
+          dataCenter);
+
+      logger.debug("Loading configs from {}", url);
+      HttpRequest request = new HttpRequest(url);
+
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "batchQueryConfig");
+      transaction.addData("Url", url);
+      try {
+        HttpResponse<List<ApolloConfig>> response = m_httpUtil.doGet(request, m_responseType);
+
+        List<ApolloConfig> apolloConfigs = response.getBody();
+        if (apolloConfigs != null) {
+          for (ApolloConfig apolloConfig : apolloConfigs) {
+            //the namespaces not modified are returned without configurations
+            if (apolloConfig.getConfigurations() != null && !apolloConfig.isDelta()) {
+              m_preloadedConfigs.put(apolloConfig.getNamespaceName(), apolloConfig);
+            }
+          }
+        }
+
+        transaction.addData("StatusCode", response.getStatusCode());
+        transaction.setStatus(Transaction.SUCCESS);
+        return;
+      } catch (Throwable ex) {
+        //the config service might not support batch query yet
+        logger.warn("Batch load configs failed, will load them one by one. appId: {}, cluster: {}, namespaces: {}, "
+            + "reason: {}", appId, cluster, namespacesToLoad, ExceptionUtil.getDetailMessage(ex));
+        Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+        transaction.setStatus(ex);
+      } finally {
+        transaction.complete();
+      }
+    }
+  }
+
+  /**
+   * Take the preloaded config of the namespace, it is only returned once
+   *
+   * @return the preloaded config, or null if there is none
+   */
+  public ApolloConfig take(String namespace) {
+    return m_preloadedConfigs.remove(namespace);
+  }
+
+  String assembleBatchQueryConfigUrl(String uri, String appId, String cluster, Collection<String> namespaces,
+                                     String dataCenter) {
+    Map<String, String> queryParams = Maps.newLinkedHashMap();
+    queryParams.put("appId", queryParamEscaper.escape(appId));
+    queryParams.put("cluster", queryParamEscaper.escape(cluster));
+    queryParams.put("namespaces", queryParamEscaper.escape(NAMESPACES_JOINER.join(namespaces)));
+
+    if (!Strings.isNullOrEmpty(dataCenter)) {
+      queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+    }
+
+    String localIp = m_configUtil.getLocalIp();
+    if (!Strings.isNullOrEmpty(localIp)) {
+      queryParams.put("ip", queryParamEscaper.escape(localIp));
+    }
+
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+    return uri + "configs/batch?" + MAP_JOINER.join(queryParams);
+  }
+}
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.internals;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -11,6 +12,7 @@ import com.google.common.escape.Escaper;
 import com.google.common.net.UrlEscapers;
 import com.google.common.reflect.TypeToken;
 import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.Gson;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
@@ -22,11 +24,14 @@ import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpEventStreamListener;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
@@ -34,15 +39,19 @@ import com.ctrip.framework.apollo.util.http.HttpUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -55,11 +64,37 @@ public class RemoteConfigLongPollService {
   private static final long INIT_NOTIFICATION_ID = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
   //90 seconds, should be longer than server side's long polling timeout, which is now 60 seconds
   private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  //90 seconds, should be longer than server side's notification stream heartbeat interval, which is now 30 seconds
+  private static final int NOTIFICATION_STREAM_READ_TIMEOUT = 90 * 1000;
+  //fall back to long polling after the notification stream failed without any heartbeat for so many times
+  private static final int MAX_NOTIFICATION_STREAM_FAILURES = 3;
+  //the server sends the first heartbeat as soon as the stream is open, so it is buffered on the way if not received by
+  //then, e.g. by a proxy
+  private static final long NOTIFICATION_STREAM_FIRST_HEARTBEAT_TIMEOUT_IN_MILLIS = 10 * 1000;
+  //reconnect the notification stream only after no more namespaces are submitted for so long, so that the namespaces
+  //submitted together, e.g. on bootstrap, are watched with one reconnection
+  private static final long NOTIFICATION_STREAM_RECONNECT_DELAY_IN_MILLIS = 1000;
+  //post the notifications in the body instead if the url is longer than this, which is safe for most proxies
+  private static final int MAX_LONG_POLLING_URL_LENGTH = 2000;
   private final ExecutorService m_longPollingService;
+  //reads the notification streams, so that the long polling thread could reconnect without waiting for them to end,
+  //the streams left are closed, so their readers end once their blocked reads return, by the next heartbeat at the
+  //latest
+  private final ExecutorService m_notificationStreamReaders;
   private final AtomicBoolean m_longPollingStopped;
   private SchedulePolicy m_longPollFailSchedulePolicyInSecond;
   private RateLimiter m_longPollRateLimiter;
   private final AtomicBoolean m_longPollStarted;
+  private final AtomicBoolean m_notificationStreamEnabled;
+  private final AtomicBoolean m_notificationStreamOutdated;
+  //notified when the notification stream is outdated, receives the first heartbeat, or ends
+  private final Object m_notificationStreamSignal = new Object();
+  //only accessed by the long polling thread
+  private int m_notificationStreamFailures;
+  private long m_notificationStreamFirstHeartbeatTimeoutInMillis = NOTIFICATION_STREAM_FIRST_HEARTBEAT_TIMEOUT_IN_MILLIS;
+  private long m_notificationStreamReconnectDelayInMillis = NOTIFICATION_STREAM_RECONNECT_DELAY_IN_MILLIS;
+  private volatile long m_lastNamespaceSubmittedTime;
+  private boolean m_longPollPostEnabled = true;
   private final Multimap<String, RemoteConfigRepository> m_longPollNamespaces;
   private final ConcurrentMap<String, Long> m_notifications;
   private final Map<String, ApolloNotificationMessages> m_remoteNotificationMessages;//namespaceName -> watchedKey -> notificationId
@@ -77,6 +112,8 @@ public class RemoteConfigLongPollService {
     m_longPollingStopped = new AtomicBoolean(false);
     m_longPollingService = Executors.newSingleThreadExecutor(
         ApolloThreadFactory.create("RemoteConfigLongPollService", true));
+    m_notificationStreamReaders = Executors.newCachedThreadPool(
+        ApolloThreadFactory.create("RemoteConfigNotificationStream", true));
     m_longPollStarted = new AtomicBoolean(false);
     m_longPollNamespaces =
         Multimaps.synchronizedSetMultimap(HashMultimap.<String, RemoteConfigRepository>create());
@@ -89,11 +126,18 @@ public class RemoteConfigLongPollService {
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
+    m_notificationStreamEnabled = new AtomicBoolean(m_configUtil.isNotificationStreamEnabled());
+    m_notificationStreamOutdated = new AtomicBoolean(false);
   }
 
   public boolean submit(String namespace, RemoteConfigRepository remoteConfigRepository) {
     boolean added = m_longPollNamespaces.put(namespace, remoteConfigRepository);
-    m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+    if (m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID) == null) {
+      //the notification stream needs to reconnect to watch the new namespace
+      m_lastNamespaceSubmittedTime = System.currentTimeMillis();
+      m_notificationStreamOutdated.set(true);
+      signalNotificationStream();
+    }
     if (!m_longPollStarted.get()) {
       startLongPolling();
     }
@@ -135,6 +179,7 @@ public class RemoteConfigLongPollService {
 
   void stopLongPollingRefresh() {
     this.m_longPollingStopped.compareAndSet(false, true);
+    signalNotificationStream();
   }
 
   private void doLongPollingRefresh(String appId, String cluster, String dataCenter) {
@@ -148,7 +193,10 @@ public class RemoteConfigLongPollService {
         } catch (InterruptedException e) {
         }
       }
-      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "pollNotification");
+      boolean streaming = m_notificationStreamEnabled.get();
+      boolean posting = false;
+      Transaction transaction =
+          Tracer.newTransaction("Apollo.ConfigService", streaming ? "streamNotification" : "pollNotification");
       String url = null;
       try {
         if (lastServiceDto == null) {
@@ -156,18 +204,47 @@ public class RemoteConfigLongPollService {
           lastServiceDto = configServices.get(random.nextInt(configServices.size()));
         }
 
+        if (streaming) {
+          awaitNamespacesSubmitted();
+          m_notificationStreamOutdated.set(false);
+          url = assembleNotificationStreamUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
+              m_notifications);
+          transaction.addData("Url", url);
+
+          streamNotifications(lastServiceDto, url);
+
+          //the stream is ended by the server periodically, try to load balance when reconnecting
+          if (random.nextBoolean()) {
+            lastServiceDto = null;
+          }
+          m_longPollFailSchedulePolicyInSecond.success();
+          transaction.setStatus(Transaction.SUCCESS);
+          continue;
+        }
+
         url =
             assembleLongPollRefreshUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
                 m_notifications);
 
-        logger.debug("Long polling from {}", url);
-        HttpRequest request = new HttpRequest(url);
+        HttpRequest request;
+        //too many namespaces for the query string, post them in the compact form instead
+        posting = m_longPollPostEnabled && url.length() > MAX_LONG_POLLING_URL_LENGTH;
+        if (posting) {
+          url = assembleLongPollRefreshPostUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter);
+          request = new HttpRequest(url);
+          request.setBody(NotificationsCodec.CONTENT_TYPE,
+              NotificationsCodec.encode(m_notifications).getBytes(StandardCharsets.UTF_8));
+        } else {
+          request = new HttpRequest(url);
+        }
         request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
 
+        logger.debug("Long polling from {}", url);
         transaction.addData("Url", url);
 
-        final HttpResponse<List<ApolloConfigNotification>> response =
-            m_httpUtil.doGet(request, m_responseType);
+        final HttpResponse<List<ApolloConfigNotification>> response = posting ?
+            m_httpUtil.<List<ApolloConfigNotification>>doPost(request, m_responseType) :
+            m_httpUtil.<List<ApolloConfigNotification>>doGet(request, m_responseType);
 
         logger.debug("Long polling response: {}, url: {}", response.getStatusCode(), url);
         if (response.getStatusCode() == 200 && response.getBody() != null) {
@@ -187,6 +264,12 @@ public class RemoteConfigLongPollService {
         transaction.setStatus(Transaction.SUCCESS);
       } catch (Throwable ex) {
         lastServiceDto = null;
+        if (streaming) {
+          onNotificationStreamFailed(ex);
+        }
+        if (posting) {
+          onLongPollPostFailed(ex);
+        }
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
         long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
@@ -204,6 +287,204 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  /**
+   * Stream the notifications until the stream ends, or reconnect once no more new namespaces are submitted meanwhile.
+   * The stream left is abandoned and closed right away.
+   */
+  private void streamNotifications(final ServiceDTO serviceDto, final String url) {
+    logger.debug("Streaming notifications from {}", url);
+    final HttpRequest request = new HttpRequest(url);
+    request.setReadTimeout(NOTIFICATION_STREAM_READ_TIMEOUT);
+
+    final AtomicBoolean received = new AtomicBoolean(false);
+    final AtomicBoolean abandoned = new AtomicBoolean(false);
+    final AtomicReference<Closeable> stream = new AtomicReference<>();
+    final SettableFuture<Void> ended = SettableFuture.create();
+    final HttpEventStreamListener<List<ApolloConfigNotification>> listener =
+        new HttpEventStreamListener<List<ApolloConfigNotification>>() {
+          @Override
+          public void onOpen(Closeable openedStream) {
+            stream.set(openedStream);
+            //abandoned before it is open
+            if (abandoned.get()) {
+              closeNotificationStream(openedStream);
+            }
+          }
+
+          @Override
+          public boolean onEvent(List<ApolloConfigNotification> notifications) {
+            if (abandoned.get()) {
+              //the stream connected afterwards gets the same notifications
+              return false;
+            }
+            onReceived();
+            if (notifications != null) {
+              updateNotifications(notifications);
+              updateRemoteNotifications(notifications);
+              RemoteConfigLongPollService.this.notify(serviceDto, notifications);
+            }
+            return !abandoned.get();
+          }
+
+          @Override
+          public boolean onHeartbeat() {
+            onReceived();
+            return !abandoned.get();
+          }
+
+          private void onReceived() {
+            if (received.compareAndSet(false, true)) {
+              signalNotificationStream();
+            }
+          }
+        };
+
+    long firstHeartbeatDeadline = System.currentTimeMillis() + m_notificationStreamFirstHeartbeatTimeoutInMillis;
+    m_notificationStreamReaders.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          m_httpUtil.doGetEventStream(request, m_responseType, listener);
+          ended.set(null);
+        } catch (Throwable ex) {
+          ended.setException(ex);
+        } finally {
+          signalNotificationStream();
+        }
+      }
+    });
+
+    try {
+      synchronized (m_notificationStreamSignal) {
+        while (!ended.isDone() && !m_longPollingStopped.get()) {
+          long now = System.currentTimeMillis();
+          //0 to wait until signaled
+          long timeout = 0;
+          if (m_notificationStreamOutdated.get()) {
+            long reconnectTimeout = m_lastNamespaceSubmittedTime + m_notificationStreamReconnectDelayInMillis - now;
+            if (reconnectTimeout <= 0) {
+              break;
+            }
+            timeout = reconnectTimeout;
+          }
+          if (!received.get()) {
+            long firstHeartbeatTimeout = firstHeartbeatDeadline - now;
+            if (firstHeartbeatTimeout <= 0) {
+              break;
+            }
+            timeout = timeout == 0 ? firstHeartbeatTimeout : Math.min(timeout, firstHeartbeatTimeout);
+          }
+          m_notificationStreamSignal.wait(timeout);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (received.get()) {
+      m_notificationStreamFailures = 0;
+    }
+
+    if (!ended.isDone()) {
+      abandoned.set(true);
+      //not open yet if null, then it is closed as soon as it is open
+      Closeable openedStream = stream.get();
+      if (openedStream != null) {
+        closeNotificationStream(openedStream);
+      }
+      if (!received.get() && keepStreaming()) {
+        onNotificationStreamBuffered(url);
+      }
+      return;
+    }
+
+    try {
+      ended.get();
+    } catch (InterruptedException ex) {
+      //not possible as it is done
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException ex) {
+      Throwables.propagateIfPossible(ex.getCause());
+      throw new ApolloConfigException(String.format("Notification stream failed: %s", url), ex.getCause());
+    }
+
+    //a real stream lasts for minutes with heartbeats, so it is not a notification stream at all
+    if (!received.get()) {
+      throw new ApolloConfigException(String.format("Notification stream ended without any heartbeat: %s", url));
+    }
+  }
+
+  /**
+   * Wait until no more new namespaces are submitted for a while, so that they are watched by the same stream
+   */
+  private void awaitNamespacesSubmitted() {
+    try {
+      synchronized (m_notificationStreamSignal) {
+        while (!m_longPollingStopped.get()) {
+          long timeout =
+              m_lastNamespaceSubmittedTime + m_notificationStreamReconnectDelayInMillis - System.currentTimeMillis();
+          if (timeout <= 0) {
+            return;
+          }
+          m_notificationStreamSignal.wait(timeout);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void closeNotificationStream(Closeable stream) {
+    try {
+      stream.close();
+    } catch (Throwable ex) {
+      //ignore
+    }
+  }
+
+  private boolean keepStreaming() {
+    return !m_longPollingStopped.get() && !m_notificationStreamOutdated.get();
+  }
+
+  private void signalNotificationStream() {
+    synchronized (m_notificationStreamSignal) {
+      m_notificationStreamSignal.notifyAll();
+    }
+  }
+
+  private void onNotificationStreamBuffered(String url) {
+    //no need to retry as the stream would be buffered all the same
+    m_notificationStreamEnabled.set(false);
+    logger.warn("Notification stream received no heartbeat in {} ms, it might be buffered on the way, fall back to "
+        + "long polling. url: {}", m_notificationStreamFirstHeartbeatTimeoutInMillis, url);
+    Tracer.logEvent("Apollo.Client.NotificationStreamFallback", "buffered");
+  }
+
+  private void onNotificationStreamFailed(Throwable ex) {
+    boolean unsupported = ex instanceof ApolloConfigStatusCodeException
+        && (((ApolloConfigStatusCodeException) ex).getStatusCode() == 404
+        || ((ApolloConfigStatusCodeException) ex).getStatusCode() == 405);
+    //the config service doesn't support the stream, or the stream is blocked somewhere, e.g. buffered by a proxy
+    if (unsupported || ++m_notificationStreamFailures >= MAX_NOTIFICATION_STREAM_FAILURES) {
+      m_notificationStreamEnabled.set(false);
+      logger.warn("Notification stream is not available, fall back to long polling. reason: {}",
+          ExceptionUtil.getDetailMessage(ex));
+      Tracer.logEvent("Apollo.Client.NotificationStreamFallback", ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
+  private void onLongPollPostFailed(Throwable ex) {
+    //the config service is too old to accept the notifications in the body
+    if (ex instanceof ApolloConfigStatusCodeException
+        && (((ApolloConfigStatusCodeException) ex).getStatusCode() == 404
+        || ((ApolloConfigStatusCodeException) ex).getStatusCode() == 405)) {
+      m_longPollPostEnabled = false;
+      logger.warn("Long polling with notifications in the body is not supported, fall back to the query string. "
+          + "reason: {}", ExceptionUtil.getDetailMessage(ex));
+      Tracer.logEvent("Apollo.Client.LongPollPostFallback", ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
   private void notify(ServiceDTO lastServiceDto, List<ApolloConfigNotification> notifications) {
     if (notifications == null || notifications.isEmpty()) {
       return;
@@ -273,11 +554,27 @@ public class RemoteConfigLongPollService {
 
   String assembleLongPollRefreshUrl(String uri, String appId, String cluster, String dataCenter,
                                     Map<String, Long> notificationsMap) {
+    return assembleNotificationsUrl(uri, "notifications/v2", appId, cluster, dataCenter, notificationsMap);
+  }
+
+  String assembleLongPollRefreshPostUrl(String uri, String appId, String cluster, String dataCenter) {
+    return assembleNotificationsUrl(uri, "notifications/v2", appId, cluster, dataCenter, null);
+  }
+
+  String assembleNotificationStreamUrl(String uri, String appId, String cluster, String dataCenter,
+                                       Map<String, Long> notificationsMap) {
+    return assembleNotificationsUrl(uri, "notifications/v2/stream", appId, cluster, dataCenter, notificationsMap);
+  }
+
+  private String assembleNotificationsUrl(String uri, String path, String appId, String cluster, String dataCenter,
+                                          Map<String, Long> notificationsMap) {
     Map<String, String> queryParams = Maps.newHashMap();
     queryParams.put("appId", queryParamEscaper.escape(appId));
     queryParams.put("cluster", queryParamEscaper.escape(cluster));
-    queryParams
-        .put("notifications", queryParamEscaper.escape(assembleNotifications(notificationsMap)));
+    if (notificationsMap != null) {
+      queryParams
+          .put("notifications", queryParamEscaper.escape(assembleNotifications(notificationsMap)));
+    }
 
     if (!Strings.isNullOrEmpty(dataCenter)) {
       queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
@@ -292,7 +589,7 @@ public class RemoteConfigLongPollService {
       uri += "/";
     }
 
-    return uri + "notifications/v2?" + params;
+    return uri + path + "?" + params;
   }
 
   String assembleNotifications(Map<String, Long> notificationsMap) {
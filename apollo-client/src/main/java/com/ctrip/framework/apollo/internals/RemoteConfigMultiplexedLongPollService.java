@@ -0,0 +1,356 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.Gson;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
+import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Long polling for the namespaces of all the (appId, cluster) pairs in the process with one connection, unlike
+ * {@link RemoteConfigLongPollService} which is bound to the appId and cluster of {@link ConfigUtil}.
+ *
+ * <p>It needs the config service to support the multiplexed long polling, so it is only used when
+ * {@link ConfigUtil#isLongPollMultiplexEnabled()}.</p>
+ */
+public class RemoteConfigMultiplexedLongPollService {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigMultiplexedLongPollService.class);
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  private static final long INIT_NOTIFICATION_ID = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
+  //90 seconds, should be longer than server side's long polling timeout, which is now 60 seconds
+  private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  //post the notifications in the body instead if the url is longer than this, which is safe for most proxies
+  private static final int MAX_LONG_POLLING_URL_LENGTH = 2000;
+  private final ExecutorService m_longPollingService;
+  private final AtomicBoolean m_longPollingStopped;
+  private final SchedulePolicy m_longPollFailSchedulePolicyInSecond;
+  private final RateLimiter m_longPollRateLimiter;
+  private final AtomicBoolean m_longPollStarted;
+  //only accessed by the long polling thread
+  private boolean m_longPollPostEnabled = true;
+  //appId+cluster+namespace -> repositories
+  private final Multimap<String, RemoteConfigRepository> m_longPollNamespaces;
+  //appId+cluster+namespace -> notification
+  private final ConcurrentMap<String, ApolloConfigNotification> m_notifications;
+  //appId+cluster+namespace -> watchedKey -> notificationId
+  private final Map<String, ApolloNotificationMessages> m_remoteNotificationMessages;
+  private final Type m_responseType;
+  private final Gson gson;
+  private final ConfigUtil m_configUtil;
+  private final HttpUtil m_httpUtil;
+  private final ConfigServiceLocator m_serviceLocator;
+
+  public RemoteConfigMultiplexedLongPollService() {
+    m_longPollFailSchedulePolicyInSecond = new ExponentialSchedulePolicy(1, 120); //in second
+    m_longPollingStopped = new AtomicBoolean(false);
+    m_longPollingService = Executors.newSingleThreadExecutor(
+        ApolloThreadFactory.create("RemoteConfigMultiplexedLongPollService", true));
+    m_longPollStarted = new AtomicBoolean(false);
+    m_longPollNamespaces =
+        Multimaps.synchronizedSetMultimap(HashMultimap.<String, RemoteConfigRepository>create());
+    m_notifications = Maps.newConcurrentMap();
+    m_remoteNotificationMessages = Maps.newConcurrentMap();
+    m_responseType = new TypeToken<List<ApolloConfigNotification>>() {
+    }.getType();
+    gson = new Gson();
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
+  }
+
+  public boolean submit(String appId, String cluster, String namespace,
+                        RemoteConfigRepository remoteConfigRepository) {
+    String key = assembleKey(appId, cluster, namespace);
+    boolean added = m_longPollNamespaces.put(key, remoteConfigRepository);
+    m_notifications.putIfAbsent(key, new ApolloConfigNotification(appId, cluster, namespace, INIT_NOTIFICATION_ID));
+    if (!m_longPollStarted.get()) {
+      startLongPolling();
+    }
+    return added;
+  }
+
+  private void startLongPolling() {
+    if (!m_longPollStarted.compareAndSet(false, true)) {
+      //already started
+      return;
+    }
+    try {
+      final String dataCenter = m_configUtil.getDataCenter();
+      final long longPollingInitialDelayInMills = m_configUtil.getLongPollingInitialDelayInMills();
+      m_longPollingService.submit(new Runnable() {
+        @Override
+        public void run() {
+          if (longPollingInitialDelayInMills > 0) {
+            try {
+              logger.debug("Long polling will start in {} ms.", longPollingInitialDelayInMills);
+              TimeUnit.MILLISECONDS.sleep(longPollingInitialDelayInMills);
+            } catch (InterruptedException e) {
+              //ignore
+            }
+          }
+          doLongPollingRefresh(dataCenter);
+        }
+      });
+    } catch (Throwable ex) {
+      m_longPollStarted.set(false);
+      ApolloConfigException exception =
+          new ApolloConfigException("Schedule multiplexed long polling refresh failed", ex);
+      Tracer.logError(exception);
+      logger.warn(ExceptionUtil.getDetailMessage(exception));
+    }
+  }
+
+  void stopLongPollingRefresh() {
+    this.m_longPollingStopped.compareAndSet(false, true);
+  }
+
+  private void doLongPollingRefresh(String dataCenter) {
+    final Random random = new Random();
+    ServiceDTO lastServiceDto = null;
+    while (!m_longPollingStopped.get() && !Thread.currentThread().isInterrupted()) {
+      if (!m_longPollRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
+        //wait at most 5 seconds
+        try {
+          TimeUnit.SECONDS.sleep(5);
+        } catch (InterruptedException e) {
+        }
+      }
+      boolean posting = false;
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "pollMultiplexedNotification");
+      String url = null;
+      try {
+        if (lastServiceDto == null) {
+          List<ServiceDTO> configServices = getConfigServices();
+          lastServiceDto = configServices.get(random.nextInt(configServices.size()));
+        }
+
+        url = assembleLongPollRefreshUrl(lastServiceDto.getHomepageUrl(), dataCenter, m_notifications.values());
+
+        HttpRequest request;
+        //too many namespaces for the query string, post them in the compact form instead
+        posting = m_longPollPostEnabled && url.length() > MAX_LONG_POLLING_URL_LENGTH;
+        if (posting) {
+          url = assembleLongPollRefreshPostUrl(lastServiceDto.getHomepageUrl(), dataCenter);
+          request = new HttpRequest(url);
+          request.setBody(NotificationsCodec.CONTENT_TYPE,
+              NotificationsCodec.encodeMultiplexed(m_notifications.values()).getBytes(StandardCharsets.UTF_8));
+        } else {
+          request = new HttpRequest(url);
+        }
+        request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
+
+        logger.debug("Long polling from {}", url);
+        transaction.addData("Url", url);
+
+        final HttpResponse<List<ApolloConfigNotification>> response = posting ?
+            m_httpUtil.<List<ApolloConfigNotification>>doPost(request, m_responseType) :
+            m_httpUtil.<List<ApolloConfigNotification>>doGet(request, m_responseType);
+
+        logger.debug("Long polling response: {}, url: {}", response.getStatusCode(), url);
+        if (response.getStatusCode() == 200 && response.getBody() != null) {
+          updateNotifications(response.getBody());
+          updateRemoteNotifications(response.getBody());
+          transaction.addData("Result", response.getBody().toString());
+          notify(lastServiceDto, response.getBody());
+        }
+
+        //try to load balance
+        if (response.getStatusCode() == 304 && random.nextBoolean()) {
+          lastServiceDto = null;
+        }
+
+        m_longPollFailSchedulePolicyInSecond.success();
+        transaction.addData("StatusCode", response.getStatusCode());
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        lastServiceDto = null;
+        if (posting) {
+          onLongPollPostFailed(ex);
+        }
+        Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+        transaction.setStatus(ex);
+        long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
+        logger.warn(
+            "Multiplexed long polling failed, will retry in {} seconds. namespaces: {}, long polling url: {}, reason: {}",
+            sleepTimeInSecond, m_notifications.keySet(), url, ExceptionUtil.getDetailMessage(ex));
+        try {
+          TimeUnit.SECONDS.sleep(sleepTimeInSecond);
+        } catch (InterruptedException ie) {
+          //ignore
+        }
+      } finally {
+        transaction.complete();
+      }
+    }
+  }
+
+  private void onLongPollPostFailed(Throwable ex) {
+    //the config service is too old to accept the notifications in the body
+    if (ex instanceof ApolloConfigStatusCodeException
+        && (((ApolloConfigStatusCodeException) ex).getStatusCode() == 404
+        || ((ApolloConfigStatusCodeException) ex).getStatusCode() == 405)) {
+      m_longPollPostEnabled = false;
+      logger.warn("Multiplexed long polling with notifications in the body is not supported, "
+          + "fall back to the query string. reason: {}", ExceptionUtil.getDetailMessage(ex));
+      Tracer.logEvent("Apollo.Client.LongPollPostFallback", ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
+  private void notify(ServiceDTO lastServiceDto, List<ApolloConfigNotification> notifications) {
+    for (ApolloConfigNotification notification : notifications) {
+      String key = assembleKey(notification);
+      //create a new list to avoid ConcurrentModificationException
+      List<RemoteConfigRepository> toBeNotified = Lists.newArrayList(m_longPollNamespaces.get(key));
+      ApolloNotificationMessages originalMessages = m_remoteNotificationMessages.get(key);
+      ApolloNotificationMessages remoteMessages = originalMessages == null ? null : originalMessages.clone();
+      //since .properties are filtered out by default, so we need to check if there is any listener for it
+      toBeNotified.addAll(m_longPollNamespaces.get(assembleKeyWithPropertiesSuffix(notification)));
+      for (RemoteConfigRepository remoteConfigRepository : toBeNotified) {
+        try {
+          remoteConfigRepository.onLongPollNotified(lastServiceDto, remoteMessages);
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+      }
+    }
+  }
+
+  private void updateNotifications(List<ApolloConfigNotification> deltaNotifications) {
+    for (ApolloConfigNotification notification : deltaNotifications) {
+      if (!isValid(notification)) {
+        continue;
+      }
+      updateNotification(assembleKey(notification), notification.getNotificationId());
+      //since .properties are filtered out by default, so we need to check if there is notification with .properties suffix
+      updateNotification(assembleKeyWithPropertiesSuffix(notification), notification.getNotificationId());
+    }
+  }
+
+  private void updateNotification(String key, long notificationId) {
+    ApolloConfigNotification notification = m_notifications.get(key);
+    if (notification != null) {
+      m_notifications.put(key, new ApolloConfigNotification(notification.getAppId(), notification.getCluster(),
+          notification.getNamespaceName(), notificationId));
+    }
+  }
+
+  private void updateRemoteNotifications(List<ApolloConfigNotification> deltaNotifications) {
+    for (ApolloConfigNotification notification : deltaNotifications) {
+      if (!isValid(notification)) {
+        continue;
+      }
+
+      if (notification.getMessages() == null || notification.getMessages().isEmpty()) {
+        continue;
+      }
+
+      String key = assembleKey(notification);
+      ApolloNotificationMessages localRemoteMessages = m_remoteNotificationMessages.get(key);
+      if (localRemoteMessages == null) {
+        localRemoteMessages = new ApolloNotificationMessages();
+        m_remoteNotificationMessages.put(key, localRemoteMessages);
+      }
+
+      localRemoteMessages.mergeFrom(notification.getMessages());
+    }
+  }
+
+  private boolean isValid(ApolloConfigNotification notification) {
+    return !Strings.isNullOrEmpty(notification.getAppId()) && !Strings.isNullOrEmpty(notification.getCluster())
+        && !Strings.isNullOrEmpty(notification.getNamespaceName());
+  }
+
+  private String assembleKey(String appId, String cluster, String namespace) {
+    return STRING_JOINER.join(appId, cluster, namespace);
+  }
+
+  private String assembleKey(ApolloConfigNotification notification) {
+    return assembleKey(notification.getAppId(), notification.getCluster(), notification.getNamespaceName());
+  }
+
+  private String assembleKeyWithPropertiesSuffix(ApolloConfigNotification notification) {
+    return assembleKey(notification.getAppId(), notification.getCluster(),
+        String.format("%s.%s", notification.getNamespaceName(), ConfigFileFormat.Properties.getValue()));
+  }
+
+  String assembleLongPollRefreshUrl(String uri, String dataCenter,
+                                    Collection<ApolloConfigNotification> notifications) {
+    Map<String, String> queryParams = Maps.newHashMap();
+    if (notifications != null) {
+      queryParams.put("notifications", queryParamEscaper.escape(gson.toJson(notifications)));
+    }
+
+    if (!Strings.isNullOrEmpty(dataCenter)) {
+      queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+    }
+    String localIp = m_configUtil.getLocalIp();
+    if (!Strings.isNullOrEmpty(localIp)) {
+      queryParams.put("ip", queryParamEscaper.escape(localIp));
+    }
+
+    String params = MAP_JOINER.join(queryParams);
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+
+    return uri + "notifications/v2/multi?" + params;
+  }
+
+  String assembleLongPollRefreshPostUrl(String uri, String dataCenter) {
+    return assembleLongPollRefreshUrl(uri, dataCenter, null);
+  }
+
+  private List<ServiceDTO> getConfigServices() {
+    List<ServiceDTO> services = m_serviceLocator.getConfigServices();
+    if (services.size() == 0) {
+      throw new ApolloConfigException("No available config service");
+    }
+
+    return services;
+  }
+}
@@ -4,6 +4,7 @@ import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -53,9 +54,12 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
   private final ConfigServiceLocator m_serviceLocator;
   private final HttpUtil m_httpUtil;
+  private final RemoteConfigBatchLoader m_batchLoader;
   private final ConfigUtil m_configUtil;
   private final RemoteConfigLongPollService remoteConfigLongPollService;
   private volatile AtomicReference<ApolloConfig> m_configCache;
+  //the snapshot of the configurations in m_configCache, handed to the downstream repositories as it is
+  private volatile ConfigSnapshot m_configSnapshot;
   private final String m_namespace;
   private final static ScheduledExecutorService m_executorService;
   private final AtomicReference<ServiceDTO> m_longPollServiceDto;
@@ -80,6 +84,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_configCache = new AtomicReference<>();
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_batchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
     m_longPollServiceDto = new AtomicReference<>();
@@ -99,7 +104,15 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     if (m_configCache.get() == null) {
       this.sync();
     }
-    return transformApolloConfigToProperties(m_configCache.get());
+    return ConfigSnapshot.copyOf(m_configSnapshot);
+  }
+
+  @Override
+  ConfigSnapshot getConfigSnapshot() {
+    if (m_configCache.get() == null) {
+      this.sync();
+    }
+    return ConfigSnapshot.of(m_configSnapshot);
   }
 
   @Override
@@ -139,8 +152,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
       //reference equals means HTTP 304
       if (previous != current) {
         logger.debug("Remote Config refreshed!");
+        //publish the snapshot first so that getConfig never sees a loaded config without its snapshot
+        m_configSnapshot = current == null ? null : ConfigSnapshot.of(current.getConfigurations());
         m_configCache.set(current);
-        this.fireRepositoryChange(m_namespace, this.getConfig());
+        this.fireRepositoryChange(m_namespace, m_configSnapshot);
       }
 
       if (current != null) {
@@ -157,13 +172,17 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     }
   }
 
-  private Properties transformApolloConfigToProperties(ApolloConfig apolloConfig) {
-    Properties result = new Properties();
-    result.putAll(apolloConfig.getConfigurations());
-    return result;
-  }
-
   private ApolloConfig loadApolloConfig() {
+    if (m_configCache.get() == null) {
+      //the config might be loaded along with other namespaces at startup
+      ApolloConfig preloaded = m_batchLoader.take(m_namespace);
+      if (preloaded != null) {
+        logger.debug("Loaded preloaded config for {}: {}", m_namespace, preloaded);
+        m_configNeedForceRefresh.set(false);
+        return preloaded;
+      }
+    }
+
     if (!m_loadConfigRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
       //wait at most 5 seconds
       try {
@@ -228,6 +247,18 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
           logger.debug("Loaded config for {}: {}", m_namespace, result);
 
+          if (result != null && result.isDelta()) {
+            ApolloConfig applied = applyDelta(m_configCache.get(), result);
+            if (applied == null) {
+              //fetch the full configurations instead, by not sending the release key loaded
+              url = assembleQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, m_namespace,
+                  dataCenter, m_remoteMessages.get(), null);
+              transaction.addData("FullConfigUrl", url);
+              applied = m_httpUtil.doGet(new HttpRequest(url), ApolloConfig.class).getBody();
+            }
+            result = applied;
+          }
+
           return result;
         } catch (ApolloConfigStatusCodeException ex) {
           ApolloConfigStatusCodeException statusCodeException = ex;
@@ -263,6 +294,37 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     throw new ApolloConfigException(message, exception);
   }
 
+  /**
+   * Apply the changed keys in the delta response to the configurations already loaded
+   *
+   * @return the config applied, or null if the delta is not based on the release loaded
+   */
+  private ApolloConfig applyDelta(ApolloConfig previous, ApolloConfig delta) {
+    if (previous == null || !Objects.equals(previous.getReleaseKey(), delta.getBaseReleaseKey())) {
+      //should not happen as the base is the release key sent to the config service
+      logger.warn("Delta config of namespace {} is based on release {}, which is not the release loaded: {}, " +
+          "will load the full config instead", m_namespace, delta.getBaseReleaseKey(),
+          previous == null ? null : previous.getReleaseKey());
+      Tracer.logEvent("Apollo.Client.DeltaBaseMismatch", STRING_JOINER.join(m_namespace, delta.getReleaseKey()));
+      return null;
+    }
+
+    Map<String, String> configurations = Maps.newHashMap(previous.getConfigurations());
+    if (delta.getConfigurations() != null) {
+      configurations.putAll(delta.getConfigurations());
+    }
+    if (delta.getDeletedKeys() != null) {
+      configurations.keySet().removeAll(delta.getDeletedKeys());
+    }
+
+    ApolloConfig result = new ApolloConfig(delta.getAppId(), delta.getCluster(), delta.getNamespaceName(),
+        delta.getReleaseKey());
+    result.setConfigurations(configurations);
+
+    Tracer.logEvent("Apollo.Client.DeltaConfig", STRING_JOINER.join(m_namespace, delta.getReleaseKey()));
+    return result;
+  }
+
   String assembleQueryConfigUrl(String uri, String appId, String cluster, String namespace,
                                 String dataCenter, ApolloNotificationMessages remoteMessages, ApolloConfig previousConfig) {
 
@@ -274,6 +336,9 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
     if (previousConfig != null) {
       queryParams.put("releaseKey", queryParamEscaper.escape(previousConfig.getReleaseKey()));
+      if (m_configUtil.isDeltaConfigEnabled()) {
+        queryParams.put("delta", "true");
+      }
     }
 
     if (!Strings.isNullOrEmpty(dataCenter)) {
@@ -301,6 +366,11 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   }
 
   private void scheduleLongPollingRefresh() {
+    if (m_configUtil.isLongPollMultiplexEnabled()) {
+      ApolloInjector.getInstance(RemoteConfigMultiplexedLongPollService.class)
+          .submit(m_configUtil.getAppId(), m_configUtil.getCluster(), m_namespace, this);
+      return;
+    }
     remoteConfigLongPollService.submit(m_namespace, this);
   }
 
@@ -78,11 +78,10 @@ public class SimpleConfig extends AbstractConfig implements RepositoryChangeList
 
   @Override
   public synchronized void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_configProperties)) {
+    ConfigSnapshot newConfigProperties = ConfigSnapshot.of(newProperties);
+    if (newConfigProperties.equals(m_configProperties)) {
       return;
     }
-    Properties newConfigProperties = new Properties();
-    newConfigProperties.putAll(newProperties);
 
     List<ConfigChange> changes = calcPropertyChanges(namespace, m_configProperties, newConfigProperties);
     Map<String, ConfigChange> changeMap = Maps.uniqueIndex(changes,
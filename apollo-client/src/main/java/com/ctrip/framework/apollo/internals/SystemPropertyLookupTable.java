@@ -0,0 +1,113 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.collect.MapMaker;
+
+/**
+ * The system properties and env variables in the property lookup tables, shared by all the {@link DefaultConfig}
+ * instances. Their changes are not notified, so one task refreshes them every
+ * {@link ConfigUtil#getPropertyLookupTableRefreshIntervalInSeconds()} for all the namespaces.
+ */
+final class SystemPropertyLookupTable {
+  private static final Logger logger = LoggerFactory.getLogger(SystemPropertyLookupTable.class);
+
+  //the configs whose typed caches are cleared on change, not kept from gc
+  private final Set<AbstractConfig> m_configs;
+  private volatile Map<String, String> m_systemProperties;
+  private volatile Map<String, String> m_envVariables;
+
+  SystemPropertyLookupTable() {
+    m_configs = Collections.newSetFromMap(new MapMaker().weakKeys().<AbstractConfig, Boolean>makeMap());
+    m_systemProperties = copyStringProperties(System.getProperties());
+    m_envVariables = new HashMap<>(System.getenv());
+  }
+
+  static SystemPropertyLookupTable getInstance() {
+    return InstanceHolder.INSTANCE;
+  }
+
+  String getSystemProperty(String key) {
+    return m_systemProperties.get(key);
+  }
+
+  /**
+   * Matched case sensitively
+   */
+  String getEnvVariable(String key) {
+    return m_envVariables.get(key);
+  }
+
+  void register(AbstractConfig config) {
+    m_configs.add(config);
+  }
+
+  synchronized void refresh() {
+    try {
+      Map<String, String> systemProperties = copyStringProperties(System.getProperties());
+      Map<String, String> envVariables = new HashMap<>(System.getenv());
+      if (systemProperties.equals(m_systemProperties) && envVariables.equals(m_envVariables)) {
+        return;
+      }
+      m_systemProperties = systemProperties;
+      m_envVariables = envVariables;
+      for (AbstractConfig config : m_configs) {
+        config.clearConfigCache();
+      }
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("Refresh system property lookup table failed, reason: {}.", ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
+  static Map<String, String> copyStringProperties(Properties properties) {
+    Map<String, String> copy = new HashMap<>();
+    if (properties == null) {
+      return copy;
+    }
+    synchronized (properties) {
+      for (Map.Entry<Object, Object> e : properties.entrySet()) {
+        if (e.getKey() instanceof String && e.getValue() instanceof String) {
+          copy.put((String) e.getKey(), (String) e.getValue());
+        }
+      }
+    }
+    return copy;
+  }
+
+  private static class InstanceHolder {
+    private static final SystemPropertyLookupTable INSTANCE = create();
+
+    private static SystemPropertyLookupTable create() {
+      final SystemPropertyLookupTable instance = new SystemPropertyLookupTable();
+      long refreshIntervalInSeconds = ApolloInjector.getInstance(ConfigUtil.class)
+          .getPropertyLookupTableRefreshIntervalInSeconds();
+      if (refreshIntervalInSeconds > 0) {
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(
+            ApolloThreadFactory.create("SystemPropertyLookupTable", true));
+        executorService.scheduleWithFixedDelay(new Runnable() {
+          @Override
+          public void run() {
+            instance.refresh();
+          }
+        }, refreshIntervalInSeconds, refreshIntervalInSeconds, TimeUnit.SECONDS);
+      }
+      return instance;
+    }
+  }
+}
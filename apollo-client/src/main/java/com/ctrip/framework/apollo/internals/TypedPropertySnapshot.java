@@ -0,0 +1,107 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The parsed values of the typed properties of one config version, e.g. integer, long, boolean, etc.
+ *
+ * <p>The values are kept in a fixed size open addressing table, so the lookups take no lock and allocate nothing. An
+ * entry is published by the volatile write of its slot and never changes, a new snapshot is used once the config
+ * changes.</p>
+ */
+final class TypedPropertySnapshot {
+  static final int INT = 1;
+  static final int LONG = 2;
+  static final int SHORT = 3;
+  static final int FLOAT = 4;
+  static final int DOUBLE = 5;
+  static final int BYTE = 6;
+  static final int BOOLEAN = 7;
+  static final int DATE = 8;
+  static final int DURATION = 9;
+  //qualified by the delimiter
+  static final int ARRAY = 10;
+
+  private static final int MAX_CAPACITY = 1 << 20;
+
+  private final AtomicReferenceArray<Slot> m_slots;
+  private final int m_mask;
+  private final int m_maxSize;
+  private int m_size;
+
+  TypedPropertySnapshot(long maxSize) {
+    int capacity = 2;
+    while (capacity < maxSize * 2 && capacity < MAX_CAPACITY) {
+      capacity <<= 1;
+    }
+    m_slots = new AtomicReferenceArray<>(capacity);
+    m_mask = capacity - 1;
+    m_maxSize = (int) Math.min(maxSize, capacity / 2);
+  }
+
+  /**
+   * @return the parsed value or null if not parsed yet
+   */
+  Object get(String key, int type, String qualifier) {
+    int index = indexOf(key, type, qualifier);
+    while (true) {
+      Slot slot = m_slots.get(index);
+      if (slot == null) {
+        return null;
+      }
+      if (slot.matches(key, type, qualifier)) {
+        return slot.value;
+      }
+      index = (index + 1) & m_mask;
+    }
+  }
+
+  /**
+   * Not thread safe, the callers should put with a lock held. The value is dropped if the snapshot is full.
+   */
+  void put(String key, int type, String qualifier, Object value) {
+    if (m_size >= m_maxSize) {
+      return;
+    }
+    int index = indexOf(key, type, qualifier);
+    while (true) {
+      Slot slot = m_slots.get(index);
+      if (slot == null) {
+        m_slots.set(index, new Slot(key, type, qualifier, value));
+        m_size++;
+        return;
+      }
+      if (slot.matches(key, type, qualifier)) {
+        return;
+      }
+      index = (index + 1) & m_mask;
+    }
+  }
+
+  private int indexOf(String key, int type, String qualifier) {
+    int hash = key.hashCode() * 31 + type;
+    if (qualifier != null) {
+      hash = hash * 31 + qualifier.hashCode();
+    }
+    return (hash ^ (hash >>> 16)) & m_mask;
+  }
+
+  private static final class Slot {
+    private final String key;
+    private final int type;
+    private final String qualifier;
+    private final Object value;
+
+    private Slot(String key, int type, String qualifier, Object value) {
+      this.key = key;
+      this.type = type;
+      this.qualifier = qualifier;
+      this.value = value;
+    }
+
+    private boolean matches(String key, int type, String qualifier) {
+      return this.type == type && this.key.equals(key)
+          && (this.qualifier == null ? qualifier == null : this.qualifier.equals(qualifier));
+    }
+  }
+}
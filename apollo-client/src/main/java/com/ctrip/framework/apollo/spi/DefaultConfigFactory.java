@@ -11,6 +11,9 @@ import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.internals.ConfigBootstrapDeadline;
 import com.ctrip.framework.apollo.internals.ConfigRepository;
 import com.ctrip.framework.apollo.internals.DefaultConfig;
 import com.ctrip.framework.apollo.internals.JsonConfigFile;
@@ -20,13 +23,24 @@ import com.ctrip.framework.apollo.internals.RemoteConfigRepository;
 import com.ctrip.framework.apollo.internals.XmlConfigFile;
 import com.ctrip.framework.apollo.internals.YamlConfigFile;
 import com.ctrip.framework.apollo.internals.YmlConfigFile;
+import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class DefaultConfigFactory implements ConfigFactory {
   private static final Logger logger = LoggerFactory.getLogger(DefaultConfigFactory.class);
+  private static final ExecutorService s_executorService = Executors.newCachedThreadPool(
+      ApolloThreadFactory.create("DefaultConfigFactory", true));
   private ConfigUtil m_configUtil;
 
   public DefaultConfigFactory() {
@@ -70,9 +84,55 @@ public class DefaultConfigFactory implements ConfigFactory {
           namespace);
       return new LocalFileConfigRepository(namespace);
     }
+    Long bootstrapDeadline = ConfigBootstrapDeadline.get();
+    if (bootstrapDeadline != null) {
+      return createLocalConfigRepository(namespace, bootstrapDeadline);
+    }
     return new LocalFileConfigRepository(namespace, createRemoteConfigRepository(namespace));
   }
 
+  /**
+   * Wait for the remote config until the deadline, after which the local cache file is served and the remote config is
+   * attached once it is loaded
+   */
+  private LocalFileConfigRepository createLocalConfigRepository(final String namespace, long deadline) {
+    final Future<RemoteConfigRepository> remoteConfigRepository = s_executorService.submit(
+        new Callable<RemoteConfigRepository>() {
+          @Override
+          public RemoteConfigRepository call() throws Exception {
+            return createRemoteConfigRepository(namespace);
+          }
+        });
+
+    try {
+      long timeout = Math.max(deadline - System.currentTimeMillis(), 0);
+      return new LocalFileConfigRepository(namespace, remoteConfigRepository.get(timeout, TimeUnit.MILLISECONDS));
+    } catch (TimeoutException | InterruptedException ex) {
+      if (ex instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      logger.warn("Load remote config for namespace {} timed out, will use the local cache file until it is loaded",
+          namespace);
+      Tracer.logEvent("Apollo.Client.BootstrapTimeout", namespace);
+    } catch (ExecutionException ex) {
+      throw new ApolloConfigException(String.format("Create remote config repository for namespace %s failed",
+          namespace), ex.getCause());
+    }
+
+    final LocalFileConfigRepository localConfigRepository = new LocalFileConfigRepository(namespace);
+    s_executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          localConfigRepository.setUpstreamRepository(remoteConfigRepository.get());
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+      }
+    });
+    return localConfigRepository;
+  }
+
   RemoteConfigRepository createRemoteConfigRepository(String namespace) {
     return new RemoteConfigRepository(namespace);
   }
@@ -68,6 +68,10 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
 
     //sort by order asc
     ImmutableSortedSet<Integer> orders = ImmutableSortedSet.copyOf(NAMESPACE_NAMES.keySet());
+
+    //load the namespaces together instead of one by one
+    ConfigService.preloadConfigs(NAMESPACE_NAMES.values());
+
     Iterator<Integer> iterator = orders.iterator();
 
     while (iterator.hasNext()) {
@@ -35,6 +35,18 @@ public class ConfigUtil {
   private TimeUnit configCacheExpireTimeUnit = TimeUnit.MINUTES;//1 minute
   private long longPollingInitialDelayInMills = 2000;//2 seconds
   private boolean autoUpdateInjectedSpringProperties = true;
+  private boolean deltaConfigEnabled = true;
+  private boolean batchConfigLoadEnabled = true;
+  private boolean parallelBootstrapEnabled = false;
+  private long parallelBootstrapTimeoutInMillis = 5000;//5 seconds
+  private boolean longPollMultiplexEnabled = false;
+  private boolean notificationStreamEnabled = false;
+  private boolean typedPropertySnapshotEnabled = false;
+  private boolean propertyLookupTableEnabled = false;
+  private long propertyLookupTableRefreshIntervalInSeconds = 60;//1 minute
+  private int listenerDispatchThreads = 0;//not positive means twice the available processors
+  private boolean listenerEventCoalescingEnabled = false;
+  private boolean listenerDispatchVirtualThreadsEnabled = false;
   private final RateLimiter warnLogRateLimiter;
 
   public ConfigUtil() {
@@ -47,6 +59,14 @@ public class ConfigUtil {
     initMaxConfigCacheSize();
     initLongPollingInitialDelayInMills();
     initAutoUpdateInjectedSpringProperties();
+    initDeltaConfigEnabled();
+    initBatchConfigLoadEnabled();
+    initParallelBootstrap();
+    initLongPollMultiplexEnabled();
+    initNotificationStreamEnabled();
+    initTypedPropertySnapshotEnabled();
+    initPropertyLookupTable();
+    initListenerDispatch();
   }
 
   /**
@@ -301,4 +321,244 @@ public class ConfigUtil {
   public boolean isAutoUpdateInjectedSpringPropertiesEnabled() {
     return autoUpdateInjectedSpringProperties;
   }
+
+  private void initDeltaConfigEnabled() {
+    // 1. Get from System Property
+    String enableDeltaConfig = System.getProperty("apollo.deltaConfigEnabled");
+    if (Strings.isNullOrEmpty(enableDeltaConfig)) {
+      // 2. Get from app.properties
+      enableDeltaConfig = Foundation.app().getProperty("apollo.deltaConfigEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableDeltaConfig)) {
+      deltaConfigEnabled = Boolean.parseBoolean(enableDeltaConfig.trim());
+    }
+  }
+
+  /**
+   * @return whether to ask the config service for only the changed keys since the release already loaded
+   */
+  public boolean isDeltaConfigEnabled() {
+    return deltaConfigEnabled;
+  }
+
+  private void initBatchConfigLoadEnabled() {
+    // 1. Get from System Property
+    String enableBatchConfigLoad = System.getProperty("apollo.batchConfigLoadEnabled");
+    if (Strings.isNullOrEmpty(enableBatchConfigLoad)) {
+      // 2. Get from app.properties
+      enableBatchConfigLoad = Foundation.app().getProperty("apollo.batchConfigLoadEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableBatchConfigLoad)) {
+      batchConfigLoadEnabled = Boolean.parseBoolean(enableBatchConfigLoad.trim());
+    }
+  }
+
+  /**
+   * @return whether to load the configs of the namespaces known at startup in one request
+   */
+  public boolean isBatchConfigLoadEnabled() {
+    return batchConfigLoadEnabled;
+  }
+
+  private void initParallelBootstrap() {
+    // 1. Get from System Property
+    String enableParallelBootstrap = System.getProperty("apollo.parallelBootstrapEnabled");
+    if (Strings.isNullOrEmpty(enableParallelBootstrap)) {
+      // 2. Get from app.properties
+      enableParallelBootstrap = Foundation.app().getProperty("apollo.parallelBootstrapEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableParallelBootstrap)) {
+      parallelBootstrapEnabled = Boolean.parseBoolean(enableParallelBootstrap.trim());
+    }
+
+    String customizedParallelBootstrapTimeout = System.getProperty("apollo.parallelBootstrapTimeoutInMillis");
+    if (Strings.isNullOrEmpty(customizedParallelBootstrapTimeout)) {
+      customizedParallelBootstrapTimeout = Foundation.app().getProperty("apollo.parallelBootstrapTimeoutInMillis",
+          null);
+    }
+    if (!Strings.isNullOrEmpty(customizedParallelBootstrapTimeout)) {
+      try {
+        parallelBootstrapTimeoutInMillis = Long.valueOf(customizedParallelBootstrapTimeout.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.parallelBootstrapTimeoutInMillis is invalid: {}",
+            customizedParallelBootstrapTimeout);
+      }
+    }
+  }
+
+  /**
+   * @return whether to create the configs of the namespaces known at startup in parallel
+   */
+  public boolean isParallelBootstrapEnabled() {
+    return parallelBootstrapEnabled;
+  }
+
+  /**
+   * @return how long the parallel bootstrap waits for the remote configs, after which the configs are served from the
+   * local cache files until the remote configs are loaded
+   */
+  public long getParallelBootstrapTimeoutInMillis() {
+    return parallelBootstrapTimeoutInMillis;
+  }
+
+  private void initLongPollMultiplexEnabled() {
+    // 1. Get from System Property
+    String enableLongPollMultiplex = System.getProperty("apollo.longPollMultiplexEnabled");
+    if (Strings.isNullOrEmpty(enableLongPollMultiplex)) {
+      // 2. Get from app.properties
+      enableLongPollMultiplex = Foundation.app().getProperty("apollo.longPollMultiplexEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableLongPollMultiplex)) {
+      longPollMultiplexEnabled = Boolean.parseBoolean(enableLongPollMultiplex.trim());
+    }
+  }
+
+  /**
+   * @return whether to long poll the namespaces of all the apps in the process with one connection, which needs the
+   * config service to support the multiplexed long polling
+   */
+  public boolean isLongPollMultiplexEnabled() {
+    return longPollMultiplexEnabled;
+  }
+
+  private void initNotificationStreamEnabled() {
+    // 1. Get from System Property
+    String enableNotificationStream = System.getProperty("apollo.notificationStreamEnabled");
+    if (Strings.isNullOrEmpty(enableNotificationStream)) {
+      // 2. Get from app.properties
+      enableNotificationStream = Foundation.app().getProperty("apollo.notificationStreamEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableNotificationStream)) {
+      notificationStreamEnabled = Boolean.parseBoolean(enableNotificationStream.trim());
+    }
+  }
+
+  /**
+   * @return whether to prefer the server-sent notification stream to long polling, default to false. The client falls
+   * back to long polling if the config service doesn't support it, or the stream is buffered on the way, e.g. by a proxy
+   */
+  public boolean isNotificationStreamEnabled() {
+    return notificationStreamEnabled;
+  }
+
+  private void initTypedPropertySnapshotEnabled() {
+    // 1. Get from System Property
+    String enableTypedPropertySnapshot = System.getProperty("apollo.typedPropertySnapshotEnabled");
+    if (Strings.isNullOrEmpty(enableTypedPropertySnapshot)) {
+      // 2. Get from app.properties
+      enableTypedPropertySnapshot = Foundation.app().getProperty("apollo.typedPropertySnapshotEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableTypedPropertySnapshot)) {
+      typedPropertySnapshotEnabled = Boolean.parseBoolean(enableTypedPropertySnapshot.trim());
+    }
+  }
+
+  /**
+   * @return whether to keep the parsed typed properties in a lock free snapshot of the current config version, which
+   * holds at most {@link #getMaxConfigCacheSize()} values and never expires, instead of the caches expiring after access
+   */
+  public boolean isTypedPropertySnapshotEnabled() {
+    return typedPropertySnapshotEnabled;
+  }
+
+  private void initPropertyLookupTable() {
+    // 1. Get from System Property
+    String enablePropertyLookupTable = System.getProperty("apollo.propertyLookupTableEnabled");
+    if (Strings.isNullOrEmpty(enablePropertyLookupTable)) {
+      // 2. Get from app.properties
+      enablePropertyLookupTable = Foundation.app().getProperty("apollo.propertyLookupTableEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enablePropertyLookupTable)) {
+      propertyLookupTableEnabled = Boolean.parseBoolean(enablePropertyLookupTable.trim());
+    }
+
+    String customizedRefreshInterval = System.getProperty("apollo.propertyLookupTableRefreshIntervalInSeconds");
+    if (Strings.isNullOrEmpty(customizedRefreshInterval)) {
+      customizedRefreshInterval = Foundation.app()
+          .getProperty("apollo.propertyLookupTableRefreshIntervalInSeconds", null);
+    }
+    if (!Strings.isNullOrEmpty(customizedRefreshInterval)) {
+      try {
+        propertyLookupTableRefreshIntervalInSeconds = Long.parseLong(customizedRefreshInterval.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.propertyLookupTableRefreshIntervalInSeconds is invalid: {}",
+            customizedRefreshInterval);
+      }
+    }
+  }
+
+  /**
+   * @return whether to look up the properties in plain hash tables instead of the synchronized system properties and
+   * configs, the system properties and env variables are shared by all the namespaces and refreshed periodically
+   */
+  public boolean isPropertyLookupTableEnabled() {
+    return propertyLookupTableEnabled;
+  }
+
+  /**
+   * @return the interval to pick up the changes of the system properties and env variables in the lookup table, not
+   * refreshed if not positive, only read by the first namespace using the lookup table
+   */
+  public long getPropertyLookupTableRefreshIntervalInSeconds() {
+    return propertyLookupTableRefreshIntervalInSeconds;
+  }
+
+  private void initListenerDispatch() {
+    String customizedListenerDispatchThreads = System.getProperty("apollo.listenerDispatchThreads");
+    if (Strings.isNullOrEmpty(customizedListenerDispatchThreads)) {
+      customizedListenerDispatchThreads = Foundation.app().getProperty("apollo.listenerDispatchThreads", null);
+    }
+    if (!Strings.isNullOrEmpty(customizedListenerDispatchThreads)) {
+      try {
+        listenerDispatchThreads = Integer.parseInt(customizedListenerDispatchThreads.trim());
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.listenerDispatchThreads is invalid: {}", customizedListenerDispatchThreads);
+      }
+    }
+
+    // 1. Get from System Property
+    String enableListenerEventCoalescing = System.getProperty("apollo.listenerEventCoalescingEnabled");
+    if (Strings.isNullOrEmpty(enableListenerEventCoalescing)) {
+      // 2. Get from app.properties
+      enableListenerEventCoalescing = Foundation.app().getProperty("apollo.listenerEventCoalescingEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableListenerEventCoalescing)) {
+      listenerEventCoalescingEnabled = Boolean.parseBoolean(enableListenerEventCoalescing.trim());
+    }
+
+    // 1. Get from System Property
+    String enableVirtualThreads = System.getProperty("apollo.listenerDispatchVirtualThreadsEnabled");
+    if (Strings.isNullOrEmpty(enableVirtualThreads)) {
+      // 2. Get from app.properties
+      enableVirtualThreads = Foundation.app().getProperty("apollo.listenerDispatchVirtualThreadsEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableVirtualThreads)) {
+      listenerDispatchVirtualThreadsEnabled = Boolean.parseBoolean(enableVirtualThreads.trim());
+    }
+  }
+
+  /**
+   * @return the max number of the threads to invoke the change listeners, twice the available processors (at least 2)
+   * if not positive. The events of one listener are always delivered one after another, so there is at most one thread
+   * per listener anyway
+   */
+  public int getListenerDispatchThreads() {
+    return listenerDispatchThreads;
+  }
+
+  /**
+   * @return whether to coalesce the change events waiting for the same listener into one, so that a slow listener only
+   * sees the latest values instead of each intermediate change
+   */
+  public boolean isListenerEventCoalescingEnabled() {
+    return listenerEventCoalescingEnabled;
+  }
+
+  /**
+   * @return whether to invoke the change listeners with virtual threads, which needs jdk 21 or above, otherwise the
+   * platform threads are used
+   */
+  public boolean isListenerDispatchVirtualThreadsEnabled() {
+    return listenerDispatchVirtualThreadsEnabled;
+  }
 }
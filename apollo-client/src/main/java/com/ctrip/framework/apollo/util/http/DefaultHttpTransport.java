@@ -0,0 +1,76 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * {@link HttpTransport} based on {@link HttpURLConnection}.
+ *
+ * <p>The connections are kept alive and pooled per host by the jdk, as long as the response body is read up and
+ * closed, which is guaranteed by {@link HttpTransportResponse#close()}. The pool size per host could be tuned with the
+ * <code>http.maxConnections</code> system property.</p>
+ */
+public class DefaultHttpTransport implements HttpTransport {
+  private static final String GZIP_ENCODING = "gzip";
+
+  @Override
+  public HttpTransportResponse doGet(String url, int connectTimeout, int readTimeout) throws IOException {
+    return doRequest("GET", url, null, null, connectTimeout, readTimeout);
+  }
+
+  @Override
+  public HttpTransportResponse doPost(String url, String contentType, byte[] body, int connectTimeout,
+                                      int readTimeout) throws IOException {
+    return doRequest("POST", url, contentType, body, connectTimeout, readTimeout);
+  }
+
+  private HttpTransportResponse doRequest(String method, String url, String contentType, byte[] requestBody,
+                                          int connectTimeout, int readTimeout) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+
+    conn.setRequestMethod(method);
+    conn.setConnectTimeout(connectTimeout);
+    conn.setReadTimeout(readTimeout);
+    conn.setRequestProperty("Accept-Encoding", GZIP_ENCODING);
+
+    if (requestBody != null) {
+      conn.setDoOutput(true);
+      conn.setFixedLengthStreamingMode(requestBody.length);
+      conn.setRequestProperty("Content-Type", contentType);
+      try (OutputStream out = conn.getOutputStream()) {
+        out.write(requestBody);
+      }
+    } else {
+      conn.connect();
+    }
+
+    int statusCode = conn.getResponseCode();
+
+    InputStream body;
+    try {
+      body = conn.getInputStream();
+    } catch (IOException ex) {
+      // 200 and 304 should not trigger IOException, thus we must throw the original exception out
+      if (statusCode == 200 || statusCode == 304) {
+        throw ex;
+      }
+      /**
+       * for status codes like 404, IOException is expected when calling conn.getInputStream(), and according to
+       * https://docs.oracle.com/javase/7/docs/technotes/guides/net/http-keepalive.html, we should clean up the
+       * connection by reading the error body so that the connection could be reused.
+       */
+      return new HttpTransportResponse(statusCode, conn.getErrorStream());
+    }
+
+    //304 has no body to decompress
+    if (statusCode == 200 && GZIP_ENCODING.equalsIgnoreCase(conn.getContentEncoding())) {
+      body = new GZIPInputStream(body);
+    }
+
+    return new HttpTransportResponse(statusCode, body);
+  }
+}
@@ -0,0 +1,32 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.io.Closeable;
+
+/**
+ * Listener of a server-sent events stream read by {@link HttpUtil#doGetEventStream}
+ */
+public interface HttpEventStreamListener<T> {
+
+  /**
+   * Called once the stream is open, before any event is read
+   *
+   * @param stream closes the stream from another thread without blocking, nothing read afterwards is passed to the
+   *               listener, see {@link HttpTransportResponse#abort()} for when the read blocked meanwhile ends
+   */
+  void onOpen(Closeable stream);
+
+  /**
+   * Called with the data of each event
+   *
+   * @param event the deserialized data of the event
+   * @return whether to keep reading the stream
+   */
+  boolean onEvent(T event);
+
+  /**
+   * Called for each comment line, which the server sends as a heartbeat
+   *
+   * @return whether to keep reading the stream
+   */
+  boolean onHeartbeat();
+}
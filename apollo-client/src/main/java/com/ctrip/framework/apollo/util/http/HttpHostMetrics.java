@@ -0,0 +1,44 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The request statistics of a single host
+ */
+public class HttpHostMetrics {
+  private final AtomicLong m_requestCount = new AtomicLong();
+  private final AtomicLong m_failureCount = new AtomicLong();
+  private final AtomicLong m_totalLatencyInMillis = new AtomicLong();
+
+  void record(long latencyInMillis, boolean failed) {
+    m_requestCount.incrementAndGet();
+    m_totalLatencyInMillis.addAndGet(latencyInMillis);
+    if (failed) {
+      m_failureCount.incrementAndGet();
+    }
+  }
+
+  public long getRequestCount() {
+    return m_requestCount.get();
+  }
+
+  /**
+   * @return the count of the requests which could not be completed or were answered with neither 200 nor 304
+   */
+  public long getFailureCount() {
+    return m_failureCount.get();
+  }
+
+  public long getTotalLatencyInMillis() {
+    return m_totalLatencyInMillis.get();
+  }
+
+  @Override
+  public String toString() {
+    return "HttpHostMetrics{" +
+        "requestCount=" + getRequestCount() +
+        ", failureCount=" + getFailureCount() +
+        ", totalLatencyInMillis=" + getTotalLatencyInMillis() +
+        '}';
+  }
+}
@@ -7,6 +7,8 @@ public class HttpRequest {
   private String m_url;
   private int m_connectTimeout;
   private int m_readTimeout;
+  private String m_contentType;
+  private byte[] m_body;
 
   /**
    * Create the request for the url.
@@ -37,4 +39,22 @@ public class HttpRequest {
   public void setReadTimeout(int readTimeout) {
     this.m_readTimeout = readTimeout;
   }
+
+  public String getContentType() {
+    return m_contentType;
+  }
+
+  public byte[] getBody() {
+    return m_body;
+  }
+
+  /**
+   * Set the body sent by {@link HttpUtil#doPost}.
+   * @param contentType the content type of the body
+   * @param body the body
+   */
+  public void setBody(String contentType, byte[] body) {
+    this.m_contentType = contentType;
+    this.m_body = body;
+  }
 }
@@ -0,0 +1,37 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.io.IOException;
+
+/**
+ * The transport used by {@link HttpUtil} to talk to the meta service and the config service.
+ *
+ * <p>The default one is {@link DefaultHttpTransport}, and could be replaced by binding another implementation in a
+ * custom {@link com.ctrip.framework.apollo.internals.Injector}.</p>
+ */
+public interface HttpTransport {
+
+  /**
+   * Do get operation for the url.
+   *
+   * @param url            the url
+   * @param connectTimeout the connect timeout in milliseconds
+   * @param readTimeout    the read timeout in milliseconds
+   * @return the response, which must be closed by the caller so that the connection could be reused
+   * @throws IOException if the request could not be completed
+   */
+  HttpTransportResponse doGet(String url, int connectTimeout, int readTimeout) throws IOException;
+
+  /**
+   * Do post operation for the url.
+   *
+   * @param url            the url
+   * @param contentType    the content type of the body
+   * @param body           the body
+   * @param connectTimeout the connect timeout in milliseconds
+   * @param readTimeout    the read timeout in milliseconds
+   * @return the response, which must be closed by the caller so that the connection could be reused
+   * @throws IOException if the request could not be completed
+   */
+  HttpTransportResponse doPost(String url, String contentType, byte[] body, int connectTimeout, int readTimeout)
+      throws IOException;
+}
@@ -0,0 +1,65 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The raw response of a {@link HttpTransport}, whose body is streamed instead of being read into memory first
+ */
+public class HttpTransportResponse implements Closeable {
+  private static final int DRAIN_BUFFER_SIZE = 4096;
+
+  private final int m_statusCode;
+  private final InputStream m_body;
+
+  /**
+   * @param statusCode the status code
+   * @param body       the decoded body, or null if there is none
+   */
+  public HttpTransportResponse(int statusCode, InputStream body) {
+    this.m_statusCode = statusCode;
+    this.m_body = body;
+  }
+
+  public int getStatusCode() {
+    return m_statusCode;
+  }
+
+  /**
+   * @return the decoded body, or null if there is none
+   */
+  public InputStream getBody() {
+    return m_body;
+  }
+
+  /**
+   * Called from another thread to end the read of the body right away, e.g. when a stream is not needed any more. It
+   * must not block, and the body is closed by the reader afterwards without reading up the rest of it.
+   *
+   * <p>Does nothing by default, as a read blocked on {@link java.net.HttpURLConnection} could only be ended by the
+   * next data received, after which the reader stops. Transports able to cancel the call should override it.</p>
+   *
+   * @throws IOException if the call could not be cancelled
+   */
+  public void abort() throws IOException {
+  }
+
+  /**
+   * Read up the rest of the body before closing it, so that the underlying connection could be kept alive
+   */
+  @Override
+  public void close() throws IOException {
+    if (m_body == null) {
+      return;
+    }
+    try {
+      byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+      while (m_body.read(buffer) != -1) {
+        //drain
+      }
+    } finally {
+      m_body.close();
+    }
+  }
+}
@@ -5,28 +5,40 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Function;
-import com.google.common.io.CharStreams;
+import com.google.common.collect.Maps;
 import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class HttpUtil {
+  private static final String UNKNOWN_HOST = "unknown";
+  private static final String EVENT_STREAM_DATA_PREFIX = "data:";
+  private static final String EVENT_STREAM_COMMENT_PREFIX = ":";
   private ConfigUtil m_configUtil;
+  private HttpTransport m_transport;
   private Gson gson;
+  private final ConcurrentMap<String, HttpHostMetrics> m_hostMetrics = Maps.newConcurrentMap();
 
   /**
    * Constructor.
    */
   public HttpUtil() {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_transport = ApolloInjector.getInstance(HttpTransport.class);
     gson = new Gson();
   }
 
@@ -39,14 +51,14 @@ public class HttpUtil {
    * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
    */
   public <T> HttpResponse<T> doGet(HttpRequest httpRequest, final Class<T> responseType) {
-    Function<String, T> convertResponse = new Function<String, T>() {
+    Function<Reader, T> convertResponse = new Function<Reader, T>() {
       @Override
-      public T apply(String input) {
+      public T apply(Reader input) {
         return gson.fromJson(input, responseType);
       }
     };
 
-    return doGetWithSerializeFunction(httpRequest, convertResponse);
+    return doRequestWithSerializeFunction(httpRequest, false, convertResponse);
   }
 
   /**
@@ -58,104 +70,191 @@ public class HttpUtil {
    * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
    */
   public <T> HttpResponse<T> doGet(HttpRequest httpRequest, final Type responseType) {
-    Function<String, T> convertResponse = new Function<String, T>() {
+    Function<Reader, T> convertResponse = new Function<Reader, T>() {
       @Override
-      public T apply(String input) {
+      public T apply(Reader input) {
         return gson.fromJson(input, responseType);
       }
     };
 
-    return doGetWithSerializeFunction(httpRequest, convertResponse);
+    return doRequestWithSerializeFunction(httpRequest, false, convertResponse);
   }
 
-  private <T> HttpResponse<T> doGetWithSerializeFunction(HttpRequest httpRequest,
-                                                         Function<String, T> serializeFunction) {
-    InputStreamReader isr = null;
-    InputStreamReader esr = null;
-    int statusCode;
-    try {
-      HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
+  /**
+   * Do post operation for the http request, whose body is set by {@link HttpRequest#setBody}.
+   *
+   * @param httpRequest  the request
+   * @param responseType the response type
+   * @return the response
+   * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
+   */
+  public <T> HttpResponse<T> doPost(HttpRequest httpRequest, final Type responseType) {
+    Function<Reader, T> convertResponse = new Function<Reader, T>() {
+      @Override
+      public T apply(Reader input) {
+        return gson.fromJson(input, responseType);
+      }
+    };
 
-      conn.setRequestMethod("GET");
+    return doRequestWithSerializeFunction(httpRequest, true, convertResponse);
+  }
 
-      int connectTimeout = httpRequest.getConnectTimeout();
-      if (connectTimeout < 0) {
-        connectTimeout = m_configUtil.getConnectTimeout();
-      }
+  /**
+   * Do get operation for a server-sent events stream. The data of each event is deserialized to the event type and
+   * passed to the listener, until the stream is ended by the server, the listener asks to stop, or the stream is closed
+   * with the handle passed to {@link HttpEventStreamListener#onOpen}.
+   *
+   * @param httpRequest the request, whose read timeout should be longer than the heartbeat interval of the server
+   * @param eventType   the type of the event data
+   * @param listener    the listener of the events
+   * @throws ApolloConfigException if any error happened or response code is not 200
+   */
+  public <T> void doGetEventStream(HttpRequest httpRequest, Type eventType, HttpEventStreamListener<T> listener) {
+    int connectTimeout = httpRequest.getConnectTimeout();
+    if (connectTimeout < 0) {
+      connectTimeout = m_configUtil.getConnectTimeout();
+    }
 
-      int readTimeout = httpRequest.getReadTimeout();
-      if (readTimeout < 0) {
-        readTimeout = m_configUtil.getReadTimeout();
-      }
+    int readTimeout = httpRequest.getReadTimeout();
+    if (readTimeout < 0) {
+      readTimeout = m_configUtil.getReadTimeout();
+    }
 
-      conn.setConnectTimeout(connectTimeout);
-      conn.setReadTimeout(readTimeout);
-
-      conn.connect();
-
-      statusCode = conn.getResponseCode();
-      String response;
-
-      try {
-        isr = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8);
-        response = CharStreams.toString(isr);
-      } catch (IOException ex) {
-        /**
-         * according to https://docs.oracle.com/javase/7/docs/technotes/guides/net/http-keepalive.html,
-         * we should clean up the connection by reading the response body so that the connection
-         * could be reused.
-         */
-        InputStream errorStream = conn.getErrorStream();
-
-        if (errorStream != null) {
-          esr = new InputStreamReader(errorStream, StandardCharsets.UTF_8);
-          try {
-            CharStreams.toString(esr);
-          } catch (IOException ioe) {
-            //ignore
+    int statusCode;
+    HttpTransportResponse response = null;
+    try {
+      response = m_transport.doGet(httpRequest.getUrl(), connectTimeout, readTimeout);
+      statusCode = response.getStatusCode();
+
+      if (statusCode == 200) {
+        final HttpTransportResponse stream = response;
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        listener.onOpen(new Closeable() {
+          @Override
+          public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+              stream.abort();
+            }
           }
+        });
+        readEventStream(new BufferedReader(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)),
+            eventType, listener, closed);
+        return;
+      }
+    } catch (Throwable ex) {
+      throw new ApolloConfigException("Could not complete event stream", ex);
+    } finally {
+      //close without draining, as the stream might not be ended yet
+      if (response != null && response.getBody() != null) {
+        try {
+          response.getBody().close();
+        } catch (IOException ex) {
+          //ignore
         }
+      }
+    }
 
-        // 200 and 304 should not trigger IOException, thus we must throw the original exception out
-        if (statusCode == 200 || statusCode == 304) {
-          throw ex;
-        } else {
-          // for status codes like 404, IOException is expected when calling conn.getInputStream()
-          throw new ApolloConfigStatusCodeException(statusCode, ex);
+    throw new ApolloConfigStatusCodeException(statusCode,
+        String.format("Get event stream failed for %s", httpRequest.getUrl()));
+  }
+
+  private <T> void readEventStream(BufferedReader reader, Type eventType, HttpEventStreamListener<T> listener,
+                                   AtomicBoolean closed) throws IOException {
+    StringBuilder data = new StringBuilder();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (closed.get()) {
+        //closed while the line was being read
+        return;
+      }
+      boolean keepReading = true;
+      if (line.isEmpty()) {
+        //a blank line dispatches the event
+        if (data.length() > 0) {
+          T event = gson.fromJson(data.toString(), eventType);
+          data.setLength(0);
+          keepReading = listener.onEvent(event);
+        }
+      } else if (line.startsWith(EVENT_STREAM_COMMENT_PREFIX)) {
+        keepReading = listener.onHeartbeat();
+      } else if (line.startsWith(EVENT_STREAM_DATA_PREFIX)) {
+        if (data.length() > 0) {
+          data.append('\n');
         }
+        String value = line.substring(EVENT_STREAM_DATA_PREFIX.length());
+        //a single leading space is not part of the value
+        data.append(value.startsWith(" ") ? value.substring(1) : value);
       }
+      //the other fields, e.g. event and id, are not used
+
+      if (!keepReading) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the request statistics of each host, keyed by host:port
+   */
+  public Map<String, HttpHostMetrics> getHostMetrics() {
+    return Collections.unmodifiableMap(m_hostMetrics);
+  }
+
+  private <T> HttpResponse<T> doRequestWithSerializeFunction(HttpRequest httpRequest, boolean post,
+                                                             Function<Reader, T> serializeFunction) {
+    int connectTimeout = httpRequest.getConnectTimeout();
+    if (connectTimeout < 0) {
+      connectTimeout = m_configUtil.getConnectTimeout();
+    }
+
+    int readTimeout = httpRequest.getReadTimeout();
+    if (readTimeout < 0) {
+      readTimeout = m_configUtil.getReadTimeout();
+    }
+
+    long start = System.currentTimeMillis();
+    boolean failed = true;
+    int statusCode;
+    try (HttpTransportResponse response = post ?
+        m_transport.doPost(httpRequest.getUrl(), httpRequest.getContentType(), httpRequest.getBody(), connectTimeout,
+            readTimeout) : m_transport.doGet(httpRequest.getUrl(), connectTimeout, readTimeout)) {
+      statusCode = response.getStatusCode();
 
       if (statusCode == 200) {
-        return new HttpResponse<>(statusCode, serializeFunction.apply(response));
+        //deserialize from the stream directly instead of reading the whole body into a string first
+        T body = serializeFunction.apply(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+        failed = false;
+        return new HttpResponse<>(statusCode, body);
       }
 
       if (statusCode == 304) {
+        failed = false;
         return new HttpResponse<>(statusCode, null);
       }
-    } catch (ApolloConfigStatusCodeException ex) {
-      throw ex;
     } catch (Throwable ex) {
-      throw new ApolloConfigException("Could not complete get operation", ex);
+      throw new ApolloConfigException(String.format("Could not complete %s operation", post ? "post" : "get"), ex);
     } finally {
-      if (isr != null) {
-        try {
-          isr.close();
-        } catch (IOException ex) {
-          // ignore
-        }
-      }
-
-      if (esr != null) {
-        try {
-          esr.close();
-        } catch (IOException ex) {
-          // ignore
-        }
-      }
+      findOrCreateHostMetrics(httpRequest.getUrl()).record(System.currentTimeMillis() - start, failed);
     }
 
     throw new ApolloConfigStatusCodeException(statusCode,
-        String.format("Get operation failed for %s", httpRequest.getUrl()));
+        String.format("%s operation failed for %s", post ? "Post" : "Get", httpRequest.getUrl()));
+  }
+
+  private HttpHostMetrics findOrCreateHostMetrics(String url) {
+    String host;
+    try {
+      URL parsed = new URL(url);
+      host = String.format("%s:%d", parsed.getHost(), parsed.getPort() == -1 ? parsed.getDefaultPort() : parsed.getPort());
+    } catch (MalformedURLException ex) {
+      host = UNKNOWN_HOST;
+    }
+    HttpHostMetrics metrics = m_hostMetrics.get(host);
+    if (metrics == null) {
+      m_hostMetrics.putIfAbsent(host, new HttpHostMetrics());
+      metrics = m_hostMetrics.get(host);
+    }
+    return metrics;
   }
 
 }
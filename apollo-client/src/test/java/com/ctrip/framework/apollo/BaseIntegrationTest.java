@@ -198,6 +198,12 @@ public abstract class BaseIntegrationTest{
     public long getLongPollingInitialDelayInMills() {
       return 0;
     }
+
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      //the mock server only serves long polling
+      return false;
+    }
   }
 
   /**
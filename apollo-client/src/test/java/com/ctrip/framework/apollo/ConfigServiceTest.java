@@ -1,6 +1,9 @@
 package com.ctrip.framework.apollo;
 
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import java.util.Set;
@@ -12,9 +15,11 @@ import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.internals.AbstractConfig;
+import com.ctrip.framework.apollo.internals.ConfigManager;
 import com.ctrip.framework.apollo.internals.DefaultInjector;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -82,6 +87,17 @@ public class ConfigServiceTest {
     assertEquals(someNamespaceFileName + ":" + someConfigFileFormat.getValue(), configFile.getContent());
   }
 
+  @Test
+  public void testPreloadConfigsWithCustomConfigManager() throws Exception {
+    ConfigManager someConfigManager = mock(ConfigManager.class);
+    MockInjector.setInstance(ConfigManager.class, someConfigManager);
+
+    ConfigService.preloadConfigs(Lists.newArrayList("someNamespace", "anotherNamespace"));
+
+    verify(someConfigManager, times(1)).getConfig("someNamespace");
+    verify(someConfigManager, times(1)).getConfig("anotherNamespace");
+  }
+
   private static class MockConfig extends AbstractConfig {
     private final String m_namespace;
 
@@ -0,0 +1,60 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class ConfigChangeListenerIndexTest {
+
+  @Test
+  public void testFindInterestedListeners() throws Exception {
+    ConfigChangeListener someListener = mock(ConfigChangeListener.class);
+    ConfigChangeListener keyListener = mock(ConfigChangeListener.class);
+    ConfigChangeListener prefixListener = mock(ConfigChangeListener.class);
+    ConfigChangeListener anotherPrefixListener = mock(ConfigChangeListener.class);
+    ConfigChangeListener keyAndPrefixListener = mock(ConfigChangeListener.class);
+
+    Map<ConfigChangeListener, Set<String>> interestedKeys = ImmutableMap.<ConfigChangeListener, Set<String>>of(
+        keyListener, ImmutableSet.of("someKey", "anotherKey"),
+        keyAndPrefixListener, ImmutableSet.of("yetAnotherKey"));
+    Map<ConfigChangeListener, Set<String>> interestedKeyPrefixes = ImmutableMap.<ConfigChangeListener, Set<String>>of(
+        prefixListener, ImmutableSet.of("some.prefix."),
+        anotherPrefixListener, ImmutableSet.of("some."),
+        keyAndPrefixListener, ImmutableSet.of("another."));
+
+    ConfigChangeListenerIndex index = ConfigChangeListenerIndex.build(
+        Lists.newArrayList(someListener, keyListener, prefixListener, anotherPrefixListener, keyAndPrefixListener),
+        interestedKeys, interestedKeyPrefixes);
+
+    assertEquals(Lists.newArrayList(someListener, keyListener),
+        index.findInterestedListeners(ImmutableSet.of("anotherKey", "someOtherKey")));
+    assertEquals(Lists.newArrayList(someListener, prefixListener, anotherPrefixListener),
+        index.findInterestedListeners(ImmutableSet.of("some.prefix.key")));
+    assertEquals(Lists.newArrayList(someListener, anotherPrefixListener),
+        index.findInterestedListeners(ImmutableSet.of("some.prefix")));
+    assertEquals(Lists.newArrayList(someListener, keyListener, anotherPrefixListener, keyAndPrefixListener),
+        index.findInterestedListeners(ImmutableSet.of("another.key", "some.key", "someKey")));
+    assertEquals(Lists.newArrayList(someListener), index.findInterestedListeners(Collections.<String>emptySet()));
+  }
+
+  @Test
+  public void testFindInterestedListenersWithEmptyPrefix() throws Exception {
+    ConfigChangeListener someListener = mock(ConfigChangeListener.class);
+
+    ConfigChangeListenerIndex index = ConfigChangeListenerIndex.build(Lists.newArrayList(someListener),
+        Collections.<ConfigChangeListener, Set<String>>emptyMap(),
+        ImmutableMap.<ConfigChangeListener, Set<String>>of(someListener, ImmutableSet.of("")));
+
+    assertEquals(Lists.newArrayList(someListener), index.findInterestedListeners(ImmutableSet.of("someKey")));
+    assertTrue(ConfigChangeListenerIndex.EMPTY.findInterestedListeners(ImmutableSet.of("someKey")).isEmpty());
+  }
+}
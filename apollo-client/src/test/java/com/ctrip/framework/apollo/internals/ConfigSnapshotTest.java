@@ -0,0 +1,99 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class ConfigSnapshotTest {
+
+  @Test
+  public void testOf() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+
+    ConfigSnapshot snapshot = ConfigSnapshot.of(someProperties);
+    someProperties.setProperty(someKey, "anotherValue");
+
+    assertEquals(someValue, snapshot.getProperty(someKey));
+    assertSame(snapshot, ConfigSnapshot.of(snapshot));
+    assertEquals(ImmutableMap.of(someKey, someValue), ConfigSnapshot.of(ImmutableMap.of(someKey, someValue)));
+    assertTrue(ConfigSnapshot.of((Properties) null).isEmpty());
+    assertTrue(ConfigSnapshot.of((Map<String, String>) null).isEmpty());
+  }
+
+  @Test
+  public void testEquals() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty("k1", "v1");
+    someProperties.setProperty("k2", "v2");
+
+    ConfigSnapshot snapshot = ConfigSnapshot.of(someProperties);
+    ConfigSnapshot sameSnapshot = ConfigSnapshot.of(ImmutableMap.of("k1", "v1", "k2", "v2"));
+    ConfigSnapshot anotherSnapshot = ConfigSnapshot.of(ImmutableMap.of("k1", "v1", "k2", "v3"));
+
+    assertEquals(someProperties, snapshot);
+    assertEquals(snapshot, someProperties);
+    assertEquals(someProperties.hashCode(), snapshot.hashCode());
+    assertEquals(snapshot, sameSnapshot);
+    assertEquals(snapshot.hashCode(), sameSnapshot.hashCode());
+    assertFalse(snapshot.equals(anotherSnapshot));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetProperty() throws Exception {
+    ConfigSnapshot.of(ImmutableMap.of("someKey", "someValue")).setProperty("anotherKey", "anotherValue");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testRemove() throws Exception {
+    ConfigSnapshot.of(ImmutableMap.of("someKey", "someValue")).remove("someKey");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testMerge() throws Exception {
+    ConfigSnapshot.of(ImmutableMap.of("someKey", "someValue")).merge("someKey", "anotherValue",
+        new BiFunction<Object, Object, Object>() {
+          @Override
+          public Object apply(Object oldValue, Object value) {
+            return value;
+          }
+        });
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testComputeIfAbsent() throws Exception {
+    ConfigSnapshot.of(ImmutableMap.of("someKey", "someValue")).computeIfAbsent("anotherKey",
+        new Function<Object, Object>() {
+          @Override
+          public Object apply(Object key) {
+            return "anotherValue";
+          }
+        });
+  }
+
+  @Test
+  public void testCopyOf() throws Exception {
+    ConfigSnapshot snapshot = ConfigSnapshot.of(ImmutableMap.of("someKey", "someValue"));
+
+    Properties copy = ConfigSnapshot.copyOf(snapshot);
+    copy.setProperty("someKey", "anotherValue");
+
+    assertEquals("someValue", snapshot.getProperty("someKey"));
+    assertEquals(ImmutableMap.of("someKey", "someValue").hashCode(), snapshot.hashCode());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSetEntryValue() throws Exception {
+    ConfigSnapshot.of(ImmutableMap.of("someKey", "someValue")).entrySet().iterator().next().setValue("anotherValue");
+  }
+}
@@ -2,12 +2,17 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -19,6 +24,8 @@ import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -87,6 +94,104 @@ public class DefaultConfigManagerTest {
 
   }
 
+  @Test
+  public void testPreloadConfigsInParallel() throws Exception {
+    String someNamespace = "someName";
+    String anotherNamespace = "anotherName";
+    final Map<String, Long> bootstrapDeadlines = Maps.newConcurrentMap();
+    final AtomicInteger createdCount = new AtomicInteger();
+    final ConfigFactory configFactory = new MockConfigFactoryManager().getFactory(someNamespace);
+
+    MockInjector.setInstance(ConfigFactoryManager.class, new ConfigFactoryManager() {
+      @Override
+      public ConfigFactory getFactory(String namespace) {
+        return new ConfigFactory() {
+          @Override
+          public Config create(String namespace) {
+            createdCount.incrementAndGet();
+            bootstrapDeadlines.put(namespace, ConfigBootstrapDeadline.get());
+            return configFactory.create(namespace);
+          }
+
+          @Override
+          public ConfigFile createConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+            return configFactory.createConfigFile(namespace, configFileFormat);
+          }
+        };
+      }
+    });
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil() {
+      @Override
+      public boolean isParallelBootstrapEnabled() {
+        return true;
+      }
+    });
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, mock(RemoteConfigBatchLoader.class));
+    defaultConfigManager = new DefaultConfigManager();
+
+    defaultConfigManager.preloadConfigs(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    assertEquals(2, createdCount.get());
+    assertNotNull(bootstrapDeadlines.get(someNamespace));
+    assertNotNull(bootstrapDeadlines.get(anotherNamespace));
+    assertNull(ConfigBootstrapDeadline.get());
+
+    //the configs created are reused
+    defaultConfigManager.getConfig(someNamespace);
+    assertEquals(2, createdCount.get());
+  }
+
+  @Test(timeout = 5000)
+  public void testPreloadConfigsInParallelTimeout() throws Exception {
+    String someNamespace = "someName";
+    String anotherNamespace = "anotherName";
+    final CountDownLatch creationBlocked = new CountDownLatch(1);
+    final ConfigFactory configFactory = new MockConfigFactoryManager().getFactory(someNamespace);
+
+    MockInjector.setInstance(ConfigFactoryManager.class, new ConfigFactoryManager() {
+      @Override
+      public ConfigFactory getFactory(String namespace) {
+        return new ConfigFactory() {
+          @Override
+          public Config create(String namespace) {
+            try {
+              creationBlocked.await();
+            } catch (InterruptedException e) {
+              //ignore
+            }
+            return configFactory.create(namespace);
+          }
+
+          @Override
+          public ConfigFile createConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+            return configFactory.createConfigFile(namespace, configFileFormat);
+          }
+        };
+      }
+    });
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil() {
+      @Override
+      public boolean isParallelBootstrapEnabled() {
+        return true;
+      }
+
+      @Override
+      public long getParallelBootstrapTimeoutInMillis() {
+        return 100;
+      }
+    });
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, mock(RemoteConfigBatchLoader.class));
+    defaultConfigManager = new DefaultConfigManager();
+
+    //returns by the deadline even though the configs are not created yet
+    defaultConfigManager.preloadConfigs(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    creationBlocked.countDown();
+
+    assertEquals(someNamespace + ":someKey", defaultConfigManager.getConfig(someNamespace).getProperty("someKey",
+        null));
+  }
+
   public static class MockConfigFactoryManager implements ConfigFactoryManager {
 
     @Override
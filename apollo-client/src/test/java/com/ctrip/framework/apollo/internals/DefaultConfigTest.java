@@ -129,6 +129,103 @@ public class DefaultConfigTest {
     assertEquals(someSourceType, defaultConfig.getSourceType());
   }
 
+  @Test
+  public void testGetPropertyWithAllPropertyHierarchyInLookupTable() throws Exception {
+    String someKey = "someKey";
+    String someSystemPropertyValue = "system-property-value";
+    String anotherSystemPropertyValue = "another-system-property-value";
+
+    String anotherKey = "anotherKey";
+    String someLocalFileValue = "local-file-value";
+
+    String lastKey = "lastKey";
+    String someResourceValue = "resource-value";
+
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithPropertyLookupTable());
+    SystemPropertyLookupTable systemPropertyLookupTable = SystemPropertyLookupTable.getInstance();
+
+    //set up system property
+    System.setProperty(someKey, someSystemPropertyValue);
+    systemPropertyLookupTable.refresh();
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someLocalFileValue);
+    someProperties.setProperty(anotherKey, someLocalFileValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    //set up resource file
+    File resourceFile = new File(someResourceDir, someNamespace + ".properties");
+    Files.write(someKey + "=" + someResourceValue, resourceFile, Charsets.UTF_8);
+    Files.append(System.getProperty("line.separator"), resourceFile, Charsets.UTF_8);
+    Files.append(anotherKey + "=" + someResourceValue, resourceFile, Charsets.UTF_8);
+    Files.append(System.getProperty("line.separator"), resourceFile, Charsets.UTF_8);
+    Files.append(lastKey + "=" + someResourceValue, resourceFile, Charsets.UTF_8);
+
+    String someKeyValue;
+    String someKeyValueBeforeRefresh;
+    String someKeyValueAfterRefresh;
+    DefaultConfig defaultConfig;
+    try {
+      defaultConfig = new DefaultConfig(someNamespace, configRepository);
+      someKeyValue = defaultConfig.getProperty(someKey, null);
+
+      //the system properties are captured in the lookup table until refreshed
+      System.setProperty(someKey, anotherSystemPropertyValue);
+      someKeyValueBeforeRefresh = defaultConfig.getProperty(someKey, null);
+      systemPropertyLookupTable.refresh();
+      someKeyValueAfterRefresh = defaultConfig.getProperty(someKey, null);
+    } finally {
+      //clean up
+      System.clearProperty(someKey);
+      systemPropertyLookupTable.refresh();
+    }
+
+    assertEquals(someSystemPropertyValue, someKeyValue);
+    assertEquals(someSystemPropertyValue, someKeyValueBeforeRefresh);
+    assertEquals(anotherSystemPropertyValue, someKeyValueAfterRefresh);
+    assertEquals(someLocalFileValue, defaultConfig.getProperty(anotherKey, null));
+    assertEquals(someResourceValue, defaultConfig.getProperty(lastKey, null));
+    assertEquals("someDefault", defaultConfig.getProperty("missingKey", "someDefault"));
+
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(anotherKey, someSystemPropertyValue);
+
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
+
+    assertEquals(someSystemPropertyValue, defaultConfig.getProperty(anotherKey, null));
+  }
+
+  @Test
+  public void testClearCacheWhenSystemPropertyLookupTableRefreshed() throws Exception {
+    String someKey = "someKey";
+
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithPropertyLookupTable());
+    SystemPropertyLookupTable systemPropertyLookupTable = SystemPropertyLookupTable.getInstance();
+
+    when(configRepository.getConfig()).thenReturn(new Properties());
+
+    Integer someValue;
+    Integer anotherValue;
+    try {
+      System.setProperty(someKey, "1");
+      systemPropertyLookupTable.refresh();
+
+      DefaultConfig defaultConfig = new DefaultConfig(someNamespace, configRepository);
+      someValue = defaultConfig.getIntProperty(someKey, null);
+
+      System.setProperty(someKey, "2");
+      systemPropertyLookupTable.refresh();
+      anotherValue = defaultConfig.getIntProperty(someKey, null);
+    } finally {
+      System.clearProperty(someKey);
+      systemPropertyLookupTable.refresh();
+    }
+
+    assertEquals(1, someValue.intValue());
+    assertEquals(2, anotherValue.intValue());
+  }
+
   @Test
   public void testGetIntProperty() throws Exception {
     String someStringKey = "someStringKey";
@@ -266,6 +363,73 @@ public class DefaultConfigTest {
     verify(someProperties, times(2)).getProperty(someKey);
   }
 
+  @Test
+  public void testGetTypedPropertiesMultipleTimesWithSnapshot() throws Exception {
+    String someKey = "someKey";
+    Integer someValue = 2;
+    String someInvalidKey = "someInvalidKey";
+    String someInvalidValue = "someInvalidValue";
+    String someDelimiter = ",";
+
+    Integer someDefaultValue = -1;
+
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithTypedPropertySnapshot());
+
+    //set up config repo
+    someProperties = mock(Properties.class);
+    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
+    when(someProperties.getProperty(someInvalidKey)).thenReturn(someInvalidValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+    assertEquals(Long.valueOf(someValue), defaultConfig.getLongProperty(someKey, -1L));
+    assertEquals(Long.valueOf(someValue), defaultConfig.getLongProperty(someKey, -1L));
+    assertArrayEquals(new String[]{String.valueOf(someValue)},
+        defaultConfig.getArrayProperty(someKey, someDelimiter, null));
+    assertArrayEquals(new String[]{String.valueOf(someValue)},
+        defaultConfig.getArrayProperty(someKey, someDelimiter, null));
+
+    //parsed once for each type
+    verify(someProperties, times(3)).getProperty(someKey);
+
+    assertEquals(someDefaultValue, defaultConfig.getIntProperty(someInvalidKey, someDefaultValue));
+    assertEquals(someDefaultValue, defaultConfig.getIntProperty(someInvalidKey, someDefaultValue));
+
+    verify(someProperties, times(2)).getProperty(someInvalidKey);
+  }
+
+  @Test
+  public void testGetIntPropertyMultipleTimesWithSnapshotAndPropertyChanges() throws Exception {
+    String someKey = "someKey";
+    Integer someValue = 2;
+    Integer anotherValue = 3;
+
+    Integer someDefaultValue = -1;
+
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithTypedPropertySnapshot());
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, String.valueOf(anotherValue));
+
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
+
+    assertEquals(anotherValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
+  }
+
   @Test
   public void testGetLongProperty() throws Exception {
     String someStringKey = "someStringKey";
@@ -912,6 +1076,25 @@ public class DefaultConfigTest {
     }
   }
 
+  public static class MockConfigUtilWithTypedPropertySnapshot extends MockConfigUtil {
+    @Override
+    public boolean isTypedPropertySnapshotEnabled() {
+      return true;
+    }
+  }
+
+  public static class MockConfigUtilWithPropertyLookupTable extends MockConfigUtil {
+    @Override
+    public boolean isPropertyLookupTableEnabled() {
+      return true;
+    }
+
+    @Override
+    public long getPropertyLookupTableRefreshIntervalInSeconds() {
+      return 0;
+    }
+  }
+
   public static class MockConfigUtilWithShortExpireTime extends MockConfigUtil {
     @Override
     public long getConfigCacheExpireTime() {
@@ -0,0 +1,220 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.ConfigFileChangeListener;
+import com.ctrip.framework.apollo.enums.PropertyChangeType;
+import com.ctrip.framework.apollo.model.ConfigChange;
+import com.ctrip.framework.apollo.model.ConfigChangeEvent;
+import com.ctrip.framework.apollo.model.ConfigFileChangeEvent;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ListenerDispatcherTest {
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() throws Exception {
+    executorService = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testDispatchInOrder() throws Exception {
+    ListenerDispatcher dispatcher = new ListenerDispatcher(executorService, false);
+    Object someListener = new Object();
+    int someCount = 100;
+    List<Integer> delivered = Lists.newCopyOnWriteArrayList();
+    CountDownLatch latch = new CountDownLatch(someCount);
+
+    for (int i = 0; i < someCount; i++) {
+      dispatcher.dispatch(someListener, new RecordingTask(i, i, delivered, latch));
+    }
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    for (int i = 0; i < someCount; i++) {
+      assertEquals(i, delivered.get(i).intValue());
+    }
+    assertEquals(0, dispatcher.getBacklog());
+  }
+
+  @Test
+  public void testDispatchWithEventsCoalesced() throws Exception {
+    ListenerDispatcher dispatcher = new ListenerDispatcher(executorService, true);
+    Object someListener = new Object();
+    List<Integer> delivered = Lists.newCopyOnWriteArrayList();
+    CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch released = new CountDownLatch(1);
+    CountDownLatch latch = new CountDownLatch(1);
+
+    //keep the listener busy, so that the following events are waiting
+    dispatcher.dispatch(someListener, new BlockingTask(blocked, released));
+    assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+    dispatcher.dispatch(someListener, new RecordingTask(1, 2, delivered, latch));
+    dispatcher.dispatch(someListener, new RecordingTask(2, 3, delivered, latch));
+    dispatcher.dispatch(someListener, new RecordingTask(3, 4, delivered, latch));
+    assertEquals(1, dispatcher.getBacklog());
+
+    //changed back to the value before the waiting events
+    dispatcher.dispatch(someListener, new RecordingTask(4, 1, delivered, latch));
+    assertEquals(0, dispatcher.getBacklog());
+
+    dispatcher.dispatch(someListener, new RecordingTask(1, 5, delivered, latch));
+    dispatcher.dispatch(someListener, new RecordingTask(5, 6, delivered, latch));
+    released.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Lists.newArrayList(6), delivered);
+  }
+
+  @Test
+  public void testCoalesceConfigChanges() throws Exception {
+    String someNamespace = "someNamespace";
+    ConfigChangeListener someListener = mock(ConfigChangeListener.class);
+    AbstractConfig.ConfigChangeTask someTask = new AbstractConfig.ConfigChangeTask(someListener,
+        assembleConfigChangeEvent(someNamespace,
+            new ConfigChange(someNamespace, "addedKey", null, "someValue", PropertyChangeType.ADDED),
+            new ConfigChange(someNamespace, "modifiedKey", "someValue", "anotherValue", PropertyChangeType.MODIFIED),
+            new ConfigChange(someNamespace, "deletedKey", "someValue", null, PropertyChangeType.DELETED)));
+    AbstractConfig.ConfigChangeTask nextTask = new AbstractConfig.ConfigChangeTask(someListener,
+        assembleConfigChangeEvent(someNamespace,
+            new ConfigChange(someNamespace, "addedKey", "someValue", null, PropertyChangeType.DELETED),
+            new ConfigChange(someNamespace, "modifiedKey", "anotherValue", "lastValue", PropertyChangeType.MODIFIED),
+            new ConfigChange(someNamespace, "newKey", null, "someValue", PropertyChangeType.ADDED)));
+
+    ConfigChangeEvent coalesced = ((AbstractConfig.ConfigChangeTask) someTask.coalesce(nextTask)).getChangeEvent();
+
+    //added then deleted cancels out, and the other keys of both events are kept
+    assertEquals(Sets.newHashSet("modifiedKey", "deletedKey", "newKey"), coalesced.changedKeys());
+    assertConfigChange(coalesced.getChange("modifiedKey"), "someValue", "lastValue", PropertyChangeType.MODIFIED);
+    assertConfigChange(coalesced.getChange("deletedKey"), "someValue", null, PropertyChangeType.DELETED);
+    assertConfigChange(coalesced.getChange("newKey"), null, "someValue", PropertyChangeType.ADDED);
+  }
+
+  @Test
+  public void testCoalesceConfigChangesCancelledOut() throws Exception {
+    String someNamespace = "someNamespace";
+    ConfigChangeListener someListener = mock(ConfigChangeListener.class);
+    AbstractConfig.ConfigChangeTask someTask = new AbstractConfig.ConfigChangeTask(someListener,
+        assembleConfigChangeEvent(someNamespace,
+            new ConfigChange(someNamespace, "someKey", null, "someValue", PropertyChangeType.ADDED),
+            new ConfigChange(someNamespace, "anotherKey", "someValue", "anotherValue", PropertyChangeType.MODIFIED)));
+    AbstractConfig.ConfigChangeTask nextTask = new AbstractConfig.ConfigChangeTask(someListener,
+        assembleConfigChangeEvent(someNamespace,
+            new ConfigChange(someNamespace, "someKey", "someValue", null, PropertyChangeType.DELETED),
+            new ConfigChange(someNamespace, "anotherKey", "anotherValue", "someValue", PropertyChangeType.MODIFIED)));
+    AbstractConfig.ConfigChangeTask anotherNamespaceTask = new AbstractConfig.ConfigChangeTask(someListener,
+        assembleConfigChangeEvent("anotherNamespace",
+            new ConfigChange("anotherNamespace", "someKey", "someValue", null, PropertyChangeType.DELETED)));
+
+    assertSame(ListenerDispatcher.Task.NO_CHANGE, someTask.coalesce(nextTask));
+    assertNull(someTask.coalesce(anotherNamespaceTask));
+  }
+
+  @Test
+  public void testCoalesceConfigFileChanges() throws Exception {
+    String someNamespace = "someNamespace";
+    ConfigFileChangeListener someListener = mock(ConfigFileChangeListener.class);
+    AbstractConfigFile.ConfigFileChangeTask addedTask = new AbstractConfigFile.ConfigFileChangeTask(someListener,
+        new ConfigFileChangeEvent(someNamespace, null, "someContent", PropertyChangeType.ADDED));
+    AbstractConfigFile.ConfigFileChangeTask modifiedTask = new AbstractConfigFile.ConfigFileChangeTask(someListener,
+        new ConfigFileChangeEvent(someNamespace, "someContent", "anotherContent", PropertyChangeType.MODIFIED));
+    AbstractConfigFile.ConfigFileChangeTask deletedTask = new AbstractConfigFile.ConfigFileChangeTask(someListener,
+        new ConfigFileChangeEvent(someNamespace, "someContent", null, PropertyChangeType.DELETED));
+
+    ConfigFileChangeEvent coalesced =
+        ((AbstractConfigFile.ConfigFileChangeTask) addedTask.coalesce(modifiedTask)).getChangeEvent();
+
+    assertNull(coalesced.getOldValue());
+    assertEquals("anotherContent", coalesced.getNewValue());
+    assertEquals(PropertyChangeType.ADDED, coalesced.getChangeType());
+    assertSame(ListenerDispatcher.Task.NO_CHANGE, addedTask.coalesce(deletedTask));
+  }
+
+  private ConfigChangeEvent assembleConfigChangeEvent(String namespace, ConfigChange... changes) {
+    Map<String, ConfigChange> changeMap = Maps.newHashMap();
+    for (ConfigChange change : changes) {
+      changeMap.put(change.getPropertyName(), change);
+    }
+    return new ConfigChangeEvent(namespace, changeMap);
+  }
+
+  private void assertConfigChange(ConfigChange change, String oldValue, String newValue,
+      PropertyChangeType changeType) {
+    assertEquals(oldValue, change.getOldValue());
+    assertEquals(newValue, change.getNewValue());
+    assertEquals(changeType, change.getChangeType());
+  }
+
+  private static class RecordingTask extends ListenerDispatcher.Task {
+    private final int oldValue;
+    private final int newValue;
+    private final List<Integer> delivered;
+    private final CountDownLatch latch;
+
+    private RecordingTask(int oldValue, int newValue, List<Integer> delivered, CountDownLatch latch) {
+      this.oldValue = oldValue;
+      this.newValue = newValue;
+      this.delivered = delivered;
+      this.latch = latch;
+    }
+
+    @Override
+    void run() {
+      delivered.add(newValue);
+      latch.countDown();
+    }
+
+    @Override
+    ListenerDispatcher.Task coalesce(ListenerDispatcher.Task next) {
+      if (!(next instanceof RecordingTask)) {
+        return null;
+      }
+      RecordingTask nextTask = (RecordingTask) next;
+      if (oldValue == nextTask.newValue) {
+        return NO_CHANGE;
+      }
+      return new RecordingTask(oldValue, nextTask.newValue, delivered, latch);
+    }
+  }
+
+  private static class BlockingTask extends ListenerDispatcher.Task {
+    private final CountDownLatch blocked;
+    private final CountDownLatch released;
+
+    private BlockingTask(CountDownLatch blocked, CountDownLatch released) {
+      this.blocked = blocked;
+      this.released = released;
+    }
+
+    @Override
+    void run() {
+      blocked.countDown();
+      try {
+        released.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        //ignore
+      }
+    }
+  }
+}
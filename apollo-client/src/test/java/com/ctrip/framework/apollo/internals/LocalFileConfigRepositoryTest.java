@@ -2,6 +2,8 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -119,6 +121,41 @@ public class LocalFileConfigRepositoryTest {
     assertEquals(someSourceType, localRepo.getSourceType());
   }
 
+  @Test
+  public void testSyncFromUpstreamInsideTheChainWithoutCopy() throws Exception {
+    final ConfigSnapshot upstreamSnapshot = ConfigSnapshot.of(someProperties);
+    AbstractConfigRepository upstream = new AbstractConfigRepository() {
+      @Override
+      protected void sync() {
+      }
+
+      @Override
+      public Properties getConfig() {
+        return ConfigSnapshot.copyOf(upstreamSnapshot);
+      }
+
+      @Override
+      ConfigSnapshot getConfigSnapshot() {
+        return upstreamSnapshot;
+      }
+
+      @Override
+      public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
+      }
+
+      @Override
+      public ConfigSourceType getSourceType() {
+        return someSourceType;
+      }
+    };
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace, upstream);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertSame(upstreamSnapshot, localRepo.getConfigSnapshot());
+    assertEquals(someProperties, localRepo.getConfig());
+  }
+
   @Test
   public void testLoadConfigWithNoLocalFile() throws Exception {
     LocalFileConfigRepository localFileConfigRepository =
@@ -181,6 +218,9 @@ public class LocalFileConfigRepositoryTest {
     verify(someListener, times(1)).onRepositoryChange(eq(someNamespace), captor.capture());
 
     assertEquals(anotherProperties, captor.getValue());
+    //the listeners get the snapshot itself, the other callers get a mutable copy
+    assertNotSame(captor.getValue(), localFileConfigRepository.getConfig());
+    assertEquals(captor.getValue(), localFileConfigRepository.getConfig());
     assertEquals(anotherSourceType, localFileConfigRepository.getSourceType());
   }
 
@@ -0,0 +1,124 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigBatchLoaderTest {
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private ConfigUtil configUtil;
+  @Mock
+  private HttpResponse<List<ApolloConfig>> someResponse;
+  private RemoteConfigBatchLoader batchLoader;
+  private String someServerUrl;
+  private String someAppId;
+  private String someCluster;
+  private String someNamespace;
+  private String anotherNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    someServerUrl = "http://someServer";
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+    anotherNamespace = "anotherNamespace";
+
+    ServiceDTO serviceDTO = mock(ServiceDTO.class);
+    when(serviceDTO.getHomepageUrl()).thenReturn(someServerUrl);
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
+    when(configUtil.getAppId()).thenReturn(someAppId);
+    when(configUtil.getCluster()).thenReturn(someCluster);
+    when(configUtil.isBatchConfigLoadEnabled()).thenReturn(true);
+
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+
+    batchLoader = new RemoteConfigBatchLoader();
+  }
+
+  @Test
+  public void testPreload() throws Exception {
+    ApolloConfig someApolloConfig = assembleApolloConfig(someNamespace, "someReleaseKey");
+    someApolloConfig.setConfigurations(ImmutableMap.of("someKey", "someValue"));
+    //not modified
+    ApolloConfig anotherApolloConfig = assembleApolloConfig(anotherNamespace, "anotherReleaseKey");
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(Lists.newArrayList(someApolloConfig, anotherApolloConfig));
+    when(httpUtil.doGet(any(HttpRequest.class), any(Type.class))).thenReturn((HttpResponse) someResponse);
+
+    batchLoader.preload(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    assertSame(someApolloConfig, batchLoader.take(someNamespace));
+    //only taken once
+    assertNull(batchLoader.take(someNamespace));
+    assertNull(batchLoader.take(anotherNamespace));
+  }
+
+  @Test
+  public void testPreloadFailed() throws Exception {
+    when(httpUtil.doGet(any(HttpRequest.class), any(Type.class))).thenThrow(new ApolloConfigException("some error"));
+
+    batchLoader.preload(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    assertNull(batchLoader.take(someNamespace));
+  }
+
+  @Test
+  public void testPreloadSingleNamespace() throws Exception {
+    batchLoader.preload(Lists.newArrayList(someNamespace));
+
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Type.class));
+  }
+
+  @Test
+  public void testAssembleBatchQueryConfigUrl() throws Exception {
+    String someDataCenter = "someDataCenter";
+    String someLocalIp = "someLocalIp";
+
+    when(configUtil.getLocalIp()).thenReturn(someLocalIp);
+
+    String url = batchLoader.assembleBatchQueryConfigUrl(someServerUrl, someAppId, someCluster,
+        Lists.newArrayList(someNamespace, anotherNamespace), someDataCenter);
+
+    assertEquals(someServerUrl + "/configs/batch?appId=someAppId&cluster=someCluster"
+        + "&namespaces=someNamespace%2CanotherNamespace&dataCenter=someDataCenter&ip=someLocalIp", url);
+  }
+
+  private ApolloConfig assembleApolloConfig(String namespace, String releaseKey) {
+    return new ApolloConfig(someAppId, someCluster, namespace, releaseKey);
+  }
+}
@@ -1,19 +1,24 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.Closeable;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -30,13 +35,18 @@ import org.mockito.stubbing.Answer;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpEventStreamListener;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.SettableFuture;
@@ -58,6 +68,7 @@ public class RemoteConfigLongPollServiceTest {
   private static String someServerUrl;
   private static String someAppId;
   private static String someCluster;
+  private static boolean notificationStreamEnabled;
 
   @Before
   public void setUp() throws Exception {
@@ -71,6 +82,7 @@ public class RemoteConfigLongPollServiceTest {
     when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
     MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
 
+    notificationStreamEnabled = false;
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
 
     remoteConfigLongPollService = new RemoteConfigLongPollService();
@@ -418,6 +430,263 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
   }
 
+  @Test
+  public void testStreamNotifications() throws Exception {
+    notificationStreamEnabled = true;
+    RemoteConfigLongPollService streamingService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    final String someKey = "someKey";
+    final long someNotificationId = 1;
+
+    final ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, someNotificationId);
+    someNotification.addMessage(someKey, someNotificationId);
+
+    final ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        HttpEventStreamListener<List<ApolloConfigNotification>> listener =
+            (HttpEventStreamListener<List<ApolloConfigNotification>>) invocation.getArguments()[2];
+        listener.onHeartbeat();
+        //keep streaming until being stopped
+        while (listener.onEvent(Lists.newArrayList(someNotification))) {
+          TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return null;
+      }
+    }).when(httpUtil).doGetEventStream(requestCaptor.capture(), eq(responseType), any(HttpEventStreamListener.class));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    streamingService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    streamingService.stopLongPollingRefresh();
+
+    assertTrue(requestCaptor.getValue().getUrl().contains(someServerUrl + "/notifications/v2/stream?"));
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testFallbackToLongPollingWhenNotificationStreamIsNotSupported() throws Exception {
+    notificationStreamEnabled = true;
+    RemoteConfigLongPollService streamingService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, 1);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+    when(httpUtil.doGet(any(HttpRequest.class), eq(responseType))).thenReturn(pollResponse);
+    doThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_NOT_FOUND, "some error")).when(httpUtil)
+        .doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    streamingService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    streamingService.stopLongPollingRefresh();
+
+    verify(httpUtil, times(1))
+        .doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+  }
+
+  @Test
+  public void testReconnectNotificationStreamWhenNamespaceSubmitted() throws Exception {
+    notificationStreamEnabled = true;
+    RemoteConfigLongPollService streamingService = new RemoteConfigLongPollService();
+    ReflectionTestUtils.setField(streamingService, "m_notificationStreamReconnectDelayInMillis", 100L);
+
+    final String someNamespace = "someNamespace";
+    final String anotherNamespace = "anotherNamespace";
+    final String yetAnotherNamespace = "yetAnotherNamespace";
+    final List<String> streamUrls = Lists.newCopyOnWriteArrayList();
+    final SettableFuture<Boolean> reconnected = SettableFuture.create();
+    final SettableFuture<Boolean> firstStreamClosed = SettableFuture.create();
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        HttpEventStreamListener<List<ApolloConfigNotification>> listener =
+            (HttpEventStreamListener<List<ApolloConfigNotification>>) invocation.getArguments()[2];
+        final CountDownLatch streamClosed = new CountDownLatch(1);
+        listener.onOpen(new Closeable() {
+          @Override
+          public void close() {
+            streamClosed.countDown();
+          }
+        });
+        streamUrls.add(((HttpRequest) invocation.getArguments()[0]).getUrl());
+        boolean firstStream = streamUrls.size() == 1;
+        if (!firstStream) {
+          reconnected.set(true);
+        }
+        listener.onHeartbeat();
+        //no more heartbeats, the read is blocked until the stream is closed
+        streamClosed.await();
+        if (firstStream) {
+          firstStreamClosed.set(true);
+        }
+        return null;
+      }
+    }).when(httpUtil).doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+
+    streamingService.submit(someNamespace, mock(RemoteConfigRepository.class));
+
+    //wait for the first stream
+    while (streamUrls.isEmpty()) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+    streamingService.submit(anotherNamespace, mock(RemoteConfigRepository.class));
+    streamingService.submit(yetAnotherNamespace, mock(RemoteConfigRepository.class));
+
+    reconnected.get(5000, TimeUnit.MILLISECONDS);
+    //the reader of the abandoned stream is not left blocked
+    firstStreamClosed.get(5000, TimeUnit.MILLISECONDS);
+
+    streamingService.stopLongPollingRefresh();
+
+    //the namespaces submitted together are watched with one reconnection
+    assertEquals(2, streamUrls.size());
+    assertFalse(streamUrls.get(0).contains(anotherNamespace));
+    assertTrue(streamUrls.get(1).contains(anotherNamespace));
+    assertTrue(streamUrls.get(1).contains(yetAnotherNamespace));
+  }
+
+  @Test
+  public void testFallbackToLongPollingWhenNotificationStreamIsBuffered() throws Exception {
+    notificationStreamEnabled = true;
+    RemoteConfigLongPollService streamingService = new RemoteConfigLongPollService();
+    ReflectionTestUtils.setField(streamingService, "m_notificationStreamFirstHeartbeatTimeoutInMillis", 100L);
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    final CountDownLatch streamEnded = new CountDownLatch(1);
+
+    ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, 1);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+    when(httpUtil.doGet(any(HttpRequest.class), eq(responseType))).thenReturn(pollResponse);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        //the heartbeats are held back, just like by a buffering proxy
+        streamEnded.await();
+        return null;
+      }
+    }).when(httpUtil).doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    streamingService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    streamingService.stopLongPollingRefresh();
+    streamEnded.countDown();
+
+    verify(httpUtil, times(1))
+        .doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+  }
+
+  @Test
+  public void testPostNotificationsWhenLongPollRefreshUrlIsTooLong() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = Strings.repeat("someNamespace", 200);
+
+    ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, 1);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    when(httpUtil.doPost(requestCaptor.capture(), eq(responseType))).thenReturn(pollResponse);
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    //the notification id is updated after the first poll
+    HttpRequest request = requestCaptor.getAllValues().get(0);
+    assertTrue(request.getUrl().contains(someServerUrl + "/notifications/v2?"));
+    assertFalse(request.getUrl().contains("notifications="));
+    assertEquals(NotificationsCodec.CONTENT_TYPE, request.getContentType());
+    assertEquals(someNamespace + "=" + ConfigConsts.NOTIFICATION_ID_PLACEHOLDER + "\n",
+        new String(request.getBody(), StandardCharsets.UTF_8));
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testFallbackToQueryStringWhenPostIsNotSupported() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = Strings.repeat("someNamespace", 200);
+
+    ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, 1);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+    when(httpUtil.doGet(any(HttpRequest.class), eq(responseType))).thenReturn(pollResponse);
+    when(httpUtil.doPost(any(HttpRequest.class), eq(responseType)))
+        .thenThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "some error"));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(httpUtil, times(1)).doPost(any(HttpRequest.class), eq(responseType));
+  }
+
   @Test
   public void testAssembleLongPollRefreshUrl() throws Exception {
     String someUri = someServerUrl;
@@ -495,6 +764,11 @@ public class RemoteConfigLongPollServiceTest {
     public long getLongPollingInitialDelayInMills() {
       return 0;
     }
+
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      return notificationStreamEnabled;
+    }
   }
 
 }
@@ -0,0 +1,232 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigMultiplexedLongPollServiceTest {
+  private RemoteConfigMultiplexedLongPollService longPollService;
+  @Mock
+  private HttpResponse<List<ApolloConfigNotification>> pollResponse;
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  private Type responseType;
+
+  private String someServerUrl;
+  private String someAppId;
+  private String anotherAppId;
+  private String someCluster;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+
+    someServerUrl = "http://someServer";
+    ServiceDTO serviceDTO = mock(ServiceDTO.class);
+    when(serviceDTO.getHomepageUrl()).thenReturn(someServerUrl);
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+
+    MockInjector.setInstance(ConfigUtil.class, new RemoteConfigLongPollServiceTest.MockConfigUtil());
+
+    longPollService = new RemoteConfigMultiplexedLongPollService();
+
+    responseType = (Type) ReflectionTestUtils.getField(longPollService, "m_responseType");
+
+    someAppId = "someAppId";
+    anotherAppId = "anotherAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+  }
+
+  @Test
+  public void testSubmitNamespacesOfMultipleApps() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    RemoteConfigRepository anotherRepository = mock(RemoteConfigRepository.class);
+
+    String someKey = "someKey";
+    long someNotificationId = 1;
+    ApolloConfigNotification someNotification =
+        new ApolloConfigNotification(anotherAppId, someCluster, someNamespace, someNotificationId);
+    someNotification.addMessage(someKey, someNotificationId);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+
+    final ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(requestCaptor.capture(), eq(responseType));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    longPollService.submit(someAppId, someCluster, someNamespace, someRepository);
+    longPollService.submit(anotherAppId, someCluster, someNamespace, anotherRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    longPollService.stopLongPollingRefresh();
+
+    //the namespaces of both apps are polled in the same request
+    String url = requestCaptor.getAllValues().get(0).getUrl();
+    assertTrue(url.startsWith(someServerUrl + "/notifications/v2/multi?"));
+    assertTrue(url.contains(someAppId));
+    assertTrue(url.contains(anotherAppId));
+
+    final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
+    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, never()).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    assertEquals(someNotificationId, captor.getValue().get(someKey).longValue());
+  }
+
+  @Test
+  public void testPostNotificationsWhenLongPollRefreshUrlIsTooLong() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someLongNamespace = Strings.repeat(someNamespace, 200);
+
+    ApolloConfigNotification someNotification =
+        new ApolloConfigNotification(someAppId, someCluster, someLongNamespace, 1);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    when(httpUtil.doPost(requestCaptor.capture(), eq(responseType))).thenReturn(pollResponse);
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    longPollService.submit(someAppId, someCluster, someLongNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    longPollService.stopLongPollingRefresh();
+
+    //the notification id is updated after the first poll
+    HttpRequest request = requestCaptor.getAllValues().get(0);
+    assertTrue(request.getUrl().startsWith(someServerUrl + "/notifications/v2/multi?"));
+    assertFalse(request.getUrl().contains("notifications="));
+    assertEquals(NotificationsCodec.CONTENT_TYPE, request.getContentType());
+    ApolloConfigNotification initialNotification = new ApolloConfigNotification(someAppId, someCluster,
+        someLongNamespace, ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
+    assertEquals(NotificationsCodec.encodeMultiplexed(Lists.newArrayList(initialNotification)),
+        new String(request.getBody(), StandardCharsets.UTF_8));
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testFallbackToQueryStringWhenPostIsNotSupported() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someLongNamespace = Strings.repeat(someNamespace, 200);
+
+    ApolloConfigNotification someNotification =
+        new ApolloConfigNotification(someAppId, someCluster, someLongNamespace, 1);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+    when(httpUtil.doGet(any(HttpRequest.class), eq(responseType))).thenReturn(pollResponse);
+    when(httpUtil.doPost(any(HttpRequest.class), eq(responseType)))
+        .thenThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_NOT_FOUND, "some error"));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    longPollService.submit(someAppId, someCluster, someLongNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    longPollService.stopLongPollingRefresh();
+
+    verify(httpUtil, times(1)).doPost(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testAssembleLongPollRefreshUrl() throws Exception {
+    long someNotificationId = 1;
+    String someDataCenter = "someDC";
+
+    String longPollRefreshUrl = longPollService.assembleLongPollRefreshUrl(someServerUrl, someDataCenter,
+        Lists.newArrayList(new ApolloConfigNotification(someAppId, someCluster, someNamespace, someNotificationId)));
+
+    assertTrue(longPollRefreshUrl.startsWith(someServerUrl + "/notifications/v2/multi?"));
+    assertTrue(longPollRefreshUrl.contains("dataCenter=someDC"));
+    assertTrue(longPollRefreshUrl.contains("notifications=%5B%7B%22appId%22%3A%22" + someAppId
+        + "%22%2C%22cluster%22%3A%22" + someCluster
+        + "%22%2C%22namespaceName%22%3A%22" + someNamespace
+        + "%22%2C%22notificationId%22%3A" + someNotificationId + "%7D%5D"));
+  }
+}
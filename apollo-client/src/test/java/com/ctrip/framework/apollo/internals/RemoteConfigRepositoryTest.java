@@ -1,12 +1,15 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -43,6 +46,7 @@ import com.ctrip.framework.apollo.util.http.HttpUtil;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.net.UrlEscapers;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.Gson;
@@ -63,6 +67,8 @@ public class RemoteConfigRepositoryTest {
   @Mock
   private static HttpResponse<List<ApolloConfigNotification>> pollResponse;
   private RemoteConfigLongPollService remoteConfigLongPollService;
+  @Mock
+  private RemoteConfigBatchLoader batchLoader;
 
   @Before
   public void setUp() throws Exception {
@@ -85,6 +91,8 @@ public class RemoteConfigRepositoryTest {
     httpUtil = spy(new MockHttpUtil());
     MockInjector.setInstance(HttpUtil.class, httpUtil);
 
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, batchLoader);
+
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
     MockInjector.setInstance(RemoteConfigLongPollService.class, remoteConfigLongPollService);
@@ -106,10 +114,32 @@ public class RemoteConfigRepositoryTest {
     Properties config = remoteConfigRepository.getConfig();
 
     assertEquals(configurations, config);
+    //a mutable copy each time
+    assertNotSame(config, remoteConfigRepository.getConfig());
+    config.setProperty(someKey, "anotherValue");
+    assertEquals(configurations, remoteConfigRepository.getConfig());
     assertEquals(ConfigSourceType.REMOTE, remoteConfigRepository.getSourceType());
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadPreloadedConfig() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Map<String, String> configurations = ImmutableMap.of(someKey, someValue);
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(batchLoader.take(someNamespace)).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    Properties config = remoteConfigRepository.getConfig();
+
+    assertEquals(configurations, config);
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(ApolloConfig.class));
+    remoteConfigLongPollService.stopLongPollingRefresh();
+  }
+
   @Test(expected = ApolloConfigException.class)
   public void testGetRemoteConfigWithServerError() throws Exception {
 
@@ -150,6 +180,64 @@ public class RemoteConfigRepositoryTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadDeltaConfig() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    ApolloConfig deltaApolloConfig = new ApolloConfig("appId", "cluster", someNamespace, "2");
+    deltaApolloConfig.setBaseReleaseKey(someApolloConfig.getReleaseKey());
+    deltaApolloConfig.setConfigurations(ImmutableMap.of("k2", "v2-new", "k4", "v4"));
+    deltaApolloConfig.setDeletedKeys(Sets.newHashSet("k3"));
+
+    when(someResponse.getBody()).thenReturn(deltaApolloConfig);
+
+    remoteConfigRepository.sync();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(ImmutableMap.of("k1", "v1", "k2", "v2-new", "k4", "v4"), remoteConfigRepository.getConfig());
+
+    final ArgumentCaptor<HttpRequest> httpRequestArgumentCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(2)).doGet(httpRequestArgumentCaptor.capture(), eq(ApolloConfig.class));
+    assertTrue(httpRequestArgumentCaptor.getValue().getUrl().contains("delta=true"));
+  }
+
+  @Test
+  public void testLoadDeltaConfigWithUnknownBase() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("k1", "v1");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    ApolloConfig deltaApolloConfig = new ApolloConfig("appId", "cluster", someNamespace, "2");
+    deltaApolloConfig.setBaseReleaseKey("someUnknownReleaseKey");
+    deltaApolloConfig.setConfigurations(ImmutableMap.of("k1", "v1-new"));
+    Map<String, String> newConfigurations = ImmutableMap.of("k1", "v1-new", "k2", "v2");
+    ApolloConfig fullApolloConfig = new ApolloConfig("appId", "cluster", someNamespace, "2");
+    fullApolloConfig.setConfigurations(newConfigurations);
+
+    when(someResponse.getBody()).thenReturn(deltaApolloConfig, fullApolloConfig);
+
+    remoteConfigRepository.sync();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(newConfigurations, remoteConfigRepository.getConfig());
+
+    final ArgumentCaptor<HttpRequest> httpRequestArgumentCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(3)).doGet(httpRequestArgumentCaptor.capture(), eq(ApolloConfig.class));
+    assertFalse(httpRequestArgumentCaptor.getValue().getUrl().contains("releaseKey"));
+  }
+
   @Test
   public void testLongPollingRefresh() throws Exception {
     Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
@@ -0,0 +1,48 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class TypedPropertySnapshotTest {
+
+  @Test
+  public void testGetAndPut() throws Exception {
+    TypedPropertySnapshot snapshot = new TypedPropertySnapshot(10);
+    String someKey = "someKey";
+    Integer someValue = 1;
+    Long anotherValue = 2L;
+    String[] someArray = new String[]{"a", "b"};
+
+    assertNull(snapshot.get(someKey, TypedPropertySnapshot.INT, null));
+
+    snapshot.put(someKey, TypedPropertySnapshot.INT, null, someValue);
+    snapshot.put(someKey, TypedPropertySnapshot.LONG, null, anotherValue);
+    snapshot.put(someKey, TypedPropertySnapshot.ARRAY, ",", someArray);
+
+    assertEquals(someValue, snapshot.get(someKey, TypedPropertySnapshot.INT, null));
+    assertEquals(anotherValue, snapshot.get(someKey, TypedPropertySnapshot.LONG, null));
+    assertEquals(someArray, snapshot.get(someKey, TypedPropertySnapshot.ARRAY, ","));
+    assertNull(snapshot.get(someKey, TypedPropertySnapshot.ARRAY, ";"));
+    assertNull(snapshot.get(someKey, TypedPropertySnapshot.DOUBLE, null));
+    assertNull(snapshot.get("anotherKey", TypedPropertySnapshot.INT, null));
+  }
+
+  @Test
+  public void testPutWhenFull() throws Exception {
+    int maxSize = 5;
+    TypedPropertySnapshot snapshot = new TypedPropertySnapshot(maxSize);
+
+    for (int i = 0; i < maxSize * 2; i++) {
+      snapshot.put("key" + i, TypedPropertySnapshot.INT, null, i);
+    }
+
+    for (int i = 0; i < maxSize; i++) {
+      assertEquals(i, snapshot.get("key" + i, TypedPropertySnapshot.INT, null));
+    }
+    for (int i = maxSize; i < maxSize * 2; i++) {
+      assertNull(snapshot.get("key" + i, TypedPropertySnapshot.INT, null));
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.ctrip.framework.apollo.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HttpUtilTest {
+  @Mock
+  private HttpTransport httpTransport;
+  private HttpUtil httpUtil;
+  private String someUrl;
+  private String someHost;
+  private int someTimeout;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil());
+    MockInjector.setInstance(HttpTransport.class, httpTransport);
+
+    httpUtil = new HttpUtil();
+
+    someUrl = "http://someServer:8080/configs/someAppId/someCluster/someNamespace";
+    someHost = "someServer:8080";
+    someTimeout = 1000;
+  }
+
+  @Test
+  public void testDoGet() throws Exception {
+    String someAppId = "someAppId";
+    String someReleaseKey = "someReleaseKey";
+    String body = String.format("{\"appId\":\"%s\",\"releaseKey\":\"%s\"}", someAppId, someReleaseKey);
+
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(
+        new HttpTransportResponse(200, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+
+    HttpResponse<ApolloConfig> response =
+        httpUtil.doGet(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class);
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(someAppId, response.getBody().getAppId());
+    assertEquals(someReleaseKey, response.getBody().getReleaseKey());
+
+    Map<String, HttpHostMetrics> hostMetrics = httpUtil.getHostMetrics();
+
+    assertEquals(1, hostMetrics.get(someHost).getRequestCount());
+    assertEquals(0, hostMetrics.get(someHost).getFailureCount());
+  }
+
+  @Test
+  public void testDoGetWithNotModified() throws Exception {
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(new HttpTransportResponse(304, null));
+
+    HttpResponse<ApolloConfig> response =
+        httpUtil.doGet(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class);
+
+    assertEquals(304, response.getStatusCode());
+    assertNull(response.getBody());
+  }
+
+  @Test
+  public void testDoGetWithUnexpectedStatusCode() throws Exception {
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(
+        new HttpTransportResponse(404, new ByteArrayInputStream("not found".getBytes(StandardCharsets.UTF_8))));
+
+    try {
+      httpUtil.doGet(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class);
+      fail();
+    } catch (ApolloConfigStatusCodeException ex) {
+      assertEquals(404, ex.getStatusCode());
+    }
+
+    assertEquals(1, httpUtil.getHostMetrics().get(someHost).getFailureCount());
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testDoGetWithInvalidBody() throws Exception {
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(
+        new HttpTransportResponse(200, new ByteArrayInputStream("xxx".getBytes(StandardCharsets.UTF_8))));
+
+    httpUtil.doGet(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class);
+  }
+
+  @Test
+  public void testDoPost() throws Exception {
+    String someAppId = "someAppId";
+    String someContentType = "text/plain;charset=UTF-8";
+    byte[] someRequestBody = "someRequestBody".getBytes(StandardCharsets.UTF_8);
+    String body = String.format("{\"appId\":\"%s\"}", someAppId);
+
+    when(httpTransport.doPost(someUrl, someContentType, someRequestBody, someTimeout, someTimeout)).thenReturn(
+        new HttpTransportResponse(200, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+
+    HttpRequest request = assembleHttpRequest(someUrl, someTimeout);
+    request.setBody(someContentType, someRequestBody);
+
+    HttpResponse<ApolloConfig> response = httpUtil.doPost(request, ApolloConfig.class);
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(someAppId, response.getBody().getAppId());
+    assertEquals(1, httpUtil.getHostMetrics().get(someHost).getRequestCount());
+  }
+
+  @Test
+  public void testDoGetEventStream() throws Exception {
+    String body = ":heartbeat\n\n"
+        + "event:notifications\n"
+        + "data:{\"appId\":\"someAppId\",\n"
+        + "data: \"releaseKey\":\"someReleaseKey\"}\n\n"
+        + "event:notifications\n"
+        + "data:{\"appId\":\"anotherAppId\"}\n\n";
+
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(
+        new HttpTransportResponse(200, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+
+    final List<ApolloConfig> events = Lists.newArrayList();
+    final AtomicInteger heartbeats = new AtomicInteger();
+    httpUtil.doGetEventStream(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class,
+        new HttpEventStreamListener<ApolloConfig>() {
+          @Override
+          public void onOpen(Closeable stream) {
+          }
+
+          @Override
+          public boolean onEvent(ApolloConfig event) {
+            events.add(event);
+            return true;
+          }
+
+          @Override
+          public boolean onHeartbeat() {
+            heartbeats.incrementAndGet();
+            return true;
+          }
+        });
+
+    assertEquals(1, heartbeats.get());
+    assertEquals(2, events.size());
+    assertEquals("someAppId", events.get(0).getAppId());
+    assertEquals("someReleaseKey", events.get(0).getReleaseKey());
+    assertEquals("anotherAppId", events.get(1).getAppId());
+  }
+
+  @Test
+  public void testDoGetEventStreamClosedByListener() throws Exception {
+    String body = ":heartbeat\n\n";
+    HttpTransportResponse response =
+        spy(new HttpTransportResponse(200, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(response);
+
+    final AtomicInteger heartbeats = new AtomicInteger();
+    httpUtil.doGetEventStream(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class,
+        new HttpEventStreamListener<ApolloConfig>() {
+          @Override
+          public void onOpen(Closeable stream) {
+            try {
+              stream.close();
+            } catch (IOException ex) {
+              throw new IllegalStateException(ex);
+            }
+          }
+
+          @Override
+          public boolean onEvent(ApolloConfig event) {
+            return true;
+          }
+
+          @Override
+          public boolean onHeartbeat() {
+            heartbeats.incrementAndGet();
+            return true;
+          }
+        });
+
+    //aborted instead of being drained, and nothing read afterwards is passed to the listener
+    verify(response, times(1)).abort();
+    verify(response, never()).close();
+    assertEquals(0, heartbeats.get());
+  }
+
+  @Test
+  public void testDoGetEventStreamWithUnexpectedStatusCode() throws Exception {
+    when(httpTransport.doGet(someUrl, someTimeout, someTimeout)).thenReturn(
+        new HttpTransportResponse(404, new ByteArrayInputStream("not found".getBytes(StandardCharsets.UTF_8))));
+
+    try {
+      httpUtil.doGetEventStream(assembleHttpRequest(someUrl, someTimeout), ApolloConfig.class,
+          mock(HttpEventStreamListener.class));
+      fail();
+    } catch (ApolloConfigStatusCodeException ex) {
+      assertEquals(404, ex.getStatusCode());
+    }
+  }
+
+  private HttpRequest assembleHttpRequest(String url, int timeout) {
+    HttpRequest request = new HttpRequest(url);
+    request.setConnectTimeout(timeout);
+    request.setReadTimeout(timeout);
+    return request;
+  }
+}
@@ -12,7 +12,11 @@ import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWith
 import com.ctrip.framework.apollo.configservice.service.config.DefaultConfigService;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -39,6 +43,17 @@ public class ConfigServiceAutoConfiguration {
     return new DefaultConfigService();
   }
 
+  @Bean
+  public WebMvcConfigurer serializedNotificationsConfigurer() {
+    return new WebMvcConfigurer() {
+      @Override
+      public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        //must be ahead of the json converter, which could also write lists
+        converters.add(0, new SerializedNotificationsHttpMessageConverter());
+      }
+    };
+  }
+
   @Bean
   public static NoOpPasswordEncoder passwordEncoder() {
     return (NoOpPasswordEncoder) NoOpPasswordEncoder.getInstance();
@@ -0,0 +1,33 @@
+package com.ctrip.framework.apollo.configservice;
+
+import com.ctrip.framework.apollo.configservice.service.config.ConfigCacheStats;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWithCache;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Exposes the statistics of the release caches at /configcache
+ */
+@Component
+@Endpoint(id = "configcache")
+public class ConfigServiceCacheEndpoint {
+
+  private final ConfigService configService;
+
+  public ConfigServiceCacheEndpoint(final ConfigService configService) {
+    this.configService = configService;
+  }
+
+  @ReadOperation
+  public Map<String, ConfigCacheStats> cacheStats() {
+    if (configService instanceof ConfigServiceWithCache) {
+      return ((ConfigServiceWithCache) configService).getCacheStats();
+    }
+    return Collections.emptyMap();
+  }
+}
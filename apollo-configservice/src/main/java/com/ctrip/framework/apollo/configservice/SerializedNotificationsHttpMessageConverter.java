@@ -0,0 +1,49 @@
+package com.ctrip.framework.apollo.configservice;
+
+import com.ctrip.framework.apollo.configservice.wrapper.SerializedNotifications;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the pre-encoded body of {@link SerializedNotifications} as is, it must be registered before the json converter.
+ */
+public class SerializedNotificationsHttpMessageConverter extends
+    AbstractHttpMessageConverter<SerializedNotifications> {
+
+  public SerializedNotificationsHttpMessageConverter() {
+    super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return SerializedNotifications.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected SerializedNotifications readInternal(Class<? extends SerializedNotifications> clazz,
+      HttpInputMessage inputMessage) throws IOException, HttpMessageNotReadableException {
+    throw new UnsupportedOperationException("SerializedNotifications is write only");
+  }
+
+  @Override
+  protected Long getContentLength(SerializedNotifications notifications, MediaType contentType) {
+    return (long) notifications.getBody().length;
+  }
+
+  @Override
+  protected void writeInternal(SerializedNotifications notifications, HttpOutputMessage outputMessage)
+      throws IOException {
+    outputMessage.getBody().write(notifications.getBody());
+  }
+}
@@ -4,6 +4,8 @@ import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseConfigurations;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseConfigurationsCache;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -26,9 +28,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -39,25 +43,29 @@ import java.util.stream.Collectors;
 public class ConfigController {
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final Splitter NAMESPACES_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+  private static final Type RELEASE_KEYS_TYPE_REFERENCE = new TypeToken<Map<String, String>>() {
+  }.getType();
+  private static final String DEFAULT_CLIENT_SIDE_RELEASE_KEY = "-1";
   private final ConfigService configService;
   private final AppNamespaceServiceWithCache appNamespaceService;
   private final NamespaceUtil namespaceUtil;
   private final InstanceConfigAuditUtil instanceConfigAuditUtil;
+  private final ReleaseConfigurationsCache releaseConfigurationsCache;
   private final Gson gson;
 
-  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
-      }.getType();
-
   public ConfigController(
       final ConfigService configService,
       final AppNamespaceServiceWithCache appNamespaceService,
       final NamespaceUtil namespaceUtil,
       final InstanceConfigAuditUtil instanceConfigAuditUtil,
+      final ReleaseConfigurationsCache releaseConfigurationsCache,
       final Gson gson) {
     this.configService = configService;
     this.appNamespaceService = appNamespaceService;
     this.namespaceUtil = namespaceUtil;
     this.instanceConfigAuditUtil = instanceConfigAuditUtil;
+    this.releaseConfigurationsCache = releaseConfigurationsCache;
     this.gson = gson;
   }
 
@@ -68,18 +76,103 @@ public class ConfigController {
                                   @RequestParam(value = "releaseKey", defaultValue = "-1") String clientSideReleaseKey,
                                   @RequestParam(value = "ip", required = false) String clientIp,
                                   @RequestParam(value = "messages", required = false) String messagesAsString,
+                                  @RequestParam(value = "delta", defaultValue = "false") boolean deltaSupported,
                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String originalNamespace = namespace;
-    //strip out .properties suffix
-    namespace = namespaceUtil.filterNamespaceName(namespace);
-    //fix the character case issue, such as FX.apollo <-> fx.apollo
-    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+    ApolloConfig apolloConfig = queryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+        messagesAsString, request, response);
+
+    if (deltaSupported && apolloConfig != null && apolloConfig.getConfigurations() instanceof ReleaseConfigurations) {
+      tryToAssembleDelta(apolloConfig, clientSideReleaseKey);
+    }
+
+    return apolloConfig;
+  }
+
+  public ApolloConfig queryConfig(String appId, String clusterName, String namespace, String dataCenter,
+                                  String clientSideReleaseKey, String clientIp, String messagesAsString,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = tryToGetClientIp(request);
+    }
+
+    ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
+
+    ApolloConfig apolloConfig = loadConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+        clientMessages);
 
+    if (apolloConfig == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND,
+          String.format(
+              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
+              appId, clusterName, namespace));
+      return null;
+    }
+
+    if (apolloConfig.getConfigurations() == null) {
+      // Client side configuration is the same with server side, return 304
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return null;
+    }
+
+    return apolloConfig;
+  }
+
+  /**
+   * Query the configurations of many namespaces in one round trip.
+   *
+   * <p>The namespaces not modified since the client side release keys are returned without configurations, and the
+   * namespaces not found are left out.</p>
+   *
+   * @param namespaces         the namespaces separated by comma
+   * @param releaseKeysAsString the client side release keys in json, keyed by namespace
+   */
+  @GetMapping(value = "/batch")
+  public List<ApolloConfig> queryConfigs(@RequestParam(value = "appId") String appId,
+                                         @RequestParam(value = "cluster") String clusterName,
+                                         @RequestParam(value = "namespaces") String namespaces,
+                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                         @RequestParam(value = "releaseKeys", required = false) String releaseKeysAsString,
+                                         @RequestParam(value = "ip", required = false) String clientIp,
+                                         @RequestParam(value = "messages", required = false) String messagesAsString,
+                                         @RequestParam(value = "delta", defaultValue = "false") boolean deltaSupported,
+                                         HttpServletRequest request) {
     if (Strings.isNullOrEmpty(clientIp)) {
       clientIp = tryToGetClientIp(request);
     }
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
+    Map<String, String> clientSideReleaseKeys = transformReleaseKeys(releaseKeysAsString);
+
+    List<ApolloConfig> apolloConfigs = Lists.newArrayList();
+    for (String namespace : NAMESPACES_SPLITTER.split(namespaces)) {
+      String clientSideReleaseKey = clientSideReleaseKeys.getOrDefault(namespace, DEFAULT_CLIENT_SIDE_RELEASE_KEY);
+      ApolloConfig apolloConfig = loadConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+          clientMessages);
+      if (apolloConfig == null) {
+        continue;
+      }
+      if (deltaSupported && apolloConfig.getConfigurations() instanceof ReleaseConfigurations) {
+        tryToAssembleDelta(apolloConfig, clientSideReleaseKey);
+      }
+      apolloConfigs.add(apolloConfig);
+    }
+
+    Tracer.logEvent("Apollo.Config.Batch", String.valueOf(apolloConfigs.size()));
+    return apolloConfigs;
+  }
+
+  /**
+   * @return the config loaded, which has no configurations if it is not modified since the client side release, or
+   * null if there is no such config
+   */
+  private ApolloConfig loadConfig(String appId, String clusterName, String namespace, String dataCenter,
+                                  String clientSideReleaseKey, String clientIp,
+                                  ApolloNotificationMessages clientMessages) {
+    String originalNamespace = namespace;
+    //strip out .properties suffix
+    namespace = namespaceUtil.filterNamespaceName(namespace);
+    //fix the character case issue, such as FX.apollo <-> fx.apollo
+    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
 
     List<Release> releases = Lists.newLinkedList();
 
@@ -105,10 +198,6 @@ public class ConfigController {
     }
 
     if (releases.isEmpty()) {
-      response.sendError(HttpServletResponse.SC_NOT_FOUND,
-          String.format(
-              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
-              appId, clusterName, originalNamespace));
       Tracer.logEvent("Apollo.Config.NotFound",
           assembleKey(appId, clusterName, originalNamespace, dataCenter));
       return null;
@@ -119,16 +208,15 @@ public class ConfigController {
     String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
             .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
 
+    ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
+        mergedReleaseKey);
+
     if (mergedReleaseKey.equals(clientSideReleaseKey)) {
-      // Client side configuration is the same with server side, return 304
-      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
       Tracer.logEvent("Apollo.Config.NotModified",
           assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-      return null;
+      return apolloConfig;
     }
 
-    ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
-        mergedReleaseKey);
     apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
 
     Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded,
@@ -136,6 +224,31 @@ public class ConfigController {
     return apolloConfig;
   }
 
+  /**
+   * Replace the full configurations with the keys changed since the client side release, if the client side release
+   * is still kept, belongs to the same namespace, and the changes are fewer than the full configurations
+   */
+  private void tryToAssembleDelta(ApolloConfig apolloConfig, String clientSideReleaseKey) {
+    ReleaseConfigurations baseConfigurations = releaseConfigurationsCache.findDeltaBase(apolloConfig.getReleaseKey(),
+        clientSideReleaseKey);
+    if (baseConfigurations == null) {
+      Tracer.logEvent("Apollo.Config.Delta.BaseNotFound", clientSideReleaseKey);
+      return;
+    }
+
+    ReleaseConfigurations configurations = (ReleaseConfigurations) apolloConfig.getConfigurations();
+    Map<String, String> changedConfigurations = configurations.changedSince(baseConfigurations);
+    Set<String> deletedKeys = configurations.deletedSince(baseConfigurations);
+    if (changedConfigurations.size() + deletedKeys.size() >= configurations.size()) {
+      return;
+    }
+
+    apolloConfig.setConfigurations(changedConfigurations);
+    apolloConfig.setDeletedKeys(deletedKeys);
+    apolloConfig.setBaseReleaseKey(clientSideReleaseKey);
+    Tracer.logEvent("Apollo.Config.Delta", apolloConfig.getReleaseKey());
+  }
+
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
     //Every app has an 'application' namespace
     if (Objects.equals(ConfigConsts.NAMESPACE_APPLICATION, namespaceName)) {
@@ -175,11 +288,15 @@ public class ConfigController {
   /**
    * Merge configurations of releases.
    * Release in lower index override those in higher index
+   * For a single release, its read only parsed configurations are returned as they are
    */
   Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
+    if (releases.size() == 1) {
+      return releaseConfigurationsCache.get(releases.get(0));
+    }
     Map<String, String> result = Maps.newHashMap();
     for (Release release : Lists.reverse(releases)) {
-      result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      result.putAll(releaseConfigurationsCache.get(release));
     }
     return result;
   }
@@ -225,4 +342,17 @@ public class ConfigController {
 
     return notificationMessages;
   }
+
+  Map<String, String> transformReleaseKeys(String releaseKeysAsString) {
+    Map<String, String> releaseKeys = null;
+    if (!Strings.isNullOrEmpty(releaseKeysAsString)) {
+      try {
+        releaseKeys = gson.fromJson(releaseKeysAsString, RELEASE_KEYS_TYPE_REFERENCE);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+      }
+    }
+
+    return releaseKeys == null ? Collections.emptyMap() : releaseKeys;
+  }
 }
@@ -4,6 +4,7 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseConfigurations;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -22,6 +23,8 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,8 +40,11 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -53,12 +59,15 @@ public class ConfigFileController implements ReleaseMessageListener {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final Splitter IF_NONE_MATCH_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+  private static final HashFunction ETAG_HASH_FUNCTION = Hashing.murmur3_128();
+  private static final String WEAK_ETAG_PREFIX = "W/";
   private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   private static final long EXPIRE_AFTER_WRITE = 30;
   private final HttpHeaders propertiesResponseHeaders;
   private final HttpHeaders jsonResponseHeaders;
   private final ResponseEntity<String> NOT_FOUND_RESPONSE;
-  private Cache<String, String> localCache;
+  private Cache<String, ConfigFile> localCache;
   private final Multimap<String, String>
       watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
   private final Multimap<String, String>
@@ -77,7 +86,7 @@ public class ConfigFileController implements ReleaseMessageListener {
       final GrayReleaseRulesHolder grayReleaseRulesHolder) {
     localCache = CacheBuilder.newBuilder()
         .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
-        .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
+        .weigher((Weigher<String, ConfigFile>) (key, value) -> value == null ? 0 : value.weigh())
         .maximumWeight(MAX_CACHE_SIZE)
         .removalListener(notification -> {
           String cacheKey = notification.getKey();
@@ -115,7 +124,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                         HttpServletResponse response)
       throws IOException {
 
-    String result =
+    ConfigFile result =
         queryConfig(ConfigFileOutputFormat.PROPERTIES, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -123,7 +132,7 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, propertiesResponseHeaders, HttpStatus.OK);
+    return assembleResponse(result, propertiesResponseHeaders, request);
   }
 
   @GetMapping(value = "/json/{appId}/{clusterName}/{namespace:.+}")
@@ -135,7 +144,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                   HttpServletRequest request,
                                                   HttpServletResponse response) throws IOException {
 
-    String result =
+    ConfigFile result =
         queryConfig(ConfigFileOutputFormat.JSON, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -143,10 +152,46 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
+    return assembleResponse(result, jsonResponseHeaders, request);
   }
 
-  String queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+  /**
+   * Respond with 304 if the client already has the same release, in which case the content is not rendered at all
+   */
+  private ResponseEntity<String> assembleResponse(ConfigFile result, HttpHeaders responseHeaders,
+                                                  HttpServletRequest request) {
+    String eTag = result.getETag();
+    if (eTagMatches(eTag, request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+    }
+    return ResponseEntity.ok().headers(responseHeaders).eTag(eTag).body(result.getContent());
+  }
+
+  /**
+   * The release keys identify the content, so the etag is derived from them instead of the content
+   */
+  String computeETag(ConfigFileOutputFormat outputFormat, String releaseKey) {
+    return "\"" + ETAG_HASH_FUNCTION.hashString(STRING_JOINER.join(outputFormat.getValue(), releaseKey),
+        StandardCharsets.UTF_8) + "\"";
+  }
+
+  private boolean eTagMatches(String eTag, String ifNoneMatch) {
+    if (Strings.isNullOrEmpty(ifNoneMatch)) {
+      return false;
+    }
+    for (String clientETag : IF_NONE_MATCH_SPLITTER.split(ifNoneMatch)) {
+      //the container might weaken the etag of a compressed response
+      if (clientETag.startsWith(WEAK_ETAG_PREFIX)) {
+        clientETag = clientETag.substring(WEAK_ETAG_PREFIX.length());
+      }
+      if ("*".equals(clientETag) || eTag.equals(clientETag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  ConfigFile queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                      String namespace, String dataCenter, String clientIp,
                      HttpServletRequest request,
                      HttpServletResponse response) throws IOException {
@@ -173,10 +218,10 @@ public class ConfigFileController implements ReleaseMessageListener {
     }
 
     //3. if not gray release, check weather cache exists, if exists, return
-    String result = localCache.getIfPresent(cacheKey);
+    ConfigFile result = localCache.getIfPresent(cacheKey);
 
     //4. if not exists, load from ConfigController
-    if (Strings.isNullOrEmpty(result)) {
+    if (result == null) {
       Tracer.logEvent("ConfigFile.Cache.Miss", cacheKey);
       result = loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
           request, response);
@@ -211,10 +256,10 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
-  private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
-                            String namespace, String dataCenter, String clientIp,
-                            HttpServletRequest request,
-                            HttpServletResponse response) throws IOException {
+  private ConfigFile loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+                                String namespace, String dataCenter, String clientIp,
+                                HttpServletRequest request,
+                                HttpServletResponse response) throws IOException {
     ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
         dataCenter, "-1", clientIp, null, request, response);
 
@@ -222,16 +267,33 @@ public class ConfigFileController implements ReleaseMessageListener {
       return null;
     }
 
+    return new ConfigFile(computeETag(outputFormat, apolloConfig.getReleaseKey()), outputFormat,
+        apolloConfig.getConfigurations());
+  }
+
+  private static String render(ConfigFileOutputFormat outputFormat, Map<String, String> configurations) {
+    //a single release, which is already rendered
+    if (configurations instanceof ReleaseConfigurations) {
+      ReleaseConfigurations releaseConfigurations = (ReleaseConfigurations) configurations;
+      return outputFormat == ConfigFileOutputFormat.JSON ? releaseConfigurations.asJson()
+          : releaseConfigurations.asProperties();
+    }
+
     String result = null;
 
     switch (outputFormat) {
       case PROPERTIES:
         Properties properties = new Properties();
-        properties.putAll(apolloConfig.getConfigurations());
-        result = PropertiesUtil.toString(properties);
+        properties.putAll(configurations);
+        try {
+          result = PropertiesUtil.toString(properties);
+        } catch (IOException ex) {
+          //not possible as the properties are written to a string
+          throw new UncheckedIOException(ex);
+        }
         break;
       case JSON:
-        result = gson.toJson(apolloConfig.getConfigurations());
+        result = gson.toJson(configurations);
         break;
     }
 
@@ -285,6 +347,61 @@ public class ConfigFileController implements ReleaseMessageListener {
     }
   }
 
+  /**
+   * A config file of some release, rendered on demand. Once rendered, only the content is kept.
+   */
+  static class ConfigFile {
+    private final String eTag;
+    private final ConfigFileOutputFormat outputFormat;
+    private volatile Map<String, String> configurations;
+    private volatile String content;
+
+    ConfigFile(String eTag, ConfigFileOutputFormat outputFormat, Map<String, String> configurations) {
+      this.eTag = eTag;
+      this.outputFormat = outputFormat;
+      this.configurations = configurations;
+    }
+
+    String getETag() {
+      return eTag;
+    }
+
+    String getContent() {
+      String rendered = content;
+      if (rendered != null) {
+        return rendered;
+      }
+      synchronized (this) {
+        if (content == null) {
+          content = render(outputFormat, configurations);
+          configurations = null;
+        }
+        return content;
+      }
+    }
+
+    /**
+     * @return the estimated length of the content, without rendering it
+     */
+    int weigh() {
+      String rendered = content;
+      if (rendered != null) {
+        return rendered.length();
+      }
+      Map<String, String> toRender = configurations;
+      if (toRender == null) {
+        //rendered meanwhile
+        return content.length();
+      }
+      long weight = 0;
+      for (Map.Entry<String, String> entry : toRender.entrySet()) {
+        //the separator and the line break
+        weight += Strings.nullToEmpty(entry.getKey()).length() + Strings.nullToEmpty(entry.getValue()).length() + 2;
+      }
+      return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+  }
+
   private String tryToGetClientIp(HttpServletRequest request) {
     String forwardedFor = request.getHeader("X-FORWARDED-FOR");
     if (!Strings.isNullOrEmpty(forwardedFor)) {
@@ -1,39 +1,49 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
-import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanOutEngine;
+import com.ctrip.framework.apollo.configservice.service.NotificationStreamRegistry;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.MultiplexedDeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationWatcher;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationResponseBodies;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.lang.reflect.Type;
 import java.util.Collection;
@@ -41,9 +51,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -53,39 +60,39 @@ import java.util.function.Function;
 @RequestMapping("/notifications/v2")
 public class NotificationControllerV2 implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final Multimap<String, DeferredResultWrapper> deferredResults =
-      Multimaps.synchronizedSetMultimap(HashMultimap.create());
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
   private static final Type notificationsTypeReference =
       new TypeToken<List<ApolloConfigNotification>>() {
       }.getType();
 
-  private final ExecutorService largeNotificationBatchExecutorService;
-
+  private final WatchKeyRegistry watchKeyRegistry;
+  private final NotificationFanOutEngine notificationFanOutEngine;
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
   private final EntityManagerUtil entityManagerUtil;
   private final NamespaceUtil namespaceUtil;
   private final Gson gson;
-  private final BizConfig bizConfig;
+  private final NotificationStreamRegistry notificationStreamRegistry;
 
   @Autowired
   public NotificationControllerV2(
+      final WatchKeyRegistry watchKeyRegistry,
+      final NotificationFanOutEngine notificationFanOutEngine,
       final WatchKeysUtil watchKeysUtil,
       final ReleaseMessageServiceWithCache releaseMessageService,
       final EntityManagerUtil entityManagerUtil,
       final NamespaceUtil namespaceUtil,
       final Gson gson,
-      final BizConfig bizConfig) {
-    largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
-        ("NotificationControllerV2", true));
+      final NotificationStreamRegistry notificationStreamRegistry) {
+    this.watchKeyRegistry = watchKeyRegistry;
+    this.notificationFanOutEngine = notificationFanOutEngine;
     this.watchKeysUtil = watchKeysUtil;
     this.releaseMessageService = releaseMessageService;
     this.entityManagerUtil = entityManagerUtil;
     this.namespaceUtil = namespaceUtil;
     this.gson = gson;
-    this.bizConfig = bizConfig;
+    this.notificationStreamRegistry = notificationStreamRegistry;
   }
 
   @GetMapping
@@ -95,6 +102,55 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp) {
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+
+    watchNotifications(deferredResultWrapper, appId, cluster, parseNotifications(notificationsAsString), dataCenter);
+
+    return deferredResultWrapper.getResult();
+  }
+
+  /**
+   * The same as {@link #pollNotification} except that the notifications are sent in the request body in the compact
+   * form of {@link NotificationsCodec}, so that they are not limited by the url length and are cheaper to parse.
+   */
+  @PostMapping(consumes = MediaType.TEXT_PLAIN_VALUE)
+  public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollNotificationWithBody(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestBody String notificationsAsString) {
+    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+
+    watchNotifications(deferredResultWrapper, appId, cluster, decodeNotifications(notificationsAsString, false),
+        dataCenter);
+
+    return deferredResultWrapper.getResult();
+  }
+
+  /**
+   * Stream the notifications as server-sent events, so that the client doesn't need to send a new request after each
+   * release or long polling timeout.
+   */
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamNotifications(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "notifications") String notificationsAsString,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp) {
+    NotificationStreamWrapper streamWrapper = new NotificationStreamWrapper();
+    streamWrapper.onClose(() -> notificationStreamRegistry.unregister(streamWrapper));
+
+    watchNotifications(streamWrapper, appId, cluster, parseNotifications(notificationsAsString), dataCenter);
+    notificationStreamRegistry.register(streamWrapper);
+    //flushed right away, so that the client could tell whether the stream is buffered somewhere by the first heartbeat
+    streamWrapper.heartbeat();
+
+    return streamWrapper.getEmitter();
+  }
+
+  private List<ApolloConfigNotification> parseNotifications(String notificationsAsString) {
     List<ApolloConfigNotification> notifications = null;
 
     try {
@@ -108,7 +164,30 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
     }
 
-    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper();
+    return notifications;
+  }
+
+  /**
+   * Decode the notifications in the compact form of {@link NotificationsCodec}
+   */
+  private List<ApolloConfigNotification> decodeNotifications(String notificationsAsString, boolean multiplexed) {
+    List<ApolloConfigNotification> notifications;
+    try {
+      notifications = multiplexed ? NotificationsCodec.decodeMultiplexed(notificationsAsString)
+          : NotificationsCodec.decode(notificationsAsString);
+    } catch (IllegalArgumentException ex) {
+      throw new BadRequestException(ex.getMessage());
+    }
+
+    if (CollectionUtils.isEmpty(notifications)) {
+      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    }
+
+    return notifications;
+  }
+
+  private void watchNotifications(NotificationWatcher watcher, String appId, String cluster,
+                                  List<ApolloConfigNotification> notifications, String dataCenter) {
     Set<String> namespaces = Sets.newHashSet();
     Map<String, Long> clientSideNotifications = Maps.newHashMap();
     Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
@@ -119,12 +198,12 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       namespaces.add(normalizedNamespace);
       clientSideNotifications.put(normalizedNamespace, notification.getNotificationId());
       if (!Objects.equals(notification.getNamespaceName(), normalizedNamespace)) {
-        deferredResultWrapper.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
+        watcher.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
       }
     }
 
     if (CollectionUtils.isEmpty(namespaces)) {
-      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+      throw new BadRequestException("Invalid format of notifications: " + notifications);
     }
 
     Multimap<String, String> watchedKeysMap =
@@ -137,23 +216,8 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
      * If the check before setting deferredResult,it may receive a notification the next time
      * when method handleMessage is executed between check and set deferredResult.
      */
-    deferredResultWrapper
-          .onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
-
-    deferredResultWrapper.onCompletion(() -> {
-      //unregister all keys
-      for (String key : watchedKeys) {
-        deferredResults.remove(key, deferredResultWrapper);
-      }
-      logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
-    });
+    watch(watcher, watchedKeys);
 
-    //register all keys
-    for (String key : watchedKeys) {
-      this.deferredResults.put(key, deferredResultWrapper);
-    }
-
-    logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
     logger.debug("Listening {} from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
         watchedKeys, appId, cluster, namespaces, dataCenter);
 
@@ -175,6 +239,108 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
         getApolloConfigNotifications(namespaces, clientSideNotifications, watchedKeysMap,
             latestReleaseMessages);
 
+    if (!CollectionUtils.isEmpty(newNotifications)) {
+      watcher.setResult(newNotifications);
+    }
+  }
+
+  /**
+   * Long polling for the namespaces of many (appId, cluster) pairs in one request, so that a process hosting many apps
+   * could watch all of them with one connection.
+   *
+   * @param notificationsAsString the notifications with appId and cluster set
+   * @return the notifications of the changed namespaces, with appId and cluster set
+   */
+  @GetMapping("/multi")
+  public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollMultiplexedNotifications(
+      @RequestParam(value = "notifications") String notificationsAsString,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp) {
+    return watchMultiplexedNotifications(parseNotifications(notificationsAsString), dataCenter);
+  }
+
+  /**
+   * The same as {@link #pollMultiplexedNotifications} except that the notifications are sent in the request body in
+   * the multiplexed compact form of {@link NotificationsCodec}, as the query string of many apps easily goes past the
+   * url limits of the proxies.
+   */
+  @PostMapping(value = "/multi", consumes = MediaType.TEXT_PLAIN_VALUE)
+  public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollMultiplexedNotificationsWithBody(
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestBody String notificationsAsString) {
+    return watchMultiplexedNotifications(decodeNotifications(notificationsAsString, true), dataCenter);
+  }
+
+  private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> watchMultiplexedNotifications(
+      List<ApolloConfigNotification> notifications, String dataCenter) {
+    //appId -> cluster -> notifications
+    Table<String, String, List<ApolloConfigNotification>> notificationsByApp = HashBasedTable.create();
+    for (ApolloConfigNotification notification : notifications) {
+      if (Strings.isNullOrEmpty(notification.getAppId()) || Strings.isNullOrEmpty(notification.getCluster())) {
+        continue;
+      }
+      List<ApolloConfigNotification> appNotifications =
+          notificationsByApp.get(notification.getAppId(), notification.getCluster());
+      if (appNotifications == null) {
+        appNotifications = Lists.newArrayList();
+        notificationsByApp.put(notification.getAppId(), notification.getCluster(), appNotifications);
+      }
+      appNotifications.add(notification);
+    }
+
+    MultiplexedDeferredResultWrapper deferredResultWrapper = new MultiplexedDeferredResultWrapper();
+    List<WatchedApp> watchedApps = Lists.newArrayList();
+    Set<String> watchedKeys = Sets.newHashSet();
+
+    for (Table.Cell<String, String, List<ApolloConfigNotification>> cell : notificationsByApp.cellSet()) {
+      WatchedApp watchedApp = new WatchedApp(cell.getRowKey(), cell.getColumnKey(),
+          filterNotifications(cell.getRowKey(), cell.getValue()));
+      if (watchedApp.notifications.isEmpty()) {
+        continue;
+      }
+
+      watchedApp.watchedKeysMap = watchKeysUtil.assembleAllWatchKeys(watchedApp.appId, watchedApp.cluster,
+          watchedApp.notifications.keySet(), dataCenter);
+      for (Map.Entry<String, String> watchedKey : watchedApp.watchedKeysMap.entries()) {
+        deferredResultWrapper.recordWatchedNamespace(watchedKey.getValue(), watchedApp.appId, watchedApp.cluster,
+            watchedApp.notifications.get(watchedKey.getKey()).getNamespaceName());
+      }
+
+      watchedApps.add(watchedApp);
+      watchedKeys.addAll(watchedApp.watchedKeysMap.values());
+    }
+
+    if (watchedKeys.isEmpty()) {
+      throw new BadRequestException("Invalid format of notifications: " + notifications);
+    }
+
+    watch(deferredResultWrapper, watchedKeys);
+
+    logger.debug("Listening {} from {} apps, datacenter: {}", watchedKeys, watchedApps.size(), dataCenter);
+
+    List<ReleaseMessage> latestReleaseMessages =
+        releaseMessageService.findLatestReleaseMessagesGroupByMessages(watchedKeys);
+
+    entityManagerUtil.closeEntityManager();
+
+    List<ApolloConfigNotification> newNotifications = Lists.newArrayList();
+    for (WatchedApp watchedApp : watchedApps) {
+      Map<String, Long> clientSideNotifications = Maps.newHashMap();
+      for (Map.Entry<String, ApolloConfigNotification> notificationEntry : watchedApp.notifications.entrySet()) {
+        clientSideNotifications.put(notificationEntry.getKey(), notificationEntry.getValue().getNotificationId());
+      }
+
+      for (ApolloConfigNotification notification : getApolloConfigNotifications(watchedApp.notifications.keySet(),
+          clientSideNotifications, watchedApp.watchedKeysMap, latestReleaseMessages)) {
+        //return the namespace name used by the client
+        notification.setNamespaceName(watchedApp.notifications.get(notification.getNamespaceName()).getNamespaceName());
+        notification.setAppId(watchedApp.appId);
+        notification.setCluster(watchedApp.cluster);
+        newNotifications.add(notification);
+      }
+    }
+
     if (!CollectionUtils.isEmpty(newNotifications)) {
       deferredResultWrapper.setResult(newNotifications);
     }
@@ -182,6 +348,26 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     return deferredResultWrapper.getResult();
   }
 
+  private void watch(NotificationWatcher watcher, Set<String> watchedKeys) {
+    watcher
+          .onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
+
+    watcher.onCompletion(() -> {
+      //unregister all keys
+      for (String key : watchedKeys) {
+        watchKeyRegistry.unregister(key, watcher);
+      }
+      logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
+    });
+
+    //register all keys
+    for (String key : watchedKeys) {
+      watchKeyRegistry.register(key, watcher);
+    }
+
+    logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
+  }
+
   private Map<String, ApolloConfigNotification> filterNotifications(String appId,
                                                                     List<ApolloConfigNotification> notifications) {
     Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
@@ -258,42 +444,21 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    if (!deferredResults.containsKey(content)) {
+    //a snapshot of the current watchers, so clients could come and go during the notification
+    List<NotificationWatcher> results = watchKeyRegistry.getWatchers(content);
+    if (results.isEmpty()) {
       return;
     }
-
-    //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
+    watchKeyRegistry.recordFanOut(results.size());
 
     ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
     configNotification.addMessage(content, message.getId());
+    //encode once and share the body among all the clients
+    NotificationResponseBodies responseBodies = new NotificationResponseBodies(configNotification, gson);
 
-    //do async notification if too many clients
-    if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              //ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(configNotification);
-        }
-      });
-      return;
-    }
-
-    logger.debug("Notify {} clients for key {}", results.size(), content);
-
-    for (DeferredResultWrapper result : results) {
-      result.setResult(configNotification);
-    }
-    logger.debug("Notification completed");
+    //notify asynchronously, so the other release message listeners won't be blocked
+    logger.debug("Async notify {} clients for key {}", results.size(), content);
+    notificationFanOutEngine.fanOut(content, results, result -> result.setResult(responseBodies));
   }
 
   private static final Function<String, String> retrieveNamespaceFromReleaseMessage =
@@ -315,4 +480,18 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       Tracer.logEvent(eventName, watchedKey);
     }
   }
+
+  private static class WatchedApp {
+    private final String appId;
+    private final String cluster;
+    //normalized namespace name -> notification
+    private final Map<String, ApolloConfigNotification> notifications;
+    private Multimap<String, String> watchedKeysMap;
+
+    private WatchedApp(String appId, String cluster, Map<String, ApolloConfigNotification> notifications) {
+      this.appId = appId;
+      this.cluster = cluster;
+      this.notifications = notifications;
+    }
+  }
 }
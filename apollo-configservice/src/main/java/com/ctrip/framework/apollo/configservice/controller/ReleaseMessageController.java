@@ -0,0 +1,63 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Strings;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives the release message ids pushed by the HttpReleaseMessageBroadcaster of admin services
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageController {
+
+  private final ReleaseMessageScanner releaseMessageScanner;
+  private final BizConfig bizConfig;
+
+  public ReleaseMessageController(
+      final ReleaseMessageScanner releaseMessageScanner,
+      final BizConfig bizConfig) {
+    this.releaseMessageScanner = releaseMessageScanner;
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * The push only wakes up the release message scan, the messages are still loaded from database
+   */
+  @PostMapping
+  public ResponseEntity<Void> onMessagePushed(@RequestParam("id") long id,
+      @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String accessToken) {
+    if (!bizConfig.isReleaseMessagePushEnabled()) {
+      throw new BadRequestException("Release message push is not enabled");
+    }
+    if (!isAuthorized(accessToken)) {
+      Tracer.logEvent("Apollo.ReleaseMessage.PushUnauthorized", String.valueOf(id));
+      return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+    }
+    Tracer.logEvent("Apollo.ReleaseMessage.Pushed", String.valueOf(id));
+
+    releaseMessageScanner.onMessagePushed(id);
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+
+  private boolean isAuthorized(String accessToken) {
+    String expectedAccessToken = bizConfig.releaseMessagePushAccessToken();
+    if (Strings.isNullOrEmpty(expectedAccessToken) || accessToken == null) {
+      return false;
+    }
+    return MessageDigest.isEqual(expectedAccessToken.getBytes(StandardCharsets.UTF_8),
+        accessToken.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,202 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationWatcher;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Notifies the long polling clients of release messages off the release message scan thread.
+ *
+ * <ul>
+ *   <li>fan-outs are handled by a pool of workers, so hot releases are notified in parallel</li>
+ *   <li>each fan-out owns a token bucket which refills <code>apollo.release-message.notification.batch</code> tokens
+ *   every <code>apollo.release-message.notification.batch.interval</code> milliseconds, large fan-outs are
+ *   rescheduled instead of sleeping in the worker</li>
+ *   <li>fan-outs which could be done in one batch jump ahead of the pending large fan-outs</li>
+ * </ul>
+ */
+@Component
+public class NotificationFanOutEngine implements MeterBinder, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutEngine.class);
+  private static final long PRIORITY_BOOST_IN_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private final BizConfig bizConfig;
+  private final DelayQueue<FanOutTask> fanOutTasks = new DelayQueue<>();
+  private final ExecutorService workers;
+  private final AtomicLong pendingNotifications = new AtomicLong();
+  private volatile Timer timeToNotifyAll;
+
+  public NotificationFanOutEngine(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    int workerCount = bizConfig.releaseMessageNotificationWorkers();
+    workers = Executors.newFixedThreadPool(workerCount, ApolloThreadFactory.create("NotificationFanOutEngine", true));
+    for (int i = 0; i < workerCount; i++) {
+      workers.submit(this::doFanOut);
+    }
+  }
+
+  /**
+   * Notify the watchers asynchronously
+   * @param watchKey the watch key changed
+   * @param watchers the watchers to notify
+   * @param notifier the action to notify one watcher
+   */
+  public void fanOut(String watchKey, List<NotificationWatcher> watchers, Consumer<NotificationWatcher> notifier) {
+    if (watchers.isEmpty()) {
+      return;
+    }
+    int batch = bizConfig.releaseMessageNotificationBatch();
+    int batchIntervalInMilli = bizConfig.releaseMessageNotificationBatchIntervalInMilli();
+
+    pendingNotifications.addAndGet(watchers.size());
+    fanOutTasks.offer(new FanOutTask(watchKey, watchers, notifier, batch, batchIntervalInMilli));
+  }
+
+  public int getQueuedFanOuts() {
+    return fanOutTasks.size();
+  }
+
+  public long getPendingNotifications() {
+    return pendingNotifications.get();
+  }
+
+  private void doFanOut() {
+    while (!Thread.currentThread().isInterrupted()) {
+      FanOutTask task;
+      try {
+        task = fanOutTasks.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      try {
+        if (task.notifyNextBatch()) {
+          fanOutTasks.offer(task);
+        } else {
+          recordCompleted(task);
+        }
+      } catch (Throwable ex) {
+        logger.error("Notify clients for key {} failed", task.watchKey, ex);
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  private void recordCompleted(FanOutTask task) {
+    long elapsed = System.nanoTime() - task.createdNanos;
+    Timer timer = timeToNotifyAll;
+    if (timer != null) {
+      timer.record(elapsed, TimeUnit.NANOSECONDS);
+    }
+    logger.debug("Notified {} clients for key {} in {} ms", task.watchers.size(), task.watchKey,
+        TimeUnit.NANOSECONDS.toMillis(elapsed));
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.long-poll.fan-out.queue-depth", this, NotificationFanOutEngine::getQueuedFanOuts)
+        .description("Fan-outs waiting to notify their next batch").register(registry);
+    Gauge.builder("apollo.long-poll.fan-out.pending-notifications", this,
+        NotificationFanOutEngine::getPendingNotifications)
+        .description("Clients waiting to be notified").register(registry);
+    timeToNotifyAll = Timer.builder("apollo.long-poll.fan-out.time-to-notify-all")
+        .description("Time from receiving a release message until all its clients are notified").register(registry);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    workers.shutdownNow();
+  }
+
+  private class FanOutTask implements Delayed {
+    private final String watchKey;
+    private final List<NotificationWatcher> watchers;
+    private final Consumer<NotificationWatcher> notifier;
+    private final int bucketCapacity;
+    private final double tokensPerNano;
+    private final boolean prioritized;
+    private final long createdNanos;
+    private double tokens;
+    private long lastRefillNanos;
+    private long dueNanos;
+    private int notified;
+
+    FanOutTask(String watchKey, List<NotificationWatcher> watchers, Consumer<NotificationWatcher> notifier,
+        int batch, int batchIntervalInMilli) {
+      this.watchKey = watchKey;
+      this.watchers = watchers;
+      this.notifier = notifier;
+      this.bucketCapacity = batch;
+      this.tokensPerNano = (double) batch / TimeUnit.MILLISECONDS.toNanos(batchIntervalInMilli);
+      this.prioritized = watchers.size() <= batch;
+      this.createdNanos = System.nanoTime();
+      this.tokens = batch;
+      this.lastRefillNanos = createdNanos;
+      this.dueNanos = createdNanos;
+    }
+
+    /**
+     * @return whether there are still watchers to notify
+     */
+    boolean notifyNextBatch() {
+      long now = System.nanoTime();
+      tokens = Math.min(bucketCapacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+      lastRefillNanos = now;
+
+      int toNotify = Math.min(watchers.size() - notified, (int) tokens);
+      for (int i = 0; i < toNotify; i++) {
+        NotificationWatcher watcher = watchers.get(notified++);
+        pendingNotifications.decrementAndGet();
+        try {
+          notifier.accept(watcher);
+        } catch (Throwable ex) {
+          logger.error("Notify {} for key {} failed", watcher, watchKey, ex);
+        }
+      }
+      tokens -= toNotify;
+
+      int remaining = watchers.size() - notified;
+      if (remaining == 0) {
+        return false;
+      }
+
+      //wait until the bucket has enough tokens for the next batch
+      double tokensNeeded = Math.min(bucketCapacity, remaining) - tokens;
+      dueNanos = now + (long) Math.ceil(tokensNeeded / tokensPerNano);
+      return true;
+    }
+
+    private long rank() {
+      return prioritized ? dueNanos - PRIORITY_BOOST_IN_NANOS : dueNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(rank(), ((FanOutTask) other).rank());
+    }
+  }
+}
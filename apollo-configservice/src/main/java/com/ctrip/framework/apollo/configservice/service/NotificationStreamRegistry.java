@@ -0,0 +1,69 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The open notification streams, which are sent a heartbeat periodically so that the clients could tell a dead
+ * connection from a quiet one and the idle connections are not cut by proxies.
+ */
+@Component
+public class NotificationStreamRegistry implements MeterBinder, DisposableBean {
+  //should be shorter than the client side read timeout of the stream
+  private static final long HEARTBEAT_INTERVAL_IN_SECONDS = 30;
+
+  private final Set<NotificationStreamWrapper> streams = Sets.newConcurrentHashSet();
+  private final ScheduledExecutorService heartbeatService;
+
+  public NotificationStreamRegistry() {
+    heartbeatService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("NotificationStreamHeartbeat", true));
+    heartbeatService.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_INTERVAL_IN_SECONDS,
+        HEARTBEAT_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public void register(NotificationStreamWrapper stream) {
+    streams.add(stream);
+  }
+
+  public void unregister(NotificationStreamWrapper stream) {
+    streams.remove(stream);
+  }
+
+  public int size() {
+    return streams.size();
+  }
+
+  private void heartbeat() {
+    try {
+      for (NotificationStreamWrapper stream : streams) {
+        stream.heartbeat();
+      }
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.notification.streams", this, NotificationStreamRegistry::size)
+        .description("Current server-sent notification streams").register(registry);
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    heartbeatService.shutdownNow();
+  }
+}
@@ -0,0 +1,90 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.google.common.collect.Maps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A snapshot of the latest release message id of each message, together with the cursor when it was taken.
+ *
+ * <p>The messages with ids not greater than the cursor are all in the snapshot, so a restarted config service only
+ * needs to load the release messages after the cursor. The cursor stops before the ids skipped by the scan which might
+ * still be committed, so they are looked for again after restarting.</p>
+ */
+class ReleaseMessageCacheSnapshot {
+  private static final int VERSION = 1;
+
+  private final long cursor;
+  private final Map<String, Long> releaseMessageIds;
+
+  ReleaseMessageCacheSnapshot(long cursor, Map<String, Long> releaseMessageIds) {
+    this.cursor = cursor;
+    this.releaseMessageIds = releaseMessageIds;
+  }
+
+  long getCursor() {
+    return cursor;
+  }
+
+  /**
+   * @return message -> latest release message id
+   */
+  Map<String, Long> getReleaseMessageIds() {
+    return releaseMessageIds;
+  }
+
+  /**
+   * Write to a temporary file first and then move it to the target, so that a crash never leaves a partial snapshot.
+   */
+  void writeTo(File file) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+    File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+
+    try (DataOutputStream out = new DataOutputStream(
+        new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile))))) {
+      out.writeInt(VERSION);
+      out.writeLong(cursor);
+      //the map might be a live view, so mark each entry instead of writing the size up front
+      for (Map.Entry<String, Long> entry : releaseMessageIds.entrySet()) {
+        out.writeBoolean(true);
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+      out.writeBoolean(false);
+    }
+
+    Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static ReleaseMessageCacheSnapshot readFrom(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+      int version = in.readInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported release message cache snapshot version: " + version);
+      }
+      long cursor = in.readLong();
+      Map<String, Long> releaseMessageIds = Maps.newHashMap();
+      while (in.readBoolean()) {
+        releaseMessageIds.put(in.readUTF(), in.readLong());
+      }
+      return new ReleaseMessageCacheSnapshot(cursor, releaseMessageIds);
+    }
+  }
+}
@@ -13,16 +13,23 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.io.File;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -30,9 +37,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
-public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean {
+public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean, DisposableBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache
       .class);
+  private static final long SNAPSHOT_INTERVAL_IN_SECONDS = 60;
+  //an id skipped by the scan might belong to a transaction not committed yet, which is delivered late by the scanner
+  private static final long MISSING_MESSAGE_TRACKING_WINDOW_IN_MILLI = 60 * 1000;
+  //a bigger gap is more likely to be an auto increment jump than uncommitted transactions
+  private static final int MAX_MISSING_MESSAGES = 1000;
   private final ReleaseMessageRepository releaseMessageRepository;
   private final BizConfig bizConfig;
 
@@ -40,11 +52,16 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   private TimeUnit scanIntervalTimeUnit;
 
   private volatile long maxIdScanned;
+  private volatile long maxIdInSnapshot;
 
+  //message -> a copy of the latest release message with only the id and message kept
   private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
+  //release message id skipped by the scan -> the time it was found missing
+  private ConcurrentNavigableMap<Long, Long> missingMessages;
 
   private AtomicBoolean doScan;
   private ExecutorService executorService;
+  private ScheduledExecutorService snapshotExecutorService;
 
   public ReleaseMessageServiceWithCache(
       final ReleaseMessageRepository releaseMessageRepository,
@@ -56,9 +73,12 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 
   private void initialize() {
     releaseMessageCache = Maps.newConcurrentMap();
+    missingMessages = new ConcurrentSkipListMap<>();
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
         .create("ReleaseMessageServiceWithCache", true));
+    snapshotExecutorService = Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory
+        .create("ReleaseMessageServiceWithCacheSnapshot", true));
   }
 
   public ReleaseMessage findLatestReleaseMessageForMessages(Set<String> messages) {
@@ -113,6 +133,9 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     } else if (gap > 1) {
       //gap found!
       loadReleaseMessages(maxIdScanned);
+    } else {
+      //committed later than the messages after it, so it is only newer if nothing is released for its key since
+      mergeReleaseMessage(message);
     }
   }
 
@@ -121,7 +144,12 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     populateDataBaseInterval();
     //block the startup process until load finished
     //this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
+    loadReleaseMessages(loadSnapshot());
+
+    if (!Strings.isNullOrEmpty(bizConfig.releaseMessageCacheSnapshotFile())) {
+      snapshotExecutorService.scheduleWithFixedDelay(this::writeSnapshot, SNAPSHOT_INTERVAL_IN_SECONDS,
+          SNAPSHOT_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+    }
 
     executorService.submit(() -> {
       while (doScan.get() && !Thread.currentThread().isInterrupted()) {
@@ -145,11 +173,122 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     });
   }
 
-  private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
-    ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
-    if (old == null || releaseMessage.getId() > old.getId()) {
-      releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
-      maxIdScanned = releaseMessage.getId();
+  @Override
+  public void destroy() throws Exception {
+    executorService.shutdownNow();
+    snapshotExecutorService.shutdownNow();
+    writeSnapshot();
+  }
+
+  private void mergeReleaseMessage(ReleaseMessage releaseMessage) {
+    mergeReleaseMessage(releaseMessage.getMessage(), releaseMessage.getId());
+  }
+
+  private synchronized void mergeReleaseMessage(String message, long id) {
+    missingMessages.remove(id);
+    ReleaseMessage old = releaseMessageCache.get(message);
+    if (old == null || id > old.getId()) {
+      //keep neither the entity nor its timestamp, the same instance is returned until the next release
+      ReleaseMessage compact = new ReleaseMessage(message);
+      compact.setId(id);
+      releaseMessageCache.put(message, compact);
+      maxIdScanned = Math.max(maxIdScanned, id);
+    }
+  }
+
+  /**
+   * @return the id to load the release messages after
+   */
+  private long loadSnapshot() {
+    String snapshotFile = bizConfig.releaseMessageCacheSnapshotFile();
+    if (Strings.isNullOrEmpty(snapshotFile) || !new File(snapshotFile).isFile()) {
+      return 0;
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache", "loadSnapshot");
+    try {
+      ReleaseMessageCacheSnapshot snapshot = ReleaseMessageCacheSnapshot.readFrom(new File(snapshotFile));
+      //the snapshot is taken from another database, e.g. the database is recreated
+      ReleaseMessage latestReleaseMessage = releaseMessageRepository.findTopByOrderByIdDesc();
+      if (latestReleaseMessage == null || latestReleaseMessage.getId() < snapshot.getCursor()) {
+        logger.warn("Release message cache snapshot {} is newer than the database, ignore it", snapshotFile);
+        transaction.setStatus(Transaction.SUCCESS);
+        return 0;
+      }
+      for (Map.Entry<String, Long> entry : snapshot.getReleaseMessageIds().entrySet()) {
+        mergeReleaseMessage(entry.getKey(), entry.getValue());
+      }
+      maxIdScanned = snapshot.getCursor();
+      maxIdInSnapshot = snapshot.getCursor();
+      logger.info("Loaded {} release messages from snapshot {} with cursor {}", releaseMessageCache.size(),
+          snapshotFile, snapshot.getCursor());
+      transaction.setStatus(Transaction.SUCCESS);
+      return snapshot.getCursor();
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.warn("Load release message cache snapshot {} failed, will load all release messages", snapshotFile, ex);
+      releaseMessageCache.clear();
+      maxIdScanned = 0;
+      return 0;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  void writeSnapshot() {
+    String snapshotFile = bizConfig.releaseMessageCacheSnapshotFile();
+    //read the cursor first, so that all the messages not after it are in the cache
+    long cursor = findSnapshotCursor();
+    if (Strings.isNullOrEmpty(snapshotFile) || cursor == maxIdInSnapshot) {
+      return;
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache", "writeSnapshot");
+    try {
+      new ReleaseMessageCacheSnapshot(cursor, Maps.transformValues(releaseMessageCache, ReleaseMessage::getId))
+          .writeTo(new File(snapshotFile));
+      maxIdInSnapshot = cursor;
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.warn("Write release message cache snapshot {} failed", snapshotFile, ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * @return the max id scanned, or the id before the lowest missing one if any, so that the messages committed later
+   * than the messages after them are loaded again after restarting
+   */
+  private long findSnapshotCursor() {
+    long cursor = maxIdScanned;
+    long expireBefore = System.currentTimeMillis() - MISSING_MESSAGE_TRACKING_WINDOW_IN_MILLI;
+    Iterator<Map.Entry<Long, Long>> iterator = missingMessages.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Long, Long> entry = iterator.next();
+      if (entry.getValue() < expireBefore) {
+        //rolled back, or deleted by the cleaning of the outdated messages
+        iterator.remove();
+        continue;
+      }
+      //the ids are in ascending order
+      return Math.min(cursor, entry.getKey() - 1);
+    }
+    return cursor;
+  }
+
+  private void recordMissingMessages(long startId, List<ReleaseMessage> releaseMessages) {
+    long expectedId = Math.max(startId, maxIdScanned) + 1;
+    long now = System.currentTimeMillis();
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      long gap = releaseMessage.getId() - expectedId;
+      if (gap > 0 && gap <= MAX_MISSING_MESSAGES - missingMessages.size()) {
+        for (long id = expectedId; id < releaseMessage.getId(); id++) {
+          missingMessages.put(id, now);
+        }
+      }
+      expectedId = Math.max(expectedId, releaseMessage.getId() + 1);
     }
   }
 
@@ -162,6 +301,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       if (CollectionUtils.isEmpty(releaseMessages)) {
         break;
       }
+      recordMissingMessages(startId, releaseMessages);
       releaseMessages.forEach(this::mergeReleaseMessage);
       int scanned = releaseMessages.size();
       startId = releaseMessages.get(scanned - 1).getId();
@@ -178,6 +318,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   //only for test use
   private void reset() throws Exception {
     executorService.shutdownNow();
+    snapshotExecutorService.shutdownNow();
     initialize();
     afterPropertiesSet();
   }
@@ -0,0 +1,121 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationWatcher;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of the long polling clients waiting on each watch key.
+ *
+ * <p>Each watch key owns its own concurrent set, so registration, unregistration and fan-out of different keys never
+ * contend with each other, and the per key operations only lock the hash bin of that key for a very short time.</p>
+ */
+@Component
+public class WatchKeyRegistry implements MeterBinder {
+  private final ConcurrentMap<String, Set<NotificationWatcher>> watchers = Maps.newConcurrentMap();
+
+  private final LongAdder size = new LongAdder();
+  private final LongAdder registrations = new LongAdder();
+  private final LongAdder unregistrations = new LongAdder();
+  private final LongAdder fanOuts = new LongAdder();
+  private final LongAdder fanOutWatchers = new LongAdder();
+
+  public void register(String watchKey, NotificationWatcher watcher) {
+    // compute instead of computeIfAbsent + add, so that a concurrent unregister could not drop the set in between
+    watchers.compute(watchKey, (key, registered) -> {
+      if (registered == null) {
+        registered = Sets.newConcurrentHashSet();
+      }
+      if (registered.add(watcher)) {
+        size.increment();
+      }
+      return registered;
+    });
+    registrations.increment();
+  }
+
+  public void unregister(String watchKey, NotificationWatcher watcher) {
+    watchers.computeIfPresent(watchKey, (key, registered) -> {
+      if (registered.remove(watcher)) {
+        size.decrement();
+        unregistrations.increment();
+      }
+      return registered.isEmpty() ? null : registered;
+    });
+  }
+
+  public boolean hasWatchers(String watchKey) {
+    return watchers.containsKey(watchKey);
+  }
+
+  /**
+   * @return a snapshot of the watchers of the watch key, which is safe to iterate while clients come and go
+   */
+  public List<NotificationWatcher> getWatchers(String watchKey) {
+    Set<NotificationWatcher> registered = watchers.get(watchKey);
+    if (registered == null) {
+      return Collections.emptyList();
+    }
+    return Lists.newArrayList(registered);
+  }
+
+  public void recordFanOut(int watcherCount) {
+    fanOuts.increment();
+    fanOutWatchers.add(watcherCount);
+  }
+
+  /**
+   * @return the number of (watch key, watcher) registrations currently held
+   */
+  public long size() {
+    return size.sum();
+  }
+
+  public int watchKeyCount() {
+    return watchers.size();
+  }
+
+  public long getRegistrations() {
+    return registrations.sum();
+  }
+
+  public long getUnregistrations() {
+    return unregistrations.sum();
+  }
+
+  public long getFanOuts() {
+    return fanOuts.sum();
+  }
+
+  public long getFanOutWatchers() {
+    return fanOutWatchers.sum();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.long-poll.registry.size", this, WatchKeyRegistry::size)
+        .description("Current long polling registrations across all watch keys").register(registry);
+    Gauge.builder("apollo.long-poll.registry.watch-keys", this, WatchKeyRegistry::watchKeyCount)
+        .description("Current watch keys with at least one long polling client").register(registry);
+    FunctionCounter.builder("apollo.long-poll.registry.registrations", this, WatchKeyRegistry::getRegistrations)
+        .register(registry);
+    FunctionCounter.builder("apollo.long-poll.registry.unregistrations", this, WatchKeyRegistry::getUnregistrations)
+        .register(registry);
+    FunctionCounter.builder("apollo.long-poll.registry.fan-outs", this, WatchKeyRegistry::getFanOuts)
+        .register(registry);
+    FunctionCounter.builder("apollo.long-poll.registry.fan-out-watchers", this, WatchKeyRegistry::getFanOutWatchers)
+        .register(registry);
+  }
+}
@@ -0,0 +1,60 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * W-TinyLFU cache backed by caffeine, which keeps the frequently read releases from being flushed out by a burst of
+ * one-off loads
+ */
+class CaffeineConfigCache<K, V> implements ConfigCache<K, V> {
+  private final LoadingCache<K, V> cache;
+  private final long maxWeight;
+
+  CaffeineConfigCache(long maxWeight, long expireAfterAccessInMinutes, Function<K, V> loader,
+      ToIntFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+    this.maxWeight = maxWeight;
+    Weigher<K, V> entryWeigher = (key, value) -> weigher.applyAsInt(value);
+    RemovalListener<K, V> removalListener = (key, value, cause) -> {
+      if (cause == RemovalCause.SIZE) {
+        evictionListener.accept(key, value);
+      }
+    };
+    cache = Caffeine.newBuilder()
+        .maximumWeight(maxWeight)
+        .weigher(entryWeigher)
+        .expireAfterAccess(expireAfterAccessInMinutes, TimeUnit.MINUTES)
+        .removalListener(removalListener)
+        //run maintenance and removal listener on the calling thread, so evicted entries are handed over in order
+        .executor(Runnable::run)
+        .recordStats()
+        .build(loader::apply);
+  }
+
+  @Override
+  public V get(K key) {
+    return cache.get(key);
+  }
+
+  @Override
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  @Override
+  public ConfigCacheStats stats() {
+    CacheStats stats = cache.stats();
+    long weight = cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    return new ConfigCacheStats(EVICTION_POLICY_W_TINY_LFU, cache.estimatedSize(), weight, maxWeight,
+        stats.hitCount(), stats.missCount(), stats.loadCount(), stats.evictionCount(), stats.evictionWeight());
+  }
+}
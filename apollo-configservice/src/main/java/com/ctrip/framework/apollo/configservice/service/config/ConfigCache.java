@@ -0,0 +1,31 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A loading cache bounded by the estimated heap size of its values
+ */
+interface ConfigCache<K, V> {
+  String EVICTION_POLICY_LRU = "lru";
+  String EVICTION_POLICY_W_TINY_LFU = "w-tinylfu";
+
+  V get(K key);
+
+  void invalidate(K key);
+
+  ConfigCacheStats stats();
+
+  /**
+   * @param evictionPolicy lru (guava) or w-tinylfu (caffeine), unknown policies fall back to lru
+   * @param evictionListener called on the evicting thread for entries evicted because of the size bound
+   */
+  static <K, V> ConfigCache<K, V> create(String evictionPolicy, long maxWeight, long expireAfterAccessInMinutes,
+      Function<K, V> loader, ToIntFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+    if (EVICTION_POLICY_W_TINY_LFU.equalsIgnoreCase(evictionPolicy)) {
+      return new CaffeineConfigCache<>(maxWeight, expireAfterAccessInMinutes, loader, weigher, evictionListener);
+    }
+    return new GuavaConfigCache<>(maxWeight, expireAfterAccessInMinutes, loader, weigher, evictionListener);
+  }
+}
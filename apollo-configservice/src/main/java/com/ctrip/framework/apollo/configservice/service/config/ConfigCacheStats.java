@@ -0,0 +1,88 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+/**
+ * Point in time statistics of a config service cache
+ */
+public class ConfigCacheStats {
+  private final String evictionPolicy;
+  private final long size;
+  private final long weight;
+  private final long maxWeight;
+  private final long hitCount;
+  private final long missCount;
+  private final long loadCount;
+  private final long evictionCount;
+  private final long evictionWeight;
+
+  public ConfigCacheStats(String evictionPolicy, long size, long weight, long maxWeight, long hitCount,
+      long missCount, long loadCount, long evictionCount, long evictionWeight) {
+    this.evictionPolicy = evictionPolicy;
+    this.size = size;
+    this.weight = weight;
+    this.maxWeight = maxWeight;
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.loadCount = loadCount;
+    this.evictionCount = evictionCount;
+    this.evictionWeight = evictionWeight;
+  }
+
+  public String getEvictionPolicy() {
+    return evictionPolicy;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * @return the estimated heap size in bytes of the cached entries
+   */
+  public long getWeight() {
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public double getHitRate() {
+    long requestCount = hitCount + missCount;
+    return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+  }
+
+  public long getLoadCount() {
+    return loadCount;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public long getEvictionWeight() {
+    return evictionWeight;
+  }
+
+  @Override
+  public String toString() {
+    return "ConfigCacheStats{" +
+        "evictionPolicy='" + evictionPolicy + '\'' +
+        ", size=" + size +
+        ", weight=" + weight +
+        ", maxWeight=" + maxWeight +
+        ", hitCount=" + hitCount +
+        ", missCount=" + missCount +
+        ", loadCount=" + loadCount +
+        ", evictionCount=" + evictionCount +
+        ", evictionWeight=" + evictionWeight +
+        '}';
+  }
+}
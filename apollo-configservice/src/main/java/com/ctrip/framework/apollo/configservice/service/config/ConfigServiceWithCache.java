@@ -2,11 +2,10 @@ package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
@@ -25,21 +24,27 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 
 /**
- * config service with guava cache
+ * config service with a size bounded release cache, the eviction policy could be lru (guava) or w-tinylfu (caffeine),
+ * and releases evicted for size could optionally be kept off heap
  *
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ConfigServiceWithCache extends AbstractConfigService {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceWithCache.class);
   private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;//1 hour
+  //release entity fields, cache entry and cache node
+  private static final int ENTRY_OVERHEAD_IN_BYTES = 512;
+  //the release id cache gets 1/4 of the max weight
+  private static final int ID_CACHE_WEIGHT_SHARE = 4;
   private static final String TRACER_EVENT_CACHE_INVALIDATE = "ConfigCache.Invalidate";
   private static final String TRACER_EVENT_CACHE_LOAD = "ConfigCache.LoadFromDB";
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
+  private static final String TRACER_EVENT_CACHE_LOAD_OFF_HEAP = "ConfigCache.LoadFromOffHeap";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
   private static final Splitter STRING_SPLITTER =
@@ -51,9 +56,17 @@ public class ConfigServiceWithCache extends AbstractConfigService {
   @Autowired
   private ReleaseMessageService releaseMessageService;
 
-  private LoadingCache<String, ConfigCacheEntry> configCache;
+  @Autowired
+  private BizConfig bizConfig;
+
+  @Autowired
+  private ReleaseConfigurationsCache releaseConfigurationsCache;
+
+  private ConfigCache<String, ConfigCacheEntry> configCache;
 
-  private LoadingCache<Long, Optional<Release>> configIdCache;
+  private ConfigCache<Long, Optional<Release>> configIdCache;
+
+  private OffHeapReleaseStore offHeapReleaseStore;
 
   private ConfigCacheEntry nullConfigCacheEntry;
 
@@ -63,69 +76,159 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
   @PostConstruct
   void initialize() {
-    configCache = CacheBuilder.newBuilder()
-        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<String, ConfigCacheEntry>() {
-          @Override
-          public ConfigCacheEntry load(String key) throws Exception {
-            List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
-            if (namespaceInfo.size() != 3) {
-              Tracer.logError(
-                  new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
-              return nullConfigCacheEntry;
-            }
-
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-            try {
-              ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
-                  .newArrayList(key));
-              Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
-                  namespaceInfo.get(2));
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
-                  .getId();
-
-              if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-                return nullConfigCacheEntry;
-              }
-
-              return new ConfigCacheEntry(notificationId, latestRelease);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
-            }
-          }
-        });
-    configIdCache = CacheBuilder.newBuilder()
-        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<Long, Optional<Release>>() {
-          @Override
-          public Optional<Release> load(Long key) throws Exception {
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD_ID, String.valueOf(key));
-            try {
-              Release release = releaseService.findActiveOne(key);
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              return Optional.ofNullable(release);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
-            }
-          }
+    String evictionPolicy = bizConfig.configServiceCacheEvictionPolicy();
+    //both caches share the budget, the releases queried by id are mostly gray releases so they get the smaller share
+    long maxWeight = bizConfig.configServiceCacheMaxWeightInBytes();
+    long idCacheMaxWeight = maxWeight / ID_CACHE_WEIGHT_SHARE;
+    if (bizConfig.isConfigServiceOffHeapCacheEnabled()) {
+      offHeapReleaseStore = new OffHeapReleaseStore(bizConfig.configServiceOffHeapCacheMaxSizeInBytes());
+    }
+
+    configCache = ConfigCache.create(evictionPolicy, maxWeight - idCacheMaxWeight,
+        DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, this::loadConfigCacheEntry, entry -> weigh(entry.getRelease()),
+        this::onConfigCacheEntryEvicted);
+    configIdCache = ConfigCache.create(evictionPolicy, idCacheMaxWeight, DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES,
+        this::loadRelease, release -> weigh(release.orElse(null)), (key, release) -> {
         });
   }
 
+  private ConfigCacheEntry loadConfigCacheEntry(String key) {
+    List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
+    if (namespaceInfo.size() != 3) {
+      Tracer.logError(
+          new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
+      return nullConfigCacheEntry;
+    }
+
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+    try {
+      ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
+          .newArrayList(key));
+
+      long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
+          .getId();
+
+      Release latestRelease = null;
+      if (offHeapReleaseStore != null && notificationId != ConfigConsts.NOTIFICATION_ID_PLACEHOLDER) {
+        latestRelease = assembleRelease(namespaceInfo, offHeapReleaseStore.take(key, notificationId));
+      }
+      if (latestRelease == null) {
+        latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
+            namespaceInfo.get(2));
+      } else {
+        Tracer.logEvent(TRACER_EVENT_CACHE_LOAD_OFF_HEAP, key);
+      }
+
+      transaction.setStatus(Transaction.SUCCESS);
+
+      if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+        return nullConfigCacheEntry;
+      }
+
+      warmUpConfigurations(latestRelease);
+
+      return new ConfigCacheEntry(notificationId, latestRelease);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Only the fields used to answer the config queries are kept off heap
+   */
+  private Release assembleRelease(List<String> namespaceInfo, OffHeapReleaseStore.StoredRelease storedRelease) {
+    if (storedRelease == null) {
+      return null;
+    }
+    Release release = new Release();
+    release.setAppId(namespaceInfo.get(0));
+    release.setClusterName(namespaceInfo.get(1));
+    release.setNamespaceName(namespaceInfo.get(2));
+    release.setReleaseKey(storedRelease.getReleaseKey());
+    release.setConfigurations(storedRelease.getConfigurations());
+    return release;
+  }
+
+  private Optional<Release> loadRelease(Long key) {
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD_ID, String.valueOf(key));
+    try {
+      Release release = releaseService.findActiveOne(key);
+
+      transaction.setStatus(Transaction.SUCCESS);
+
+      warmUpConfigurations(release);
+
+      return Optional.ofNullable(release);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Parse the configurations while loading, so the queries of the cached release don't need to parse them again
+   */
+  private void warmUpConfigurations(Release release) {
+    if (release == null) {
+      return;
+    }
+    try {
+      releaseConfigurationsCache.retain(release);
+    } catch (Throwable ex) {
+      //the query of the release will report the error
+      logger.warn("Parse configurations of release {} failed", release.getId(), ex);
+    }
+  }
+
+  private void onConfigCacheEntryEvicted(String key, ConfigCacheEntry entry) {
+    if (offHeapReleaseStore == null || entry.getRelease() == null
+        || entry.getNotificationId() == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER) {
+      return;
+    }
+    try {
+      Release release = entry.getRelease();
+      offHeapReleaseStore.put(key, entry.getNotificationId(), release.getReleaseKey(), release.getConfigurations());
+    } catch (Throwable ex) {
+      //only a cache, the release will be loaded from db next time
+      logger.warn("Move release of {} off heap failed", key, ex);
+    }
+  }
+
+  /**
+   * Estimated heap size of a cached release, dominated by its configurations which are stored as UTF-16 chars, once
+   * as the raw json and once more as the parsed keys and values
+   */
+  static int weigh(Release release) {
+    if (release == null) {
+      return ENTRY_OVERHEAD_IN_BYTES;
+    }
+    String configurations = release.getConfigurations();
+    long weight = ENTRY_OVERHEAD_IN_BYTES + (configurations == null ? 0 : configurations.length() * 4L);
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return statistics of the release caches, keyed by cache name
+   */
+  public Map<String, ConfigCacheStats> getCacheStats() {
+    Map<String, ConfigCacheStats> stats = Maps.newLinkedHashMap();
+    stats.put("configCache", configCache.stats());
+    stats.put("configIdCache", configIdCache.stats());
+    if (offHeapReleaseStore != null) {
+      stats.put("offHeapReleaseStore", offHeapReleaseStore.stats());
+    }
+    return stats;
+  }
+
   @Override
   protected Release findActiveOne(long id, ApolloNotificationMessages clientMessages) {
     Tracer.logEvent(TRACER_EVENT_CACHE_GET_ID, String.valueOf(id));
-    return configIdCache.getUnchecked(id).orElse(null);
+    return configIdCache.get(id).orElse(null);
   }
 
   @Override
@@ -135,14 +238,14 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
     Tracer.logEvent(TRACER_EVENT_CACHE_GET, key);
 
-    ConfigCacheEntry cacheEntry = configCache.getUnchecked(key);
+    ConfigCacheEntry cacheEntry = configCache.get(key);
 
     //cache is out-dated
     if (clientMessages != null && clientMessages.has(key) &&
         clientMessages.get(key) > cacheEntry.getNotificationId()) {
       //invalidate the cache and try to load from db again
       invalidate(key);
-      cacheEntry = configCache.getUnchecked(key);
+      cacheEntry = configCache.get(key);
     }
 
     return cacheEntry.getRelease();
@@ -150,6 +253,9 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
   private void invalidate(String key) {
     configCache.invalidate(key);
+    if (offHeapReleaseStore != null) {
+      offHeapReleaseStore.remove(key);
+    }
     Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
   }
 
@@ -164,7 +270,7 @@ public class ConfigServiceWithCache extends AbstractConfigService {
       invalidate(message.getMessage());
 
       //warm up the cache
-      configCache.getUnchecked(message.getMessage());
+      configCache.get(message.getMessage());
     } catch (Throwable ex) {
       //ignore
     }
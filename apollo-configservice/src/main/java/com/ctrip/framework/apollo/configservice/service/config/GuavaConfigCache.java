@@ -0,0 +1,71 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Segmented LRU cache backed by guava
+ */
+class GuavaConfigCache<K, V> implements ConfigCache<K, V> {
+  private final LoadingCache<K, V> cache;
+  private final long maxWeight;
+  //guava doesn't expose the weighted size, so it is accounted on load and removal
+  private final LongAdder weight = new LongAdder();
+  private final LongAdder evictionWeight = new LongAdder();
+
+  GuavaConfigCache(long maxWeight, long expireAfterAccessInMinutes, Function<K, V> loader,
+      ToIntFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+    this.maxWeight = maxWeight;
+    Weigher<K, V> entryWeigher = (key, value) -> weigher.applyAsInt(value);
+    RemovalListener<K, V> removalListener = notification -> {
+      int entryWeight = weigher.applyAsInt(notification.getValue());
+      weight.add(-entryWeight);
+      if (notification.getCause() == RemovalCause.SIZE) {
+        evictionWeight.add(entryWeight);
+        evictionListener.accept(notification.getKey(), notification.getValue());
+      }
+    };
+    cache = CacheBuilder.newBuilder()
+        .maximumWeight(maxWeight)
+        .weigher(entryWeigher)
+        .expireAfterAccess(expireAfterAccessInMinutes, TimeUnit.MINUTES)
+        .removalListener(removalListener)
+        .recordStats()
+        .build(new CacheLoader<K, V>() {
+          @Override
+          public V load(K key) throws Exception {
+            V value = loader.apply(key);
+            weight.add(weigher.applyAsInt(value));
+            return value;
+          }
+        });
+  }
+
+  @Override
+  public V get(K key) {
+    return cache.getUnchecked(key);
+  }
+
+  @Override
+  public void invalidate(K key) {
+    cache.invalidate(key);
+  }
+
+  @Override
+  public ConfigCacheStats stats() {
+    CacheStats stats = cache.stats();
+    return new ConfigCacheStats(EVICTION_POLICY_LRU, cache.size(), weight.sum(), maxWeight, stats.hitCount(),
+        stats.missCount(), stats.loadCount(), stats.evictionCount(), evictionWeight.sum());
+  }
+}
@@ -0,0 +1,207 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Keeps the releases evicted from the heap cache in direct memory, so reloading a cold namespace only costs the cheap
+ * release message query instead of fetching the whole release again.
+ *
+ * <p>Only the release key and the configurations are stored, along with the notification id the release was loaded
+ * with, and they are only returned when the id is still the latest one.</p>
+ *
+ * <p>The releases are written one after another into a single slab allocated up front, which is used as a ring buffer,
+ * so the store never allocates direct memory after it is created. The entries about to be overwritten are the oldest
+ * ones, so the store evicts in insertion order.</p>
+ */
+class OffHeapReleaseStore {
+  private final ByteBuffer slab;
+  private final int capacity;
+  //key -> slot, in the order they are written into the slab
+  private final LinkedHashMap<String, Slot> slots = Maps.newLinkedHashMap();
+  //where the next entry is written
+  private int head;
+  private long sizeInBytes;
+
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder putCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private final LongAdder evictionWeight = new LongAdder();
+
+  OffHeapReleaseStore(long maxSizeInBytes) {
+    capacity = (int) Math.min(maxSizeInBytes, Integer.MAX_VALUE);
+    slab = ByteBuffer.allocateDirect(capacity);
+  }
+
+  void put(String key, long notificationId, String releaseKey, String configurations) {
+    byte[] releaseKeyBytes = encode(releaseKey);
+    byte[] configurationsBytes = encode(configurations);
+    long entrySize = 2L * Integer.BYTES + length(releaseKeyBytes) + length(configurationsBytes);
+    if (entrySize > capacity) {
+      return;
+    }
+    int length = (int) entrySize;
+    putCount.increment();
+
+    synchronized (this) {
+      remove(key);
+
+      boolean wrapped = head + length > capacity;
+      if (wrapped) {
+        //not enough room left at the end of the slab, so start over from the beginning, the entries left at the end
+        //are the oldest ones
+        evictWhile(slot -> slot.offset >= head);
+      }
+      int offset = wrapped ? 0 : head;
+      int end = offset + length;
+      evictWhile(slot -> slot.offset >= offset && slot.offset < end);
+
+      ByteBuffer buffer = slab.duplicate();
+      buffer.position(offset);
+      write(buffer, releaseKeyBytes);
+      write(buffer, configurationsBytes);
+
+      slots.put(key, new Slot(offset, length, notificationId));
+      sizeInBytes += length;
+      head = end;
+    }
+  }
+
+  /**
+   * Take the release out of the store, it will be put back when it is evicted from the heap cache again
+   *
+   * @return the stored release if it was stored with the same notification id, otherwise null
+   */
+  StoredRelease take(String key, long notificationId) {
+    byte[] entry;
+    synchronized (this) {
+      Slot slot = slots.remove(key);
+      if (slot != null) {
+        sizeInBytes -= slot.length;
+      }
+      if (slot == null || slot.notificationId != notificationId) {
+        missCount.increment();
+        return null;
+      }
+      //copy it out before the slot is overwritten
+      entry = new byte[slot.length];
+      ByteBuffer buffer = slab.duplicate();
+      buffer.position(slot.offset);
+      buffer.get(entry);
+    }
+    hitCount.increment();
+
+    ByteBuffer buffer = ByteBuffer.wrap(entry);
+    String releaseKey = read(buffer);
+    String configurations = read(buffer);
+    return new StoredRelease(releaseKey, configurations);
+  }
+
+  synchronized void remove(String key) {
+    Slot slot = slots.remove(key);
+    if (slot != null) {
+      sizeInBytes -= slot.length;
+    }
+  }
+
+  synchronized int size() {
+    return slots.size();
+  }
+
+  synchronized long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  ConfigCacheStats stats() {
+    long size;
+    long weight;
+    synchronized (this) {
+      size = slots.size();
+      weight = sizeInBytes;
+    }
+    //the load count of the off-heap store is the number of releases spilled into it
+    return new ConfigCacheStats("fifo", size, weight, capacity, hitCount.sum(), missCount.sum(),
+        putCount.sum(), evictionCount.sum(), evictionWeight.sum());
+  }
+
+  /**
+   * Evict the oldest entries as long as they match
+   */
+  private void evictWhile(Predicate<Slot> predicate) {
+    Iterator<Slot> iterator = slots.values().iterator();
+    while (iterator.hasNext()) {
+      Slot slot = iterator.next();
+      if (!predicate.test(slot)) {
+        return;
+      }
+      iterator.remove();
+      sizeInBytes -= slot.length;
+      evictionCount.increment();
+      evictionWeight.add(slot.length);
+    }
+  }
+
+  private static byte[] encode(String value) {
+    return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static int length(byte[] bytes) {
+    return bytes == null ? 0 : bytes.length;
+  }
+
+  private static void write(ByteBuffer buffer, byte[] bytes) {
+    if (bytes == null) {
+      buffer.putInt(-1);
+      return;
+    }
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+  }
+
+  private static String read(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  private static class Slot {
+    private final int offset;
+    private final int length;
+    private final long notificationId;
+
+    Slot(int offset, int length, long notificationId) {
+      this.offset = offset;
+      this.length = length;
+      this.notificationId = notificationId;
+    }
+  }
+
+  static class StoredRelease {
+    private final String releaseKey;
+    private final String configurations;
+
+    StoredRelease(String releaseKey, String configurations) {
+      this.releaseKey = releaseKey;
+      this.configurations = configurations;
+    }
+
+    String getReleaseKey() {
+      return releaseKey;
+    }
+
+    String getConfigurations() {
+      return configurations;
+    }
+  }
+}
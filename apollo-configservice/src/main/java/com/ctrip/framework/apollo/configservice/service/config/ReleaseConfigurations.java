@@ -0,0 +1,103 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.core.utils.PropertiesUtil;
+import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ForwardingMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The parsed, read only configurations of a release, along with its lazily rendered properties and json formats
+ */
+public class ReleaseConfigurations extends ForwardingMap<String, String> {
+  private static final Gson GSON = new Gson();
+  private static final Type CONFIGURATION_TYPE_REFERENCE = new TypeToken<Map<String, String>>() {
+  }.getType();
+  private static final int ENTRY_OVERHEAD_IN_BYTES = 64;
+
+  private final Map<String, String> configurations;
+  private final Supplier<String> properties;
+  private final Supplier<String> json;
+
+  private ReleaseConfigurations(Map<String, String> configurations) {
+    this.configurations = Collections.unmodifiableMap(configurations);
+    this.properties = Suppliers.memoize(this::renderProperties);
+    this.json = Suppliers.memoize(() -> GSON.toJson(this.configurations));
+  }
+
+  /**
+   * @throws com.google.gson.JsonSyntaxException if the configurations are not valid json
+   */
+  public static ReleaseConfigurations parse(String configurations) {
+    Map<String, String> parsed = GSON.fromJson(configurations, CONFIGURATION_TYPE_REFERENCE);
+    return new ReleaseConfigurations(parsed == null ? Collections.emptyMap() : parsed);
+  }
+
+  @Override
+  protected Map<String, String> delegate() {
+    return configurations;
+  }
+
+  public String asProperties() {
+    return properties.get();
+  }
+
+  public String asJson() {
+    return json.get();
+  }
+
+  /**
+   * @return the keys added or modified since the base configurations
+   */
+  public Map<String, String> changedSince(Map<String, String> base) {
+    Map<String, String> changed = Maps.newHashMap();
+    for (Map.Entry<String, String> entry : configurations.entrySet()) {
+      if (!base.containsKey(entry.getKey()) || !Objects.equals(entry.getValue(), base.get(entry.getKey()))) {
+        changed.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * @return the keys deleted since the base configurations
+   */
+  public Set<String> deletedSince(Map<String, String> base) {
+    return Sets.newHashSet(Sets.difference(base.keySet(), configurations.keySet()));
+  }
+
+  /**
+   * @return the estimated heap size of the keys and values
+   */
+  int weigh() {
+    long weight = 0;
+    for (Map.Entry<String, String> entry : configurations.entrySet()) {
+      weight += ENTRY_OVERHEAD_IN_BYTES + 2L * (entry.getKey().length() + Strings.nullToEmpty(entry.getValue()).length());
+    }
+    return (int) Math.min(weight, Integer.MAX_VALUE);
+  }
+
+  private String renderProperties() {
+    Properties rendered = new Properties();
+    rendered.putAll(configurations);
+    try {
+      return PropertiesUtil.toString(rendered);
+    } catch (IOException ex) {
+      //not possible as the properties are written to a string
+      throw new UncheckedIOException(ex);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the parsed configurations of the releases.
+ *
+ * <p>The configurations of the recently served releases are kept by release key, bounded by
+ * <code>config-service.delta.history.max-weight-in-mb</code>, so the repeated queries of a release are not parsed
+ * again no matter whether the release instance is reused, and clients could be answered with only the keys changed
+ * since the release they hold.</p>
+ *
+ * <p>The releases held by {@link ConfigServiceWithCache} are long lived, so their configurations are also
+ * {@link #retain(Release) retained} along with the release instance, instead of being parsed again once evicted by
+ * release key.</p>
+ */
+@Component
+public class ReleaseConfigurationsCache {
+  private static final Joiner NAMESPACE_KEY_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).useForNull("");
+
+  //weak keys are compared by identity, and the parsed configurations go away along with the release instance
+  private final Cache<Release, ReleaseConfigurations> retainedReleases = CacheBuilder.newBuilder().weakKeys().build();
+  private final Cache<String, RecentRelease> recentReleases;
+
+  public ReleaseConfigurationsCache(final BizConfig bizConfig) {
+    recentReleases = CacheBuilder.newBuilder()
+        .maximumWeight(bizConfig.configServiceDeltaHistoryMaxWeightInBytes())
+        .weigher((Weigher<String, RecentRelease>) (releaseKey, recent) -> recent.configurations.weigh())
+        .build();
+  }
+
+  public ReleaseConfigurations get(Release release) {
+    String releaseKey = release.getReleaseKey();
+    String namespaceKey = assembleNamespaceKey(release);
+    RecentRelease recent = releaseKey == null ? null : recentReleases.getIfPresent(releaseKey);
+    if (recent != null && recent.namespaceKey.equals(namespaceKey)) {
+      return recent.configurations;
+    }
+    ReleaseConfigurations parsed = retainedReleases.getIfPresent(release);
+    if (parsed == null) {
+      //parse outside of the cache so that the json exception is thrown as it is
+      parsed = ReleaseConfigurations.parse(release.getConfigurations());
+    }
+    //keep the served releases as the most recent ones, which are the base of the next delta queries
+    if (releaseKey != null) {
+      recentReleases.put(releaseKey, new RecentRelease(namespaceKey, parsed));
+    }
+    return parsed;
+  }
+
+  /**
+   * Parse the configurations of a release instance kept by the caller, they are kept as long as the instance is alive
+   */
+  public ReleaseConfigurations retain(Release release) {
+    ReleaseConfigurations parsed = get(release);
+    retainedReleases.put(release, parsed);
+    return parsed;
+  }
+
+  /**
+   * @param releaseKey     the key of the release just served
+   * @param baseReleaseKey the key of the release the client holds
+   * @return the configurations of the base release, or null if it is no longer kept or it is not a release of the
+   * same namespace, which could not be the base of a delta then
+   */
+  public ReleaseConfigurations findDeltaBase(String releaseKey, String baseReleaseKey) {
+    RecentRelease current = recentReleases.getIfPresent(releaseKey);
+    RecentRelease base = recentReleases.getIfPresent(baseReleaseKey);
+    if (current == null || base == null || !current.namespaceKey.equals(base.namespaceKey)) {
+      return null;
+    }
+    return base.configurations;
+  }
+
+  private String assembleNamespaceKey(Release release) {
+    return NAMESPACE_KEY_JOINER.join(release.getAppId(), release.getClusterName(), release.getNamespaceName());
+  }
+
+  private static class RecentRelease {
+    private final String namespaceKey;
+    private final ReleaseConfigurations configurations;
+
+    RecentRelease(String namespaceKey, ReleaseConfigurations configurations) {
+      this.namespaceKey = namespaceKey;
+      this.configurations = configurations;
+    }
+  }
+}
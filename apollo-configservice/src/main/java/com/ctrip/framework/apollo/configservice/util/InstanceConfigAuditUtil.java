@@ -4,9 +4,13 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
@@ -14,42 +18,66 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
-public class InstanceConfigAuditUtil implements InitializingBean {
+public class InstanceConfigAuditUtil implements InitializingBean, DisposableBean, MeterBinder {
   private static final int INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
+  private static final int INSTANCE_CONFIG_AUDIT_BATCH_SIZE = 100;
   private static final int INSTANCE_CACHE_MAX_SIZE = 50000;
   private static final int INSTANCE_CONFIG_CACHE_MAX_SIZE = 50000;
   private static final long OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI = TimeUnit.MINUTES.toMillis(10);//10 minutes
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits = Queues.newLinkedBlockingQueue
-      (INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+  //one shard per worker, each keyed by the instance config, so the repeated audits are coalesced before written
+  private final List<ConcurrentMap<String, InstanceConfigAuditModel>> audits;
+  private final int auditShardMaxSize;
+  private final AtomicLong droppedAudits = new AtomicLong();
+  private final AtomicLong coalescedAudits = new AtomicLong();
+  private final AtomicLong writtenAudits = new AtomicLong();
   private Cache<String, Long> instanceCache;
   private Cache<String, String> instanceConfigReleaseKeyCache;
 
   private final InstanceService instanceService;
+  private final InstanceConfigHeartbeatBuffer heartbeatBuffer;
 
-  public InstanceConfigAuditUtil(final InstanceService instanceService) {
+  public InstanceConfigAuditUtil(final InstanceService instanceService, final BizConfig bizConfig,
+      final InstanceConfigHeartbeatBuffer heartbeatBuffer) {
     this.instanceService = instanceService;
-    auditExecutorService = Executors.newSingleThreadExecutor(
+    this.heartbeatBuffer = heartbeatBuffer;
+    int workers = Math.max(1, bizConfig.instanceConfigAuditWorkers());
+    audits = Lists.newArrayListWithCapacity(workers);
+    for (int i = 0; i < workers; i++) {
+      audits.add(Maps.newConcurrentMap());
+    }
+    auditShardMaxSize = Math.max(1, INSTANCE_CONFIG_AUDIT_MAX_SIZE / workers);
+    auditExecutorService = Executors.newFixedThreadPool(workers,
         ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
     instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
@@ -60,13 +88,139 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   public boolean audit(String appId, String clusterName, String dataCenter, String
       ip, String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    InstanceConfigAuditModel auditModel = new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
+        configAppId, configClusterName, configNamespace, releaseKey);
+    String instanceKey = assembleInstanceKey(auditModel);
+    ConcurrentMap<String, InstanceConfigAuditModel> shard =
+        audits.get((instanceKey.hashCode() & Integer.MAX_VALUE) % audits.size());
+    String auditKey = STRING_JOINER.join(instanceKey, configAppId, configNamespace);
+
+    if (shard.size() >= auditShardMaxSize && !shard.containsKey(auditKey)) {
+      droppedAudits.incrementAndGet();
+      return false;
+    }
+    //only the latest audit of an instance config matters
+    if (shard.put(auditKey, auditModel) != null) {
+      coalescedAudits.incrementAndGet();
+    }
+    return true;
+  }
+
+  /**
+   * Audit in batch, the instances and instance configs are looked up with a few queries and written in one transaction.
+   * Falls back to audit one by one if the batch fails, e.g. the same instance config is created by another config
+   * service at the same time.
+   */
+  void doAudit(List<InstanceConfigAuditModel> auditModels) {
+    try {
+      doBatchAudit(auditModels);
+    } catch (Throwable ex) {
+      Tracer.logEvent("Apollo.InstanceConfigAudit.BatchFallback", ex.getClass().getSimpleName());
+      for (InstanceConfigAuditModel auditModel : auditModels) {
+        try {
+          doAudit(auditModel);
+        } catch (Throwable auditEx) {
+          Tracer.logError(auditEx);
+        }
+      }
+    }
+    writtenAudits.addAndGet(auditModels.size());
+  }
+
+  private void doBatchAudit(List<InstanceConfigAuditModel> auditModels) {
+    Map<String, Long> instanceIds = prepareInstanceIds(auditModels);
+
+    //instance config cache key -> audit
+    Map<String, InstanceConfigAuditModel> toAudit = Maps.newLinkedHashMap();
+    Map<String, Long> toAuditInstanceIds = Maps.newHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      long instanceId = instanceIds.get(assembleInstanceKey(auditModel));
+      String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
+          .getConfigAppId(), auditModel.getConfigNamespace());
+      String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+      //if release key is the same, then skip audit
+      if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
+        continue;
+      }
+      toAudit.put(instanceConfigCacheKey, auditModel);
+      toAuditInstanceIds.put(instanceConfigCacheKey, instanceId);
+    }
+
+    if (toAudit.isEmpty()) {
+      return;
+    }
+
+    Map<String, InstanceConfig> existedInstanceConfigs = Maps.newHashMap();
+    for (InstanceConfig instanceConfig : instanceService
+        .findInstanceConfigsByInstanceIds(Sets.newHashSet(toAuditInstanceIds.values()))) {
+      existedInstanceConfigs.put(assembleInstanceConfigKey(instanceConfig.getInstanceId(),
+          instanceConfig.getConfigAppId(), instanceConfig.getConfigNamespaceName()), instanceConfig);
+    }
+
+    List<InstanceConfig> toCreate = Lists.newArrayList();
+    List<InstanceConfig> toUpdate = Lists.newArrayList();
+    for (Map.Entry<String, InstanceConfigAuditModel> entry : toAudit.entrySet()) {
+      InstanceConfigAuditModel auditModel = entry.getValue();
+      InstanceConfig instanceConfig = existedInstanceConfigs.get(entry.getKey());
+      if (instanceConfig == null) {
+        toCreate.add(assembleInstanceConfig(toAuditInstanceIds.get(entry.getKey()), auditModel));
+      } else if (prepareInstanceConfigUpdate(instanceConfig, auditModel)) {
+        toUpdate.add(instanceConfig);
+      }
+    }
+
+    instanceService.createInstanceConfigs(toCreate);
+    instanceService.updateInstanceConfigs(toUpdate);
+
+    //cache the release keys only after written, so the fallback would not skip them
+    for (Map.Entry<String, InstanceConfigAuditModel> entry : toAudit.entrySet()) {
+      instanceConfigReleaseKeyCache.put(entry.getKey(), entry.getValue().getReleaseKey());
+    }
+  }
+
+  /**
+   * @return instance key -> instance id
+   */
+  private Map<String, Long> prepareInstanceIds(List<InstanceConfigAuditModel> auditModels) {
+    Map<String, Long> instanceIds = Maps.newHashMap();
+    //appId+cluster+dataCenter -> the audits of the instances not cached
+    ListMultimap<String, InstanceConfigAuditModel> notCached = ArrayListMultimap.create();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceKey = assembleInstanceKey(auditModel);
+      Long instanceId = instanceCache.getIfPresent(instanceKey);
+      if (instanceId != null) {
+        instanceIds.put(instanceKey, instanceId);
+      } else {
+        notCached.put(STRING_JOINER.join(auditModel.getAppId(), auditModel.getClusterName(),
+            auditModel.getDataCenter()), auditModel);
+      }
+    }
+
+    for (Collection<InstanceConfigAuditModel> group : notCached.asMap().values()) {
+      InstanceConfigAuditModel first = group.iterator().next();
+      Set<String> ips = Sets.newHashSet();
+      for (InstanceConfigAuditModel auditModel : group) {
+        ips.add(auditModel.getIp());
+      }
+      for (Instance instance : instanceService.findInstances(first.getAppId(), first.getClusterName(),
+          first.getDataCenter(), ips)) {
+        instanceIds.put(assembleInstanceKey(instance.getAppId(), instance.getClusterName(), instance.getIp(),
+            instance.getDataCenter()), instance.getId());
+      }
+      for (InstanceConfigAuditModel auditModel : group) {
+        String instanceKey = assembleInstanceKey(auditModel);
+        if (!instanceIds.containsKey(instanceKey)) {
+          instanceIds.put(instanceKey, prepareInstanceId(auditModel));
+        }
+        instanceCache.put(instanceKey, instanceIds.get(instanceKey));
+      }
+    }
+
+    return instanceIds;
   }
 
   void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
+    String instanceCacheKey = assembleInstanceKey(auditModel);
     Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
     if (instanceId == null) {
       instanceId = prepareInstanceId(auditModel);
@@ -90,23 +244,46 @@ public class InstanceConfigAuditUtil implements InitializingBean {
         .getConfigAppId(), auditModel.getConfigNamespace());
 
     if (instanceConfig != null) {
-      if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
-        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-      } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
-          instanceConfig.getDataChangeLastModifiedTime())) {
-        //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
-        return;
+      if (prepareInstanceConfigUpdate(instanceConfig, auditModel)) {
+        instanceService.updateInstanceConfig(instanceConfig);
       }
-      //we need to update no matter the release key is the same or not, to ensure the
-      //last modified time is updated each day
-      instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-      instanceService.updateInstanceConfig(instanceConfig);
       return;
     }
 
-    instanceConfig = new InstanceConfig();
+    instanceConfig = assembleInstanceConfig(instanceId, auditModel);
+
+    try {
+      instanceService.createInstanceConfig(instanceConfig);
+    } catch (DataIntegrityViolationException ex) {
+      //concurrent insertion, safe to ignore
+    }
+  }
+
+  /**
+   * @return whether the instance config needs to be updated
+   */
+  private boolean prepareInstanceConfigUpdate(InstanceConfig instanceConfig, InstanceConfigAuditModel auditModel) {
+    if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
+      instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+      instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+      instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+    } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
+        instanceConfig.getDataChangeLastModifiedTime())) {
+      //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
+      return false;
+    } else if (heartbeatBuffer.isEnabled() && heartbeatBuffer.record(instanceConfig.getId(),
+        auditModel.getOfferTime())) {
+      //only the last modified time changes, which is written behind with the others
+      return false;
+    }
+    //we need to update no matter the release key is the same or not, to ensure the
+    //last modified time is updated each day
+    instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
+    return true;
+  }
+
+  private InstanceConfig assembleInstanceConfig(long instanceId, InstanceConfigAuditModel auditModel) {
+    InstanceConfig instanceConfig = new InstanceConfig();
     instanceConfig.setInstanceId(instanceId);
     instanceConfig.setConfigAppId(auditModel.getConfigAppId());
     instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
@@ -114,12 +291,7 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     instanceConfig.setReleaseKey(auditModel.getReleaseKey());
     instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
     instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
-
-    try {
-      instanceService.createInstanceConfig(instanceConfig);
-    } catch (DataIntegrityViolationException ex) {
-      //concurrent insertion, safe to ignore
-    }
+    return instanceConfig;
   }
 
   private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
@@ -151,20 +323,70 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.poll();
-          if (model == null) {
-            TimeUnit.SECONDS.sleep(1);
-            continue;
+    for (ConcurrentMap<String, InstanceConfigAuditModel> shard : audits) {
+      AuditDrainer drainer = new AuditDrainer(shard);
+      auditExecutorService.submit(() -> {
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+          try {
+            List<InstanceConfigAuditModel> models = drainer.drain();
+            if (models.isEmpty()) {
+              //the audits received meanwhile are coalesced and written in the next batch
+              TimeUnit.SECONDS.sleep(1);
+              continue;
+            }
+            doAudit(models);
+          } catch (InterruptedException ex) {
+            return;
+          } catch (Throwable ex) {
+            Tracer.logError(ex);
           }
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
         }
-      }
-    });
+      });
+    }
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    auditStopped.set(true);
+    auditExecutorService.shutdownNow();
+  }
+
+  int getPendingAudits() {
+    int pending = 0;
+    for (ConcurrentMap<String, InstanceConfigAuditModel> shard : audits) {
+      pending += shard.size();
+    }
+    return pending;
+  }
+
+  long getDroppedAudits() {
+    return droppedAudits.get();
+  }
+
+  long getCoalescedAudits() {
+    return coalescedAudits.get();
+  }
+
+  long getWrittenAudits() {
+    return writtenAudits.get();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.instance-config-audit.pending", this, InstanceConfigAuditUtil::getPendingAudits)
+        .description("Instance config audits waiting to be written").register(registry);
+    FunctionCounter.builder("apollo.instance-config-audit.dropped", this, InstanceConfigAuditUtil::getDroppedAudits)
+        .description("Instance config audits dropped as too many are waiting").register(registry);
+    FunctionCounter.builder("apollo.instance-config-audit.coalesced", this,
+        InstanceConfigAuditUtil::getCoalescedAudits)
+        .description("Instance config audits replaced by a later one before written").register(registry);
+    FunctionCounter.builder("apollo.instance-config-audit.written", this, InstanceConfigAuditUtil::getWrittenAudits)
+        .description("Instance config audits processed by the workers").register(registry);
+  }
+
+  private String assembleInstanceKey(InstanceConfigAuditModel auditModel) {
+    return assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(), auditModel.getIp(),
+        auditModel.getDataCenter());
   }
 
   private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
@@ -179,6 +401,41 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     return STRING_JOINER.join(instanceId, configAppId, configNamespace);
   }
 
+  /**
+   * Drains a shard batch by batch, each batch continues from where the last one stopped, so the audits late in the
+   * iteration order are not starved by the ones keep coming early in it.
+   */
+  static class AuditDrainer {
+    private final ConcurrentMap<String, InstanceConfigAuditModel> shard;
+    private Iterator<Map.Entry<String, InstanceConfigAuditModel>> cursor = Collections.emptyIterator();
+
+    AuditDrainer(ConcurrentMap<String, InstanceConfigAuditModel> shard) {
+      this.shard = shard;
+    }
+
+    List<InstanceConfigAuditModel> drain() {
+      List<InstanceConfigAuditModel> models = Lists.newArrayList();
+      boolean restarted = false;
+      while (models.size() < INSTANCE_CONFIG_AUDIT_BATCH_SIZE) {
+        if (!cursor.hasNext()) {
+          if (restarted) {
+            break;
+          }
+          //a full round is done, start over for the audits put before the cursor meanwhile
+          cursor = shard.entrySet().iterator();
+          restarted = true;
+          continue;
+        }
+        Map.Entry<String, InstanceConfigAuditModel> entry = cursor.next();
+        //a newer audit put meanwhile stays for the next round
+        if (shard.remove(entry.getKey(), entry.getValue())) {
+          models.add(entry.getValue());
+        }
+      }
+      return models;
+    }
+  }
+
   public static class InstanceConfigAuditModel {
     private String appId;
     private String clusterName;
@@ -0,0 +1,166 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last seen time of the instance configs whose release key is not changed, kept in memory and written behind.
+ *
+ * <p>An instance config seen many times in a flush interval is written only once, and the ones seen in the same minute
+ * are written with one statement. The last seen time is only used to tell whether an instance is still active within
+ * a day, so it is fine to be a few minutes late.</p>
+ */
+@Component
+public class InstanceConfigHeartbeatBuffer implements InitializingBean, DisposableBean, MeterBinder {
+  private static final Logger logger = LoggerFactory.getLogger(InstanceConfigHeartbeatBuffer.class);
+  private static final int MAX_SIZE = 100000;
+  private static final int FLUSH_BATCH_SIZE = 500;
+  private static final long LAST_SEEN_TIME_PRECISION_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
+
+  private final InstanceService instanceService;
+  private final BizConfig bizConfig;
+  //instance config id -> last seen time
+  private final ConcurrentMap<Long, Long> heartbeats = Maps.newConcurrentMap();
+  private final ScheduledExecutorService flushExecutorService;
+  private final AtomicLong recordedHeartbeats = new AtomicLong();
+  private final AtomicLong flushedHeartbeats = new AtomicLong();
+  private final AtomicLong flushStatements = new AtomicLong();
+
+  public InstanceConfigHeartbeatBuffer(final InstanceService instanceService, final BizConfig bizConfig) {
+    this.instanceService = instanceService;
+    this.bizConfig = bizConfig;
+    flushExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("InstanceConfigHeartbeatBuffer", true));
+  }
+
+  /**
+   * Could be switched at runtime, the heartbeats recorded before switched off are still flushed
+   */
+  public boolean isEnabled() {
+    return bizConfig.isInstanceConfigHeartbeatWriteBehindEnabled();
+  }
+
+  /**
+   * @return false if the buffer is full, then the caller should write the instance config itself
+   */
+  public boolean record(long instanceConfigId, Date lastSeenTime) {
+    if (heartbeats.size() >= MAX_SIZE && !heartbeats.containsKey(instanceConfigId)) {
+      return false;
+    }
+    heartbeats.merge(instanceConfigId, lastSeenTime.getTime(), Math::max);
+    recordedHeartbeats.incrementAndGet();
+    return true;
+  }
+
+  void flush() {
+    if (heartbeats.isEmpty()) {
+      return;
+    }
+
+    //last seen minute -> instance config ids
+    ListMultimap<Long, Long> lastSeenMinutes = ArrayListMultimap.create();
+    for (Map.Entry<Long, Long> entry : heartbeats.entrySet()) {
+      //a later heartbeat recorded meanwhile stays for the next flush
+      if (heartbeats.remove(entry.getKey(), entry.getValue())) {
+        lastSeenMinutes.put(entry.getValue() / LAST_SEEN_TIME_PRECISION_IN_MILLI, entry.getKey());
+      }
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.InstanceConfigHeartbeat", "flush");
+    Throwable failure = null;
+    for (Map.Entry<Long, List<Long>> entry : Multimaps.asMap(lastSeenMinutes).entrySet()) {
+      long lastSeenTime = entry.getKey() * LAST_SEEN_TIME_PRECISION_IN_MILLI;
+      for (List<Long> ids : Lists.partition(entry.getValue(), FLUSH_BATCH_SIZE)) {
+        try {
+          instanceService.updateInstanceConfigsLastSeenTime(ids, new Date(lastSeenTime));
+          flushStatements.incrementAndGet();
+          flushedHeartbeats.addAndGet(ids.size());
+        } catch (Throwable ex) {
+          failure = ex;
+          //keep them for the next flush, unless a later heartbeat is recorded meanwhile
+          for (Long id : ids) {
+            heartbeats.merge(id, lastSeenTime, Math::max);
+          }
+        }
+      }
+    }
+    if (failure == null) {
+      transaction.setStatus(Transaction.SUCCESS);
+    } else {
+      transaction.setStatus(failure);
+      logger.error("Flush instance config heartbeats failed", failure);
+    }
+    transaction.complete();
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    //scheduled even if disabled, as it could be enabled later and flushing nothing costs nothing
+    int interval = bizConfig.instanceConfigHeartbeatFlushInterval();
+    flushExecutorService.scheduleWithFixedDelay(this::flush, interval, interval,
+        bizConfig.instanceConfigHeartbeatFlushIntervalTimeUnit());
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    flushExecutorService.shutdownNow();
+    flush();
+  }
+
+  int getPendingHeartbeats() {
+    return heartbeats.size();
+  }
+
+  long getRecordedHeartbeats() {
+    return recordedHeartbeats.get();
+  }
+
+  long getFlushedHeartbeats() {
+    return flushedHeartbeats.get();
+  }
+
+  long getFlushStatements() {
+    return flushStatements.get();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("apollo.instance-config-heartbeat.pending", this, InstanceConfigHeartbeatBuffer::getPendingHeartbeats)
+        .description("Instance configs whose last seen time is not written yet").register(registry);
+    FunctionCounter.builder("apollo.instance-config-heartbeat.recorded", this,
+        InstanceConfigHeartbeatBuffer::getRecordedHeartbeats)
+        .description("Heartbeats recorded in memory instead of written").register(registry);
+    FunctionCounter.builder("apollo.instance-config-heartbeat.flushed", this,
+        InstanceConfigHeartbeatBuffer::getFlushedHeartbeats)
+        .description("Instance configs whose last seen time is written").register(registry);
+    FunctionCounter.builder("apollo.instance-config-heartbeat.flush-statements", this,
+        InstanceConfigHeartbeatBuffer::getFlushStatements)
+        .description("Statements used to write the last seen time").register(registry);
+  }
+}
@@ -1,8 +1,5 @@
 package com.ctrip.framework.apollo.configservice.wrapper;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 
 import org.springframework.http.HttpStatus;
@@ -10,17 +7,16 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class DeferredResultWrapper {
+public class DeferredResultWrapper implements NotificationWatcher {
   private static final long TIMEOUT = 60 * 1000;//60 seconds
   private static final ResponseEntity<List<ApolloConfigNotification>>
       NOT_MODIFIED_RESPONSE_LIST = new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
 
-  private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+  private final OriginalNamespaceNames originalNamespaceNames = new OriginalNamespaceNames();
   private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> result;
 
 
@@ -28,36 +24,33 @@ public class DeferredResultWrapper {
     result = new DeferredResult<>(TIMEOUT, NOT_MODIFIED_RESPONSE_LIST);
   }
 
+  @Override
   public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
-    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
-      normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
-    }
-    normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
+    originalNamespaceNames.record(originalNamespaceName, normalizedNamespaceName);
   }
 
 
+  @Override
   public void onTimeout(Runnable timeoutCallback) {
     result.onTimeout(timeoutCallback);
   }
 
+  @Override
   public void onCompletion(Runnable completionCallback) {
     result.onCompletion(completionCallback);
   }
 
 
-  public void setResult(ApolloConfigNotification notification) {
-    setResult(Lists.newArrayList(notification));
+  @Override
+  public void setResult(NotificationResponseBodies responseBodies) {
+    String namespaceName = originalNamespaceNames.toOriginalNamespaceName(responseBodies.getNamespaceName());
+
+    result.setResult(new ResponseEntity<>(responseBodies.getBody(namespaceName), HttpStatus.OK));
   }
 
-  /**
-   * The namespace name is used as a key in client side, so we have to return the original one instead of the correct one
-   */
+  @Override
   public void setResult(List<ApolloConfigNotification> notifications) {
-    if (normalizedNamespaceNameToOriginalNamespaceName != null) {
-      notifications.stream().filter(notification -> normalizedNamespaceNameToOriginalNamespaceName.containsKey
-          (notification.getNamespaceName())).forEach(notification -> notification.setNamespaceName(
-              normalizedNamespaceNameToOriginalNamespaceName.get(notification.getNamespaceName())));
-    }
+    originalNamespaceNames.restore(notifications);
 
     result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
   }
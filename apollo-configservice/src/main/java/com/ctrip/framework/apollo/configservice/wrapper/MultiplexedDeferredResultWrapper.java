@@ -0,0 +1,42 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+
+/**
+ * The deferred result of a multiplexed long polling, which waits for the namespaces of many (appId, cluster) pairs.
+ *
+ * <p>A watch key could be watched for more than one of the pairs, e.g. a public namespace associated by several apps,
+ * so one release message might result in several notifications.</p>
+ */
+public class MultiplexedDeferredResultWrapper extends DeferredResultWrapper {
+  //watch key -> the (appId, cluster, namespace) it is watched for, the namespace name is the one used by the client
+  private final Multimap<String, ApolloConfigNotification> watchedNamespaces = LinkedHashMultimap.create();
+
+  public void recordWatchedNamespace(String watchKey, String appId, String cluster, String originalNamespaceName) {
+    watchedNamespaces.put(watchKey,
+        new ApolloConfigNotification(appId, cluster, originalNamespaceName, 0));
+  }
+
+  @Override
+  public void setResult(NotificationResponseBodies responseBodies) {
+    ApolloConfigNotification notification = responseBodies.getNotification();
+    List<ApolloConfigNotification> notifications = Lists.newArrayList();
+    for (String watchKey : notification.getMessages().getDetails().keySet()) {
+      for (ApolloConfigNotification watchedNamespace : watchedNamespaces.get(watchKey)) {
+        ApolloConfigNotification responseNotification = new ApolloConfigNotification(watchedNamespace.getAppId(),
+            watchedNamespace.getCluster(), watchedNamespace.getNamespaceName(), notification.getNotificationId());
+        responseNotification.setMessages(notification.getMessages());
+        notifications.add(responseNotification);
+      }
+    }
+
+    getResult().setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
+  }
+}
@@ -0,0 +1,50 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The response bodies of one release message, encoded once per namespace name the clients used and shared by all the
+ * clients waiting for the message.
+ */
+public class NotificationResponseBodies {
+  private final ApolloConfigNotification notification;
+  private final Gson gson;
+  private final ConcurrentMap<String, SerializedNotifications> bodies = Maps.newConcurrentMap();
+
+  public NotificationResponseBodies(ApolloConfigNotification notification, Gson gson) {
+    this.notification = notification;
+    this.gson = gson;
+  }
+
+  public String getNamespaceName() {
+    return notification.getNamespaceName();
+  }
+
+  public ApolloConfigNotification getNotification() {
+    return notification;
+  }
+
+  /**
+   * @param originalNamespaceName the namespace name used by the client, which may differ in character case
+   */
+  public SerializedNotifications getBody(String originalNamespaceName) {
+    return bodies.computeIfAbsent(originalNamespaceName, this::serialize);
+  }
+
+  private SerializedNotifications serialize(String originalNamespaceName) {
+    ApolloConfigNotification responseNotification = notification;
+    if (!Objects.equals(originalNamespaceName, notification.getNamespaceName())) {
+      responseNotification = new ApolloConfigNotification(originalNamespaceName, notification.getNotificationId());
+      responseNotification.setMessages(notification.getMessages());
+    }
+    byte[] body = gson.toJson(Lists.newArrayList(responseNotification)).getBytes(StandardCharsets.UTF_8);
+    return new SerializedNotifications(responseNotification, body);
+  }
+}
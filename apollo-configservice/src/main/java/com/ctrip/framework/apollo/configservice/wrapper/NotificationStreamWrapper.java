@@ -0,0 +1,103 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A server-sent events stream of the notifications, which stays open across releases instead of being completed by the
+ * first one like the long polling does.
+ *
+ * <p>It is registered to the same watch keys as the long polling clients, so the notifications are pushed as events
+ * named {@value #EVENT_NAME} with the same json as the long polling responses. The stream is completed after
+ * {@value #TIMEOUT} milliseconds, and the client reconnects with the latest notification ids then.</p>
+ */
+public class NotificationStreamWrapper implements NotificationWatcher {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationStreamWrapper.class);
+  static final long TIMEOUT = 5 * 60 * 1000;//5 minutes
+  static final String EVENT_NAME = "notifications";
+  private static final String HEARTBEAT_COMMENT = "heartbeat";
+
+  private final SseEmitter emitter;
+  private final OriginalNamespaceNames originalNamespaceNames = new OriginalNamespaceNames();
+  private volatile Runnable closeCallback = () -> {
+  };
+
+  public NotificationStreamWrapper() {
+    emitter = new SseEmitter(TIMEOUT);
+  }
+
+  /**
+   * @param closeCallback called when the stream is closed for whatever reason, after the completion callback
+   */
+  public void onClose(Runnable closeCallback) {
+    this.closeCallback = closeCallback;
+  }
+
+  @Override
+  public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
+    originalNamespaceNames.record(originalNamespaceName, normalizedNamespaceName);
+  }
+
+  @Override
+  public void onTimeout(Runnable timeoutCallback) {
+    emitter.onTimeout(timeoutCallback);
+  }
+
+  @Override
+  public void onCompletion(Runnable completionCallback) {
+    //the emitter holds only one completion callback
+    emitter.onCompletion(() -> {
+      try {
+        completionCallback.run();
+      } finally {
+        closeCallback.run();
+      }
+    });
+  }
+
+  @Override
+  public void setResult(NotificationResponseBodies responseBodies) {
+    send(responseBodies.getBody(originalNamespaceNames.toOriginalNamespaceName(responseBodies.getNamespaceName())));
+  }
+
+  @Override
+  public void setResult(List<ApolloConfigNotification> notifications) {
+    originalNamespaceNames.restore(notifications);
+
+    send(notifications);
+  }
+
+  /**
+   * Send a comment line, which is ignored by the client other than telling the connection is alive
+   */
+  public void heartbeat() {
+    send(SseEmitter.event().comment(HEARTBEAT_COMMENT));
+  }
+
+  public SseEmitter getEmitter() {
+    return emitter;
+  }
+
+  private void send(List<ApolloConfigNotification> notifications) {
+    send(SseEmitter.event().name(EVENT_NAME).data(notifications, MediaType.APPLICATION_JSON));
+  }
+
+  private void send(SseEmitter.SseEventBuilder event) {
+    try {
+      emitter.send(event);
+    } catch (IOException ex) {
+      //the client is gone, the completion callback would unregister the stream
+      logger.debug("Send to notification stream failed", ex);
+      emitter.completeWithError(ex);
+    } catch (IllegalStateException ex) {
+      //the stream is already completed
+      logger.debug("Send to a completed notification stream", ex);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+
+import java.util.List;
+
+/**
+ * A client watching the notifications of some watch keys, either by long polling or by a notification stream.
+ */
+public interface NotificationWatcher {
+
+  void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName);
+
+  void onTimeout(Runnable timeoutCallback);
+
+  void onCompletion(Runnable completionCallback);
+
+  /**
+   * Notify the client with the shared response body, the namespace name is translated to the original one in the same
+   * way as {@link #setResult(List)}
+   */
+  void setResult(NotificationResponseBodies responseBodies);
+
+  /**
+   * Notify the client, the namespace name is used as a key in client side, so we have to return the original one
+   * instead of the correct one
+   */
+  void setResult(List<ApolloConfigNotification> notifications);
+}
@@ -0,0 +1,38 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The namespace names sent by a client before they are normalized, so that the notifications are returned with the
+ * names the client knows.
+ */
+class OriginalNamespaceNames {
+  private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+
+  void record(String originalNamespaceName, String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
+    }
+    normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
+  }
+
+  String toOriginalNamespaceName(String namespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName != null
+        && normalizedNamespaceNameToOriginalNamespaceName.containsKey(namespaceName)) {
+      return normalizedNamespaceNameToOriginalNamespaceName.get(namespaceName);
+    }
+    return namespaceName;
+  }
+
+  void restore(List<ApolloConfigNotification> notifications) {
+    if (normalizedNamespaceNameToOriginalNamespaceName != null) {
+      notifications.stream().filter(notification -> normalizedNamespaceNameToOriginalNamespaceName.containsKey
+          (notification.getNamespaceName())).forEach(notification -> notification.setNamespaceName(
+              normalizedNamespaceNameToOriginalNamespaceName.get(notification.getNamespaceName())));
+    }
+  }
+}
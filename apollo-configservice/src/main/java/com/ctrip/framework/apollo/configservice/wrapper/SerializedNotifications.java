@@ -0,0 +1,39 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+
+import java.util.AbstractList;
+
+/**
+ * An immutable notification list which carries its json form, so it could be shared by many responses and written
+ * without serializing again.
+ */
+public class SerializedNotifications extends AbstractList<ApolloConfigNotification> {
+  private final ApolloConfigNotification notification;
+  private final byte[] body;
+
+  public SerializedNotifications(ApolloConfigNotification notification, byte[] body) {
+    this.notification = notification;
+    this.body = body;
+  }
+
+  @Override
+  public ApolloConfigNotification get(int index) {
+    if (index != 0) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: 1");
+    }
+    return notification;
+  }
+
+  @Override
+  public int size() {
+    return 1;
+  }
+
+  /**
+   * @return the json of the list, which must not be modified
+   */
+  public byte[] getBody() {
+    return body;
+  }
+}
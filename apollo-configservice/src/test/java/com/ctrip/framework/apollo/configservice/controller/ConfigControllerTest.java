@@ -1,9 +1,11 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseConfigurationsCache;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -12,6 +14,7 @@ import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import org.junit.Before;
@@ -22,10 +25,14 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -60,12 +67,16 @@ public class ConfigControllerTest {
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Mock
   private HttpServletRequest someRequest;
+  @Mock
+  private BizConfig bizConfig;
   private Gson gson = new Gson();
 
   @Before
   public void setUp() throws Exception {
+    when(bizConfig.configServiceDeltaHistoryMaxWeightInBytes()).thenReturn(1024L * 1024);
     configController = spy(new ConfigController(
-        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson
+        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil,
+        new ReleaseConfigurationsCache(bizConfig), gson
     ));
 
     someAppId = "1";
@@ -371,6 +382,86 @@ public class ConfigControllerTest {
     assertEquals(value2, result.get(key2));
   }
 
+  @Test
+  public void testQueryConfigWithDelta() throws Exception {
+    Release baseRelease = assembleRelease("someBaseReleaseKey",
+        ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3", "k4", "v4"));
+    Release newRelease = assembleRelease("someNewReleaseKey",
+        ImmutableMap.of("k1", "v1", "k2", "v2-new", "k3", "v3", "k5", "v5"));
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(baseRelease, newRelease);
+
+    ApolloConfig baseConfig = configController.queryConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, "-1", someClientIp, someMessagesAsString, true, someRequest, mock(HttpServletResponse.class));
+    ApolloConfig deltaConfig = configController.queryConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, baseRelease.getReleaseKey(), someClientIp, someMessagesAsString, true, someRequest,
+        mock(HttpServletResponse.class));
+
+    assertFalse(baseConfig.isDelta());
+    assertEquals(4, baseConfig.getConfigurations().size());
+    assertTrue(deltaConfig.isDelta());
+    assertEquals(baseRelease.getReleaseKey(), deltaConfig.getBaseReleaseKey());
+    assertEquals(newRelease.getReleaseKey(), deltaConfig.getReleaseKey());
+    assertEquals(ImmutableMap.of("k2", "v2-new", "k5", "v5"), deltaConfig.getConfigurations());
+    assertEquals(Sets.newHashSet("k4"), deltaConfig.getDeletedKeys());
+  }
+
+  @Test
+  public void testQueryConfigWithDeltaButBaseReleaseNotFound() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("k1", "v1", "k2", "v2");
+    Release newRelease = assembleRelease("someNewReleaseKey", configurations);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(newRelease);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, "someUnknownReleaseKey", someClientIp, someMessagesAsString, true, someRequest,
+        mock(HttpServletResponse.class));
+
+    assertFalse(result.isDelta());
+    assertNull(result.getDeletedKeys());
+    assertEquals(configurations, result.getConfigurations());
+  }
+
+  @Test
+  public void testQueryConfigWithDeltaButBaseReleaseOfAnotherNamespace() throws Exception {
+    Release anotherNamespaceRelease = assembleRelease("anotherNamespaceReleaseKey",
+        ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3"));
+    anotherNamespaceRelease.setNamespaceName(somePublicNamespaceName);
+    Map<String, String> configurations = ImmutableMap.of("k1", "v1", "k2", "v2", "k3", "v3-new");
+    Release newRelease = assembleRelease("someNewReleaseKey", configurations);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, somePublicNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(anotherNamespaceRelease);
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(newRelease);
+    when(appNamespaceService.findByAppIdAndNamespace(someAppId, somePublicNamespaceName))
+        .thenReturn(mock(AppNamespace.class));
+
+    configController.queryConfig(someAppId, someClusterName, somePublicNamespaceName, someDataCenter, "-1",
+        someClientIp, someMessagesAsString, true, someRequest, mock(HttpServletResponse.class));
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, anotherNamespaceRelease.getReleaseKey(), someClientIp, someMessagesAsString, true,
+        someRequest, mock(HttpServletResponse.class));
+
+    assertFalse(result.isDelta());
+    assertNull(result.getDeletedKeys());
+    assertEquals(configurations, result.getConfigurations());
+  }
+
+  @Test
+  public void testMergeSingleReleaseConfigurationsParsedOnce() throws Exception {
+    Release release = new Release();
+    release.setConfigurations(gson.toJson(ImmutableMap.of("someKey", "someValue")));
+
+    Map<String, String> result = configController.mergeReleaseConfigurations(Lists.newArrayList(release));
+    Map<String, String> anotherResult = configController.mergeReleaseConfigurations(Lists.newArrayList(release));
+
+    assertEquals(ImmutableMap.of("someKey", "someValue"), result);
+    assertSame(result, anotherResult);
+  }
+
   @Test(expected = JsonSyntaxException.class)
   public void testTransformConfigurationToMapFailed() throws Exception {
     String someInvalidConfiguration = "xxx";
@@ -451,6 +542,47 @@ public class ConfigControllerTest {
     assertNull(configController.transformMessages(someInvalidMessages));
   }
 
+  @Test
+  public void testQueryConfigs() throws Exception {
+    String someServerSideNewReleaseKey = "2";
+    String namespaces = String.format("%s,%s", defaultNamespaceName, somePublicNamespaceName);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, namespaces,
+        someDataCenter, null, someClientIp, someMessagesAsString, false, someRequest);
+
+    //the public namespace is not found
+    assertEquals(1, result.size());
+    assertEquals(defaultNamespaceName, result.get(0).getNamespaceName());
+    assertEquals(someServerSideNewReleaseKey, result.get(0).getReleaseKey());
+    assertEquals(ImmutableMap.of("apollo.bar", "foo"), result.get(0).getConfigurations());
+  }
+
+  @Test
+  public void testQueryConfigsWithApolloConfigNotModified() throws Exception {
+    String someServerSideReleaseKey = "1";
+    String someReleaseKeys = gson.toJson(ImmutableMap.of(defaultNamespaceName, someServerSideReleaseKey));
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideReleaseKey);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someReleaseKeys, someClientIp, someMessagesAsString, false, someRequest);
+
+    assertEquals(1, result.size());
+    assertEquals(someServerSideReleaseKey, result.get(0).getReleaseKey());
+    assertNull(result.get(0).getConfigurations());
+  }
+
+  @Test
+  public void testTransformInvalidReleaseKeys() throws Exception {
+    assertTrue(configController.transformReleaseKeys("someInvalidReleaseKeys").isEmpty());
+  }
+
   private AppNamespace assemblePublicAppNamespace(String appId, String namespace) {
     return assembleAppNamespace(appId, namespace, true);
   }
@@ -462,4 +594,14 @@ public class ConfigControllerTest {
     appNamespace.setPublic(isPublic);
     return appNamespace;
   }
+
+  private Release assembleRelease(String releaseKey, Map<String, String> configurations) {
+    Release release = new Release();
+    release.setAppId(someAppId);
+    release.setClusterName(someClusterName);
+    release.setNamespaceName(defaultNamespaceName);
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations(gson.toJson(configurations));
+    return release;
+  }
 }
@@ -18,6 +18,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -29,6 +30,8 @@ import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
@@ -52,6 +55,7 @@ public class ConfigFileControllerTest {
   private String someNamespace;
   private String someDataCenter;
   private String someClientIp;
+  private String someReleaseKey;
   @Mock
   private HttpServletResponse someResponse;
   @Mock
@@ -70,6 +74,7 @@ public class ConfigFileControllerTest {
     someNamespace = "someNamespace";
     someDataCenter = "someDataCenter";
     someClientIp = "10.1.1.1";
+    someReleaseKey = "someReleaseKey";
 
     when(namespaceUtil.filterNamespaceName(someNamespace)).thenReturn(someNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, someNamespace)).thenReturn(someNamespace);
@@ -102,6 +107,7 @@ public class ConfigFileControllerTest {
     Map<String, String> configurations =
         ImmutableMap.of(someKey, someValue, anotherKey, anotherValue);
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
@@ -151,6 +157,7 @@ public class ConfigFileControllerTest {
     Map<String, String> configurations =
         ImmutableMap.of(someKey, someValue);
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
     when(configController
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
             someRequest, someResponse)).thenReturn(someApolloConfig);
@@ -168,6 +175,93 @@ public class ConfigFileControllerTest {
     assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
   }
 
+  @Test
+  public void testQueryConfigWithMatchingETag() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+
+    String someWatchKey = "someWatchKey";
+    Set<String> watchKeys = Sets.newHashSet(someWatchKey);
+
+    Map<String, String> configurations =
+        ImmutableMap.of(someKey, someValue);
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(watchKeys);
+
+    ResponseEntity<String> response =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    String eTag = response.getHeaders().getETag();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(configFileController.computeETag(ConfigFileController.ConfigFileOutputFormat.JSON, someReleaseKey),
+        eTag);
+
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn("W/" + eTag);
+
+    ResponseEntity<String> anotherResponse =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, anotherResponse.getStatusCode());
+    assertEquals(eTag, anotherResponse.getHeaders().getETag());
+    assertNull(anotherResponse.getBody());
+  }
+
+  @Test
+  public void testQueryConfigWithMatchingETagNotRendered() throws Exception {
+    Map<String, String> configurations = mock(Map.class);
+
+    when(grayReleaseRulesHolder.hasGrayReleaseRule(someAppId, someClientIp, someNamespace))
+        .thenReturn(true);
+
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(someRequest.getHeader(HttpHeaders.IF_NONE_MATCH)).thenReturn(
+        configFileController.computeETag(ConfigFileController.ConfigFileOutputFormat.PROPERTIES, someReleaseKey));
+
+    ResponseEntity<String> response =
+        configFileController
+            .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    assertNull(response.getBody());
+    verifyZeroInteractions(configurations);
+  }
+
+  @Test
+  public void testConfigFileKeepsOnlyRenderedContent() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ConfigFileController.ConfigFile configFile = new ConfigFileController.ConfigFile("someETag",
+        ConfigFileController.ConfigFileOutputFormat.JSON, configurations);
+
+    //weighed from the configurations without rendering them
+    assertEquals("someKey".length() + "someValue".length() + 2, configFile.weigh());
+    assertNull(ReflectionTestUtils.getField(configFile, "content"));
+
+    String content = configFile.getContent();
+
+    assertEquals(new Gson().toJson(configurations), content);
+    assertSame(content, configFile.getContent());
+    assertEquals(content.length(), configFile.weigh());
+    assertNull(ReflectionTestUtils.getField(configFile, "configurations"));
+  }
+
   @Test
   public void testQueryConfigWithGrayRelease() throws Exception {
     String someKey = "someKey";
@@ -182,6 +276,7 @@ public class ConfigFileControllerTest {
         .thenReturn(true);
 
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
@@ -218,10 +313,14 @@ public class ConfigFileControllerTest {
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
-    Cache<String, String> cache =
-        (Cache<String, String>) ReflectionTestUtils.getField(configFileController, "localCache");
-    cache.put(someCacheKey, someValue);
-    cache.put(anotherCacheKey, someValue);
+    Cache<String, ConfigFileController.ConfigFile> cache =
+        (Cache<String, ConfigFileController.ConfigFile>) ReflectionTestUtils.getField(configFileController,
+            "localCache");
+    Map<String, String> configurations = ImmutableMap.of("someKey", someValue);
+    cache.put(someCacheKey, new ConfigFileController.ConfigFile("someETag",
+        ConfigFileController.ConfigFileOutputFormat.PROPERTIES, configurations));
+    cache.put(anotherCacheKey, new ConfigFileController.ConfigFile("anotherETag",
+        ConfigFileController.ConfigFileOutputFormat.PROPERTIES, configurations));
 
     watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
     watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
@@ -4,19 +4,28 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.NotificationFanOutEngine;
+import com.ctrip.framework.apollo.configservice.service.NotificationStreamRegistry;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationWatcher;
+import com.ctrip.framework.apollo.configservice.wrapper.SerializedNotifications;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
 import com.google.common.base.Joiner;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,13 +33,16 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -62,18 +74,27 @@ public class NotificationControllerV2Test {
 
   private Gson gson;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private WatchKeyRegistry watchKeyRegistry;
+
+  private NotificationFanOutEngine notificationFanOutEngine;
+
+  private NotificationStreamRegistry notificationStreamRegistry;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
-    controller = new NotificationControllerV2(
-        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
-    );
-
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(2);
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
     when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
 
+    watchKeyRegistry = new WatchKeyRegistry();
+    notificationFanOutEngine = new NotificationFanOutEngine(bizConfig);
+    notificationStreamRegistry = new NotificationStreamRegistry();
+    controller = new NotificationControllerV2(
+        watchKeyRegistry, notificationFanOutEngine, watchKeysUtil, releaseMessageService, entityManagerUtil,
+        namespaceUtil, gson, notificationStreamRegistry
+    );
+
     someAppId = "someAppId";
     someCluster = "someCluster";
     defaultCluster = ConfigConsts.CLUSTER_NAME_DEFAULT;
@@ -87,9 +108,6 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.filterNamespaceName(somePublicNamespace)).thenReturn(somePublicNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespace)).thenReturn(defaultNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
-
-    deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
   }
 
   @Test
@@ -113,7 +131,7 @@ public class NotificationControllerV2Test {
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
             someClientIp);
 
-    assertEquals(watchKeysMap.size(), deferredResults.size());
+    assertEquals(watchKeysMap.size(), watchKeyRegistry.size());
 
     assertWatchKeys(watchKeysMap, deferredResult);
   }
@@ -142,7 +160,7 @@ public class NotificationControllerV2Test {
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
             someClientIp);
 
-    assertEquals(watchKeysMap.size(), deferredResults.size());
+    assertEquals(watchKeysMap.size(), watchKeyRegistry.size());
 
     assertWatchKeys(watchKeysMap, deferredResult);
   }
@@ -186,7 +204,7 @@ public class NotificationControllerV2Test {
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
             someClientIp);
 
-    assertEquals(watchKeysMap.size(), deferredResults.size());
+    assertEquals(watchKeysMap.size(), watchKeyRegistry.size());
 
     assertWatchKeys(watchKeysMap, deferredResult);
 
@@ -274,7 +292,7 @@ public class NotificationControllerV2Test {
         .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
             someClientIp);
 
-    assertEquals(watchKeysMap.size(), deferredResults.size());
+    assertEquals(watchKeysMap.size(), watchKeyRegistry.size());
 
     long someId = 1;
     ReleaseMessage someReleaseMessage = new ReleaseMessage(anotherWatchKey);
@@ -282,6 +300,8 @@ public class NotificationControllerV2Test {
 
     controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
+    waitForResult(deferredResult);
+
     ResponseEntity<List<ApolloConfigNotification>> response =
         (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
 
@@ -296,6 +316,266 @@ public class NotificationControllerV2Test {
     assertEquals(someId, notificationMessages.get(anotherWatchKey).longValue());
   }
 
+  @Test
+  public void testPollNotificationWithBodyAndNotificationIdOutDated() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    long notificationId = someNotificationId + 1;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(
+        watchKeysMap);
+
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(notificationId);
+    when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
+    when(releaseMessageService
+        .findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(watchKeysMap.values())))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    String notificationsAsString = NotificationsCodec.encode(ImmutableMap.of(defaultNamespace, someNotificationId));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotificationWithBody(someAppId, someCluster, someDataCenter, someClientIp, notificationsAsString);
+
+    ResponseEntity<List<ApolloConfigNotification>> result =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(HttpStatus.OK, result.getStatusCode());
+    assertEquals(1, result.getBody().size());
+    assertEquals(defaultNamespace, result.getBody().get(0).getNamespaceName());
+    assertEquals(notificationId, result.getBody().get(0).getNotificationId());
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testPollNotificationWithInvalidBody() throws Exception {
+    controller.pollNotificationWithBody(someAppId, someCluster, someDataCenter, someClientIp, defaultNamespace);
+  }
+
+  @Test
+  public void testStreamNotificationsAndHandleMessage() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+        someDataCenter)).thenReturn(watchKeysMap);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    SseEmitter emitter = controller.streamNotifications(someAppId, someCluster, notificationAsString,
+        someDataCenter, someClientIp);
+
+    assertNotNull(emitter);
+    assertEquals(1, notificationStreamRegistry.size());
+    assertEquals(watchKeysMap.size(), watchKeyRegistry.size());
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someNotificationId + 1);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    waitForCondition(() -> notificationFanOutEngine.getPendingNotifications() == 0);
+
+    //the stream stays open after being notified, unlike the long polling
+    assertEquals(0, notificationFanOutEngine.getPendingNotifications());
+    assertEquals(1, notificationStreamRegistry.size());
+    assertEquals(watchKeysMap.size(), watchKeyRegistry.size());
+  }
+
+  @Test
+  public void testPollMultiplexedNotificationsAndHandleMessage() throws Exception {
+    String anotherAppId = "anotherAppId";
+    String someWatchKey = "someKey";
+    String somePublicWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join("somePublicAppId", someCluster, somePublicNamespace);
+
+    when(namespaceUtil.normalizeNamespace(anotherAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
+
+    Multimap<String, String> someWatchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+    someWatchKeysMap.putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(somePublicWatchKey)));
+    Multimap<String, String> anotherWatchKeysMap =
+        assembleMultiMap(somePublicNamespace, Lists.newArrayList(somePublicWatchKey));
+
+    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+        Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(someWatchKeysMap);
+    when(watchKeysUtil.assembleAllWatchKeys(anotherAppId, someCluster,
+        Sets.newHashSet(somePublicNamespace), someDataCenter)).thenReturn(anotherWatchKeysMap);
+
+    String notificationAsString = gson.toJson(Lists.newArrayList(
+        new ApolloConfigNotification(someAppId, someCluster, defaultNamespace, someNotificationId),
+        new ApolloConfigNotification(someAppId, someCluster, somePublicNamespace, someNotificationId),
+        new ApolloConfigNotification(anotherAppId, someCluster, somePublicNamespace, someNotificationId)));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollMultiplexedNotifications(notificationAsString, someDataCenter, someClientIp);
+
+    //one registration per watch key, no matter how many apps watch it
+    assertEquals(2, watchKeyRegistry.size());
+    assertWatchKeys(someWatchKeysMap, deferredResult);
+
+    long someId = 10;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(somePublicWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    waitForResult(deferredResult);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(2, response.getBody().size());
+    Set<String> notifiedAppIds = Sets.newHashSet();
+    for (ApolloConfigNotification notification : response.getBody()) {
+      notifiedAppIds.add(notification.getAppId());
+      assertEquals(someCluster, notification.getCluster());
+      assertEquals(somePublicNamespace, notification.getNamespaceName());
+      assertEquals(someId, notification.getNotificationId());
+      assertEquals(someId, notification.getMessages().get(somePublicWatchKey).longValue());
+    }
+    assertEquals(Sets.newHashSet(someAppId, anotherAppId), notifiedAppIds);
+  }
+
+  @Test
+  public void testPollMultiplexedNotificationsWithNotificationIdOutDated() throws Exception {
+    String someWatchKey = "someKey";
+    long notificationId = someNotificationId + 1;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+        someDataCenter)).thenReturn(watchKeysMap);
+
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(notificationId);
+    when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someWatchKey)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    String notificationAsString = gson.toJson(Lists.newArrayList(
+        new ApolloConfigNotification(someAppId, someCluster, defaultNamespace, someNotificationId)));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollMultiplexedNotifications(notificationAsString, someDataCenter, someClientIp);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(1, response.getBody().size());
+    ApolloConfigNotification notification = response.getBody().get(0);
+    assertEquals(someAppId, notification.getAppId());
+    assertEquals(someCluster, notification.getCluster());
+    assertEquals(defaultNamespace, notification.getNamespaceName());
+    assertEquals(notificationId, notification.getNotificationId());
+  }
+
+  @Test
+  public void testPollMultiplexedNotificationsWithBody() throws Exception {
+    String someWatchKey = "someKey";
+    long notificationId = someNotificationId + 1;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+        someDataCenter)).thenReturn(watchKeysMap);
+
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(notificationId);
+    when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someWatchKey)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    String notificationsAsString = NotificationsCodec.encodeMultiplexed(Lists.newArrayList(
+        new ApolloConfigNotification(someAppId, someCluster, defaultNamespace, someNotificationId)));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollMultiplexedNotificationsWithBody(someDataCenter, someClientIp, notificationsAsString);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(1, response.getBody().size());
+    ApolloConfigNotification notification = response.getBody().get(0);
+    assertEquals(someAppId, notification.getAppId());
+    assertEquals(someCluster, notification.getCluster());
+    assertEquals(defaultNamespace, notification.getNamespaceName());
+    assertEquals(notificationId, notification.getNotificationId());
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testPollMultiplexedNotificationsWithInvalidBody() throws Exception {
+    //the body of a single app, without appId and cluster
+    controller.pollMultiplexedNotificationsWithBody(someDataCenter, someClientIp,
+        NotificationsCodec.encode(ImmutableMap.of(defaultNamespace, someNotificationId)));
+  }
+
+  @Test
+  public void testHandleMessageShouldShareSerializedResponseBodies() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, somePublicNamespace);
+    String somePublicNamespaceInUpperCase = somePublicNamespace.toUpperCase();
+
+    when(namespaceUtil.filterNamespaceName(somePublicNamespaceInUpperCase)).thenReturn(somePublicNamespaceInUpperCase);
+    when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespaceInUpperCase)).thenReturn(somePublicNamespace);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(somePublicNamespace),
+            someDataCenter)).thenReturn(assembleMultiMap(somePublicNamespace, Lists.newArrayList(someWatchKey)));
+
+    String notificationAsString = transformApolloConfigNotificationsToString(somePublicNamespace, someNotificationId);
+    String upperCaseNotificationAsString =
+        transformApolloConfigNotificationsToString(somePublicNamespaceInUpperCase, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> someResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> anotherResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> upperCaseResult = controller
+        .pollNotification(someAppId, someCluster, upperCaseNotificationAsString, someDataCenter, someClientIp);
+
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    waitForCondition(() -> someResult.hasResult() && anotherResult.hasResult() && upperCaseResult.hasResult());
+
+    List<ApolloConfigNotification> someBody = ((ResponseEntity<List<ApolloConfigNotification>>) someResult
+        .getResult()).getBody();
+    List<ApolloConfigNotification> anotherBody = ((ResponseEntity<List<ApolloConfigNotification>>) anotherResult
+        .getResult()).getBody();
+    List<ApolloConfigNotification> upperCaseBody = ((ResponseEntity<List<ApolloConfigNotification>>) upperCaseResult
+        .getResult()).getBody();
+
+    assertTrue(someBody instanceof SerializedNotifications);
+    assertSame(someBody, anotherBody);
+    assertEquals(somePublicNamespace, someBody.get(0).getNamespaceName());
+    assertEquals(somePublicNamespaceInUpperCase, upperCaseBody.get(0).getNamespaceName());
+    assertEquals(someId, upperCaseBody.get(0).getNotificationId());
+
+    List<ApolloConfigNotification> decoded = gson.fromJson(
+        new String(((SerializedNotifications) upperCaseBody).getBody(), StandardCharsets.UTF_8),
+        new TypeToken<List<ApolloConfigNotification>>() {
+        }.getType());
+    assertEquals(somePublicNamespaceInUpperCase, decoded.get(0).getNamespaceName());
+    assertEquals(someId, decoded.get(0).getMessages().get(someWatchKey).longValue());
+  }
+
   @Test
   public void testPollNotificationWithHandleMessageInBatch() throws Exception {
     String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
@@ -340,6 +620,68 @@ public class NotificationControllerV2Test {
     assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult());
   }
 
+  @Test
+  public void testHandleMessageShouldNotifyEachMessageConcurrently() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    String anotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, somePublicNamespace);
+    int someBatchInterval = 1000;
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey)));
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(somePublicNamespace),
+            someDataCenter)).thenReturn(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey)));
+
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+
+    String notificationAsString = transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+    String anotherNotificationAsString =
+        transformApolloConfigNotificationsToString(somePublicNamespace, someNotificationId);
+
+    List<DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>> someResults = Lists.newArrayList();
+    List<DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>> anotherResults = Lists.newArrayList();
+    for (int i = 0; i < 2; i++) {
+      someResults.add(controller.pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+          someClientIp));
+      anotherResults.add(controller.pollNotification(someAppId, someCluster, anotherNotificationAsString,
+          someDataCenter, someClientIp));
+    }
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(1);
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(anotherWatchKey);
+    anotherReleaseMessage.setId(2);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+    controller.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //each message is throttled by its own bucket, so the second message doesn't wait for the first one
+    waitForCondition(() -> countResults(someResults) > 0 && countResults(anotherResults) > 0);
+
+    assertEquals(1, countResults(someResults));
+    assertEquals(1, countResults(anotherResults));
+    assertEquals(2, notificationFanOutEngine.getQueuedFanOuts());
+    assertEquals(2, notificationFanOutEngine.getPendingNotifications());
+  }
+
+  private long countResults(List<DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>> results) {
+    return results.stream().filter(DeferredResult::hasResult).count();
+  }
+
+  private void waitForResult(DeferredResult<?> deferredResult) throws InterruptedException {
+    waitForCondition(deferredResult::hasResult);
+  }
+
+  private void waitForCondition(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 10 && !condition.getAsBoolean(); i++) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+
   private String transformApolloConfigNotificationsToString(
       String namespace, long notificationId) {
     List<ApolloConfigNotification> notifications =
@@ -382,10 +724,11 @@ public class NotificationControllerV2Test {
 
   private void assertWatchKeys(Multimap<String, String> watchKeysMap, DeferredResult deferredResult) {
     for (String watchKey : watchKeysMap.values()) {
-      Collection<DeferredResultWrapper> deferredResultWrappers = deferredResults.get(watchKey);
+      Collection<NotificationWatcher> watchers = watchKeyRegistry.getWatchers(watchKey);
       boolean found = false;
-      for (DeferredResultWrapper wrapper: deferredResultWrappers) {
-        if (Objects.equals(wrapper.getResult(), deferredResult)) {
+      for (NotificationWatcher watcher : watchers) {
+        if (watcher instanceof DeferredResultWrapper
+            && Objects.equals(((DeferredResultWrapper) watcher).getResult(), deferredResult)) {
           found = true;
         }
       }
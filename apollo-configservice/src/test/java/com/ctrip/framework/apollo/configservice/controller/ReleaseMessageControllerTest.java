@@ -0,0 +1,62 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessageControllerTest {
+  @Mock
+  private ReleaseMessageScanner releaseMessageScanner;
+  @Mock
+  private BizConfig bizConfig;
+  private ReleaseMessageController releaseMessageController;
+  private long someId;
+  private String someAccessToken;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageController = new ReleaseMessageController(releaseMessageScanner, bizConfig);
+    someId = 1;
+    someAccessToken = "someAccessToken";
+
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessagePushAccessToken()).thenReturn(someAccessToken);
+  }
+
+  @Test
+  public void testOnMessagePushed() throws Exception {
+    assertEquals(HttpStatus.OK, releaseMessageController.onMessagePushed(someId, someAccessToken).getStatusCode());
+
+    verify(releaseMessageScanner).onMessagePushed(someId);
+  }
+
+  @Test
+  public void testOnMessagePushedWithWrongAccessToken() throws Exception {
+    assertEquals(HttpStatus.UNAUTHORIZED,
+        releaseMessageController.onMessagePushed(someId, "anotherAccessToken").getStatusCode());
+    assertEquals(HttpStatus.UNAUTHORIZED, releaseMessageController.onMessagePushed(someId, null).getStatusCode());
+
+    verify(releaseMessageScanner, never()).onMessagePushed(anyLong());
+  }
+
+  @Test
+  public void testOnMessagePushedWithNoAccessTokenConfigured() throws Exception {
+    when(bizConfig.releaseMessagePushAccessToken()).thenReturn("");
+
+    assertEquals(HttpStatus.UNAUTHORIZED, releaseMessageController.onMessagePushed(someId, "").getStatusCode());
+
+    verify(releaseMessageScanner, never()).onMessagePushed(anyLong());
+  }
+}
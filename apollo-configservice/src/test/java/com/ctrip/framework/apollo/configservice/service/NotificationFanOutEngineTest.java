@@ -0,0 +1,140 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationWatcher;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanOutEngineTest {
+  private NotificationFanOutEngine notificationFanOutEngine;
+  @Mock
+  private BizConfig bizConfig;
+  private List<NotificationWatcher> notified;
+  private String someWatchKey;
+  private String anotherWatchKey;
+
+  @Before
+  public void setUp() throws Exception {
+    //one worker, so a sleeping worker would hold up every other fan-out
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(10000);
+
+    notificationFanOutEngine = new NotificationFanOutEngine(bizConfig);
+    notified = new CopyOnWriteArrayList<>();
+    someWatchKey = "someAppId+someCluster+someNamespace";
+    anotherWatchKey = "someAppId+someCluster+anotherNamespace";
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    notificationFanOutEngine.destroy();
+  }
+
+  @Test
+  public void testThrottledFanOutRescheduled() throws Exception {
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(1);
+    List<NotificationWatcher> someWatchers = assembleWatchers(2);
+    List<NotificationWatcher> anotherWatchers = assembleWatchers(1);
+
+    notificationFanOutEngine.fanOut(someWatchKey, someWatchers, notified::add);
+
+    waitForCondition(() -> notified.size() == 1);
+
+    notificationFanOutEngine.fanOut(anotherWatchKey, anotherWatchers, notified::add);
+
+    //the second watcher of the first fan-out waits 10 seconds for its token, but not in the worker
+    waitForCondition(() -> notified.size() == 2);
+
+    assertEquals(Lists.newArrayList(someWatchers.get(0), anotherWatchers.get(0)), notified);
+    assertEquals(1, notificationFanOutEngine.getQueuedFanOuts());
+    assertEquals(1, notificationFanOutEngine.getPendingNotifications());
+  }
+
+  @Test
+  public void testSmallFanOutOvertakesLargeFanOut() throws Exception {
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(2);
+    CountDownLatch workerBlocked = new CountDownLatch(1);
+    CountDownLatch releaseWorker = new CountDownLatch(1);
+    List<NotificationWatcher> largeWatchers = assembleWatchers(3);
+    List<NotificationWatcher> smallWatchers = assembleWatchers(1);
+
+    notificationFanOutEngine.fanOut("blockingWatchKey", assembleWatchers(1), watcher -> {
+      workerBlocked.countDown();
+      try {
+        releaseWorker.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    assertTrue(workerBlocked.await(5, TimeUnit.SECONDS));
+
+    notificationFanOutEngine.fanOut(someWatchKey, largeWatchers, notified::add);
+    notificationFanOutEngine.fanOut(anotherWatchKey, smallWatchers, notified::add);
+
+    releaseWorker.countDown();
+
+    waitForCondition(() -> notified.size() == 3);
+
+    assertEquals(Lists.newArrayList(smallWatchers.get(0), largeWatchers.get(0), largeWatchers.get(1)), notified);
+    assertEquals(1, notificationFanOutEngine.getQueuedFanOuts());
+    assertEquals(1, notificationFanOutEngine.getPendingNotifications());
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(1);
+    MeterRegistry registry = new SimpleMeterRegistry();
+    notificationFanOutEngine.bindTo(registry);
+
+    notificationFanOutEngine.fanOut(someWatchKey, assembleWatchers(3), notified::add);
+
+    waitForCondition(() -> notified.size() == 1);
+
+    assertEquals(1, registry.get("apollo.long-poll.fan-out.queue-depth").gauge().value(), 0);
+    assertEquals(2, registry.get("apollo.long-poll.fan-out.pending-notifications").gauge().value(), 0);
+    assertEquals(0, registry.get("apollo.long-poll.fan-out.time-to-notify-all").timer().count());
+
+    notificationFanOutEngine.fanOut(anotherWatchKey, assembleWatchers(1), notified::add);
+
+    waitForCondition(() -> notified.size() == 2);
+    waitForCondition(() -> registry.get("apollo.long-poll.fan-out.time-to-notify-all").timer().count() == 1);
+
+    assertEquals(1, registry.get("apollo.long-poll.fan-out.queue-depth").gauge().value(), 0);
+    assertEquals(2, registry.get("apollo.long-poll.fan-out.pending-notifications").gauge().value(), 0);
+    assertEquals(1, registry.get("apollo.long-poll.fan-out.time-to-notify-all").timer().count());
+  }
+
+  private List<NotificationWatcher> assembleWatchers(int count) {
+    List<NotificationWatcher> watchers = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      watchers.add(new DeferredResultWrapper());
+    }
+    return watchers;
+  }
+
+  private void waitForCondition(BooleanSupplier condition) throws InterruptedException {
+    for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+      TimeUnit.MILLISECONDS.sleep(50);
+    }
+  }
+}
@@ -4,14 +4,18 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -36,6 +40,9 @@ public class ReleaseMessageServiceWithCacheTest {
   @Mock
   private BizConfig bizConfig;
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private int scanInterval;
 
   private TimeUnit scanIntervalTimeUnit;
@@ -226,6 +233,124 @@ public class ReleaseMessageServiceWithCacheTest {
     assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
   }
 
+  @Test
+  public void testHandleMessageCommittedLater() throws Exception {
+    String someMessageContent = "someMessage";
+    String anotherMessageContent = "anotherMessage";
+    ReleaseMessage someMessage = assembleReleaseMsg(3, someMessageContent);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
+        (someMessage));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    releaseMessageServiceWithCache.handleMessage(assembleReleaseMsg(2, anotherMessageContent),
+        Topics.APOLLO_RELEASE_TOPIC);
+    //older than the cached one
+    releaseMessageServiceWithCache.handleMessage(assembleReleaseMsg(1, someMessageContent),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(2, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(anotherMessageContent)).getId());
+    assertEquals(3, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)).getId());
+
+    ReleaseMessage newMessage = assembleReleaseMsg(4, anotherMessageContent);
+    releaseMessageServiceWithCache.handleMessage(newMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //the late messages don't move the cursor back, so there is no gap
+    verify(releaseMessageRepository, never()).findFirst500ByIdGreaterThanOrderByIdAsc(1L);
+    assertEquals(4, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(anotherMessageContent)).getId());
+  }
+
+  @Test
+  public void testLoadReleaseMessagesAfterSnapshot() throws Exception {
+    String someMessageContent = "someMessage";
+    String anotherMessageContent = "anotherMessage";
+    long snapshotCursor = 2;
+    File snapshotFile = new File(temporaryFolder.getRoot(), "release-message-cache.snapshot");
+    new ReleaseMessageCacheSnapshot(snapshotCursor, ImmutableMap.of(someMessageContent, 1L, anotherMessageContent, 2L))
+        .writeTo(snapshotFile);
+
+    long newMessageId = 3;
+    ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
+
+    when(bizConfig.releaseMessageCacheSnapshotFile()).thenReturn(snapshotFile.getAbsolutePath());
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(newMessage);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(snapshotCursor))
+        .thenReturn(Lists.newArrayList(newMessage));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    verify(releaseMessageRepository, never()).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
+
+    assertEquals(newMessageId, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)).getId());
+    assertEquals(2, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(anotherMessageContent)).getId());
+
+    releaseMessageServiceWithCache.writeSnapshot();
+
+    ReleaseMessageCacheSnapshot snapshot = ReleaseMessageCacheSnapshot.readFrom(snapshotFile);
+
+    assertEquals(newMessageId, snapshot.getCursor());
+    assertEquals(ImmutableMap.of(someMessageContent, newMessageId, anotherMessageContent, 2L),
+        snapshot.getReleaseMessageIds());
+  }
+
+  @Test
+  public void testSnapshotCursorBeforeMissingReleaseMessage() throws Exception {
+    String someMessageContent = "someMessage";
+    String anotherMessageContent = "anotherMessage";
+    long snapshotCursor = 2;
+    File snapshotFile = new File(temporaryFolder.getRoot(), "release-message-cache.snapshot");
+    new ReleaseMessageCacheSnapshot(snapshotCursor, ImmutableMap.of(someMessageContent, 2L)).writeTo(snapshotFile);
+
+    //message 3 is not committed yet
+    ReleaseMessage someNewMessage = assembleReleaseMsg(4, someMessageContent);
+
+    when(bizConfig.releaseMessageCacheSnapshotFile()).thenReturn(snapshotFile.getAbsolutePath());
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(someNewMessage);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(snapshotCursor))
+        .thenReturn(Lists.newArrayList(someNewMessage));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+    releaseMessageServiceWithCache.writeSnapshot();
+
+    assertEquals(snapshotCursor, ReleaseMessageCacheSnapshot.readFrom(snapshotFile).getCursor());
+
+    ReleaseMessage lateMessage = assembleReleaseMsg(3, anotherMessageContent);
+    releaseMessageServiceWithCache.handleMessage(lateMessage, Topics.APOLLO_RELEASE_TOPIC);
+    releaseMessageServiceWithCache.writeSnapshot();
+
+    ReleaseMessageCacheSnapshot snapshot = ReleaseMessageCacheSnapshot.readFrom(snapshotFile);
+
+    assertEquals(4, snapshot.getCursor());
+    assertEquals(ImmutableMap.of(someMessageContent, 4L, anotherMessageContent, 3L),
+        snapshot.getReleaseMessageIds());
+  }
+
+  @Test
+  public void testIgnoreSnapshotNewerThanDatabase() throws Exception {
+    String someMessageContent = "someMessage";
+    File snapshotFile = new File(temporaryFolder.getRoot(), "release-message-cache.snapshot");
+    new ReleaseMessageCacheSnapshot(10, ImmutableMap.of(someMessageContent, 10L)).writeTo(snapshotFile);
+
+    long someMessageId = 1;
+    ReleaseMessage someMessage = assembleReleaseMsg(someMessageId, someMessageContent);
+
+    when(bizConfig.releaseMessageCacheSnapshotFile()).thenReturn(snapshotFile.getAbsolutePath());
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(someMessage);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someMessage));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    assertEquals(someMessageId, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)).getId());
+  }
+
   private ReleaseMessage assembleReleaseMsg(long id, String msgContent) {
 
     ReleaseMessage msg = new ReleaseMessage(msgContent);
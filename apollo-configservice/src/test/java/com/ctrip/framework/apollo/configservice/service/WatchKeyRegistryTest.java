@@ -0,0 +1,110 @@
+package com.ctrip.framework.apollo.configservice.service;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationWatcher;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatchKeyRegistryTest {
+  private WatchKeyRegistry watchKeyRegistry;
+  private String someWatchKey;
+  private String anotherWatchKey;
+
+  @Before
+  public void setUp() throws Exception {
+    watchKeyRegistry = new WatchKeyRegistry();
+    someWatchKey = "someAppId+someCluster+someNamespace";
+    anotherWatchKey = "someAppId+someCluster+anotherNamespace";
+  }
+
+  @Test
+  public void testRegisterAndUnregister() throws Exception {
+    DeferredResultWrapper someWatcher = new DeferredResultWrapper();
+    DeferredResultWrapper anotherWatcher = new DeferredResultWrapper();
+
+    watchKeyRegistry.register(someWatchKey, someWatcher);
+    watchKeyRegistry.register(anotherWatchKey, someWatcher);
+    watchKeyRegistry.register(someWatchKey, anotherWatcher);
+    //duplicate registration should be ignored
+    watchKeyRegistry.register(someWatchKey, anotherWatcher);
+
+    assertEquals(3, watchKeyRegistry.size());
+    assertEquals(2, watchKeyRegistry.watchKeyCount());
+    assertEquals(4, watchKeyRegistry.getRegistrations());
+    assertTrue(watchKeyRegistry.getWatchers(someWatchKey).containsAll(Lists.newArrayList(someWatcher, anotherWatcher)));
+
+    watchKeyRegistry.unregister(anotherWatchKey, someWatcher);
+    watchKeyRegistry.unregister(anotherWatchKey, someWatcher);
+
+    assertEquals(2, watchKeyRegistry.size());
+    assertEquals(1, watchKeyRegistry.getUnregistrations());
+    assertFalse(watchKeyRegistry.hasWatchers(anotherWatchKey));
+    assertTrue(watchKeyRegistry.getWatchers(anotherWatchKey).isEmpty());
+  }
+
+  @Test
+  public void testGetWatchersReturnsSnapshot() throws Exception {
+    DeferredResultWrapper someWatcher = new DeferredResultWrapper();
+    DeferredResultWrapper anotherWatcher = new DeferredResultWrapper();
+
+    watchKeyRegistry.register(someWatchKey, someWatcher);
+
+    List<NotificationWatcher> watchers = watchKeyRegistry.getWatchers(someWatchKey);
+
+    watchKeyRegistry.register(someWatchKey, anotherWatcher);
+    watchKeyRegistry.unregister(someWatchKey, someWatcher);
+
+    assertEquals(Lists.newArrayList(someWatcher), watchers);
+    assertEquals(Lists.newArrayList(anotherWatcher), watchKeyRegistry.getWatchers(someWatchKey));
+  }
+
+  @Test
+  public void testRecordFanOut() throws Exception {
+    watchKeyRegistry.recordFanOut(3);
+    watchKeyRegistry.recordFanOut(5);
+
+    assertEquals(2, watchKeyRegistry.getFanOuts());
+    assertEquals(8, watchKeyRegistry.getFanOutWatchers());
+  }
+
+  @Test
+  public void testConcurrentRegisterAndUnregister() throws Exception {
+    int threads = 8;
+    int watchersPerThread = 1000;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch latch = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      executorService.submit(() -> {
+        try {
+          for (int j = 0; j < watchersPerThread; j++) {
+            DeferredResultWrapper watcher = new DeferredResultWrapper();
+            watchKeyRegistry.register(someWatchKey, watcher);
+            watchKeyRegistry.register(anotherWatchKey, watcher);
+            watchKeyRegistry.unregister(someWatchKey, watcher);
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    assertEquals(threads * watchersPerThread, watchKeyRegistry.size());
+    assertFalse(watchKeyRegistry.hasWatchers(someWatchKey));
+    assertEquals(threads * watchersPerThread, watchKeyRegistry.getWatchers(anotherWatchKey).size());
+  }
+}
@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.configservice.service.config;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.collect.Lists;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
@@ -17,7 +18,10 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -36,6 +40,9 @@ public class ConfigServiceWithCacheTest {
   @Mock
   private ReleaseMessageService releaseMessageService;
   @Mock
+  private BizConfig bizConfig;
+  private ReleaseConfigurationsCache releaseConfigurationsCache;
+  @Mock
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
@@ -49,11 +56,8 @@ public class ConfigServiceWithCacheTest {
 
   @Before
   public void setUp() throws Exception {
-    configServiceWithCache = new ConfigServiceWithCache();
-    ReflectionTestUtils.setField(configServiceWithCache, "releaseService", releaseService);
-    ReflectionTestUtils.setField(configServiceWithCache, "releaseMessageService", releaseMessageService);
-
-    configServiceWithCache.initialize();
+    releaseConfigurationsCache = new ReleaseConfigurationsCache(bizConfig);
+    configServiceWithCache = createConfigServiceWithCache("lru", 1024 * 1024, false);
 
     someAppId = "someAppId";
     someClusterName = "someClusterName";
@@ -276,4 +280,156 @@ public class ConfigServiceWithCacheTest {
     verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
+
+  @Test
+  public void testFindLatestActiveReleaseEvictedBySize() throws Exception {
+    //smaller than any entry, so nothing stays in the cache
+    configServiceWithCache = createConfigServiceWithCache("lru", 1, false);
+
+    assertReleaseReloadedAfterEviction();
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseEvictedBySizeWithTinyLfu() throws Exception {
+    configServiceWithCache = createConfigServiceWithCache("w-tinylfu", 1, false);
+
+    assertReleaseReloadedAfterEviction();
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseFromOffHeap() throws Exception {
+    configServiceWithCache = createConfigServiceWithCache("lru", 1, true);
+    Release someRealRelease = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRealRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    Release releaseFromOffHeap = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRealRelease, release);
+    assertNotSame(someRealRelease, releaseFromOffHeap);
+    assertEquals(someRealRelease.getReleaseKey(), releaseFromOffHeap.getReleaseKey());
+    assertEquals(someRealRelease.getConfigurations(), releaseFromOffHeap.getConfigurations());
+    assertEquals(someRealRelease.getAppId(), releaseFromOffHeap.getAppId());
+    assertEquals(someRealRelease.getClusterName(), releaseFromOffHeap.getClusterName());
+    assertEquals(someRealRelease.getNamespaceName(), releaseFromOffHeap.getNamespaceName());
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+
+    //the off heap copy is out-dated once there is a newer release message
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (anotherReleaseMessage);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    verify(releaseMessageService, times(3)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testGetCacheStats() throws Exception {
+    Release someRealRelease = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRealRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    Map<String, ConfigCacheStats> cacheStats = configServiceWithCache.getCacheStats();
+    ConfigCacheStats configCacheStats = cacheStats.get("configCache");
+
+    assertEquals(2, cacheStats.size());
+    assertEquals("lru", configCacheStats.getEvictionPolicy());
+    assertEquals(1, configCacheStats.getSize());
+    assertEquals(ConfigServiceWithCache.weigh(someRealRelease), configCacheStats.getWeight());
+    assertEquals(1, configCacheStats.getHitCount());
+    assertEquals(1, configCacheStats.getMissCount());
+    assertEquals(0, configCacheStats.getEvictionCount());
+    assertEquals(0, cacheStats.get("configIdCache").getSize());
+    //the caches share the max weight
+    assertEquals(1024 * 1024, configCacheStats.getMaxWeight() + cacheStats.get("configIdCache").getMaxWeight());
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseWithConfigurationsParsedOnLoad() throws Exception {
+    Release someRealRelease = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRealRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    //the configurations would not be parsed again as the release json is cleared
+    release.setConfigurations(null);
+
+    assertEquals("someValue", releaseConfigurationsCache.get(release).get("someKey"));
+  }
+
+  private void assertReleaseReloadedAfterEviction() {
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    Release anotherRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    assertEquals(someRelease, anotherRelease);
+    assertEquals(2, configServiceWithCache.getCacheStats().get("configCache").getEvictionCount());
+
+    verify(releaseMessageService, times(2)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  private ConfigServiceWithCache createConfigServiceWithCache(String evictionPolicy, long maxWeight,
+      boolean offHeapEnabled) {
+    when(bizConfig.configServiceCacheEvictionPolicy()).thenReturn(evictionPolicy);
+    when(bizConfig.configServiceCacheMaxWeightInBytes()).thenReturn(maxWeight);
+    when(bizConfig.isConfigServiceOffHeapCacheEnabled()).thenReturn(offHeapEnabled);
+    if (offHeapEnabled) {
+      when(bizConfig.configServiceOffHeapCacheMaxSizeInBytes()).thenReturn(1024L * 1024);
+    }
+
+    ConfigServiceWithCache configService = new ConfigServiceWithCache();
+    ReflectionTestUtils.setField(configService, "releaseService", releaseService);
+    ReflectionTestUtils.setField(configService, "releaseMessageService", releaseMessageService);
+    ReflectionTestUtils.setField(configService, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(configService, "releaseConfigurationsCache", releaseConfigurationsCache);
+
+    configService.initialize();
+
+    return configService;
+  }
+
+  private Release assembleRelease(String releaseKey, String configurations) {
+    Release release = new Release();
+    release.setReleaseKey(releaseKey);
+    release.setAppId(someAppId);
+    release.setClusterName(someClusterName);
+    release.setNamespaceName(someNamespaceName);
+    release.setConfigurations(configurations);
+    return release;
+  }
 }
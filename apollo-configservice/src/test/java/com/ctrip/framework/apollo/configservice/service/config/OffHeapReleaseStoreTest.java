@@ -0,0 +1,112 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.base.Strings;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class OffHeapReleaseStoreTest {
+  private static final int SOME_CAPACITY = 100;
+  private OffHeapReleaseStore offHeapReleaseStore;
+  private long someNotificationId;
+
+  @Before
+  public void setUp() throws Exception {
+    offHeapReleaseStore = new OffHeapReleaseStore(SOME_CAPACITY);
+    someNotificationId = 1;
+  }
+
+  @Test
+  public void testPutAndTake() throws Exception {
+    String someKey = "someKey";
+    String someReleaseKey = "someReleaseKey";
+    String someConfigurations = "{\"someKey\":\"someValue\"}";
+
+    offHeapReleaseStore.put(someKey, someNotificationId, someReleaseKey, someConfigurations);
+
+    assertEquals(1, offHeapReleaseStore.size());
+
+    OffHeapReleaseStore.StoredRelease storedRelease = offHeapReleaseStore.take(someKey, someNotificationId);
+
+    assertEquals(someReleaseKey, storedRelease.getReleaseKey());
+    assertEquals(someConfigurations, storedRelease.getConfigurations());
+    assertEquals(0, offHeapReleaseStore.size());
+    assertEquals(0, offHeapReleaseStore.sizeInBytes());
+    assertNull(offHeapReleaseStore.take(someKey, someNotificationId));
+  }
+
+  @Test
+  public void testTakeWithNewerNotificationId() throws Exception {
+    String someKey = "someKey";
+
+    offHeapReleaseStore.put(someKey, someNotificationId, "someReleaseKey", "{}");
+
+    assertNull(offHeapReleaseStore.take(someKey, someNotificationId + 1));
+    //the out-dated release is dropped
+    assertEquals(0, offHeapReleaseStore.size());
+    assertEquals(1, offHeapReleaseStore.stats().getMissCount());
+  }
+
+  @Test
+  public void testEvictOldestWhenFull() throws Exception {
+    put("someKey", 40);
+    put("anotherKey", 40);
+    //wraps around and overwrites the oldest one
+    put("yetAnotherKey", 40);
+
+    assertEquals(2, offHeapReleaseStore.size());
+    assertEquals(80, offHeapReleaseStore.sizeInBytes());
+    assertNull(offHeapReleaseStore.take("someKey", someNotificationId));
+
+    put("someKey", 40);
+
+    assertEquals(2, offHeapReleaseStore.size());
+    assertEquals(2, offHeapReleaseStore.stats().getEvictionCount());
+    assertNull(offHeapReleaseStore.take("anotherKey", someNotificationId));
+    assertNotNull(offHeapReleaseStore.take("yetAnotherKey", someNotificationId));
+    assertNotNull(offHeapReleaseStore.take("someKey", someNotificationId));
+  }
+
+  @Test
+  public void testEvictEntriesLeftAtTheEndWhenWrapped() throws Exception {
+    put("someKey", 30);
+    put("anotherKey", 30);
+    put("yetAnotherKey", 30);
+    //overwrites the first two entries, the third one is left at the end
+    put("someKey", 50);
+
+    assertEquals(2, offHeapReleaseStore.size());
+
+    //not enough room left at the end, so the third entry is evicted before the first one is overwritten
+    put("anotherKey", 55);
+
+    assertEquals(1, offHeapReleaseStore.size());
+    assertEquals(55, offHeapReleaseStore.sizeInBytes());
+    assertNull(offHeapReleaseStore.take("yetAnotherKey", someNotificationId));
+    assertNull(offHeapReleaseStore.take("someKey", someNotificationId));
+    assertEquals(expectedConfigurations(55), offHeapReleaseStore.take("anotherKey", someNotificationId)
+        .getConfigurations());
+  }
+
+  @Test
+  public void testPutTooLarge() throws Exception {
+    put("someKey", SOME_CAPACITY + 1);
+
+    assertEquals(0, offHeapReleaseStore.size());
+    assertEquals(0, offHeapReleaseStore.stats().getLoadCount());
+  }
+
+  /**
+   * @param entrySize the bytes taken in the store, including the length of the release key and the configurations
+   */
+  private void put(String key, int entrySize) {
+    offHeapReleaseStore.put(key, someNotificationId, "rk", expectedConfigurations(entrySize));
+  }
+
+  private String expectedConfigurations(int entrySize) {
+    return Strings.repeat("x", entrySize - 2 * Integer.BYTES - 2);
+  }
+}
@@ -0,0 +1,87 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseConfigurationsCacheTest {
+  @Mock
+  private BizConfig bizConfig;
+  private ReleaseConfigurationsCache releaseConfigurationsCache;
+  private String someConfigurations;
+
+  @Before
+  public void setUp() throws Exception {
+    when(bizConfig.configServiceDeltaHistoryMaxWeightInBytes()).thenReturn(1024L * 1024L);
+    releaseConfigurationsCache = new ReleaseConfigurationsCache(bizConfig);
+    someConfigurations = "{\"someKey\":\"someValue\"}";
+  }
+
+  @Test
+  public void testGetWithTheSameReleaseKey() throws Exception {
+    ReleaseConfigurations parsed = releaseConfigurationsCache.get(assembleRelease("someReleaseKey",
+        someConfigurations));
+    //the release loaded again for another query, not parsed again
+    ReleaseConfigurations parsedAgain = releaseConfigurationsCache.get(assembleRelease("someReleaseKey", null));
+
+    assertSame(parsed, parsedAgain);
+    assertEquals("someValue", parsed.get("someKey"));
+  }
+
+  @Test
+  public void testGetWithNoReleaseKey() throws Exception {
+    Release someRelease = assembleRelease(null, someConfigurations);
+
+    assertNotSame(releaseConfigurationsCache.get(someRelease), releaseConfigurationsCache.get(someRelease));
+  }
+
+  @Test
+  public void testFindDeltaBase() throws Exception {
+    ReleaseConfigurations base = releaseConfigurationsCache.get(assembleRelease("someBaseReleaseKey",
+        someConfigurations));
+    releaseConfigurationsCache.get(assembleRelease("someReleaseKey", someConfigurations));
+
+    assertSame(base, releaseConfigurationsCache.findDeltaBase("someReleaseKey", "someBaseReleaseKey"));
+    assertNull(releaseConfigurationsCache.findDeltaBase("someReleaseKey", "someUnknownReleaseKey"));
+  }
+
+  @Test
+  public void testFindDeltaBaseOfAnotherNamespace() throws Exception {
+    Release anotherNamespaceRelease = assembleRelease("anotherNamespaceReleaseKey", someConfigurations);
+    anotherNamespaceRelease.setNamespaceName("anotherNamespace");
+    releaseConfigurationsCache.get(anotherNamespaceRelease);
+    releaseConfigurationsCache.get(assembleRelease("someReleaseKey", someConfigurations));
+
+    assertNull(releaseConfigurationsCache.findDeltaBase("someReleaseKey", "anotherNamespaceReleaseKey"));
+  }
+
+  @Test
+  public void testRetain() throws Exception {
+    Release someRelease = assembleRelease(null, someConfigurations);
+
+    ReleaseConfigurations parsed = releaseConfigurationsCache.retain(someRelease);
+
+    assertSame(parsed, releaseConfigurationsCache.get(someRelease));
+  }
+
+  private Release assembleRelease(String releaseKey, String configurations) {
+    Release release = new Release();
+    release.setAppId("someAppId");
+    release.setClusterName("someClusterName");
+    release.setNamespaceName("someNamespace");
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations(configurations);
+    return release;
+  }
+}
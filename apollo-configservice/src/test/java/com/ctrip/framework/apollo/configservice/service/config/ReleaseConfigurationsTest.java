@@ -0,0 +1,63 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ReleaseConfigurationsTest {
+  private static final Type CONFIGURATION_TYPE = new TypeToken<Map<String, String>>() {
+  }.getType();
+
+  private Gson gson = new Gson();
+
+  @Test
+  public void testParse() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue");
+
+    ReleaseConfigurations releaseConfigurations = ReleaseConfigurations.parse(gson.toJson(configurations));
+
+    assertEquals(configurations, releaseConfigurations);
+  }
+
+  @Test
+  public void testParseEmptyConfigurations() throws Exception {
+    assertTrue(ReleaseConfigurations.parse(null).isEmpty());
+  }
+
+  @Test(expected = JsonSyntaxException.class)
+  public void testParseInvalidConfigurations() throws Exception {
+    ReleaseConfigurations.parse("xxx");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testConfigurationsAreReadOnly() throws Exception {
+    ReleaseConfigurations releaseConfigurations = ReleaseConfigurations.parse("{\"someKey\":\"someValue\"}");
+
+    releaseConfigurations.put("anotherKey", "anotherValue");
+  }
+
+  @Test
+  public void testRenderedFormats() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue");
+
+    ReleaseConfigurations releaseConfigurations = ReleaseConfigurations.parse(gson.toJson(configurations));
+
+    String properties = releaseConfigurations.asProperties();
+    String json = releaseConfigurations.asJson();
+
+    assertTrue(properties.contains("someKey=someValue"));
+    assertTrue(properties.contains("anotherKey=anotherValue"));
+    assertEquals(configurations, gson.fromJson(json, CONFIGURATION_TYPE));
+    assertSame(properties, releaseConfigurations.asProperties());
+    assertSame(json, releaseConfigurations.asJson());
+  }
+}
@@ -1,18 +1,30 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -26,7 +38,11 @@ public class InstanceConfigAuditUtilTest {
 
   @Mock
   private InstanceService instanceService;
-  private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private InstanceConfigHeartbeatBuffer heartbeatBuffer;
+  private List<Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel>> audits;
 
   private String someAppId;
   private String someConfigClusterName;
@@ -41,9 +57,10 @@ public class InstanceConfigAuditUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
+    when(bizConfig.instanceConfigAuditWorkers()).thenReturn(1);
+    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService, bizConfig, heartbeatBuffer);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
+    audits = (List<Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
         ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
 
     someAppId = "someAppId";
@@ -65,12 +82,72 @@ public class InstanceConfigAuditUtilTest {
     boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
         someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
 
-    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.poll();
+    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.get(0).values().iterator().next();
 
     assertTrue(result);
     assertTrue(Objects.equals(someAuditModel, audit));
   }
 
+  @Test
+  public void testAuditCoalesced() throws Exception {
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+    instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, anotherReleaseKey);
+
+    assertEquals(1, instanceConfigAuditUtil.getPendingAudits());
+    assertEquals(1, instanceConfigAuditUtil.getCoalescedAudits());
+    assertEquals(anotherReleaseKey, audits.get(0).values().iterator().next().getReleaseKey());
+  }
+
+  @Test
+  public void testDoAuditInBatch() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String anotherIp = "anotherIp";
+    String anotherReleaseKey = "anotherReleaseKey";
+    Instance someInstance = assembleInstance(someInstanceId, someIp);
+    Instance anotherInstance = assembleInstance(anotherInstanceId, anotherIp);
+
+    InstanceConfig someInstanceConfig = new InstanceConfig();
+    someInstanceConfig.setId(1);
+    someInstanceConfig.setInstanceId(someInstanceId);
+    someInstanceConfig.setConfigAppId(someConfigAppId);
+    someInstanceConfig.setConfigNamespaceName(someConfigNamespace);
+    someInstanceConfig.setReleaseKey(anotherReleaseKey);
+
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, anotherIp,
+            someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+
+    when(instanceService.findInstances(someAppId, someClusterName, someDataCenter,
+        Sets.newHashSet(someIp, anotherIp))).thenReturn(Lists.newArrayList(someInstance, anotherInstance));
+    when(instanceService.findInstanceConfigsByInstanceIds(Sets.newHashSet(someInstanceId, anotherInstanceId)))
+        .thenReturn(Lists.newArrayList(someInstanceConfig));
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel, anotherAuditModel));
+
+    ArgumentCaptor<List> createdCaptor = ArgumentCaptor.forClass(List.class);
+    ArgumentCaptor<List> updatedCaptor = ArgumentCaptor.forClass(List.class);
+    verify(instanceService, times(1)).createInstanceConfigs(createdCaptor.capture());
+    verify(instanceService, times(1)).updateInstanceConfigs(updatedCaptor.capture());
+    verify(instanceService, never()).createInstance(any(Instance.class));
+
+    List<InstanceConfig> created = createdCaptor.getValue();
+    assertEquals(1, created.size());
+    assertEquals(anotherInstanceId, created.get(0).getInstanceId());
+    assertEquals(someReleaseKey, created.get(0).getReleaseKey());
+    assertEquals(Collections.singletonList(someInstanceConfig), updatedCaptor.getValue());
+    assertEquals(someReleaseKey, someInstanceConfig.getReleaseKey());
+
+    //the release keys are cached after written
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel, anotherAuditModel));
+
+    verify(instanceService, times(1)).findInstanceConfigsByInstanceIds(anySet());
+  }
+
   @Test
   public void testDoAudit() throws Exception {
     long someInstanceId = 1;
@@ -89,5 +166,79 @@ public class InstanceConfigAuditUtilTest {
     verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
   }
 
+  @Test
+  public void testDoAuditWithLastSeenTimeWrittenBehind() throws Exception {
+    long someInstanceId = 1;
+    long someInstanceConfigId = 2;
+    Instance someInstance = assembleInstance(someInstanceId, someIp);
+
+    InstanceConfig someInstanceConfig = new InstanceConfig();
+    someInstanceConfig.setId(someInstanceConfigId);
+    someInstanceConfig.setInstanceId(someInstanceId);
+    someInstanceConfig.setReleaseKey(someReleaseKey);
+    someInstanceConfig.setDataChangeLastModifiedTime(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+
+    when(instanceService.findInstance(someAppId, someClusterName, someDataCenter, someIp)).thenReturn(someInstance);
+    when(instanceService.findInstanceConfig(someInstanceId, someConfigAppId, someConfigNamespace))
+        .thenReturn(someInstanceConfig);
+    when(heartbeatBuffer.isEnabled()).thenReturn(true);
+    when(heartbeatBuffer.record(someInstanceConfigId, someAuditModel.getOfferTime())).thenReturn(true);
+
+    instanceConfigAuditUtil.doAudit(someAuditModel);
+
+    verify(heartbeatBuffer, times(1)).record(someInstanceConfigId, someAuditModel.getOfferTime());
+    verify(instanceService, never()).updateInstanceConfig(any(InstanceConfig.class));
+  }
+
+  @Test
+  public void testDrainContinuesFromLastBatch() throws Exception {
+    ConcurrentMap<String, InstanceConfigAuditUtil.InstanceConfigAuditModel> shard = Maps.newConcurrentMap();
+    for (int i = 0; i < 150; i++) {
+      shard.put(String.valueOf(i), assembleAuditModel("ip" + i));
+    }
+    InstanceConfigAuditUtil.AuditDrainer drainer = new InstanceConfigAuditUtil.AuditDrainer(shard);
+
+    List<InstanceConfigAuditUtil.InstanceConfigAuditModel> firstBatch = drainer.drain();
+    assertEquals(100, firstBatch.size());
+
+    //the drained instances keep sending audits
+    Set<String> firstBatchIps = Sets.newHashSet();
+    for (InstanceConfigAuditUtil.InstanceConfigAuditModel model : firstBatch) {
+      firstBatchIps.add(model.getIp());
+      shard.put(model.getIp().substring(2), assembleAuditModel(model.getIp()));
+    }
+
+    List<InstanceConfigAuditUtil.InstanceConfigAuditModel> secondBatch = drainer.drain();
+    assertEquals(100, secondBatch.size());
+
+    Set<String> remainingIps = Sets.newHashSet();
+    for (int i = 0; i < 150; i++) {
+      if (!firstBatchIps.contains("ip" + i)) {
+        remainingIps.add("ip" + i);
+      }
+    }
+    Set<String> secondBatchIps = Sets.newHashSet();
+    for (InstanceConfigAuditUtil.InstanceConfigAuditModel model : secondBatch) {
+      secondBatchIps.add(model.getIp());
+    }
+    assertTrue(secondBatchIps.containsAll(remainingIps));
+    assertEquals(50, shard.size());
+  }
+
+  private InstanceConfigAuditUtil.InstanceConfigAuditModel assembleAuditModel(String ip) {
+    return new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, ip,
+        someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+  }
+
+  private Instance assembleInstance(long id, String ip) {
+    Instance instance = new Instance();
+    instance.setId(id);
+    instance.setAppId(someAppId);
+    instance.setClusterName(someClusterName);
+    instance.setDataCenter(someDataCenter);
+    instance.setIp(ip);
+    return instance;
+  }
+
 
 }
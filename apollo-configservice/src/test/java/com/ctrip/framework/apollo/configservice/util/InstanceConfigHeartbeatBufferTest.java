@@ -0,0 +1,116 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InstanceConfigHeartbeatBufferTest {
+  private InstanceConfigHeartbeatBuffer heartbeatBuffer;
+
+  @Mock
+  private InstanceService instanceService;
+  @Mock
+  private BizConfig bizConfig;
+
+  @Before
+  public void setUp() throws Exception {
+    heartbeatBuffer = new InstanceConfigHeartbeatBuffer(instanceService, bizConfig);
+  }
+
+  @Test
+  public void testFlushOnceForEachInstanceConfig() throws Exception {
+    long someInstanceConfigId = 1;
+    long anotherInstanceConfigId = 2;
+    long someMinute = TimeUnit.MINUTES.toMillis(1000);
+    Date someTime = new Date(someMinute + 1);
+    Date laterTime = new Date(someMinute + 2);
+
+    assertTrue(heartbeatBuffer.record(someInstanceConfigId, laterTime));
+    assertTrue(heartbeatBuffer.record(someInstanceConfigId, someTime));
+    assertTrue(heartbeatBuffer.record(anotherInstanceConfigId, someTime));
+
+    assertEquals(2, heartbeatBuffer.getPendingHeartbeats());
+
+    heartbeatBuffer.flush();
+
+    ArgumentCaptor<Collection> idsCaptor = ArgumentCaptor.forClass(Collection.class);
+    verify(instanceService, times(1)).updateInstanceConfigsLastSeenTime(idsCaptor.capture(),
+        eq(new Date(someMinute)));
+
+    assertEquals(Sets.newHashSet(someInstanceConfigId, anotherInstanceConfigId),
+        Sets.newHashSet(idsCaptor.getValue()));
+    assertEquals(0, heartbeatBuffer.getPendingHeartbeats());
+    assertEquals(2, heartbeatBuffer.getFlushedHeartbeats());
+    assertEquals(1, heartbeatBuffer.getFlushStatements());
+  }
+
+  @Test
+  public void testFlushGroupedByMinute() throws Exception {
+    long someMinute = TimeUnit.MINUTES.toMillis(1000);
+    long anotherMinute = TimeUnit.MINUTES.toMillis(1001);
+
+    heartbeatBuffer.record(1, new Date(someMinute));
+    heartbeatBuffer.record(2, new Date(anotherMinute));
+
+    heartbeatBuffer.flush();
+
+    verify(instanceService, times(1)).updateInstanceConfigsLastSeenTime(anyCollection(),
+        eq(new Date(someMinute)));
+    verify(instanceService, times(1)).updateInstanceConfigsLastSeenTime(anyCollection(),
+        eq(new Date(anotherMinute)));
+    assertEquals(2, heartbeatBuffer.getFlushStatements());
+  }
+
+  @Test
+  public void testFlushAgainAfterFailed() throws Exception {
+    long someInstanceConfigId = 1;
+    long someMinute = TimeUnit.MINUTES.toMillis(1000);
+    long anotherMinute = TimeUnit.MINUTES.toMillis(1001);
+
+    doThrow(new RuntimeException("some exception")).doReturn(1).when(instanceService)
+        .updateInstanceConfigsLastSeenTime(anyCollection(), any(Date.class));
+
+    heartbeatBuffer.record(someInstanceConfigId, new Date(someMinute));
+    heartbeatBuffer.flush();
+
+    assertEquals(1, heartbeatBuffer.getPendingHeartbeats());
+    assertEquals(0, heartbeatBuffer.getFlushedHeartbeats());
+
+    //the later heartbeat is kept
+    heartbeatBuffer.record(someInstanceConfigId, new Date(anotherMinute));
+    heartbeatBuffer.flush();
+
+    verify(instanceService, times(1)).updateInstanceConfigsLastSeenTime(anyCollection(),
+        eq(new Date(anotherMinute)));
+    assertEquals(0, heartbeatBuffer.getPendingHeartbeats());
+    assertEquals(1, heartbeatBuffer.getFlushedHeartbeats());
+  }
+
+  @Test
+  public void testFlushNothing() throws Exception {
+    heartbeatBuffer.flush();
+
+    verify(instanceService, never()).updateInstanceConfigsLastSeenTime(anyCollection(), any(Date.class));
+  }
+}
@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.core.dto;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -17,6 +18,17 @@ public class ApolloConfig {
 
   private String releaseKey;
 
+  /**
+   * Only present in delta responses, which means the configurations only contain the keys added or modified since
+   * this release
+   */
+  private String baseReleaseKey;
+
+  /**
+   * The keys deleted since the base release, only present in delta responses
+   */
+  private Set<String> deletedKeys;
+
   public ApolloConfig() {
   }
 
@@ -70,6 +82,26 @@ public class ApolloConfig {
     this.configurations = configurations;
   }
 
+  public String getBaseReleaseKey() {
+    return baseReleaseKey;
+  }
+
+  public void setBaseReleaseKey(String baseReleaseKey) {
+    this.baseReleaseKey = baseReleaseKey;
+  }
+
+  public Set<String> getDeletedKeys() {
+    return deletedKeys;
+  }
+
+  public void setDeletedKeys(Set<String> deletedKeys) {
+    this.deletedKeys = deletedKeys;
+  }
+
+  public boolean isDelta() {
+    return baseReleaseKey != null;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ApolloConfig{");
@@ -78,6 +110,10 @@ public class ApolloConfig {
     sb.append(", namespaceName='").append(namespaceName).append('\'');
     sb.append(", configurations=").append(configurations);
     sb.append(", releaseKey='").append(releaseKey).append('\'');
+    if (baseReleaseKey != null) {
+      sb.append(", baseReleaseKey='").append(baseReleaseKey).append('\'');
+      sb.append(", deletedKeys=").append(deletedKeys);
+    }
     sb.append('}');
     return sb.toString();
   }
@@ -4,6 +4,9 @@ package com.ctrip.framework.apollo.core.dto;
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ApolloConfigNotification {
+  //only set for the multiplexed long polling, which carries the notifications of many apps
+  private String appId;
+  private String cluster;
   private String namespaceName;
   private long notificationId;
   private volatile ApolloNotificationMessages messages;
@@ -17,6 +20,28 @@ public class ApolloConfigNotification {
     this.notificationId = notificationId;
   }
 
+  public ApolloConfigNotification(String appId, String cluster, String namespaceName, long notificationId) {
+    this(namespaceName, notificationId);
+    this.appId = appId;
+    this.cluster = cluster;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  public void setAppId(String appId) {
+    this.appId = appId;
+  }
+
+  public String getCluster() {
+    return cluster;
+  }
+
+  public void setCluster(String cluster) {
+    this.cluster = cluster;
+  }
+
   public String getNamespaceName() {
     return namespaceName;
   }
@@ -0,0 +1,107 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact text form of the notifications sent by the long polling clients, one <code>namespace=notificationId</code>
+ * per line.
+ *
+ * <p>It is much shorter than the json form and could be parsed without reflection, the namespace name could not
+ * contain line breaks but might contain '=' as the notification id never does.</p>
+ *
+ * <p>The multiplexed notifications of many apps are prefixed with their appId and cluster, one
+ * <code>appId+cluster+namespace=notificationId</code> per line. The appId and cluster never contain '+'.</p>
+ */
+public class NotificationsCodec {
+  public static final String CONTENT_TYPE = "text/plain;charset=UTF-8";
+  private static final char LINE_SEPARATOR = '\n';
+  private static final char KEY_VALUE_SEPARATOR = '=';
+  private static final String APP_SEPARATOR = ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR;
+  private static final Splitter LINE_SPLITTER = Splitter.on(LINE_SEPARATOR).omitEmptyStrings().trimResults();
+
+  /**
+   * @param notifications namespace name -> notification id
+   */
+  public static String encode(Map<String, Long> notifications) {
+    StringBuilder builder = new StringBuilder(notifications.size() * 32);
+    for (Map.Entry<String, Long> entry : notifications.entrySet()) {
+      builder.append(entry.getKey()).append(KEY_VALUE_SEPARATOR).append(entry.getValue()).append(LINE_SEPARATOR);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @throws IllegalArgumentException if the text is not in the compact form
+   */
+  public static List<ApolloConfigNotification> decode(String text) {
+    List<ApolloConfigNotification> notifications = Lists.newArrayList();
+    if (text == null) {
+      return notifications;
+    }
+    for (String line : LINE_SPLITTER.split(text)) {
+      int separatorIndex = findKeyValueSeparator(line);
+      notifications.add(new ApolloConfigNotification(line.substring(0, separatorIndex),
+          parseNotificationId(line, separatorIndex)));
+    }
+    return notifications;
+  }
+
+  /**
+   * @param notifications the notifications with appId and cluster set
+   */
+  public static String encodeMultiplexed(Collection<ApolloConfigNotification> notifications) {
+    StringBuilder builder = new StringBuilder(notifications.size() * 64);
+    for (ApolloConfigNotification notification : notifications) {
+      builder.append(notification.getAppId()).append(APP_SEPARATOR).append(notification.getCluster())
+          .append(APP_SEPARATOR).append(notification.getNamespaceName()).append(KEY_VALUE_SEPARATOR)
+          .append(notification.getNotificationId()).append(LINE_SEPARATOR);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * @return the notifications with appId and cluster set
+   * @throws IllegalArgumentException if the text is not in the multiplexed compact form
+   */
+  public static List<ApolloConfigNotification> decodeMultiplexed(String text) {
+    List<ApolloConfigNotification> notifications = Lists.newArrayList();
+    if (text == null) {
+      return notifications;
+    }
+    for (String line : LINE_SPLITTER.split(text)) {
+      int separatorIndex = findKeyValueSeparator(line);
+      int clusterIndex = line.indexOf(APP_SEPARATOR) + 1;
+      int namespaceIndex = clusterIndex > 0 ? line.indexOf(APP_SEPARATOR, clusterIndex) + 1 : 0;
+      if (clusterIndex <= 1 || namespaceIndex <= clusterIndex + 1 || namespaceIndex >= separatorIndex) {
+        throw new IllegalArgumentException("Invalid notification: " + line);
+      }
+      notifications.add(new ApolloConfigNotification(line.substring(0, clusterIndex - 1),
+          line.substring(clusterIndex, namespaceIndex - 1), line.substring(namespaceIndex, separatorIndex),
+          parseNotificationId(line, separatorIndex)));
+    }
+    return notifications;
+  }
+
+  private static int findKeyValueSeparator(String line) {
+    int separatorIndex = line.lastIndexOf(KEY_VALUE_SEPARATOR);
+    if (separatorIndex <= 0) {
+      throw new IllegalArgumentException("Invalid notification: " + line);
+    }
+    return separatorIndex;
+  }
+
+  private static long parseNotificationId(String line, int separatorIndex) {
+    try {
+      return Long.parseLong(line.substring(separatorIndex + 1));
+    } catch (NumberFormatException ex) {
+      throw new IllegalArgumentException("Invalid notification: " + line, ex);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class NotificationsCodecTest {
+
+  @Test
+  public void testEncodeAndDecode() {
+    Map<String, Long> notifications = Maps.newLinkedHashMap();
+    notifications.put("application", 1L);
+    notifications.put("some.namespace", -1L);
+    notifications.put("some=namespace", 100L);
+
+    String text = NotificationsCodec.encode(notifications);
+
+    assertEquals("application=1\nsome.namespace=-1\nsome=namespace=100\n", text);
+
+    List<ApolloConfigNotification> decoded = NotificationsCodec.decode(text);
+
+    assertEquals(3, decoded.size());
+    assertEquals("application", decoded.get(0).getNamespaceName());
+    assertEquals(1L, decoded.get(0).getNotificationId());
+    assertEquals("some.namespace", decoded.get(1).getNamespaceName());
+    assertEquals(-1L, decoded.get(1).getNotificationId());
+    assertEquals("some=namespace", decoded.get(2).getNamespaceName());
+    assertEquals(100L, decoded.get(2).getNotificationId());
+  }
+
+  @Test
+  public void testEncodeAndDecodeMultiplexed() {
+    List<ApolloConfigNotification> notifications = Lists.newArrayList(
+        new ApolloConfigNotification("someAppId", "someCluster", "application", 1L),
+        new ApolloConfigNotification("anotherAppId", "default", "some+namespace", -1L));
+
+    String text = NotificationsCodec.encodeMultiplexed(notifications);
+
+    assertEquals("someAppId+someCluster+application=1\nanotherAppId+default+some+namespace=-1\n", text);
+
+    List<ApolloConfigNotification> decoded = NotificationsCodec.decodeMultiplexed(text);
+
+    assertEquals(2, decoded.size());
+    assertEquals("someAppId", decoded.get(0).getAppId());
+    assertEquals("someCluster", decoded.get(0).getCluster());
+    assertEquals("application", decoded.get(0).getNamespaceName());
+    assertEquals(1L, decoded.get(0).getNotificationId());
+    assertEquals("anotherAppId", decoded.get(1).getAppId());
+    assertEquals("default", decoded.get(1).getCluster());
+    assertEquals("some+namespace", decoded.get(1).getNamespaceName());
+    assertEquals(-1L, decoded.get(1).getNotificationId());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeMultiplexedWithoutCluster() {
+    NotificationsCodec.decodeMultiplexed("someAppId+application=1");
+  }
+
+  @Test
+  public void testDecodeEmpty() {
+    assertTrue(NotificationsCodec.decode("").isEmpty());
+    assertTrue(NotificationsCodec.decode(null).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeWithoutNotificationId() {
+    NotificationsCodec.decode("application");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeWithInvalidNotificationId() {
+    NotificationsCodec.decode("application=abc");
+  }
+}
@@ -72,7 +72,7 @@ function rulesModalDirective(toastr, AppUtil, EventManager, InstanceService) {
                 var oldIPs = branch.editingRuleItem.draftIpList;
                 if (newIps && newIps.length > 0) {
                     newIps.forEach(function (IP) {
-                        if (!AppUtil.checkIPV4(IP)) {
+                        if (!AppUtil.checkIPV4(IP) && !AppUtil.checkCIDR(IP)) {
                             toastr.error("不合法的IP地址:" + IP);
                         } else if (oldIPs.indexOf(IP) < 0) {
                             oldIPs.push(IP);